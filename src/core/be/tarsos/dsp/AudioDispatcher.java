@@ -25,14 +25,17 @@
 package be.tarsos.dsp;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
 import be.tarsos.dsp.io.TarsosDSPAudioFormat;
 import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+import be.tarsos.dsp.io.TarsosDSPFloatInputStream;
 
 
 /**
@@ -55,6 +58,12 @@ public class AudioDispatcher implements Runnable {
 	 * moment.
 	 */
 	private final TarsosDSPAudioInputStream audioInputStream;
+	
+	/**
+	 * The same stream if it delivers floats directly and is mono, otherwise
+	 * null. Samples are then read straight into the float buffer.
+	 */
+	private final TarsosDSPFloatInputStream floatInputStream;
 
 	/**
 	 * This buffer is reused again and again to store audio data using the float
@@ -133,6 +142,35 @@ public class AudioDispatcher implements Runnable {
 	 * processors must be prepared to handle shorter audio buffers.
 	 */
 	private boolean zeroPadLastBuffer;
+	
+	/**
+	 * If true the buffers keep their size at the end of the stream, also when
+	 * the last buffer is not zero padded. The number of samples read is then
+	 * only available via {@link AudioEvent#getValidSamples()}.
+	 */
+	private boolean fixedBufferCapacity;
+	
+	/**
+	 * The number of zeros at the start of the current buffer when the first
+	 * buffer is zero padded.
+	 */
+	private int paddingSamples;
+	
+	/**
+	 * Timing information, null when the dispatcher is not instrumented.
+	 */
+	private DispatcherMetrics metrics;
+	
+	/**
+	 * Watches the time budget of each buffer, null when not reading a live
+	 * source.
+	 */
+	private DeadlineMonitor deadlineMonitor;
+	
+	/**
+	 * A change of buffer size and overlap, applied between two buffers.
+	 */
+	private final AtomicReference<Reconfiguration> pendingReconfiguration;
 
 	/**
 	 * Create a new dispatcher from a stream.
@@ -151,16 +189,24 @@ public class AudioDispatcher implements Runnable {
 		// it is iterated. A nice feature to have when adding AudioProcessors while
 		// the AudioDispatcher is running.
 		audioProcessors = new CopyOnWriteArrayList<AudioProcessor>();
+		pendingReconfiguration = new AtomicReference<Reconfiguration>();
 		audioInputStream = stream;
 
 		format = audioInputStream.getFormat();
 		
+		if(stream instanceof TarsosDSPFloatInputStream && format.getChannels() == 1){
+			floatInputStream = (TarsosDSPFloatInputStream) stream;
+		}else{
+			floatInputStream = null;
+		}
+		
 			
 		setStepSizeAndOverlap(audioBufferSize, bufferOverlap);
 		
 		audioEvent = new AudioEvent(format);
 		audioEvent.setFloatBuffer(audioFloatBuffer);
 		audioEvent.setOverlap(bufferOverlap);
+		audioEvent.setFrameLength(audioInputStream.getFrameLength());
 		
 		converter = TarsosDSPAudioFloatConverter.getConverter(format);
 		
@@ -182,7 +228,8 @@ public class AudioDispatcher implements Runnable {
 	/**
 	 * Set a new step size and overlap size. Both in number of samples. Watch
 	 * out with this method: it should be called after a batch of samples is
-	 * processed, not during.
+	 * processed, not during. To change the sizes while the dispatcher is
+	 * running, use {@link #requestStepSizeAndOverlap(int, int)}.
 	 * 
 	 * @param audioBufferSize
 	 *            The size of the buffer defines how much samples are processed
@@ -192,15 +239,95 @@ public class AudioDispatcher implements Runnable {
 	 *            AudioBufferSize is common (512, 1024) for an FFT.
 	 */
 	public void setStepSizeAndOverlap(final int audioBufferSize, final int bufferOverlap){
-		audioFloatBuffer = new float[audioBufferSize];
+		// Reuse the buffers if the size does not change.
+		if(audioFloatBuffer == null || audioFloatBuffer.length != audioBufferSize){
+			audioFloatBuffer = new float[audioBufferSize];
+		}
 		floatOverlap = bufferOverlap;
 		floatStepSize = audioFloatBuffer.length - floatOverlap;
 
-		audioByteBuffer = new byte[audioFloatBuffer.length * format.getFrameSize()];
+		int byteBufferSize = audioFloatBuffer.length * format.getFrameSize();
+		if(audioByteBuffer == null || audioByteBuffer.length != byteBufferSize){
+			audioByteBuffer = new byte[byteBufferSize];
+		}
 		byteOverlap = floatOverlap * format.getFrameSize();
 		byteStepSize = floatStepSize * format.getFrameSize();
 	}
 	
+	/**
+	 * Requests a new buffer size and overlap, both in number of samples. It is
+	 * safe to call this method from any thread while the dispatcher is
+	 * running. The change is applied between two buffers: the next buffer
+	 * starts with the most recent samples as overlap, so no audio is skipped
+	 * or repeated. When the new overlap is longer than the current buffer, the
+	 * overlap starts with zeros.
+	 * <p>
+	 * The buffers for the new size are allocated here, and each
+	 * {@link ReconfigurableAudioProcessor} is asked to prepare, so the
+	 * dispatching thread only swaps them in. A later request replaces a
+	 * request which is not yet applied.
+	 * </p>
+	 * 
+	 * @param audioBufferSize
+	 *            The new buffer size.
+	 * @param bufferOverlap
+	 *            The new overlap, smaller than the buffer size.
+	 * @throws IllegalArgumentException
+	 *             If the overlap is not smaller than the buffer size, or if a
+	 *             processor can not work with the new size. The request is
+	 *             then not applied.
+	 */
+	public void requestStepSizeAndOverlap(final int audioBufferSize, final int bufferOverlap){
+		if(bufferOverlap < 0 || bufferOverlap >= audioBufferSize){
+			throw new IllegalArgumentException(String.format("The overlap (%d) should be positive and smaller than the buffer size (%d).", bufferOverlap, audioBufferSize));
+		}
+		for (final AudioProcessor processor : audioProcessors) {
+			if(processor instanceof ReconfigurableAudioProcessor){
+				((ReconfigurableAudioProcessor) processor).prepareReconfiguration(audioBufferSize, bufferOverlap);
+			}
+		}
+		Reconfiguration reconfiguration = new Reconfiguration(audioBufferSize, bufferOverlap, format.getFrameSize());
+		pendingReconfiguration.set(reconfiguration);
+		LOG.fine(String.format("Requested a buffer size of %d samples and an overlap of %d samples.", audioBufferSize, bufferOverlap));
+	}
+	
+	/**
+	 * Applies a requested change of buffer size and overlap, if any. Called on
+	 * the dispatching thread before a buffer is read.
+	 * 
+	 * @param keepHistory
+	 *            True if the samples of the current buffer should be kept as
+	 *            overlap for the next buffer.
+	 */
+	private void applyReconfiguration(boolean keepHistory){
+		Reconfiguration next = pendingReconfiguration.getAndSet(null);
+		if(next == null){
+			return;
+		}
+		if(keepHistory){
+			// The next read slides the end of the buffer to the start: place
+			// the most recent samples there.
+			int history = Math.min(next.overlap, audioFloatBuffer.length);
+			System.arraycopy(audioFloatBuffer, audioFloatBuffer.length - history, next.floatBuffer, next.floatBuffer.length - history, history);
+			int audioSamples = audioFloatBuffer.length - paddingSamples;
+			int zeros = Math.max(0, next.overlap - audioSamples);
+			paddingSamples = zeros + next.floatBuffer.length - next.overlap;
+		}
+		audioFloatBuffer = next.floatBuffer;
+		audioByteBuffer = next.byteBuffer;
+		floatOverlap = next.overlap;
+		floatStepSize = audioFloatBuffer.length - floatOverlap;
+		byteOverlap = floatOverlap * format.getFrameSize();
+		byteStepSize = floatStepSize * format.getFrameSize();
+		audioEvent.setFloatBuffer(audioFloatBuffer);
+		for (final AudioProcessor processor : audioProcessors) {
+			if(processor instanceof ReconfigurableAudioProcessor){
+				((ReconfigurableAudioProcessor) processor).reconfigure(audioFloatBuffer.length, floatOverlap);
+			}
+		}
+		LOG.fine(String.format("Switched to a buffer size of %d samples and an overlap of %d samples.", audioFloatBuffer.length, floatOverlap));
+	}
+	
 	/**
 	 * if zero pad is true then the first buffer is only filled up to  buffer size - hop size
 	 * E.g. if the buffer is 2048 and the hop size is 48 then you get 2000x0 and 48 filled audio samples
@@ -221,6 +348,58 @@ public class AudioDispatcher implements Runnable {
 		this.zeroPadLastBuffer = zeroPadLastBuffer;
 	}
 	
+	/**
+	 * If fixed buffer capacity is true the buffer keeps its size at the end of
+	 * the stream, even if the last buffer is not zero padded. The remainder of
+	 * the last buffer is filled with zeros and the number of samples actually
+	 * read is available via {@link AudioEvent#getValidSamples()}. No arrays are
+	 * allocated after construction, which matters when many short streams are
+	 * processed. By default it is set to false.
+	 * 
+	 * @param fixedBufferCapacity
+	 *            True to keep the size of the buffers fixed.
+	 */
+	public void setFixedBufferCapacity(boolean fixedBufferCapacity) {
+		this.fixedBufferCapacity = fixedBufferCapacity;
+	}
+	
+
+	/**
+	 * Instruments the dispatcher: the time spent reading, converting and in
+	 * each processor is recorded in the metrics. Without metrics, the default,
+	 * nothing is measured.
+	 * 
+	 * @param metrics
+	 *            The metrics to record to, or null to stop measuring.
+	 */
+	public void setMetrics(DispatcherMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * @return The metrics the dispatcher records to, or null.
+	 */
+	public DispatcherMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Enables the real-time mode: the time spent on each buffer is compared
+	 * with the duration of a hop, see {@link DeadlineMonitor}.
+	 * 
+	 * @param deadlineMonitor
+	 *            The monitor, or null to disable the real-time mode.
+	 */
+	public void setDeadlineMonitor(DeadlineMonitor deadlineMonitor) {
+		this.deadlineMonitor = deadlineMonitor;
+	}
+	
+	/**
+	 * @return The deadline monitor, or null.
+	 */
+	public DeadlineMonitor getDeadlineMonitor() {
+		return deadlineMonitor;
+	}
 
 	/**
 	 * Adds an AudioProcessor to the chain of processors.
@@ -252,11 +431,16 @@ public class AudioDispatcher implements Runnable {
 		if(bytesToSkip!=0){
 			skipToStart();
 		}
+		
+		if(metrics != null){
+			metrics.started();
+		}
 	
 		//Read the first (and in some cases last) audio block.
 		try {
 			//needed to get correct time info when skipping first x seconds
 			audioEvent.setBytesProcessed(bytesProcessed);
+			applyReconfiguration(false);
 			bytesRead = readNextAudioBlock();
 		} catch (IOException e) {
 			String message="Error while reading audio input stream: " + e.getMessage();	
@@ -268,11 +452,15 @@ public class AudioDispatcher implements Runnable {
 		while (bytesRead != 0 && !stopped) {
 			
 			//Makes sure the right buffers are processed, they can be changed by audio processors.
-			for (final AudioProcessor processor : audioProcessors) {
-				if(!processor.process(audioEvent)){
-					//skip to the next audio processors if false is returned.
-					break;
-				}	
+			if(metrics == null && deadlineMonitor == null){
+				for (final AudioProcessor processor : audioProcessors) {
+					if(!processor.process(audioEvent)){
+						//skip to the next audio processors if false is returned.
+						break;
+					}	
+				}
+			}else{
+				processSupervised(metrics, deadlineMonitor);
 			}
 			
 			if(!stopped){			
@@ -283,6 +471,7 @@ public class AudioDispatcher implements Runnable {
 				// Read, convert and process consecutive overlapping buffers.
 				// Slide the buffer.
 				try {
+					applyReconfiguration(true);
 					bytesRead = readNextAudioBlock();
 					audioEvent.setOverlap(floatOverlap);
 				} catch (IOException e) {
@@ -302,6 +491,41 @@ public class AudioDispatcher implements Runnable {
 	}
 	
 	
+	/**
+	 * Runs the chain of processors, records the time spent in each and keeps
+	 * an eye on the deadline. Both the metrics and the monitor can be null.
+	 */
+	private void processSupervised(DispatcherMetrics metrics, DeadlineMonitor monitor){
+		if(monitor != null && !monitor.beginFrame()){
+			// Dropped: the bytes are still counted so time stamps stay correct.
+			return;
+		}
+		long frameStart = System.nanoTime();
+		for (final AudioProcessor processor : audioProcessors) {
+			if(monitor != null && monitor.skip(processor)){
+				continue;
+			}
+			boolean proceed;
+			if(metrics == null){
+				proceed = processor.process(audioEvent);
+			}else{
+				long start = System.nanoTime();
+				proceed = processor.process(audioEvent);
+				metrics.forProcessor(processor).getLatency().record(System.nanoTime() - start);
+			}
+			if(!proceed){
+				break;
+			}
+		}
+		long frameNanos = System.nanoTime() - frameStart;
+		if(metrics != null){
+			metrics.frameProcessed(frameNanos, audioEvent.getTimeStamp());
+		}
+		if(monitor != null){
+			monitor.endFrame(frameNanos, floatStepSize, format.getSampleRate(), audioEvent.getTimeStamp());
+		}
+	}
+	
 	private void skipToStart() {
 		long skipped = 0l;
 		try{
@@ -325,6 +549,9 @@ public class AudioDispatcher implements Runnable {
 		for (final AudioProcessor processor : audioProcessors) {
 			processor.processingFinished();
 		}
+		if(metrics != null){
+			metrics.stopped(secondsProcessed());
+		}
 		try {
 			audioInputStream.close();
 		} catch (IOException e) {
@@ -353,6 +580,12 @@ public class AudioDispatcher implements Runnable {
 		// Is this the first buffer?
 		boolean isFirstBuffer = (bytesProcessed ==0 || bytesProcessed == bytesToSkip);
 		
+		if(isFirstBuffer){
+			paddingSamples = zeroPadFirstBuffer ? floatOverlap : 0;
+		}else{
+			paddingSamples = Math.max(0, paddingSamples - floatStepSize);
+		}
+		
 		final int offsetInBytes;
 		
 		final int offsetInSamples;
@@ -392,11 +625,19 @@ public class AudioDispatcher implements Runnable {
 		// Is the end of the stream reached?
 		boolean endOfStream = false;
 				
+		final long readStart = metrics == null ? 0 : System.nanoTime();
+		
 		// Always try to read the 'bytesToRead' amount of bytes.
 		// unless the stream is closed (stopped is true) or no bytes could be read during one iteration 
 		while(!stopped && !endOfStream && totalBytesRead<bytesToRead){
 			try{
-				bytesRead = audioInputStream.read(audioByteBuffer, offsetInBytes + totalBytesRead , bytesToRead - totalBytesRead);
+				if(floatInputStream != null){
+					int frameSize = format.getFrameSize();
+					int samplesRead = floatInputStream.read(audioFloatBuffer, offsetInSamples + totalBytesRead / frameSize, (bytesToRead - totalBytesRead) / frameSize);
+					bytesRead = samplesRead == -1 ? -1 : samplesRead * frameSize;
+				}else{
+					bytesRead = audioInputStream.read(audioByteBuffer, offsetInBytes + totalBytesRead , bytesToRead - totalBytesRead);
+				}
 			}catch(IndexOutOfBoundsException e){
 				// The pipe decoder generates an out of bounds if end
 				// of stream is reached. Ugly hack...
@@ -411,30 +652,40 @@ public class AudioDispatcher implements Runnable {
 			}
 		}
 		
+		final long conversionStart = metrics == null ? 0 : System.nanoTime();
+		if(metrics != null){
+			metrics.recordReadWait(conversionStart - readStart);
+		}
+		
+		// The number of samples in the buffer with audio from the stream.
+		int validSamples = audioFloatBuffer.length;
+		
 		if(endOfStream){
 			// Could not read a full buffer from the stream, there are two options:
-			if(zeroPadLastBuffer){
+			int totalSamplesRead = totalBytesRead/format.getFrameSize();
+			validSamples = offsetInSamples + totalSamplesRead;
+			if(zeroPadLastBuffer || fixedBufferCapacity){
 				//Make sure the last buffer has the same length as all other buffers and pad with zeros
-				for(int i = offsetInBytes + totalBytesRead; i < audioByteBuffer.length; i++){
-					audioByteBuffer[i] = 0;
+				if(floatInputStream == null){
+					converter.toFloatArray(audioByteBuffer, offsetInBytes, audioFloatBuffer, offsetInSamples, totalSamplesRead);
 				}
-				converter.toFloatArray(audioByteBuffer, offsetInBytes, audioFloatBuffer, offsetInSamples, floatStepSize);
-			}else{
-				// Send a smaller buffer through the chain.
-				byte[] audioByteBufferContent = audioByteBuffer;
-				audioByteBuffer = new byte[offsetInBytes + totalBytesRead];
-				for(int i = 0 ; i < audioByteBuffer.length ; i++){
-					audioByteBuffer[i] = audioByteBufferContent[i];
+				Arrays.fill(audioFloatBuffer, validSamples, audioFloatBuffer.length, 0);
+			}else if(totalSamplesRead > 0){
+				// Send a smaller buffer through the chain, with the overlap of the previous buffer.
+				float[] previousBuffer = audioFloatBuffer;
+				audioFloatBuffer = new float[validSamples];
+				if(floatInputStream == null){
+					System.arraycopy(previousBuffer, 0, audioFloatBuffer, 0, offsetInSamples);
+					converter.toFloatArray(audioByteBuffer, offsetInBytes, audioFloatBuffer, offsetInSamples, totalSamplesRead);
+				}else{
+					System.arraycopy(previousBuffer, 0, audioFloatBuffer, 0, validSamples);
 				}
-				int totalSamplesRead = totalBytesRead/format.getFrameSize();
-				audioFloatBuffer = new float[offsetInSamples + totalBytesRead/format.getFrameSize()];
-				converter.toFloatArray(audioByteBuffer, offsetInBytes, audioFloatBuffer, offsetInSamples, totalSamplesRead);
-				
-				
-			}			
+			}
 		}else if(bytesToRead == totalBytesRead) {
 			// The expected amount of bytes have been read from the stream.
-			if(isFirstBuffer && !zeroPadFirstBuffer){
+			if(floatInputStream != null){
+				// Already read as floats.
+			}else if(isFirstBuffer && !zeroPadFirstBuffer){
 				converter.toFloatArray(audioByteBuffer, 0, audioFloatBuffer, 0, audioFloatBuffer.length);
 			}else{
 				converter.toFloatArray(audioByteBuffer, offsetInBytes, audioFloatBuffer, offsetInSamples, floatStepSize);
@@ -447,9 +698,15 @@ public class AudioDispatcher implements Runnable {
 		}
 		
 		
+		if(metrics != null){
+			metrics.recordConversion(System.nanoTime() - conversionStart);
+		}
+		
 		// Makes sure AudioEvent contains correct info.
 		audioEvent.setFloatBuffer(audioFloatBuffer);
 		audioEvent.setOverlap(offsetInSamples);
+		int validOffset = Math.min(paddingSamples, validSamples);
+		audioEvent.setValidSamples(validOffset, validSamples - validOffset);
 		
 		return totalBytesRead; 
 	}
@@ -458,6 +715,22 @@ public class AudioDispatcher implements Runnable {
 		return format;
 	}
 	
+	/**
+	 * A requested buffer size and overlap, with the buffers allocated by the
+	 * requesting thread.
+	 */
+	private static final class Reconfiguration {
+		private final int overlap;
+		private final float[] floatBuffer;
+		private final byte[] byteBuffer;
+		
+		private Reconfiguration(int audioBufferSize, int overlap, int frameSize){
+			this.overlap = overlap;
+			this.floatBuffer = new float[audioBufferSize];
+			this.byteBuffer = new byte[audioBufferSize * frameSize];
+		}
+	}
+	
 	/**
 	 * 
 	 * @return The currently processed number of seconds.
@@ -169,6 +169,7 @@ public class AudioDispatcherControllable implements Runnable {
 		audioEvent = new AudioEvent(format);
 		audioEvent.setFloatBuffer(audioFloatBuffer);
 		audioEvent.setOverlap(bufferOverlap);
+		audioEvent.setFrameLength(audioInputStream.getFrameLength());
 		
 		converter = TarsosDSPAudioFloatConverter.getConverter(format);
 		
@@ -276,7 +277,13 @@ public class AudioDispatcherControllable implements Runnable {
     public void seekTo(float seconds) throws IOException, InterruptedException {
 	
 		isEnded = false;
-		if ( seconds > secondsProcessed() )
+		skip(seconds);
+		if (audioInputStream.seek(seconds))
+		{
+			// The stream moved itself, e.g. by restarting the decoder.
+			bytesProcessed = bytesToSkip;
+		}
+		else if ( seconds > secondsProcessed() )
 		{
 			skip(seconds - secondsProcessed() ) ;
 			skipToPoint();
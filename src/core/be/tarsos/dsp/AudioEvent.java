@@ -28,6 +28,7 @@ import java.util.Arrays;
 
 import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
 import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.util.BufferPool;
 
 /**
  * An audio event flows through the processing pipeline. The object is reused for performance reasons.
@@ -70,6 +71,40 @@ public class AudioEvent {
 
 	private int bytesProcessing;
 	
+	/**
+	 * The index of the first sample in the float buffer that contains audio
+	 * from the stream. Samples before it are zero padding.
+	 */
+	private int validOffset;
+	
+	/**
+	 * The number of samples, starting from the valid offset, that contain
+	 * audio from the stream. A negative value means the rest of the buffer.
+	 */
+	private int validSamples = -1;
+	
+	/**
+	 * Provides scratch buffers and snapshot arrays to the processors.
+	 */
+	private BufferPool bufferPool;
+	
+	/**
+	 * The snapshot of the current buffer, shared by all processors.
+	 */
+	private AudioSnapshot snapshot;
+	
+	/**
+	 * The buffer and position the snapshot was taken from.
+	 */
+	private float[] snapshotSource;
+	private long snapshotPosition;
+	
+	/**
+	 * Released snapshots, reused for the next blocks.
+	 */
+	private final AudioSnapshot[] idleSnapshots = new AudioSnapshot[4];
+	private int idleSnapshotCount;
+	
 	
 	public AudioEvent(TarsosDSPAudioFormat format){
 		this.format = format;
@@ -81,6 +116,13 @@ public class AudioEvent {
 		return format.getSampleRate();
 	}
 	
+	/**
+	 * @return The format of the audio in this event.
+	 */
+	public TarsosDSPAudioFormat getFormat(){
+		return format;
+	}
+	
 	public int getBufferSize(){
 		return getFloatBuffer().length;
 	}
@@ -92,6 +134,13 @@ public class AudioEvent {
 		return frameLength;
 	}
 	
+	/**
+	 * @param frameLength The length of the stream in sample frames, or -1 if it is not known.
+	 */
+	public void setFrameLength(long frameLength){
+		this.frameLength = frameLength;
+	}
+	
 	public int getOverlap(){
 		return overlap;
 	}
@@ -147,12 +196,153 @@ public class AudioEvent {
 	
 	public void setFloatBuffer(float[] floatBuffer) {
 		this.floatBuffer = floatBuffer;
+		this.validOffset = 0;
+		this.validSamples = -1;
+	}
+	
+	/**
+	 * Defines which part of the float buffer contains audio from the stream.
+	 * The rest of the buffer is zero padding, e.g. at the start of a stream
+	 * or after the end of a stream when the dispatcher keeps the buffer size
+	 * fixed.
+	 * 
+	 * @param offset
+	 *            The index of the first sample with audio from the stream.
+	 * @param samples
+	 *            The number of samples with audio from the stream.
+	 */
+	public void setValidSamples(int offset, int samples){
+		this.validOffset = offset;
+		this.validSamples = samples;
+	}
+	
+	/**
+	 * @return The index of the first sample in the float buffer that contains
+	 *         audio from the stream. Samples before this index are zero.
+	 */
+	public int getValidOffset(){
+		return Math.min(validOffset, getFloatBuffer().length);
+	}
+	
+	/**
+	 * @return The number of samples, starting from {@link #getValidOffset()},
+	 *         that contain audio from the stream. Samples after these are
+	 *         zero. For most buffers this equals the buffer size.
+	 */
+	public int getValidSamples(){
+		int available = getFloatBuffer().length - getValidOffset();
+		return validSamples < 0 ? available : Math.min(validSamples, available);
 	}
 	
 	public float[] getFloatBuffer(){
 		return floatBuffer;
 	}
 	
+	/**
+	 * @return The pool with scratch buffers for the processors of this event.
+	 *         The pool is created on first use.
+	 */
+	public synchronized BufferPool getBufferPool(){
+		if(bufferPool == null){
+			bufferPool = new BufferPool();
+		}
+		return bufferPool;
+	}
+	
+	/**
+	 * Sets the pool with scratch buffers, e.g. to share one pool between the
+	 * events of a dispatcher.
+	 * 
+	 * @param bufferPool
+	 *            The pool to use.
+	 */
+	public synchronized void setBufferPool(BufferPool bufferPool){
+		this.bufferPool = bufferPool;
+	}
+	
+	/**
+	 * Leases a scratch buffer with a copy of the audio buffer. Processors that
+	 * modify the audio in place, e.g. with an FFT, can use it instead of
+	 * cloning the buffer. Hand it back with
+	 * {@link #releaseScratchBuffer(float[])} at the end of
+	 * {@link AudioProcessor#process(AudioEvent)}.
+	 * 
+	 * @return A scratch buffer with a copy of the audio samples.
+	 */
+	public float[] copyToScratchBuffer(){
+		float[] buffer = getFloatBuffer();
+		float[] scratch = getBufferPool().lease(buffer.length);
+		System.arraycopy(buffer, 0, scratch, 0, buffer.length);
+		return scratch;
+	}
+	
+	/**
+	 * Leases a scratch buffer. The content is undefined.
+	 * 
+	 * @param length
+	 *            The length of the buffer.
+	 * @return A scratch buffer of the requested length.
+	 */
+	public float[] leaseScratchBuffer(int length){
+		return getBufferPool().lease(length);
+	}
+	
+	/**
+	 * Hands a scratch buffer back to the pool. It should not be used anymore.
+	 * 
+	 * @param scratch
+	 *            A buffer leased from this event.
+	 */
+	public void releaseScratchBuffer(float[] scratch){
+		getBufferPool().release(scratch);
+	}
+	
+	/**
+	 * Returns a read only copy of the audio buffer. The copy is made on the
+	 * first call for an audio block and shared by all processors asking for it
+	 * during the same block, so it reflects the buffer as it was at that time.
+	 * The snapshot stays valid until the next block, processors that keep it
+	 * longer should {@link AudioSnapshot#retain()} it.
+	 * 
+	 * @return A shared read only copy of the audio buffer.
+	 */
+	public synchronized AudioSnapshot getSnapshot(){
+		float[] buffer = getFloatBuffer();
+		if(snapshot != null && snapshotSource == buffer && snapshotPosition == bytesProcessed){
+			return snapshot;
+		}
+		if(snapshot != null){
+			AudioSnapshot previous = snapshot;
+			snapshot = null;
+			previous.release();
+		}
+		float[] samples = getBufferPool().lease(buffer.length);
+		System.arraycopy(buffer, 0, samples, 0, buffer.length);
+		AudioSnapshot newSnapshot;
+		if(idleSnapshotCount > 0){
+			idleSnapshotCount--;
+			newSnapshot = idleSnapshots[idleSnapshotCount];
+			idleSnapshots[idleSnapshotCount] = null;
+		}else{
+			newSnapshot = new AudioSnapshot(this);
+		}
+		newSnapshot.reset(samples, getTimeStamp());
+		snapshot = newSnapshot;
+		snapshotSource = buffer;
+		snapshotPosition = bytesProcessed;
+		return newSnapshot;
+	}
+	
+	/**
+	 * Called when the last reference to a snapshot is released.
+	 */
+	synchronized void recycle(AudioSnapshot released, float[] samples){
+		getBufferPool().release(samples);
+		if(idleSnapshotCount < idleSnapshots.length){
+			idleSnapshots[idleSnapshotCount++] = released;
+		}
+	}
+	
 	/**
 	 * Calculates and returns the root mean square of the signal. Please
 	 * cache the result since it is calculated every time.
@@ -161,7 +351,7 @@ public class AudioEvent {
 	 *         the signal present in the current buffer.
 	 */
 	public double getRMS() {
-		return calculateRMS(floatBuffer);
+		return calculateRMS(getFloatBuffer());
 	}
 	
 	
@@ -171,7 +361,7 @@ public class AudioEvent {
 	 * @return The dBSPL level for the buffer.
 	 */
 	public double getdBSPL() {
-		return soundPressureLevel(floatBuffer);
+		return soundPressureLevel(getFloatBuffer());
 	}
 	
 	/**
@@ -193,7 +383,7 @@ public class AudioEvent {
 	}
 
 	public void clearFloatBuffer() {
-		Arrays.fill(floatBuffer, 0);
+		Arrays.fill(getFloatBuffer(), 0);
 	}
 
 		/**
@@ -220,7 +410,7 @@ public class AudioEvent {
 	}
 
 	public boolean isSilence(double silenceThreshold) {
-		return soundPressureLevel(floatBuffer) < silenceThreshold;
+		return soundPressureLevel(getFloatBuffer()) < silenceThreshold;
 	}
 
 	public void setBytesProcessing(int bytesProcessing) {
@@ -228,4 +418,21 @@ public class AudioEvent {
 		
 	}
 	
+	/**
+	 * Copies the time and overlap information of another event, the audio
+	 * buffers are not copied.
+	 * 
+	 * @param other
+	 *            The event to copy the information from.
+	 */
+	void copyStateFrom(AudioEvent other){
+		this.overlap = other.overlap;
+		this.frameLength = other.frameLength;
+		this.bytesProcessed = other.bytesProcessed;
+		this.bytesProcessing = other.bytesProcessing;
+		this.validOffset = other.validOffset;
+		this.validSamples = other.validSamples;
+		setBufferPool(other.getBufferPool());
+	}
+	
 }
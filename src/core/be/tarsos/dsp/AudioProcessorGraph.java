@@ -0,0 +1,296 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+
+/**
+ * <p>
+ * Runs independent branches of audio processors in parallel. Each branch is a
+ * chain of {@link AudioProcessor}s, like the chain of an
+ * {@link AudioDispatcher}. For every audio event the branches are forked onto a
+ * {@link ForkJoinPool} and joined again before the event returns, so the next
+ * buffer is only processed when all branches are done with the current one.
+ * </p>
+ * <p>
+ * Branches are declared either read only or mutating. Processors in a read
+ * only branch only read the audio event (e.g. pitch detection, MFCC, onset
+ * detection, silence detection) and share the event with all other read only
+ * branches. They should not modify the buffer or call setters on the event.
+ * Processors in a mutating branch receive a private event: the buffer is
+ * copied on demand, the first time a processor of the branch asks for it. The
+ * modifications stay in the branch and are not seen by other branches or by
+ * processors following the graph.
+ * </p>
+ *
+ * <pre>
+ * AudioProcessorGraph graph = new AudioProcessorGraph();
+ * graph.addReadOnlyBranch(new PitchProcessor(algo, 44100, 2048, handler));
+ * graph.addReadOnlyBranch(mfcc, mfccHandler);
+ * graph.addMutatingBranch(new HighPass(4000, 44100), new SilenceDetector());
+ * dispatcher.addAudioProcessor(graph);
+ * </pre>
+ */
+public class AudioProcessorGraph implements AudioProcessor {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(AudioProcessorGraph.class.getName());
+
+	/**
+	 * Defines how a branch uses the audio event.
+	 */
+	public enum Access {
+		/**
+		 * The branch only reads the audio event and shares it with other
+		 * branches.
+		 */
+		READ_ONLY,
+		/**
+		 * The branch modifies the buffer and gets a private copy.
+		 */
+		MUTATING
+	}
+
+	private final ForkJoinPool pool;
+
+	private final List<Branch> branches;
+
+	/**
+	 * Create a new graph which runs branches on the common fork join pool.
+	 */
+	public AudioProcessorGraph() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a new graph.
+	 *
+	 * @param pool
+	 *            The pool to run the branches on.
+	 */
+	public AudioProcessorGraph(ForkJoinPool pool) {
+		this.pool = pool;
+		// Allows adding branches while audio is processed.
+		this.branches = new CopyOnWriteArrayList<Branch>();
+	}
+
+	/**
+	 * Adds a branch of processors that only read the audio event.
+	 *
+	 * @param processors
+	 *            The chain of processors in the branch.
+	 * @return This graph, to add more branches.
+	 */
+	public AudioProcessorGraph addReadOnlyBranch(AudioProcessor... processors) {
+		return addBranch(Access.READ_ONLY, processors);
+	}
+
+	/**
+	 * Adds a branch of processors that modify the audio buffer. The branch
+	 * works on a private copy of the buffer.
+	 *
+	 * @param processors
+	 *            The chain of processors in the branch.
+	 * @return This graph, to add more branches.
+	 */
+	public AudioProcessorGraph addMutatingBranch(AudioProcessor... processors) {
+		return addBranch(Access.MUTATING, processors);
+	}
+
+	/**
+	 * Adds a branch of processors.
+	 *
+	 * @param access
+	 *            Defines whether the branch modifies the audio event.
+	 * @param processors
+	 *            The chain of processors in the branch.
+	 * @return This graph, to add more branches.
+	 */
+	public AudioProcessorGraph addBranch(Access access, AudioProcessor... processors) {
+		if (processors.length == 0) {
+			throw new IllegalArgumentException("A branch should contain at least one audio processor.");
+		}
+		branches.add(new Branch(access, Arrays.asList(processors)));
+		LOG.fine("Added a " + access + " branch with " + processors.length + " processors.");
+		return this;
+	}
+
+	/**
+	 * @return The number of branches in the graph.
+	 */
+	public int getNumberOfBranches() {
+		return branches.size();
+	}
+
+	@Override
+	public boolean process(AudioEvent audioEvent) {
+		final List<Branch> current = branches;
+		final int size = current.size();
+		if (size == 0) {
+			return true;
+		} else if (size == 1) {
+			current.get(0).run(audioEvent);
+			return true;
+		}
+		// Fork all but the first branch, run the first on this thread and
+		// wait for the others.
+		for (int i = 1; i < size; i++) {
+			Branch branch = current.get(i);
+			branch.reinitialize();
+			branch.source = audioEvent;
+			pool.execute(branch);
+		}
+		RuntimeException failure = null;
+		try {
+			current.get(0).run(audioEvent);
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		for (int i = 1; i < size; i++) {
+			Branch branch = current.get(i);
+			try {
+				branch.join();
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+			branch.source = null;
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return true;
+	}
+
+	@Override
+	public void processingFinished() {
+		for (Branch branch : branches) {
+			for (AudioProcessor processor : branch.processors) {
+				processor.processingFinished();
+			}
+		}
+	}
+
+	/**
+	 * A chain of processors that can be forked for every audio event.
+	 */
+	private static final class Branch extends RecursiveAction {
+		private static final long serialVersionUID = 5829034155622893432L;
+
+		private final List<AudioProcessor> processors;
+
+		private final boolean mutating;
+
+		/**
+		 * The private event of a mutating branch, created for the first event.
+		 */
+		private CopyOnDemandAudioEvent privateEvent;
+
+		/**
+		 * The event to process when forked.
+		 */
+		private AudioEvent source;
+
+		private Branch(Access access, List<AudioProcessor> processors) {
+			this.processors = new ArrayList<AudioProcessor>(processors);
+			this.mutating = access == Access.MUTATING;
+		}
+
+		@Override
+		protected void compute() {
+			run(source);
+		}
+
+		private void run(AudioEvent audioEvent) {
+			AudioEvent event = audioEvent;
+			if (mutating) {
+				if (privateEvent == null || privateEvent.getFormat() != audioEvent.getFormat()) {
+					privateEvent = new CopyOnDemandAudioEvent(audioEvent.getFormat());
+				}
+				privateEvent.wrap(audioEvent);
+				event = privateEvent;
+			}
+			for (AudioProcessor processor : processors) {
+				if (!processor.process(event)) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * An audio event that copies the buffer of another event the first time
+	 * the buffer is requested. The copy is reused for the following events.
+	 */
+	private static final class CopyOnDemandAudioEvent extends AudioEvent {
+		private AudioEvent source;
+		private float[] copy;
+		private boolean copied;
+		private float[] replacement;
+
+		private CopyOnDemandAudioEvent(TarsosDSPAudioFormat format) {
+			super(format);
+		}
+
+		private void wrap(AudioEvent event) {
+			source = event;
+			copied = false;
+			replacement = null;
+			copyStateFrom(event);
+		}
+
+		@Override
+		public float[] getFloatBuffer() {
+			if (replacement != null) {
+				return replacement;
+			}
+			if (!copied) {
+				float[] original = source.getFloatBuffer();
+				if (copy == null || copy.length != original.length) {
+					copy = new float[original.length];
+				}
+				System.arraycopy(original, 0, copy, 0, original.length);
+				copied = true;
+			}
+			return copy;
+		}
+
+		@Override
+		public void setFloatBuffer(float[] floatBuffer) {
+			replacement = floatBuffer;
+		}
+	}
+}
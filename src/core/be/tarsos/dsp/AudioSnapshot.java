@@ -0,0 +1,129 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A read only copy of the audio buffer of an {@link AudioEvent}, see
+ * {@link AudioEvent#getSnapshot()}. All processors asking for a snapshot of
+ * the same audio block share one copy, so the samples should never be
+ * modified.
+ * </p>
+ * <p>
+ * Snapshots are reference counted. The audio event holds a reference until
+ * the next audio block arrives. A processor that keeps the snapshot longer,
+ * e.g. to hand it to another thread, calls {@link #retain()} and
+ * {@link #release()} when done, after which the array returns to the pool.
+ * The snapshot object itself is recycled as well and should not be used after
+ * the last release.
+ * </p>
+ */
+public final class AudioSnapshot {
+
+	private final AudioEvent owner;
+	private final AtomicInteger references;
+	private float[] samples;
+	private double timeStamp;
+
+	AudioSnapshot(AudioEvent owner) {
+		this.owner = owner;
+		this.references = new AtomicInteger();
+	}
+
+	/**
+	 * Fills a recycled snapshot, with one reference for the audio event.
+	 */
+	void reset(float[] samples, double timeStamp) {
+		this.samples = samples;
+		this.timeStamp = timeStamp;
+		references.set(1);
+	}
+
+	/**
+	 * @return The samples of the snapshot. The array is shared and should not
+	 *         be modified.
+	 */
+	public float[] getSamples() {
+		return samples;
+	}
+
+	/**
+	 * @param index
+	 *            The index of a sample.
+	 * @return The sample at the index.
+	 */
+	public float get(int index) {
+		return samples[index];
+	}
+
+	/**
+	 * @return The number of samples in the snapshot.
+	 */
+	public int length() {
+		return samples.length;
+	}
+
+	/**
+	 * @return The time stamp of the audio event the snapshot was taken from,
+	 *         in seconds.
+	 */
+	public double getTimeStamp() {
+		return timeStamp;
+	}
+
+	/**
+	 * Adds a reference to the snapshot, to keep it after the audio event
+	 * moves to the next block.
+	 * 
+	 * @return This snapshot.
+	 */
+	public AudioSnapshot retain() {
+		int current;
+		do {
+			current = references.get();
+			if (current <= 0) {
+				throw new IllegalStateException("The snapshot is already released.");
+			}
+		} while (!references.compareAndSet(current, current + 1));
+		return this;
+	}
+
+	/**
+	 * Removes a reference to the snapshot. When no references are left the
+	 * samples return to the pool and should no longer be used.
+	 */
+	public void release() {
+		int remaining = references.decrementAndGet();
+		if (remaining == 0) {
+			float[] released = samples;
+			samples = null;
+			owner.recycle(this, released);
+		} else if (remaining < 0) {
+			throw new IllegalStateException("The snapshot is released more often than it was retained.");
+		}
+	}
+}
@@ -28,9 +28,10 @@ package be.tarsos.dsp;
  * It simply transforms every sample to the requested bit depth.
  * @author Joren Six
  */
-public class BitDepthProcessor implements AudioProcessor {
+public class BitDepthProcessor implements ElementwiseAudioProcessor {
 
 	int bitDepth = 16;
+	private float factor;
 			
 	public void setBitDepth(int newBitDepth){
 		this.bitDepth = newBitDepth;
@@ -44,17 +45,26 @@ public class BitDepthProcessor implements AudioProcessor {
 	@Override
 	public boolean process(AudioEvent audioEvent) {
 		float[] buffer = audioEvent.getFloatBuffer();
+		processRange(buffer, beginBuffer(audioEvent), buffer.length);
+		return true;
+	}
+
+	@Override
+	public int beginBuffer(AudioEvent audioEvent) {
 		//For e.g. a bith depth of 3, the factor is
 		// 2^3 - 1 = 7
-		float factor = (float) Math.pow(2, bitDepth)/2.0f - 1;
-		
-		for(int i = 0 ; i < buffer.length ; i++){
+		factor = (float) Math.pow(2, bitDepth)/2.0f - 1;
+		return 0;
+	}
+
+	@Override
+	public void processRange(float[] buffer, int from, int to) {
+		for(int i = from ; i < to ; i++){
 			//the float is scaled to the bith depth
 			// e.g. if the bit depth is 3 and the value is 0.3:
 			// ((int)(0.3 * 7)) / 7 = 0.28
 			buffer[i]=((int) (buffer[i] * factor))/factor;
 		}
-		return true;
 	}
 
 	@Override
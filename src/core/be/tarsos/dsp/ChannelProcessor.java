@@ -0,0 +1,86 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a chain of mono processors on one channel of a
+ * {@link MultichannelAudioEvent}. The processors receive a mono event with the
+ * samples of the selected channel. Modifications to the samples are applied to
+ * the channel buffer.
+ * 
+ * <pre>
+ * dispatcher.addAudioProcessor(new ChannelProcessor(3, new PitchProcessor(algo, 44100, 2048, handler)));
+ * </pre>
+ */
+public class ChannelProcessor implements AudioProcessor {
+
+	private final int channel;
+	private final List<AudioProcessor> processors;
+	private AudioEvent channelEvent;
+
+	/**
+	 * @param channel
+	 *            The index of the channel, starting from zero.
+	 * @param processors
+	 *            The chain of mono processors.
+	 */
+	public ChannelProcessor(int channel, AudioProcessor... processors) {
+		this.channel = channel;
+		this.processors = new ArrayList<AudioProcessor>(Arrays.asList(processors));
+	}
+
+	/**
+	 * @return The index of the channel.
+	 */
+	public int getChannel() {
+		return channel;
+	}
+
+	@Override
+	public boolean process(AudioEvent audioEvent) {
+		MultichannelAudioEvent multichannelEvent = (MultichannelAudioEvent) audioEvent;
+		if (channelEvent == null) {
+			channelEvent = new AudioEvent(multichannelEvent.getChannelFormat());
+		}
+		multichannelEvent.fillChannelEvent(channel, channelEvent);
+		for (AudioProcessor processor : processors) {
+			if (!processor.process(channelEvent)) {
+				break;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void processingFinished() {
+		for (AudioProcessor processor : processors) {
+			processor.processingFinished();
+		}
+	}
+}
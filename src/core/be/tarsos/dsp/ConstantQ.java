@@ -104,7 +104,7 @@ import be.tarsos.dsp.util.fft.FFT;
  * @author Karl Helgason
  * @author P.J Leonard
  */
-public class ConstantQ implements AudioProcessor {
+public class ConstantQ implements ReconfigurableAudioProcessor {
 
 
 	/**
@@ -318,11 +318,12 @@ public class ConstantQ implements AudioProcessor {
 
 	@Override
 	public boolean process(AudioEvent audioEvent) {
-		float[] audioBuffer = audioEvent.getFloatBuffer().clone();
-		if(audioBuffer.length != getFFTlength()){
-			throw new IllegalArgumentException(String.format("The length of the fft (%d) should be the same as the length of the audio buffer (%d)",getFFTlength(),audioBuffer.length));
+		if(audioEvent.getBufferSize() != getFFTlength()){
+			throw new IllegalArgumentException(String.format("The length of the fft (%d) should be the same as the length of the audio buffer (%d)",getFFTlength(),audioEvent.getBufferSize()));
 		}
+		float[] audioBuffer = audioEvent.copyToScratchBuffer();
 		calculateMagintudes(audioBuffer);
+		audioEvent.releaseScratchBuffer(audioBuffer);
 		return true;
 	}
 
@@ -330,6 +331,22 @@ public class ConstantQ implements AudioProcessor {
 	public void processingFinished() {
 		// Do nothing.
 	}
+
+	/**
+	 * The length of the FFT follows from the frequency range and the number
+	 * of bins per octave: other buffer sizes are refused.
+	 */
+	@Override
+	public void prepareReconfiguration(int audioBufferSize, int bufferOverlap) {
+		if(audioBufferSize != getFFTlength()){
+			throw new IllegalArgumentException(String.format("The constant-Q transform needs buffers of %d samples, it can not follow a buffer size of %d samples",getFFTlength(),audioBufferSize));
+		}
+	}
+
+	@Override
+	public void reconfigure(int audioBufferSize, int bufferOverlap) {
+		// Only the overlap changes.
+	}
 	
 	//----GETTERS
 
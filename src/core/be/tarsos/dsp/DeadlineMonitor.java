@@ -0,0 +1,375 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Watches the time budget of an {@link AudioDispatcher} reading a live source,
+ * e.g. a microphone. Every hop brings <code>stepSize / sampleRate</code>
+ * seconds of new audio, the chain of processors should be done with a buffer
+ * within that time or the capture line overflows. The monitor measures the
+ * slack, the time left within the deadline, for each buffer and notifies
+ * {@link OverrunHandler}s when the deadline is exceeded.
+ * </p>
+ * <p>
+ * On an overrun the dispatcher can degrade gracefully:
+ * </p>
+ * <ul>
+ * <li>{@link DegradePolicy#SKIP_OPTIONAL}: processors added with
+ * {@link #addOptional(String, AudioProcessor)} are skipped until the chain is
+ * within budget again for a number of {@link #setRecoveryFrames(int)
+ * recovery frames}.</li>
+ * <li>{@link DegradePolicy#DROP_FRAMES}: the next buffers are read but not
+ * processed, until the lost time is caught up. Time stamps of the processed
+ * buffers stay correct since the dropped audio is still counted.</li>
+ * </ul>
+ *
+ * <pre>
+ * DeadlineMonitor monitor = new DeadlineMonitor(DegradePolicy.SKIP_OPTIONAL);
+ * monitor.addOptional("mfcc", mfcc);
+ * dispatcher.setDeadlineMonitor(monitor);
+ * </pre>
+ */
+public class DeadlineMonitor {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(DeadlineMonitor.class.getName());
+
+	/**
+	 * Defines what happens when the deadline is exceeded.
+	 */
+	public enum DegradePolicy {
+		/**
+		 * Only report overruns.
+		 */
+		NONE,
+		/**
+		 * Skip the optional processors.
+		 */
+		SKIP_OPTIONAL,
+		/**
+		 * Drop buffers to catch up.
+		 */
+		DROP_FRAMES,
+		/**
+		 * Skip the optional processors and drop buffers when the chain
+		 * without optional processors still exceeds the deadline.
+		 */
+		SKIP_OPTIONAL_THEN_DROP_FRAMES
+	}
+
+	/**
+	 * Is notified when a buffer is not processed within the deadline.
+	 */
+	public interface OverrunHandler {
+		/**
+		 * @param monitor
+		 *            The monitor that detected the overrun.
+		 * @param timeStamp
+		 *            The time stamp of the late buffer, in seconds.
+		 * @param processingNanos
+		 *            The time spent on the buffer, in nanoseconds.
+		 * @param deadlineNanos
+		 *            The time budget of a buffer, in nanoseconds.
+		 */
+		void handleOverrun(DeadlineMonitor monitor, double timeStamp, long processingNanos, long deadlineNanos);
+	}
+
+	private final DegradePolicy policy;
+	private final Map<AudioProcessor, String> optional;
+	private final List<OverrunHandler> handlers;
+	private double budgetFraction = 1.0;
+	private int recoveryFrames = 20;
+
+	private volatile long deadlineNanos;
+	private volatile long lastSlack;
+	private volatile long minSlack = Long.MAX_VALUE;
+	private volatile long totalSlack;
+	private volatile long frames;
+	private volatile long overruns;
+	private volatile long droppedFrames;
+	private volatile long degradedFrames;
+
+	/**
+	 * The number of buffers still to drop.
+	 */
+	private int framesToDrop;
+	/**
+	 * The number of buffers within budget since the last overrun, or -1 when
+	 * not degraded.
+	 */
+	private int framesInBudget = -1;
+
+	/**
+	 * Create a monitor which only reports overruns.
+	 */
+	public DeadlineMonitor() {
+		this(DegradePolicy.NONE);
+	}
+
+	/**
+	 * Create a new monitor.
+	 *
+	 * @param policy
+	 *            What to do when the deadline is exceeded.
+	 */
+	public DeadlineMonitor(DegradePolicy policy) {
+		this.policy = policy;
+		this.optional = new ConcurrentHashMap<AudioProcessor, String>();
+		this.handlers = new CopyOnWriteArrayList<OverrunHandler>();
+	}
+
+	/**
+	 * Marks a processor of the chain as optional: it is skipped while the
+	 * dispatcher is degraded.
+	 *
+	 * @param name
+	 *            A name for the processor, used in log messages.
+	 * @param processor
+	 *            A processor added to the dispatcher.
+	 * @return This monitor.
+	 */
+	public DeadlineMonitor addOptional(String name, AudioProcessor processor) {
+		optional.put(processor, name);
+		return this;
+	}
+
+	/**
+	 * @return The names of the optional processors.
+	 */
+	public List<String> getOptionalNames() {
+		return new ArrayList<String>(optional.values());
+	}
+
+	/**
+	 * @param handler
+	 *            Called for each buffer that exceeds the deadline.
+	 */
+	public void addOverrunHandler(OverrunHandler handler) {
+		handlers.add(handler);
+	}
+
+	/**
+	 * @param handler
+	 *            The handler to remove.
+	 */
+	public void removeOverrunHandler(OverrunHandler handler) {
+		handlers.remove(handler);
+	}
+
+	/**
+	 * Use only a part of the hop duration as deadline, to keep some headroom
+	 * for the capture thread and the garbage collector.
+	 *
+	 * @param fraction
+	 *            The fraction of the hop duration, between 0 and 1. The default
+	 *            is 1.
+	 */
+	public void setBudgetFraction(double fraction) {
+		if (fraction <= 0 || fraction > 1) {
+			throw new IllegalArgumentException("The budget fraction should be in ]0,1], it is " + fraction);
+		}
+		this.budgetFraction = fraction;
+	}
+
+	/**
+	 * @param frames
+	 *            The number of consecutive buffers within the deadline before
+	 *            the optional processors are enabled again. The default is 20.
+	 */
+	public void setRecoveryFrames(int frames) {
+		this.recoveryFrames = Math.max(1, frames);
+	}
+
+	/**
+	 * Called by the dispatcher before a buffer is processed.
+	 *
+	 * @return False if the buffer should be dropped.
+	 */
+	boolean beginFrame() {
+		if (framesToDrop > 0) {
+			framesToDrop--;
+			droppedFrames++;
+			return false;
+		}
+		if (framesInBudget >= 0) {
+			degradedFrames++;
+		}
+		return true;
+	}
+
+	/**
+	 * @param processor
+	 *            A processor in the chain.
+	 * @return True if the processor should be skipped for the current buffer.
+	 */
+	boolean skip(AudioProcessor processor) {
+		return framesInBudget >= 0 && optional.containsKey(processor);
+	}
+
+	/**
+	 * Called by the dispatcher after a buffer is processed.
+	 *
+	 * @param processingNanos
+	 *            The time spent in the chain.
+	 * @param stepSize
+	 *            The number of new samples in each buffer.
+	 * @param sampleRate
+	 *            The sample rate of the stream.
+	 * @param timeStamp
+	 *            The time stamp of the buffer.
+	 */
+	void endFrame(long processingNanos, int stepSize, float sampleRate, double timeStamp) {
+		long deadline = (long) (stepSize / (double) sampleRate * budgetFraction * 1000000000.0);
+		long slack = deadline - processingNanos;
+		deadlineNanos = deadline;
+		lastSlack = slack;
+		totalSlack += slack;
+		frames++;
+		if (slack < minSlack) {
+			minSlack = slack;
+		}
+		if (slack >= 0) {
+			if (framesInBudget >= 0 && ++framesInBudget >= recoveryFrames) {
+				framesInBudget = -1;
+				LOG.fine("Back within the deadline, optional processors are enabled again.");
+			}
+			return;
+		}
+		overruns++;
+		boolean skipping = framesInBudget >= 0;
+		switch (policy) {
+		case SKIP_OPTIONAL:
+			startSkipping(skipping);
+			break;
+		case DROP_FRAMES:
+			dropFrames(processingNanos, deadline);
+			break;
+		case SKIP_OPTIONAL_THEN_DROP_FRAMES:
+			if (skipping || optional.isEmpty()) {
+				dropFrames(processingNanos, deadline);
+			}
+			startSkipping(skipping);
+			break;
+		default:
+			break;
+		}
+		for (OverrunHandler handler : handlers) {
+			handler.handleOverrun(this, timeStamp, processingNanos, deadline);
+		}
+	}
+
+	private void startSkipping(boolean skipping) {
+		if (!skipping && !optional.isEmpty()) {
+			LOG.fine("Deadline exceeded, skipping optional processors " + optional.values());
+		}
+		framesInBudget = 0;
+	}
+
+	private void dropFrames(long processingNanos, long deadline) {
+		// The buffers that arrived while this one was processed are dropped.
+		int frames = (int) Math.ceil(processingNanos / (double) deadline) - 1;
+		framesToDrop = Math.max(1, frames);
+	}
+
+	/**
+	 * @return The time budget of a buffer, in nanoseconds.
+	 */
+	public long getDeadline() {
+		return deadlineNanos;
+	}
+
+	/**
+	 * @return The slack of the last buffer, in nanoseconds. Negative values
+	 *         are overruns.
+	 */
+	public long getLastSlack() {
+		return lastSlack;
+	}
+
+	/**
+	 * @return The smallest slack seen, in nanoseconds.
+	 */
+	public long getMinSlack() {
+		return frames == 0 ? 0 : minSlack;
+	}
+
+	/**
+	 * @return The mean slack, in nanoseconds.
+	 */
+	public double getMeanSlack() {
+		return frames == 0 ? 0 : totalSlack / (double) frames;
+	}
+
+	/**
+	 * @return The number of processed buffers.
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return The number of buffers that exceeded the deadline.
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/**
+	 * @return The number of buffers that were dropped.
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * @return The number of buffers processed without the optional
+	 *         processors.
+	 */
+	public long getDegradedFrames() {
+		return degradedFrames;
+	}
+
+	/**
+	 * @return True if the optional processors are currently skipped.
+	 */
+	public boolean isDegraded() {
+		return framesInBudget >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Deadline %.3fms, slack min %.3fms mean %.3fms, %d overruns, %d dropped, %d degraded of %d buffers", deadlineNanos / 1e6, getMinSlack() / 1e6, getMeanSlack() / 1e6, overruns, droppedFrames, degradedFrames, frames);
+	}
+}
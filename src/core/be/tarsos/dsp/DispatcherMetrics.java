@@ -0,0 +1,330 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import be.tarsos.dsp.util.LatencyHistogram;
+
+/**
+ * <p>
+ * Timing information of an {@link AudioDispatcher} and its processors. Attach
+ * it with {@link AudioDispatcher#setMetrics(DispatcherMetrics)}, without
+ * metrics the dispatcher does not measure anything.
+ * </p>
+ * <p>
+ * For each processor the number of calls and a latency histogram are kept.
+ * For the dispatcher the time spent waiting for the stream, the time spent
+ * converting bytes to floats, the number of frames and the real-time factor
+ * are kept. Registered {@link Listener}s are notified every
+ * {@link #setReportInterval(int) number of frames} and when the dispatcher
+ * stops.
+ * </p>
+ * <p>
+ * Values are written by the dispatching thread and can be read from any
+ * thread, e.g. to export them via JMX.
+ * </p>
+ */
+public class DispatcherMetrics {
+
+	/**
+	 * Is notified of new measurements.
+	 */
+	public interface Listener {
+		/**
+		 * Called on the dispatching thread after a number of frames and when
+		 * the dispatcher stops.
+		 * 
+		 * @param metrics
+		 *            The metrics.
+		 */
+		void metricsReported(DispatcherMetrics metrics);
+	}
+
+	/**
+	 * The timing of one processor.
+	 */
+	public static final class ProcessorMetrics {
+		private final String name;
+		private final LatencyHistogram latency;
+
+		private ProcessorMetrics(String name) {
+			this.name = name;
+			this.latency = new LatencyHistogram();
+		}
+
+		/**
+		 * @return A name for the processor, based on its class.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The number of times the processor was called.
+		 */
+		public long getCalls() {
+			return latency.getCount();
+		}
+
+		/**
+		 * @return The longest call in nanoseconds.
+		 */
+		public long getMaxLatency() {
+			return latency.getMax();
+		}
+
+		/**
+		 * @return The histogram of the durations of the calls.
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + latency;
+		}
+	}
+
+	private final String name;
+	private final ConcurrentHashMap<AudioProcessor, ProcessorMetrics> processors;
+	private final List<ProcessorMetrics> processorsInOrder;
+	private final List<Listener> listeners;
+	private final LatencyHistogram readWait;
+	private final LatencyHistogram conversion;
+	private final LatencyHistogram frameLatency;
+	private final AtomicLong frames;
+	private volatile long startNanos;
+	private volatile long lastFrameNanos;
+	private volatile double audioSeconds;
+	private int reportInterval = 1000;
+
+	/**
+	 * Create new metrics.
+	 * 
+	 * @param name
+	 *            A name for the dispatcher, e.g. the stream it reads.
+	 */
+	public DispatcherMetrics(String name) {
+		this.name = name;
+		this.processors = new ConcurrentHashMap<AudioProcessor, ProcessorMetrics>();
+		this.processorsInOrder = new CopyOnWriteArrayList<ProcessorMetrics>();
+		this.listeners = new CopyOnWriteArrayList<Listener>();
+		this.readWait = new LatencyHistogram();
+		this.conversion = new LatencyHistogram();
+		this.frameLatency = new LatencyHistogram();
+		this.frames = new AtomicLong();
+	}
+
+	/**
+	 * @return The name of the dispatcher.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param listener
+	 *            Called every report interval and when the dispatcher stops.
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener
+	 *            The listener to remove.
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @param frames
+	 *            The number of frames between two reports to the listeners.
+	 */
+	public void setReportInterval(int frames) {
+		this.reportInterval = Math.max(1, frames);
+	}
+
+	/**
+	 * Returns the metrics of a processor, they are created on first use.
+	 * 
+	 * @param processor
+	 *            The processor.
+	 * @return The metrics of the processor.
+	 */
+	public ProcessorMetrics forProcessor(AudioProcessor processor) {
+		ProcessorMetrics metrics = processors.get(processor);
+		if (metrics == null) {
+			String processorName = processor.getClass().getSimpleName();
+			if (processorName.isEmpty()) {
+				processorName = processor.getClass().getName();
+			}
+			metrics = new ProcessorMetrics(processorName + "#" + processors.size());
+			ProcessorMetrics existing = processors.putIfAbsent(processor, metrics);
+			if (existing != null) {
+				metrics = existing;
+			} else {
+				processorsInOrder.add(metrics);
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * @return The metrics of all processors, in the order they were first
+	 *         called.
+	 */
+	public List<ProcessorMetrics> getProcessorMetrics() {
+		return new ArrayList<ProcessorMetrics>(processorsInOrder);
+	}
+
+	void started() {
+		startNanos = System.nanoTime();
+	}
+
+	void recordReadWait(long nanos) {
+		readWait.record(nanos);
+	}
+
+	void recordConversion(long nanos) {
+		conversion.record(nanos);
+	}
+
+	void frameProcessed(long nanos, double timeStamp) {
+		frameLatency.record(nanos);
+		lastFrameNanos = System.nanoTime();
+		audioSeconds = timeStamp;
+		if (frames.incrementAndGet() % reportInterval == 0) {
+			report();
+		}
+	}
+
+	void stopped(double seconds) {
+		lastFrameNanos = System.nanoTime();
+		audioSeconds = seconds;
+		report();
+	}
+
+	private void report() {
+		for (Listener listener : listeners) {
+			listener.metricsReported(this);
+		}
+	}
+
+	/**
+	 * @return The number of frames processed.
+	 */
+	public long getFrames() {
+		return frames.get();
+	}
+
+	/**
+	 * @return The time spent waiting for the stream to deliver bytes.
+	 */
+	public LatencyHistogram getReadWait() {
+		return readWait;
+	}
+
+	/**
+	 * @return The time spent converting bytes to floats.
+	 */
+	public LatencyHistogram getConversion() {
+		return conversion;
+	}
+
+	/**
+	 * @return The time spent in the chain of processors for each frame.
+	 */
+	public LatencyHistogram getFrameLatency() {
+		return frameLatency;
+	}
+
+	/**
+	 * @return The wall clock time since the dispatcher started, up to the last
+	 *         frame, in seconds.
+	 */
+	public double getWallSeconds() {
+		long start = startNanos;
+		return start == 0 ? 0 : (lastFrameNanos - start) / 1e9;
+	}
+
+	/**
+	 * @return The number of seconds of audio processed.
+	 */
+	public double getAudioSeconds() {
+		return audioSeconds;
+	}
+
+	/**
+	 * @return The number of frames processed per second of wall clock time.
+	 */
+	public double getFramesPerSecond() {
+		double wall = getWallSeconds();
+		return wall <= 0 ? 0 : getFrames() / wall;
+	}
+
+	/**
+	 * @return The seconds of audio processed per second of wall clock time. A
+	 *         live stream runs at a factor of one, an offline analysis at a
+	 *         factor of fifty processes an hour of audio in 72 seconds.
+	 */
+	public double getRealTimeFactor() {
+		double wall = getWallSeconds();
+		return wall <= 0 ? 0 : getAudioSeconds() / wall;
+	}
+
+	/**
+	 * Clears all histograms and the frame count, e.g. after a warm-up. The
+	 * real-time factor is still measured from the start.
+	 */
+	public void reset() {
+		for (ProcessorMetrics metrics : processorsInOrder) {
+			metrics.latency.reset();
+		}
+		readWait.reset();
+		conversion.reset();
+		frameLatency.reset();
+		frames.set(0);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%s: %d frames, %.1f frames/s, %.1fx real-time%n", name, getFrames(), getFramesPerSecond(), getRealTimeFactor()));
+		sb.append("  read wait: ").append(readWait).append(String.format("%n"));
+		sb.append("  conversion: ").append(conversion).append(String.format("%n"));
+		for (ProcessorMetrics metrics : processorsInOrder) {
+			sb.append("  ").append(metrics).append(String.format("%n"));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,68 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+/**
+ * <p>
+ * An audio processor which handles samples one at a time and in order, e.g. a
+ * gain, a fade or an IIR filter. Such processors can be fused by a
+ * {@link FusedAudioProcessorChain}: instead of a pass over the buffer per
+ * processor, the chain makes one pass and runs every processor on a small
+ * block of samples while the block is in the cache.
+ * </p>
+ * <p>
+ * For every buffer, {@link #beginBuffer(AudioEvent)} is called first, then
+ * {@link #processRange(float[], int, int)} for consecutive ranges which,
+ * together, cover the samples from the returned index to the end of the
+ * buffer. The result should be the same as a call to
+ * {@link #process(AudioEvent)}.
+ * </p>
+ */
+public interface ElementwiseAudioProcessor extends AudioProcessor {
+
+	/**
+	 * Prepares the processing of a buffer, e.g. the gain of a fade for the
+	 * time stamp of the buffer. The samples of the buffer should not be read:
+	 * previous processors in a fused chain have not yet modified them.
+	 *
+	 * @param audioEvent
+	 *            The audio event to process.
+	 * @return The index of the first sample to process, e.g. zero or the
+	 *         overlap. Return the buffer size to leave the buffer untouched.
+	 */
+	int beginBuffer(AudioEvent audioEvent);
+
+	/**
+	 * Processes a range of samples in place.
+	 *
+	 * @param buffer
+	 *            The audio buffer.
+	 * @param from
+	 *            The index of the first sample, inclusive.
+	 * @param to
+	 *            The index of the last sample, exclusive.
+	 */
+	void processRange(float[] buffer, int from, int to);
+}
@@ -66,7 +66,7 @@ package be.tarsos.dsp;
  * @author Joren Six
  * 
  */
-public class EnvelopeFollower implements AudioProcessor {
+public class EnvelopeFollower implements ElementwiseAudioProcessor {
 	
 	/**
 	 * Defines how fast the envelope raises, defined in seconds.
@@ -108,7 +108,17 @@ public class EnvelopeFollower implements AudioProcessor {
 	}
 	
 	public void calculateEnvelope(float[] buffer){
-		for(int i = 0 ; i < buffer.length ; i++){
+		processRange(buffer, 0, buffer.length);
+	}
+
+	@Override
+	public int beginBuffer(AudioEvent audioEvent) {
+		return 0;
+	}
+
+	@Override
+	public void processRange(float[] buffer, int from, int to){
+		for(int i = from ; i < to ; i++){
 			float envelopeIn = Math.abs(buffer[i]);
 			if(envelopeOut < envelopeIn){
 				envelopeOut = envelopeIn + gainAttack * (envelopeOut - envelopeIn);
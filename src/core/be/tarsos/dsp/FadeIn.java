@@ -4,7 +4,7 @@ import be.tarsos.dsp.AudioEvent;
 import be.tarsos.dsp.AudioProcessor;
 import be.tarsos.dsp.GainProcessor;
 
-public class FadeIn implements AudioProcessor
+public class FadeIn implements ElementwiseAudioProcessor
 {
 	// VARIABLES
 	
@@ -30,23 +30,35 @@ public class FadeIn implements AudioProcessor
 
 	@Override
 	public boolean process(AudioEvent audioEvent)
+	{
+		float[] buffer = audioEvent.getFloatBuffer();
+		processRange(buffer, beginBuffer(audioEvent), buffer.length);
+		return true;
+	}
+	
+	@Override
+	public int beginBuffer(AudioEvent audioEvent)
 	{
 		// Don't do anything after the end of the Fade In
-		if(fadingIn)
-		{
-			if(firstTime==-1)
-				firstTime=audioEvent.getTimeStamp();
-			
-			
-			// Increase the gain according to time since the beginning of the Fade In
-			time=audioEvent.getTimeStamp()-firstTime;
-			gp.setGain(time/duration);
-			gp.process(audioEvent);
-			if(time > duration){
-				fadingIn = false;
-			}
+		if(!fadingIn)
+			return audioEvent.getBufferSize();
+		
+		if(firstTime==-1)
+			firstTime=audioEvent.getTimeStamp();
+		
+		// Increase the gain according to time since the beginning of the Fade In
+		time=audioEvent.getTimeStamp()-firstTime;
+		gp.setGain(time/duration);
+		if(time > duration){
+			fadingIn = false;
 		}
-		return true;
+		return gp.beginBuffer(audioEvent);
+	}
+	
+	@Override
+	public void processRange(float[] buffer, int from, int to)
+	{
+		gp.processRange(buffer, from, to);
 	}
 	
 	@Override
@@ -4,7 +4,7 @@ import be.tarsos.dsp.AudioEvent;
 import be.tarsos.dsp.AudioProcessor;
 import be.tarsos.dsp.GainProcessor;
 
-public class FadeOut implements AudioProcessor
+public class FadeOut implements ElementwiseAudioProcessor
 {
 	// VARIABLES
 	private double duration;
@@ -29,19 +29,32 @@ public class FadeOut implements AudioProcessor
 	
 	@Override
 	public boolean process(AudioEvent audioEvent)
+	{
+		float[] buffer = audioEvent.getFloatBuffer();
+		processRange(buffer, beginBuffer(audioEvent), buffer.length);
+		return true;
+	}
+	
+	@Override
+	public int beginBuffer(AudioEvent audioEvent)
 	{
 		// Don't do anything before the beginning of Fade Out
-		if(isFadeOut==true)
-		{
-			if(firstTime==-1)
-				firstTime=audioEvent.getTimeStamp();
+		if(isFadeOut==false)
+			return audioEvent.getBufferSize();
 
-			// Decrease the gain according to time since the beginning of the Fade Out
-			time=audioEvent.getTimeStamp()-firstTime;
-			gp.setGain(1-time/duration);
-			gp.process(audioEvent);
-		}
-		return true;
+		if(firstTime==-1)
+			firstTime=audioEvent.getTimeStamp();
+
+		// Decrease the gain according to time since the beginning of the Fade Out
+		time=audioEvent.getTimeStamp()-firstTime;
+		gp.setGain(1-time/duration);
+		return gp.beginBuffer(audioEvent);
+	}
+	
+	@Override
+	public void processRange(float[] buffer, int from, int to)
+	{
+		gp.processRange(buffer, from, to);
 	}
 	
 	@Override
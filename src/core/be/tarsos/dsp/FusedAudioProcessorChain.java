@@ -0,0 +1,187 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Runs a chain of audio processors, fusing consecutive
+ * {@link ElementwiseAudioProcessor}s into a single pass over the buffer. A
+ * chain of N effects normally reads and writes the whole buffer N times; a
+ * fused group walks over the buffer once, in blocks of a few samples, and
+ * applies every effect of the group to a block before moving on. For long
+ * effect chains this keeps the samples in the cache.
+ * </p>
+ * <p>
+ * Processors which are not element-wise, e.g. an FFT based pitch detector,
+ * are run as usual between the fused groups. The result is the same as
+ * adding each processor to the dispatcher.
+ * </p>
+ *
+ * <pre>
+ * AudioProcessor chain = FusedAudioProcessorChain.compile(
+ * 		new HighPass(100, 44100), new GainProcessor(2.0), new BitDepthProcessor(), new FadeOut(2.0));
+ * dispatcher.addAudioProcessor(chain);
+ * </pre>
+ */
+public class FusedAudioProcessorChain implements AudioProcessor {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(FusedAudioProcessorChain.class.getName());
+
+	/**
+	 * The default number of samples processed by each fused processor before
+	 * moving to the next one.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+
+	private final AudioProcessor[] steps;
+	private final List<AudioProcessor> processors;
+
+	private FusedAudioProcessorChain(List<AudioProcessor> processors, int blockSize) {
+		this.processors = processors;
+		List<AudioProcessor> compiled = new ArrayList<AudioProcessor>();
+		List<ElementwiseAudioProcessor> group = new ArrayList<ElementwiseAudioProcessor>();
+		for (AudioProcessor processor : processors) {
+			if (processor instanceof ElementwiseAudioProcessor) {
+				group.add((ElementwiseAudioProcessor) processor);
+			} else {
+				addGroup(compiled, group, blockSize);
+				compiled.add(processor);
+			}
+		}
+		addGroup(compiled, group, blockSize);
+		this.steps = compiled.toArray(new AudioProcessor[compiled.size()]);
+		LOG.fine("Compiled " + processors.size() + " processors into " + steps.length + " steps.");
+	}
+
+	private static void addGroup(List<AudioProcessor> compiled, List<ElementwiseAudioProcessor> group, int blockSize) {
+		if (group.size() == 1) {
+			compiled.add(group.get(0));
+		} else if (group.size() > 1) {
+			compiled.add(new FusedGroup(group.toArray(new ElementwiseAudioProcessor[group.size()]), blockSize));
+		}
+		group.clear();
+	}
+
+	/**
+	 * Compiles a chain of processors with the default block size.
+	 *
+	 * @param processors
+	 *            The processors, in the order they should be applied.
+	 * @return A processor running the chain.
+	 */
+	public static FusedAudioProcessorChain compile(AudioProcessor... processors) {
+		return compile(DEFAULT_BLOCK_SIZE, processors);
+	}
+
+	/**
+	 * Compiles a chain of processors.
+	 *
+	 * @param blockSize
+	 *            The number of samples processed by each fused processor
+	 *            before moving to the next one.
+	 * @param processors
+	 *            The processors, in the order they should be applied.
+	 * @return A processor running the chain.
+	 */
+	public static FusedAudioProcessorChain compile(int blockSize, AudioProcessor... processors) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("The block size should be positive, it is " + blockSize);
+		}
+		return new FusedAudioProcessorChain(new ArrayList<AudioProcessor>(Arrays.asList(processors)), blockSize);
+	}
+
+	/**
+	 * @return The number of steps after fusing: each fused group counts as
+	 *         one step.
+	 */
+	public int getNumberOfSteps() {
+		return steps.length;
+	}
+
+	@Override
+	public boolean process(AudioEvent audioEvent) {
+		for (AudioProcessor step : steps) {
+			if (!step.process(audioEvent)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void processingFinished() {
+		for (AudioProcessor processor : processors) {
+			processor.processingFinished();
+		}
+	}
+
+	/**
+	 * Consecutive element-wise processors run in one pass.
+	 */
+	private static final class FusedGroup implements AudioProcessor {
+		private final ElementwiseAudioProcessor[] stages;
+		private final int[] starts;
+		private final int blockSize;
+
+		private FusedGroup(ElementwiseAudioProcessor[] stages, int blockSize) {
+			this.stages = stages;
+			this.starts = new int[stages.length];
+			this.blockSize = blockSize;
+		}
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			float[] buffer = audioEvent.getFloatBuffer();
+			int first = buffer.length;
+			for (int s = 0; s < stages.length; s++) {
+				starts[s] = stages[s].beginBuffer(audioEvent);
+				first = Math.min(first, starts[s]);
+			}
+			for (int blockStart = first; blockStart < buffer.length; blockStart += blockSize) {
+				int blockEnd = Math.min(blockStart + blockSize, buffer.length);
+				for (int s = 0; s < stages.length; s++) {
+					int from = Math.max(blockStart, starts[s]);
+					if (from < blockEnd) {
+						stages[s].processRange(buffer, from, blockEnd);
+					}
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+			// The chain notifies the processors.
+		}
+	}
+}
@@ -33,7 +33,7 @@ package be.tarsos.dsp;
  * 
  * @author Joren Six
  */
-public class GainProcessor implements AudioProcessor {
+public class GainProcessor implements ElementwiseAudioProcessor {
 	private double gain;
 	
 	public GainProcessor(double newGain) {
@@ -47,7 +47,18 @@ public class GainProcessor implements AudioProcessor {
 	@Override
 	public boolean process(AudioEvent audioEvent) {
 		float[] audioFloatBuffer = audioEvent.getFloatBuffer();
-		for (int i = audioEvent.getOverlap(); i < audioFloatBuffer.length ; i++) {
+		processRange(audioFloatBuffer, beginBuffer(audioEvent), audioFloatBuffer.length);
+		return true;
+	}
+
+	@Override
+	public int beginBuffer(AudioEvent audioEvent) {
+		return audioEvent.getOverlap();
+	}
+
+	@Override
+	public void processRange(float[] audioFloatBuffer, int from, int to) {
+		for (int i = from; i < to ; i++) {
 			float newValue = (float) (audioFloatBuffer[i] * gain);
 			if(newValue > 1.0f) {
 				newValue = 1.0f;
@@ -56,7 +67,6 @@ public class GainProcessor implements AudioProcessor {
 			}
 			audioFloatBuffer[i] = newValue;
 		}
-		return true;
 	}
 	
 	@Override
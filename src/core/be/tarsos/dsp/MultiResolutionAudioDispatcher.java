@@ -0,0 +1,467 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+import be.tarsos.dsp.util.BufferPool;
+
+/**
+ * <p>
+ * Reads and converts a stream once and feeds the samples to several
+ * {@link Framer}s. Each framer has its own buffer size, overlap and chain of
+ * {@link AudioProcessor}s. This makes it possible to calculate e.g. MFCCs with
+ * a buffer of 512 samples and pitch with a buffer of 2048 samples while the
+ * audio is decoded only once.
+ * </p>
+ * <p>
+ * The converted samples are kept in one ring buffer, large enough to hold the
+ * largest frame. After each block read from the stream every framer processes
+ * all frames that are complete. The time stamp of an {@link AudioEvent} is the
+ * position of the first sample of its buffer, so time stamps of different
+ * framers are directly comparable. Note that this differs from the
+ * {@link AudioDispatcher}, where the time stamp marks the first sample that is
+ * new in the buffer.
+ * </p>
+ *
+ * <pre>
+ * MultiResolutionAudioDispatcher dispatcher = new MultiResolutionAudioDispatcher(stream);
+ * dispatcher.addFramer(512, 256).addAudioProcessor(mfcc);
+ * dispatcher.addFramer(2048, 1536).addAudioProcessor(pitchProcessor);
+ * dispatcher.run();
+ * </pre>
+ */
+public class MultiResolutionAudioDispatcher implements Runnable {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(MultiResolutionAudioDispatcher.class.getName());
+
+	/**
+	 * The default number of samples read from the stream at once.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 512;
+
+	/**
+	 * Cuts frames with a fixed size and overlap out of the shared sample
+	 * history and sends them through a chain of processors.
+	 */
+	public final class Framer {
+		private final int bufferSize;
+		private final int overlap;
+		private final int stepSize;
+		private final List<AudioProcessor> audioProcessors;
+		private final AudioEvent audioEvent;
+		private float[] audioFloatBuffer;
+
+		/**
+		 * The position, in samples, of the first sample of the next frame.
+		 */
+		private long nextStart;
+
+		private Framer(int bufferSize, int overlap) {
+			this.bufferSize = bufferSize;
+			this.overlap = overlap;
+			this.stepSize = bufferSize - overlap;
+			this.audioProcessors = new CopyOnWriteArrayList<AudioProcessor>();
+			this.audioFloatBuffer = new float[bufferSize];
+			this.audioEvent = new AudioEvent(format);
+			audioEvent.setFloatBuffer(audioFloatBuffer);
+			audioEvent.setBufferPool(bufferPool);
+		}
+
+		/**
+		 * Adds an AudioProcessor to the chain of processors of this framer.
+		 *
+		 * @param audioProcessor
+		 *            The AudioProcessor to add.
+		 * @return This framer, to add more processors.
+		 */
+		public Framer addAudioProcessor(final AudioProcessor audioProcessor) {
+			audioProcessors.add(audioProcessor);
+			LOG.fine("Added an audioprocessor to a framer of " + bufferSize + " samples: " + audioProcessor.toString());
+			return this;
+		}
+
+		/**
+		 * Removes an AudioProcessor from the chain and calls its
+		 * <code>processingFinished</code> method.
+		 *
+		 * @param audioProcessor
+		 *            The AudioProcessor to remove.
+		 */
+		public void removeAudioProcessor(final AudioProcessor audioProcessor) {
+			audioProcessors.remove(audioProcessor);
+			audioProcessor.processingFinished();
+		}
+
+		/**
+		 * @return The size of the frames, in samples.
+		 */
+		public int getBufferSize() {
+			return bufferSize;
+		}
+
+		/**
+		 * @return The overlap between consecutive frames, in samples.
+		 */
+		public int getOverlap() {
+			return overlap;
+		}
+
+		/**
+		 * Processes all complete frames.
+		 *
+		 * @param endOfStream
+		 *            True if no more samples will follow, in which case the
+		 *            remaining samples are processed in a last frame.
+		 */
+		private void process(boolean endOfStream) {
+			while (!stopped) {
+				long end = nextStart + bufferSize;
+				if (end <= samplesRead) {
+					copyHistory(nextStart, audioFloatBuffer, 0, bufferSize);
+				} else if (endOfStream && hasNewSamples()) {
+					int available = (int) (samplesRead - nextStart);
+					if (!zeroPadLastBuffer) {
+						audioFloatBuffer = new float[available];
+						audioEvent.setFloatBuffer(audioFloatBuffer);
+					}
+					copyHistory(nextStart, audioFloatBuffer, 0, available);
+					for (int i = available; i < audioFloatBuffer.length; i++) {
+						audioFloatBuffer[i] = 0;
+					}
+				} else {
+					return;
+				}
+				audioEvent.setOverlap(nextStart == firstSample ? 0 : overlap);
+				audioEvent.setBytesProcessed(nextStart * format.getFrameSize());
+				for (final AudioProcessor processor : audioProcessors) {
+					if (!processor.process(audioEvent)) {
+						// skip to the next audio processors if false is returned.
+						break;
+					}
+				}
+				nextStart += stepSize;
+			}
+		}
+
+		/**
+		 * @return True if the stream contains samples that were not part of a
+		 *         previous frame.
+		 */
+		private boolean hasNewSamples() {
+			if (nextStart == firstSample) {
+				return samplesRead > nextStart;
+			}
+			return samplesRead > nextStart + overlap;
+		}
+
+		private void processingFinished() {
+			for (final AudioProcessor processor : audioProcessors) {
+				processor.processingFinished();
+			}
+		}
+	}
+
+	/**
+	 * The audio stream (in bytes), conversion to float happens when a block
+	 * is read.
+	 */
+	private final TarsosDSPAudioInputStream audioInputStream;
+
+	private final TarsosDSPAudioFormat format;
+
+	private final TarsosDSPAudioFloatConverter converter;
+
+	private final List<Framer> framers;
+
+	/**
+	 * Scratch buffers shared by the processors of all framers.
+	 */
+	private final BufferPool bufferPool;
+
+	/**
+	 * The number of samples read from the stream at once.
+	 */
+	private final int blockSize;
+
+	/**
+	 * Reused to read blocks from the stream.
+	 */
+	private final byte[] audioByteBuffer;
+
+	/**
+	 * The converted sample history, its length is a power of two.
+	 */
+	private float[] history;
+
+	private int historyMask;
+
+	/**
+	 * The position, in samples, of the first sample read from the stream.
+	 */
+	private long firstSample;
+
+	/**
+	 * The position, in samples, directly after the last sample read.
+	 */
+	private long samplesRead;
+
+	/**
+	 * The number of bytes to skip before processing starts.
+	 */
+	private long bytesToSkip;
+
+	private boolean zeroPadLastBuffer;
+
+	private volatile boolean stopped;
+
+	/**
+	 * Create a new dispatcher which reads {@value #DEFAULT_BLOCK_SIZE}
+	 * samples at a time.
+	 *
+	 * @param stream
+	 *            The stream to read data from.
+	 */
+	public MultiResolutionAudioDispatcher(final TarsosDSPAudioInputStream stream) {
+		this(stream, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Create a new dispatcher.
+	 *
+	 * @param stream
+	 *            The stream to read data from.
+	 * @param blockSize
+	 *            The number of samples read from the stream at once. Frames
+	 *            are processed as soon as they are complete so smaller blocks
+	 *            lower the latency, larger blocks lower the overhead.
+	 */
+	public MultiResolutionAudioDispatcher(final TarsosDSPAudioInputStream stream, final int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("The block size should be at least one sample, not " + blockSize);
+		}
+		this.audioInputStream = stream;
+		this.format = stream.getFormat();
+		this.converter = TarsosDSPAudioFloatConverter.getConverter(format);
+		this.framers = new CopyOnWriteArrayList<Framer>();
+		this.bufferPool = new BufferPool();
+		this.blockSize = blockSize;
+		this.audioByteBuffer = new byte[blockSize * format.getFrameSize()];
+		this.zeroPadLastBuffer = true;
+	}
+
+	/**
+	 * Adds a framer. Framers should be added before the dispatcher runs.
+	 *
+	 * @param bufferSize
+	 *            The size of the frames, in samples.
+	 * @param overlap
+	 *            The overlap between consecutive frames, in samples.
+	 * @return The new framer, to add processors to.
+	 */
+	public Framer addFramer(final int bufferSize, final int overlap) {
+		if (overlap < 0 || overlap >= bufferSize) {
+			throw new IllegalArgumentException("The overlap should be smaller than the buffer size and not negative.");
+		}
+		if (history != null) {
+			throw new IllegalStateException("Framers should be added before the dispatcher runs.");
+		}
+		Framer framer = new Framer(bufferSize, overlap);
+		framers.add(framer);
+		return framer;
+	}
+
+	/**
+	 * Skip a number of seconds before processing the stream.
+	 * @param seconds
+	 */
+	public void skip(double seconds) {
+		bytesToSkip = Math.round(seconds * format.getSampleRate()) * format.getFrameSize();
+	}
+
+	/**
+	 * If zero pad last buffer is true then the last buffer of each framer is
+	 * filled with zeros until the normal amount of elements are present in the
+	 * buffer. Otherwise the buffer only contains the last elements and no
+	 * zeros. By default it is set to true.
+	 *
+	 * @param zeroPadLastBuffer
+	 */
+	public void setZeroPadLastBuffer(boolean zeroPadLastBuffer) {
+		this.zeroPadLastBuffer = zeroPadLastBuffer;
+	}
+
+	public void run() {
+		int maxBufferSize = 0;
+		for (Framer framer : framers) {
+			maxBufferSize = Math.max(maxBufferSize, framer.bufferSize);
+		}
+		int capacity = Integer.highestOneBit(maxBufferSize + blockSize - 1) << 1;
+		history = new float[capacity];
+		historyMask = capacity - 1;
+
+		if (bytesToSkip != 0) {
+			skipToStart();
+		}
+		samplesRead = firstSample;
+		for (Framer framer : framers) {
+			framer.nextStart = firstSample;
+		}
+
+		try {
+			boolean endOfStream = false;
+			while (!endOfStream && !stopped) {
+				endOfStream = readNextBlock();
+				for (Framer framer : framers) {
+					framer.process(endOfStream);
+				}
+			}
+		} catch (IOException e) {
+			String message = "Error while reading audio input stream: " + e.getMessage();
+			LOG.warning(message);
+			throw new Error(message);
+		}
+
+		if (!stopped) {
+			stop();
+		}
+	}
+
+	private void skipToStart() {
+		long skipped = 0l;
+		try {
+			skipped = audioInputStream.skip(bytesToSkip);
+			if (skipped != bytesToSkip) {
+				throw new IOException();
+			}
+			firstSample = bytesToSkip / format.getFrameSize();
+		} catch (IOException e) {
+			String message = String.format("Did not skip the expected amount of bytes,  %d skipped, %d expected!", skipped, bytesToSkip);
+			LOG.warning(message);
+			throw new Error(message);
+		}
+	}
+
+	/**
+	 * Reads a block from the stream and converts it into the history.
+	 *
+	 * @return True if the end of the stream is reached.
+	 * @throws IOException
+	 *             When something goes wrong while reading the stream.
+	 */
+	private boolean readNextBlock() throws IOException {
+		int totalBytesRead = 0;
+		boolean endOfStream = false;
+		while (!stopped && !endOfStream && totalBytesRead < audioByteBuffer.length) {
+			int bytesRead;
+			try {
+				bytesRead = audioInputStream.read(audioByteBuffer, totalBytesRead, audioByteBuffer.length - totalBytesRead);
+			} catch (IndexOutOfBoundsException e) {
+				// The pipe decoder generates an out of bounds if end
+				// of stream is reached.
+				bytesRead = -1;
+			}
+			if (bytesRead == -1) {
+				endOfStream = true;
+			} else {
+				totalBytesRead += bytesRead;
+			}
+		}
+		int samples = totalBytesRead / format.getFrameSize();
+		int position = (int) (samplesRead & historyMask);
+		int first = Math.min(samples, history.length - position);
+		converter.toFloatArray(audioByteBuffer, 0, history, position, first);
+		if (first < samples) {
+			converter.toFloatArray(audioByteBuffer, first * format.getFrameSize(), history, 0, samples - first);
+		}
+		samplesRead += samples;
+		return endOfStream;
+	}
+
+	/**
+	 * Copies samples from the history.
+	 *
+	 * @param start
+	 *            The position of the first sample in the stream.
+	 * @param destination
+	 *            The array to copy to.
+	 * @param offset
+	 *            The offset in the destination.
+	 * @param length
+	 *            The number of samples to copy.
+	 */
+	private void copyHistory(long start, float[] destination, int offset, int length) {
+		int position = (int) (start & historyMask);
+		int first = Math.min(length, history.length - position);
+		System.arraycopy(history, position, destination, offset, first);
+		if (first < length) {
+			System.arraycopy(history, 0, destination, offset + first, length - first);
+		}
+	}
+
+	/**
+	 * Stops dispatching audio data.
+	 */
+	public void stop() {
+		stopped = true;
+		for (Framer framer : framers) {
+			framer.processingFinished();
+		}
+		try {
+			audioInputStream.close();
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Closing audio stream error.", e);
+		}
+	}
+
+	public TarsosDSPAudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return The number of seconds read from the stream.
+	 */
+	public float secondsProcessed() {
+		return samplesRead / format.getSampleRate();
+	}
+
+	/**
+	 * @return True if the dispatcher is stopped or the end of stream has been
+	 *         reached.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+}
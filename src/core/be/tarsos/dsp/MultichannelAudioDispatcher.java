@@ -0,0 +1,286 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+/**
+ * <p>
+ * Reads a multichannel stream and sends a {@link MultichannelAudioEvent} with
+ * a separate buffer for each channel through a chain of processors. The
+ * interleaved frames are split into channels while they are converted, so a
+ * recording with many channels is read and converted only once.
+ * </p>
+ * <p>
+ * Buffer size and overlap are expressed in samples per channel. The first
+ * buffer is read completely, the last buffer is padded with zeros: the
+ * number of samples read is available via
+ * {@link AudioEvent#getValidSamples()}. Mono processors are applied to the
+ * channels with a {@link ChannelProcessor} or a {@link PerChannelProcessor}.
+ * </p>
+ */
+public class MultichannelAudioDispatcher implements Runnable {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(MultichannelAudioDispatcher.class.getName());
+
+	private final TarsosDSPAudioInputStream audioInputStream;
+
+	private final TarsosDSPAudioFormat format;
+
+	private final TarsosDSPAudioFloatConverter converter;
+
+	private final List<AudioProcessor> audioProcessors;
+
+	private final MultichannelAudioEvent audioEvent;
+
+	/**
+	 * A buffer for each channel, reused for every block.
+	 */
+	private final float[][] channelBuffers;
+
+	/**
+	 * Interleaved bytes read from the stream.
+	 */
+	private final byte[] audioByteBuffer;
+
+	private final int bufferSize;
+
+	private final int overlap;
+
+	private final int stepSize;
+
+	/**
+	 * Position in the stream in bytes.
+	 */
+	private long bytesProcessed;
+
+	/**
+	 * The number of bytes to skip before processing starts.
+	 */
+	private long bytesToSkip;
+
+	private volatile boolean stopped;
+
+	/**
+	 * Create a new dispatcher.
+	 * 
+	 * @param stream
+	 *            The multichannel stream to read.
+	 * @param audioBufferSize
+	 *            The number of samples per channel in a buffer.
+	 * @param bufferOverlap
+	 *            The overlap between consecutive buffers, in samples per
+	 *            channel.
+	 */
+	public MultichannelAudioDispatcher(final TarsosDSPAudioInputStream stream, final int audioBufferSize, final int bufferOverlap) {
+		if (bufferOverlap < 0 || bufferOverlap >= audioBufferSize) {
+			throw new IllegalArgumentException("The overlap should be smaller than the buffer size and not negative.");
+		}
+		audioInputStream = stream;
+		format = stream.getFormat();
+		converter = TarsosDSPAudioFloatConverter.getConverter(format);
+		audioProcessors = new CopyOnWriteArrayList<AudioProcessor>();
+		bufferSize = audioBufferSize;
+		overlap = bufferOverlap;
+		stepSize = audioBufferSize - bufferOverlap;
+		channelBuffers = new float[format.getChannels()][audioBufferSize];
+		audioByteBuffer = new byte[audioBufferSize * format.getFrameSize()];
+		audioEvent = new MultichannelAudioEvent(format);
+		audioEvent.setChannelBuffers(channelBuffers);
+	}
+
+	/**
+	 * Skip a number of seconds before processing the stream.
+	 * @param seconds
+	 */
+	public void skip(double seconds) {
+		bytesToSkip = Math.round(seconds * format.getSampleRate()) * format.getFrameSize();
+	}
+
+	/**
+	 * Adds an AudioProcessor to the chain of processors. The processors
+	 * receive a {@link MultichannelAudioEvent}.
+	 * 
+	 * @param audioProcessor
+	 *            The AudioProcessor to add.
+	 */
+	public void addAudioProcessor(final AudioProcessor audioProcessor) {
+		audioProcessors.add(audioProcessor);
+		LOG.fine("Added an audioprocessor to the list of processors: " + audioProcessor.toString());
+	}
+
+	/**
+	 * Removes an AudioProcessor from the chain and calls its
+	 * <code>processingFinished</code> method.
+	 * 
+	 * @param audioProcessor
+	 *            The AudioProcessor to remove.
+	 */
+	public void removeAudioProcessor(final AudioProcessor audioProcessor) {
+		audioProcessors.remove(audioProcessor);
+		audioProcessor.processingFinished();
+	}
+
+	public void run() {
+		if (bytesToSkip != 0) {
+			skipToStart();
+		}
+		try {
+			boolean first = true;
+			while (!stopped) {
+				int framesRead = readNextAudioBlock(first);
+				if (framesRead == 0) {
+					break;
+				}
+				audioEvent.setBytesProcessed(bytesProcessed);
+				audioEvent.setOverlap(first ? 0 : overlap);
+				for (final AudioProcessor processor : audioProcessors) {
+					if (!processor.process(audioEvent)) {
+						// skip to the next audio processors if false is returned.
+						break;
+					}
+				}
+				bytesProcessed += (long) (first ? bufferSize : stepSize) * format.getFrameSize();
+				first = false;
+			}
+		} catch (IOException e) {
+			String message = "Error while reading audio input stream: " + e.getMessage();
+			LOG.warning(message);
+			throw new Error(message);
+		}
+		if (!stopped) {
+			stop();
+		}
+	}
+
+	private void skipToStart() {
+		long skipped = 0l;
+		try {
+			skipped = audioInputStream.skip(bytesToSkip);
+			if (skipped != bytesToSkip) {
+				throw new IOException();
+			}
+			bytesProcessed += bytesToSkip;
+		} catch (IOException e) {
+			String message = String.format("Did not skip the expected amount of bytes,  %d skipped, %d expected!", skipped, bytesToSkip);
+			LOG.warning(message);
+			throw new Error(message);
+		}
+	}
+
+	/**
+	 * Shifts the overlap, reads the next block and converts it into the channel
+	 * buffers.
+	 * 
+	 * @param first
+	 *            True for the first buffer, which is read completely.
+	 * @return The number of frames read from the stream.
+	 * @throws IOException
+	 *             When something goes wrong while reading the stream.
+	 */
+	private int readNextAudioBlock(boolean first) throws IOException {
+		int offsetInSamples = first ? 0 : overlap;
+		if (!first) {
+			for (float[] channelBuffer : channelBuffers) {
+				System.arraycopy(channelBuffer, stepSize, channelBuffer, 0, overlap);
+			}
+		}
+		int bytesToRead = (bufferSize - offsetInSamples) * format.getFrameSize();
+		int totalBytesRead = 0;
+		boolean endOfStream = false;
+		while (!stopped && !endOfStream && totalBytesRead < bytesToRead) {
+			int bytesRead;
+			try {
+				bytesRead = audioInputStream.read(audioByteBuffer, totalBytesRead, bytesToRead - totalBytesRead);
+			} catch (IndexOutOfBoundsException e) {
+				// The pipe decoder generates an out of bounds if end
+				// of stream is reached.
+				bytesRead = -1;
+			}
+			if (bytesRead == -1) {
+				endOfStream = true;
+			} else {
+				totalBytesRead += bytesRead;
+			}
+		}
+		int framesRead = totalBytesRead / format.getFrameSize();
+		converter.toFloatArrays(audioByteBuffer, 0, channelBuffers, offsetInSamples, framesRead);
+		int validSamples = offsetInSamples + framesRead;
+		if (validSamples < bufferSize) {
+			for (float[] channelBuffer : channelBuffers) {
+				Arrays.fill(channelBuffer, validSamples, bufferSize, 0);
+			}
+		}
+		audioEvent.setChannelBuffers(channelBuffers);
+		audioEvent.setValidSamples(0, validSamples);
+		return framesRead;
+	}
+
+	/**
+	 * Stops dispatching audio data.
+	 */
+	public void stop() {
+		stopped = true;
+		for (final AudioProcessor processor : audioProcessors) {
+			processor.processingFinished();
+		}
+		try {
+			audioInputStream.close();
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Closing audio stream error.", e);
+		}
+	}
+
+	public TarsosDSPAudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return The number of seconds processed.
+	 */
+	public float secondsProcessed() {
+		return bytesProcessed / format.getFrameSize() / format.getSampleRate();
+	}
+
+	/**
+	 * @return True if the dispatcher is stopped or the end of stream has been
+	 *         reached.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+}
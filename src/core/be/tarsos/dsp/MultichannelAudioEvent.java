@@ -0,0 +1,114 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+
+/**
+ * An audio event with a separate buffer for each channel. The samples of the
+ * channels are not interleaved: {@link #getChannelBuffer(int)} returns the
+ * samples of one channel. The float buffer of the event itself, as returned by
+ * {@link #getFloatBuffer()}, is the buffer of the first channel.
+ * 
+ * Mono processors can be applied to one or all channels with a
+ * {@link ChannelProcessor} or a {@link PerChannelProcessor}.
+ */
+public class MultichannelAudioEvent extends AudioEvent {
+
+	private float[][] channelBuffers;
+
+	/**
+	 * The format of a single channel, used by the events of the channels.
+	 */
+	private final TarsosDSPAudioFormat channelFormat;
+
+	public MultichannelAudioEvent(TarsosDSPAudioFormat format) {
+		super(format);
+		channelFormat = new TarsosDSPAudioFormat(format.getEncoding(), format.getSampleRate(), format.getSampleSizeInBits(), 1,
+				format.getFrameSize() / format.getChannels(), format.getFrameRate(), format.isBigEndian());
+	}
+
+	/**
+	 * @return The number of channels.
+	 */
+	public int getNumberOfChannels() {
+		return getFormat().getChannels();
+	}
+
+	/**
+	 * @param channel
+	 *            The index of a channel, starting from zero.
+	 * @return The samples of the channel. The array is reused for the next
+	 *         buffer.
+	 */
+	public float[] getChannelBuffer(int channel) {
+		return channelBuffers[channel];
+	}
+
+	/**
+	 * @return The buffers of all channels.
+	 */
+	public float[][] getChannelBuffers() {
+		return channelBuffers;
+	}
+
+	/**
+	 * Sets the buffers of all channels. The first channel becomes the float
+	 * buffer of the event.
+	 * 
+	 * @param channelBuffers
+	 *            A buffer for each channel.
+	 */
+	public void setChannelBuffers(float[][] channelBuffers) {
+		if (channelBuffers.length != getNumberOfChannels()) {
+			throw new IllegalArgumentException(String.format("Expected %d channel buffers, not %d.", getNumberOfChannels(), channelBuffers.length));
+		}
+		this.channelBuffers = channelBuffers;
+		setFloatBuffer(channelBuffers[0]);
+	}
+
+	/**
+	 * @return The format of a single channel.
+	 */
+	public TarsosDSPAudioFormat getChannelFormat() {
+		return channelFormat;
+	}
+
+	/**
+	 * Prepares a mono event for one channel: it gets the buffer of the channel
+	 * and the time information of this event.
+	 * 
+	 * @param channel
+	 *            The index of the channel.
+	 * @param channelEvent
+	 *            An event created with the channel format.
+	 */
+	void fillChannelEvent(int channel, AudioEvent channelEvent) {
+		channelEvent.copyStateFrom(this);
+		channelEvent.setFloatBuffer(channelBuffers[channel]);
+		channelEvent.setValidSamples(getValidOffset(), getValidSamples());
+		channelEvent.setBytesProcessed(getSamplesProcessed() * channelFormat.getFrameSize());
+	}
+}
@@ -0,0 +1,152 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Runs a chain of mono processors on every channel of a
+ * {@link MultichannelAudioEvent}. Processors keep state, so each channel gets
+ * its own chain, created by a {@link ChainFactory} for the first event.
+ * </p>
+ * <p>
+ * The channels are processed in parallel on a {@link ForkJoinPool}, like the
+ * branches of an {@link AudioProcessorGraph}, or sequentially on the
+ * dispatching thread.
+ * </p>
+ */
+public class PerChannelProcessor implements AudioProcessor {
+
+	/**
+	 * Creates the processors for a channel.
+	 */
+	public interface ChainFactory {
+		/**
+		 * @param channel
+		 *            The index of the channel, starting from zero.
+		 * @return The chain of mono processors for the channel.
+		 */
+		AudioProcessor[] createProcessors(int channel);
+	}
+
+	private final ChainFactory factory;
+	private final ForkJoinPool pool;
+	private ChannelTask[] tasks;
+
+	/**
+	 * Create a processor which runs the channels in parallel on the common
+	 * fork join pool.
+	 * 
+	 * @param factory
+	 *            Creates the processors for each channel.
+	 */
+	public PerChannelProcessor(ChainFactory factory) {
+		this(factory, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param factory
+	 *            Creates the processors for each channel.
+	 * @param pool
+	 *            The pool to run the channels on, or null to process the
+	 *            channels one after the other on the dispatching thread.
+	 */
+	public PerChannelProcessor(ChainFactory factory, ForkJoinPool pool) {
+		this.factory = factory;
+		this.pool = pool;
+	}
+
+	@Override
+	public boolean process(AudioEvent audioEvent) {
+		MultichannelAudioEvent multichannelEvent = (MultichannelAudioEvent) audioEvent;
+		if (tasks == null) {
+			tasks = new ChannelTask[multichannelEvent.getNumberOfChannels()];
+			for (int i = 0; i < tasks.length; i++) {
+				tasks[i] = new ChannelTask(new ChannelProcessor(i, factory.createProcessors(i)));
+			}
+		}
+		if (pool == null || tasks.length == 1) {
+			for (ChannelTask task : tasks) {
+				task.processor.process(multichannelEvent);
+			}
+			return true;
+		}
+		for (int i = 1; i < tasks.length; i++) {
+			tasks[i].reinitialize();
+			tasks[i].event = multichannelEvent;
+			pool.execute(tasks[i]);
+		}
+		RuntimeException failure = null;
+		try {
+			tasks[0].processor.process(multichannelEvent);
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		for (int i = 1; i < tasks.length; i++) {
+			try {
+				tasks[i].join();
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+			tasks[i].event = null;
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return true;
+	}
+
+	@Override
+	public void processingFinished() {
+		if (tasks != null) {
+			for (ChannelTask task : tasks) {
+				task.processor.processingFinished();
+			}
+		}
+	}
+
+	/**
+	 * Processes one channel when forked.
+	 */
+	private static final class ChannelTask extends RecursiveAction {
+		private static final long serialVersionUID = -2710941502460395917L;
+
+		private final ChannelProcessor processor;
+		private MultichannelAudioEvent event;
+
+		private ChannelTask(ChannelProcessor processor) {
+			this.processor = processor;
+		}
+
+		@Override
+		protected void compute() {
+			processor.process(event);
+		}
+	}
+}
@@ -0,0 +1,530 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+import be.tarsos.dsp.util.FrameRingBuffer;
+
+
+/**
+ * <p>
+ * A dispatcher that decouples reading and converting audio from processing it.
+ * A dedicated decode thread reads blocks from the stream, converts them to
+ * floats and puts them in a bounded ring of pre-allocated frames. The thread
+ * that calls {@link #run()} takes the frames from the ring, slides them into
+ * the (optionally overlapping) audio buffer and sends them through the chain of
+ * {@link AudioProcessor}s. A slow read, e.g. from a {@link be.tarsos.dsp.io.PipeDecoder},
+ * does not stall the processors and slow processors do not stall reading.
+ * </p>
+ * <p>
+ * The buffers the processors receive are the same as with an
+ * {@link AudioDispatcher} with the same buffer size, overlap and zero pad
+ * settings. When the ring is full the decode thread either waits (
+ * {@link OverflowPolicy#BLOCK}) or overwrites the oldest frame (
+ * {@link OverflowPolicy#DROP_OLDEST}). When frames are dropped the time stamps
+ * of the following events remain correct, the overlapping part of the buffer
+ * that follows a gap is zero padded.
+ * </p>
+ */
+public class PipelinedAudioDispatcher implements Runnable {
+
+	/**
+	 * Defines what the decode thread does when the ring of frames is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Wait until the processing thread has consumed a frame. No audio is
+		 * lost.
+		 */
+		BLOCK,
+		/**
+		 * Overwrite the oldest frame. Useful for live input where keeping up is
+		 * more important than processing each frame.
+		 */
+		DROP_OLDEST
+	}
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(PipelinedAudioDispatcher.class.getName());
+
+	/**
+	 * The default number of frames in the ring.
+	 */
+	public static final int DEFAULT_DEPTH = 16;
+
+	/**
+	 * The audio stream (in bytes), conversion to float happens on the decode
+	 * thread.
+	 */
+	private final TarsosDSPAudioInputStream audioInputStream;
+
+	/**
+	 * The buffer that is sent through the processing chain.
+	 */
+	private float[] audioFloatBuffer;
+
+	/**
+	 * Used by the decode thread to read bytes from the stream.
+	 */
+	private final byte[] audioByteBuffer;
+
+	/**
+	 * A list of registered audio processors.
+	 */
+	private final List<AudioProcessor> audioProcessors;
+
+	/**
+	 * Converts the bytes to floats, only used by the decode thread.
+	 */
+	private final TarsosDSPAudioFloatConverter converter;
+
+	private final TarsosDSPAudioFormat format;
+
+	/**
+	 * Overlap and step size in samples.
+	 */
+	private final int floatOverlap, floatStepSize;
+
+	/**
+	 * Step size in bytes.
+	 */
+	private final int byteStepSize;
+
+	/**
+	 * The decoded frames waiting to be processed.
+	 */
+	private final FrameRingBuffer ring;
+
+	/**
+	 * The number of bytes to skip before processing starts.
+	 */
+	private long bytesToSkip;
+
+	/**
+	 * Position in the stream in bytes of the audio that has been processed.
+	 */
+	private long bytesProcessed;
+
+	/**
+	 * The audio event that is send through the processing chain.
+	 */
+	private final AudioEvent audioEvent;
+
+	/**
+	 * If true the dispatcher stops dispatching audio.
+	 */
+	private volatile boolean stopped;
+
+	/**
+	 * True when the decode thread is done: it reached the end of the stream,
+	 * was stopped or failed.
+	 */
+	private volatile boolean decoded;
+
+	/**
+	 * Holds the reason when the decode thread failed.
+	 */
+	private volatile Throwable decodeFailure;
+
+	private boolean zeroPadFirstBuffer;
+
+	private boolean zeroPadLastBuffer;
+
+	/**
+	 * Create a new pipelined dispatcher with a blocking ring of
+	 * {@link #DEFAULT_DEPTH} frames.
+	 *
+	 * @param stream
+	 *            The stream to read data from.
+	 * @param audioBufferSize
+	 *            The size of the buffer defines how much samples are processed
+	 *            in one step. Common values are 1024,2048.
+	 * @param bufferOverlap
+	 *            How much consecutive buffers overlap (in samples). Half of the
+	 *            AudioBufferSize is common (512, 1024) for an FFT.
+	 */
+	public PipelinedAudioDispatcher(final TarsosDSPAudioInputStream stream, final int audioBufferSize, final int bufferOverlap) {
+		this(stream, audioBufferSize, bufferOverlap, DEFAULT_DEPTH, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Create a new pipelined dispatcher.
+	 *
+	 * @param stream
+	 *            The stream to read data from.
+	 * @param audioBufferSize
+	 *            The size of the buffer defines how much samples are processed
+	 *            in one step. Common values are 1024,2048.
+	 * @param bufferOverlap
+	 *            How much consecutive buffers overlap (in samples). Half of the
+	 *            AudioBufferSize is common (512, 1024) for an FFT.
+	 * @param depth
+	 *            The number of decoded frames that can wait to be processed.
+	 * @param policy
+	 *            What to do when the processing thread falls behind.
+	 */
+	public PipelinedAudioDispatcher(final TarsosDSPAudioInputStream stream, final int audioBufferSize, final int bufferOverlap, final int depth, final OverflowPolicy policy) {
+		if (bufferOverlap >= audioBufferSize) {
+			throw new IllegalArgumentException("The overlap (" + bufferOverlap + ") should be smaller than the buffer size (" + audioBufferSize + ").");
+		}
+		audioProcessors = new CopyOnWriteArrayList<AudioProcessor>();
+		audioInputStream = stream;
+		format = audioInputStream.getFormat();
+
+		audioFloatBuffer = new float[audioBufferSize];
+		floatOverlap = bufferOverlap;
+		floatStepSize = audioBufferSize - bufferOverlap;
+		audioByteBuffer = new byte[audioBufferSize * format.getFrameSize()];
+		byteStepSize = floatStepSize * format.getFrameSize();
+
+		// A frame holds a full buffer: the first buffer is read completely when
+		// it is not zero padded.
+		ring = new FrameRingBuffer(depth, audioBufferSize, policy == OverflowPolicy.DROP_OLDEST);
+
+		audioEvent = new AudioEvent(format);
+		audioEvent.setFloatBuffer(audioFloatBuffer);
+		audioEvent.setOverlap(bufferOverlap);
+
+		converter = TarsosDSPAudioFloatConverter.getConverter(format);
+
+		zeroPadLastBuffer = true;
+	}
+
+	/**
+	 * Skip a number of seconds before processing the stream.
+	 * @param seconds
+	 */
+	public void skip(double seconds) {
+		bytesToSkip = Math.round(seconds * format.getSampleRate()) * format.getFrameSize();
+	}
+
+	/**
+	 * if zero pad is true then the first buffer is only filled up to buffer size - hop size
+	 * E.g. if the buffer is 2048 and the hop size is 48 then you get 2000x0 and 48 filled audio samples
+	 * @param zeroPadFirstBuffer true if the buffer should be zeroPadFirstBuffer, false otherwise.
+	 */
+	public void setZeroPadFirstBuffer(boolean zeroPadFirstBuffer) {
+		this.zeroPadFirstBuffer = zeroPadFirstBuffer;
+	}
+
+	/**
+	 * If zero pad last buffer is true then the last buffer is filled with zeros until the normal amount
+	 * of elements are present in the buffer. Otherwise the buffer only contains the last elements and no zeros.
+	 * By default it is set to true.
+	 *
+	 * @param zeroPadLastBuffer
+	 */
+	public void setZeroPadLastBuffer(boolean zeroPadLastBuffer) {
+		this.zeroPadLastBuffer = zeroPadLastBuffer;
+	}
+
+	/**
+	 * Adds an AudioProcessor to the chain of processors.
+	 *
+	 * @param audioProcessor
+	 *            The AudioProcessor to add.
+	 */
+	public void addAudioProcessor(final AudioProcessor audioProcessor) {
+		audioProcessors.add(audioProcessor);
+		LOG.fine("Added an audioprocessor to the list of processors: " + audioProcessor.toString());
+	}
+
+	/**
+	 * Removes an AudioProcessor to the chain of processors and calls its <code>processingFinished</code> method.
+	 *
+	 * @param audioProcessor
+	 *            The AudioProcessor to remove.
+	 */
+	public void removeAudioProcessor(final AudioProcessor audioProcessor) {
+		audioProcessors.remove(audioProcessor);
+		audioProcessor.processingFinished();
+		LOG.fine("Remove an audioprocessor to the list of processors: " + audioProcessor.toString());
+	}
+
+	public void run() {
+		Thread decoder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				decode();
+			}
+		}, "TarsosDSP decoder");
+		decoder.setDaemon(true);
+		decoder.start();
+
+		final FrameRingBuffer.Condition decodingFinished = new FrameRingBuffer.Condition() {
+			@Override
+			public boolean isMet() {
+				return decoded || stopped;
+			}
+		};
+
+		// The position the next frame should have if no frames were dropped.
+		long expectedPosition = -1;
+
+		while (!stopped) {
+			FrameRingBuffer.Frame frame = ring.peek(decodingFinished);
+			if (frame == null) {
+				// end of stream or decoding failed
+				break;
+			}
+			long position = frame.position;
+			int bytes = frame.bytes;
+			int overlap = frame.offset;
+			boolean continuous = !frame.first && position == expectedPosition;
+			float[] buffer = slide(frame, continuous);
+			if (!ring.release()) {
+				// The frame was overwritten while copying, the next frame
+				// starts after a gap.
+				expectedPosition = -1;
+				continue;
+			}
+			audioFloatBuffer = buffer;
+			expectedPosition = position + bytes;
+
+			audioEvent.setFloatBuffer(audioFloatBuffer);
+			audioEvent.setOverlap(overlap);
+			audioEvent.setBytesProcessed(position);
+
+			for (final AudioProcessor processor : audioProcessors) {
+				if (!processor.process(audioEvent)) {
+					//skip to the next audio processors if false is returned.
+					break;
+				}
+			}
+			bytesProcessed = position + bytes;
+		}
+
+		Throwable failure = decodeFailure;
+		if (!stopped) {
+			stop();
+		}
+		if (failure != null) {
+			String message = "Error while reading audio input stream: " + failure.getMessage();
+			LOG.warning(message);
+			throw new Error(message, failure);
+		}
+	}
+
+	/**
+	 * Slides the samples of a decoded frame into the audio buffer.
+	 *
+	 * @param frame
+	 *            The decoded frame.
+	 * @param continuous
+	 *            True if the frame follows the previous one, false for the
+	 *            first frame or after a gap.
+	 * @return The audio buffer, or a new shorter buffer for the last frame if
+	 *         it is not zero padded.
+	 */
+	private float[] slide(FrameRingBuffer.Frame frame, boolean continuous) {
+		final int offset = frame.offset;
+		final int length = frame.length;
+		if (continuous && audioFloatBuffer.length == floatOverlap + floatStepSize) {
+			System.arraycopy(audioFloatBuffer, floatStepSize, audioFloatBuffer, 0, floatOverlap);
+		} else {
+			Arrays.fill(audioFloatBuffer, 0, Math.min(offset, audioFloatBuffer.length), 0);
+		}
+		float[] buffer = audioFloatBuffer;
+		if (offset + length != buffer.length) {
+			// Send a smaller buffer through the chain, the last one.
+			buffer = new float[offset + length];
+			System.arraycopy(audioFloatBuffer, 0, buffer, 0, Math.min(offset, audioFloatBuffer.length));
+		}
+		System.arraycopy(frame.samples, 0, buffer, offset, length);
+		return buffer;
+	}
+
+	/**
+	 * The loop of the decode thread: read, convert and publish frames until
+	 * the end of the stream.
+	 */
+	private void decode() {
+		final FrameRingBuffer.Condition isStopped = new FrameRingBuffer.Condition() {
+			@Override
+			public boolean isMet() {
+				return stopped;
+			}
+		};
+		try {
+			long position = 0;
+			if (bytesToSkip != 0) {
+				long skipped = audioInputStream.skip(bytesToSkip);
+				if (skipped != bytesToSkip) {
+					throw new IOException(String.format("Did not skip the expected amount of bytes,  %d skipped, %d expected!", skipped, bytesToSkip));
+				}
+				position = bytesToSkip;
+			}
+			boolean first = true;
+			while (!stopped) {
+				FrameRingBuffer.Frame frame = ring.claim(isStopped);
+				if (frame == null) {
+					break;
+				}
+				int bytesRead = readNextAudioBlock(frame, first);
+				if (bytesRead == 0 || stopped) {
+					break;
+				}
+				frame.position = position;
+				frame.bytes = bytesRead;
+				frame.first = first;
+				ring.publish();
+				position += bytesRead;
+				first = false;
+			}
+		} catch (Throwable e) {
+			if (!stopped) {
+				decodeFailure = e;
+			}
+		} finally {
+			decoded = true;
+			ring.wakeUp();
+		}
+	}
+
+	/**
+	 * Reads the next audio block and converts it into the frame. The amount of
+	 * bytes read and the zero padding behavior are the same as for
+	 * {@link AudioDispatcher}.
+	 *
+	 * @return The number of bytes read.
+	 * @throws IOException
+	 *             When something goes wrong while reading the stream.
+	 */
+	private int readNextAudioBlock(FrameRingBuffer.Frame frame, boolean isFirstBuffer) throws IOException {
+		final int bytesToRead;
+		final int offsetInSamples;
+		if (isFirstBuffer && !zeroPadFirstBuffer) {
+			// Read a full buffer
+			bytesToRead = audioByteBuffer.length;
+			offsetInSamples = 0;
+		} else {
+			bytesToRead = byteStepSize;
+			offsetInSamples = floatOverlap;
+		}
+
+		int totalBytesRead = 0;
+		int bytesRead = 0;
+		boolean endOfStream = false;
+		while (!stopped && !endOfStream && totalBytesRead < bytesToRead) {
+			try {
+				bytesRead = audioInputStream.read(audioByteBuffer, totalBytesRead, bytesToRead - totalBytesRead);
+			} catch (IndexOutOfBoundsException e) {
+				// The pipe decoder generates an out of bounds if end
+				// of stream is reached. Ugly hack...
+				bytesRead = -1;
+			}
+			if (bytesRead == -1) {
+				endOfStream = true;
+			} else {
+				totalBytesRead += bytesRead;
+			}
+		}
+
+		final int samples;
+		if (endOfStream) {
+			if (zeroPadLastBuffer) {
+				Arrays.fill(audioByteBuffer, totalBytesRead, bytesToRead, (byte) 0);
+				samples = bytesToRead / format.getFrameSize();
+			} else {
+				samples = totalBytesRead / format.getFrameSize();
+			}
+		} else if (bytesToRead == totalBytesRead) {
+			samples = bytesToRead / format.getFrameSize();
+		} else if (!stopped) {
+			throw new IOException(String.format("The end of the audio stream has not been reached and the number of bytes read (%d) is not equal "
+					+ "to the expected amount of bytes(%d).", totalBytesRead, bytesToRead));
+		} else {
+			return 0;
+		}
+		if (totalBytesRead > 0) {
+			converter.toFloatArray(audioByteBuffer, 0, frame.samples, 0, samples);
+		}
+		frame.offset = offsetInSamples;
+		frame.length = samples;
+		return totalBytesRead;
+	}
+
+	/**
+	 * Stops dispatching audio data.
+	 */
+	public void stop() {
+		stopped = true;
+		ring.wakeUp();
+		for (final AudioProcessor processor : audioProcessors) {
+			processor.processingFinished();
+		}
+		try {
+			audioInputStream.close();
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Closing audio stream error.", e);
+		}
+	}
+
+	public TarsosDSPAudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 *
+	 * @return The currently processed number of seconds.
+	 */
+	public float secondsProcessed() {
+		return bytesProcessed / (format.getSampleSizeInBits() / 8) / format.getSampleRate() / format.getChannels();
+	}
+
+	/**
+	 * @return The number of decoded frames that were dropped because the
+	 *         processors could not keep up. Always zero with
+	 *         {@link OverflowPolicy#BLOCK}.
+	 */
+	public long getDroppedFrames() {
+		return ring.dropped();
+	}
+
+	/**
+	 * @return The number of decoded frames waiting to be processed.
+	 */
+	public int getQueuedFrames() {
+		return ring.size();
+	}
+
+	/**
+	 * @return True if the dispatcher is stopped or the end of stream has been reached.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+/**
+ * <p>
+ * An audio processor which can follow a change of the buffer size and
+ * overlap of a running {@link AudioDispatcher}, see
+ * {@link AudioDispatcher#requestStepSizeAndOverlap(int, int)}.
+ * </p>
+ * <p>
+ * A change is announced first with
+ * {@link #prepareReconfiguration(int, int)}, on the thread requesting it.
+ * This is the moment to allocate FFTs, windows or detectors for the new size.
+ * Later, between two buffers, {@link #reconfigure(int, int)} is called on the
+ * dispatching thread: it should only swap to what was prepared.
+ * </p>
+ * <p>
+ * A processor which only works with one size, e.g. {@link ConstantQ}, refuses
+ * other sizes in {@link #prepareReconfiguration(int, int)}, before anything
+ * changes.
+ * </p>
+ */
+public interface ReconfigurableAudioProcessor extends AudioProcessor {
+
+	/**
+	 * Prepares for buffers of a new size. Called on the thread requesting the
+	 * change, while buffers of the current size may still be processed.
+	 *
+	 * @param audioBufferSize
+	 *            The new buffer size, in samples.
+	 * @param bufferOverlap
+	 *            The new overlap, in samples.
+	 * @throws IllegalArgumentException
+	 *             If the processor can not work with the new size.
+	 */
+	void prepareReconfiguration(int audioBufferSize, int bufferOverlap);
+
+	/**
+	 * Switches to the new size. Called on the dispatching thread, after the
+	 * last buffer of the old size and before the first buffer of the new size.
+	 *
+	 * @param audioBufferSize
+	 *            The new buffer size, in samples.
+	 * @param bufferOverlap
+	 *            The new overlap, in samples.
+	 */
+	void reconfigure(int audioBufferSize, int bufferOverlap);
+}
@@ -26,6 +26,8 @@ package be.tarsos.dsp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import be.tarsos.dsp.util.PitchConverter;
 import be.tarsos.dsp.util.fft.FFT;
@@ -73,7 +75,7 @@ dispatcher.run();
  * @author James Plamondon
  * 
  */
-public class SpectralPeakProcessor implements AudioProcessor {
+public class SpectralPeakProcessor implements ReconfigurableAudioProcessor {
 
 	/**
 	 * The sample rate of the signal.
@@ -83,31 +85,36 @@ public class SpectralPeakProcessor implements AudioProcessor {
 	/**
 	 * Cached calculations for the frequency calculation
 	 */
-	private final double dt;
-	private final double cbin;
+	private double dt;
+	private double cbin;
 	private final double inv_2pi;
-	private final double inv_deltat;
-	private final double inv_2pideltat;
+	private double inv_deltat;
+	private double inv_2pideltat;
 
 	/**
 	 * The fft object used to calculate phase and magnitudes.
 	 */
-	private final FFT fft;
+	private FFT fft;
+
+	/**
+	 * The FFTs for each buffer size, prepared before a reconfiguration.
+	 */
+	private final Map<Integer, FFT> ffts;
 
 	/**
 	 * The pahse info of the current frame.
 	 */
-	private final float[] currentPhaseOffsets;
+	private float[] currentPhaseOffsets;
 
 	/**
 	 * The magnitudes in the current frame.
 	 */
-	private final float[] magnitudes;
+	private float[] magnitudes;
 	
 	/**
 	 * Detailed frequency estimates for each bin, using phase info
 	 */
-	private final float[] frequencyEstimates;
+	private float[] frequencyEstimates;
 	
 	/**
 	 * The phase information of the previous frame, or null.
@@ -117,21 +124,44 @@ public class SpectralPeakProcessor implements AudioProcessor {
 	
 
 	public SpectralPeakProcessor(int bufferSize, int overlap, int sampleRate) {
-		fft = new FFT(bufferSize, new HammingWindow());
+		this.sampleRate = sampleRate;
+		inv_2pi = (double) (1.0 / (2.0 * Math.PI));
+		ffts = new ConcurrentHashMap<Integer, FFT>();
+		prepareReconfiguration(bufferSize, overlap);
+		configure(bufferSize, overlap);
+	}
+
+	/**
+	 * Sizes the spectra and the cached calculations for a buffer size and
+	 * overlap.
+	 */
+	private void configure(int bufferSize, int overlap) {
+		fft = ffts.get(bufferSize);
 
 		magnitudes = new float[bufferSize / 2];
 		currentPhaseOffsets = new float[bufferSize / 2];
 		frequencyEstimates = new float[bufferSize / 2];
+		// The phase of a frame of another size or hop can not be compared.
+		previousPhaseOffsets = null;
 
 		dt = (bufferSize - overlap) / (double) sampleRate;
 		cbin = (double) (dt * sampleRate / (double) bufferSize);
 
-		inv_2pi = (double) (1.0 / (2.0 * Math.PI));
 		inv_deltat = (double) (1.0 / dt);
 		inv_2pideltat = (double) (inv_deltat * inv_2pi);
+	}
 
-		this.sampleRate = sampleRate;
-		
+	@Override
+	public void prepareReconfiguration(int audioBufferSize, int bufferOverlap) {
+		if (!ffts.containsKey(audioBufferSize)) {
+			ffts.put(audioBufferSize, new FFT(audioBufferSize, new HammingWindow()));
+		}
+	}
+
+	@Override
+	public void reconfigure(int audioBufferSize, int bufferOverlap) {
+		prepareReconfiguration(audioBufferSize, bufferOverlap);
+		configure(audioBufferSize, bufferOverlap);
 	}
 
 	private void calculateFFT(float[] audio) {
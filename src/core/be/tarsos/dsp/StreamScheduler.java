@@ -0,0 +1,793 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+
+/**
+ * <p>
+ * Processes many live streams without a thread per stream. An
+ * {@link AudioDispatcher} blocks a thread in <code>read</code> for every
+ * stream, which does not scale to hundreds of feeds. Here sources either push
+ * bytes with {@link Stream#push(byte[], int, int)} or are registered as a
+ * non-blocking NIO channel, which is polled by a single selector thread.
+ * </p>
+ * <p>
+ * Each stream is framed like an {@link AudioDispatcher}: a first buffer of
+ * <code>bufferSize</code> samples, followed by buffers with
+ * <code>overlap</code> samples of the previous buffer, and a zero padded last
+ * buffer. Time stamps are the same as the ones of an audio dispatcher on the
+ * same audio. Complete buffers are processed on a shared pool of workers; the
+ * buffers of one stream are always processed in order, by one worker at a
+ * time, so audio processors do not need to be thread safe.
+ * </p>
+ * <p>
+ * By default, on a Java runtime with virtual threads, each ready stream is
+ * drained on a virtual thread. On older runtimes a fixed pool with a worker per
+ * processor core is used.
+ * </p>
+ *
+ * <pre>
+ * StreamScheduler scheduler = new StreamScheduler();
+ * StreamScheduler.Stream stream = scheduler.createStream("feed 1", format, 2048, 1024);
+ * stream.addAudioProcessor(new PitchProcessor(algo, 8000, 2048, handler));
+ * // on the network thread
+ * stream.push(bytes, 0, length);
+ * </pre>
+ */
+public class StreamScheduler {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(StreamScheduler.class.getName());
+
+	/**
+	 * The number of seconds of audio a stream buffers before the oldest audio
+	 * is dropped, unless another maximum is given when it is created.
+	 */
+	public static final double DEFAULT_MAX_PENDING_SECONDS = 10;
+
+	/**
+	 * The size of the buffer used to read channels.
+	 */
+	private static final int CHANNEL_READ_SIZE = 64 * 1024;
+
+	private final ExecutorService executor;
+	private final List<Stream> streams;
+	private final Queue<ChannelRegistration> registrations;
+	private Selector selector;
+	private Thread selectorThread;
+	private volatile boolean shutdown;
+
+	/**
+	 * Create a scheduler which uses virtual threads when available, and a pool
+	 * of a worker per processor core otherwise.
+	 */
+	public StreamScheduler() {
+		this(createVirtualThreadExecutor());
+	}
+
+	/**
+	 * Create a scheduler with a fixed number of platform workers.
+	 *
+	 * @param workers
+	 *            The number of worker threads.
+	 */
+	public StreamScheduler(int workers) {
+		this(Executors.newFixedThreadPool(workers, new WorkerThreadFactory()));
+	}
+
+	/**
+	 * Create a scheduler which processes buffers on the given executor.
+	 *
+	 * @param executor
+	 *            The executor, shut down with the scheduler.
+	 */
+	public StreamScheduler(ExecutorService executor) {
+		this.executor = executor;
+		this.streams = new CopyOnWriteArrayList<Stream>();
+		this.registrations = new ConcurrentLinkedQueue<ChannelRegistration>();
+	}
+
+	/**
+	 * Uses <code>Executors.newVirtualThreadPerTaskExecutor()</code> if the
+	 * runtime has virtual threads. The method is looked up by reflection to
+	 * keep running on Java 17 and Android.
+	 */
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService executor = (ExecutorService) factory.invoke(null);
+			LOG.fine("Streams are processed on virtual threads.");
+			return executor;
+		} catch (NoSuchMethodException e) {
+			// No virtual threads, Java 20 or older.
+		} catch (ReflectiveOperationException e) {
+			LOG.log(Level.WARNING, "Could not create virtual threads, using a fixed pool.", e);
+		}
+		int workers = Runtime.getRuntime().availableProcessors();
+		return Executors.newFixedThreadPool(workers, new WorkerThreadFactory());
+	}
+
+	/**
+	 * Create a stream to which audio is pushed.
+	 *
+	 * @param name
+	 *            A name for the stream, used in log messages.
+	 * @param format
+	 *            The format of the pushed bytes.
+	 * @param bufferSize
+	 *            The size of each buffer, in samples.
+	 * @param overlap
+	 *            The overlap between buffers, in samples.
+	 * @return The new stream.
+	 */
+	public Stream createStream(String name, TarsosDSPAudioFormat format, int bufferSize, int overlap) {
+		return createStream(name, format, bufferSize, overlap, DEFAULT_MAX_PENDING_SECONDS);
+	}
+
+	/**
+	 * Create a stream to which audio is pushed. The memory for waiting audio
+	 * grows with the amount which is waiting, up to the given maximum.
+	 *
+	 * @param name
+	 *            A name for the stream, used in log messages.
+	 * @param format
+	 *            The format of the pushed bytes.
+	 * @param bufferSize
+	 *            The size of each buffer, in samples.
+	 * @param overlap
+	 *            The overlap between buffers, in samples.
+	 * @param maxPendingSeconds
+	 *            The number of seconds of audio which can wait for a worker
+	 *            before the oldest audio is dropped.
+	 * @return The new stream.
+	 */
+	public Stream createStream(String name, TarsosDSPAudioFormat format, int bufferSize, int overlap, double maxPendingSeconds) {
+		if (shutdown) {
+			throw new IllegalStateException("The scheduler is shut down.");
+		}
+		Stream stream = new Stream(name, format, bufferSize, overlap, maxPendingSeconds);
+		streams.add(stream);
+		return stream;
+	}
+
+	/**
+	 * Create a stream which is read from a channel. The channel is switched to
+	 * non-blocking mode and polled by the selector thread of the scheduler.
+	 * At the end of the channel the stream is closed.
+	 *
+	 * @param name
+	 *            A name for the stream, used in log messages.
+	 * @param channel
+	 *            A selectable channel, e.g. a socket or a pipe.
+	 * @param format
+	 *            The format of the bytes in the channel.
+	 * @param bufferSize
+	 *            The size of each buffer, in samples.
+	 * @param overlap
+	 *            The overlap between buffers, in samples.
+	 * @return The new stream.
+	 * @throws IOException
+	 *             If the channel can not be made non-blocking or the selector
+	 *             can not be opened.
+	 */
+	public <C extends SelectableChannel & ReadableByteChannel> Stream createStream(String name, C channel, TarsosDSPAudioFormat format, int bufferSize, int overlap) throws IOException {
+		return createStream(name, channel, format, bufferSize, overlap, DEFAULT_MAX_PENDING_SECONDS);
+	}
+
+	/**
+	 * Create a stream which is read from a channel, like
+	 * {@link #createStream(String, SelectableChannel, TarsosDSPAudioFormat, int, int)},
+	 * with a maximum amount of waiting audio.
+	 *
+	 * @param name
+	 *            A name for the stream, used in log messages.
+	 * @param channel
+	 *            A selectable channel, e.g. a socket or a pipe.
+	 * @param format
+	 *            The format of the bytes in the channel.
+	 * @param bufferSize
+	 *            The size of each buffer, in samples.
+	 * @param overlap
+	 *            The overlap between buffers, in samples.
+	 * @param maxPendingSeconds
+	 *            The number of seconds of audio which can wait for a worker
+	 *            before the oldest audio is dropped.
+	 * @return The new stream.
+	 * @throws IOException
+	 *             If the channel can not be made non-blocking or the selector
+	 *             can not be opened.
+	 */
+	public <C extends SelectableChannel & ReadableByteChannel> Stream createStream(String name, C channel, TarsosDSPAudioFormat format, int bufferSize, int overlap, double maxPendingSeconds) throws IOException {
+		Stream stream = createStream(name, format, bufferSize, overlap, maxPendingSeconds);
+		channel.configureBlocking(false);
+		startSelector();
+		registrations.add(new ChannelRegistration(channel, stream));
+		selector.wakeup();
+		return stream;
+	}
+
+	/**
+	 * @return The streams which are not finished.
+	 */
+	public List<Stream> getStreams() {
+		return new ArrayList<Stream>(streams);
+	}
+
+	/**
+	 * Closes all streams, stops the selector and the workers once the pending
+	 * audio is processed.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		for (Stream stream : streams) {
+			stream.close();
+		}
+		synchronized (this) {
+			if (selector != null) {
+				selector.wakeup();
+			}
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits for the workers to finish after {@link #shutdown()}.
+	 *
+	 * @param timeout
+	 *            The maximum time to wait.
+	 * @param unit
+	 *            The unit of the timeout.
+	 * @return True if the workers are done.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	private synchronized void startSelector() throws IOException {
+		if (selector != null) {
+			return;
+		}
+		selector = Selector.open();
+		selectorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				poll();
+			}
+		}, "TarsosDSP stream selector");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/**
+	 * The loop of the selector thread: reads all channels with data and
+	 * pushes the bytes to their streams.
+	 */
+	private void poll() {
+		ByteBuffer readBuffer = ByteBuffer.allocate(CHANNEL_READ_SIZE);
+		while (!shutdown) {
+			try {
+				ChannelRegistration registration;
+				while ((registration = registrations.poll()) != null) {
+					try {
+						registration.channel.register(selector, SelectionKey.OP_READ, registration.stream);
+					} catch (ClosedChannelException e) {
+						registration.stream.close();
+					}
+				}
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					read(key, readBuffer);
+				}
+			} catch (IOException e) {
+				LOG.log(Level.SEVERE, "Error while polling audio channels.", e);
+				break;
+			}
+		}
+		for (SelectionKey key : selector.keys()) {
+			closeChannel(key);
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Could not close the selector.", e);
+		}
+	}
+
+	private void read(SelectionKey key, ByteBuffer readBuffer) {
+		Stream stream = (Stream) key.attachment();
+		if (stream.isClosed()) {
+			closeChannel(key);
+			return;
+		}
+		ReadableByteChannel channel = (ReadableByteChannel) key.channel();
+		readBuffer.clear();
+		readBuffer.limit(Math.min(readBuffer.capacity(), stream.maxPendingBytes));
+		int bytesRead;
+		try {
+			bytesRead = channel.read(readBuffer);
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Error while reading stream " + stream.getName(), e);
+			bytesRead = -1;
+		}
+		if (bytesRead > 0) {
+			if (!stream.offer(readBuffer.array(), 0, bytesRead)) {
+				// Closed by another thread since the check above.
+				closeChannel(key);
+			}
+		} else if (bytesRead < 0) {
+			closeChannel(key);
+		}
+	}
+
+	private static void closeChannel(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Could not close a channel.", e);
+		}
+		((Stream) key.attachment()).close();
+	}
+
+	/**
+	 * One live stream: a queue of pushed bytes, the framing state and the
+	 * chain of processors.
+	 */
+	public final class Stream {
+		private final String name;
+		private final TarsosDSPAudioFormat format;
+		private final TarsosDSPAudioFloatConverter converter;
+		private final int frameSize;
+		private final int bufferSize;
+		private final int stepSize;
+		private final int overlap;
+		private final List<AudioProcessor> audioProcessors;
+		private final AtomicBoolean scheduled;
+		private final CountDownLatch finished;
+		private final Runnable drainTask;
+
+		// Pushed bytes, guarded by the stream. The queue grows up to the
+		// maximum when the workers fall behind.
+		private final int maxPendingBytes;
+		private byte[] pending;
+		private int pendingStart;
+		private int pendingLength;
+		private long droppedBytes;
+		private long samplesToSkip;
+		private boolean closed;
+
+		// Framing state, only used by the worker draining the stream.
+		private final byte[] chunk;
+		private final float[] chunkSamples;
+		private final AudioEvent audioEvent;
+		private final float[] buffer;
+		private int samplesNeeded;
+		private boolean firstBuffer;
+		private long samplesConsumed;
+		private long frameStart;
+		private volatile boolean done;
+
+		private Stream(String name, TarsosDSPAudioFormat format, int bufferSize, int overlap, double maxPendingSeconds) {
+			if (overlap >= bufferSize || overlap < 0) {
+				throw new IllegalArgumentException("The overlap should be smaller than the buffer size and positive.");
+			}
+			if (!(maxPendingSeconds > 0)) {
+				throw new IllegalArgumentException("The maximum pending audio should be positive: " + maxPendingSeconds);
+			}
+			this.name = name;
+			this.format = format;
+			this.converter = TarsosDSPAudioFloatConverter.getConverter(format);
+			this.frameSize = format.getFrameSize();
+			this.bufferSize = bufferSize;
+			this.overlap = overlap;
+			this.stepSize = bufferSize - overlap;
+			this.audioProcessors = new CopyOnWriteArrayList<AudioProcessor>();
+			this.scheduled = new AtomicBoolean();
+			this.finished = new CountDownLatch(1);
+
+			this.chunk = new byte[Math.max(bufferSize, 4096) * frameSize];
+			long pendingFrames = Math.max(bufferSize, (long) Math.ceil(format.getSampleRate() * maxPendingSeconds));
+			this.maxPendingBytes = (int) Math.min(pendingFrames * frameSize, (Integer.MAX_VALUE - 8) / frameSize * frameSize);
+			this.pending = new byte[Math.min(chunk.length, maxPendingBytes)];
+			this.chunkSamples = new float[chunk.length / frameSize];
+
+			this.audioEvent = new AudioEvent(format);
+			this.buffer = new float[bufferSize];
+			this.samplesNeeded = bufferSize;
+			this.firstBuffer = true;
+			this.drainTask = new Runnable() {
+				@Override
+				public void run() {
+					drain();
+				}
+			};
+		}
+
+		/**
+		 * @return The name of the stream.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The format of the stream.
+		 */
+		public TarsosDSPAudioFormat getFormat() {
+			return format;
+		}
+
+		/**
+		 * Adds a processor to the chain of the stream.
+		 *
+		 * @param audioProcessor
+		 *            The processor to add.
+		 */
+		public void addAudioProcessor(AudioProcessor audioProcessor) {
+			audioProcessors.add(audioProcessor);
+		}
+
+		/**
+		 * Removes a processor from the chain and calls processingFinished.
+		 *
+		 * @param audioProcessor
+		 *            The processor to remove.
+		 */
+		public void removeAudioProcessor(AudioProcessor audioProcessor) {
+			audioProcessors.remove(audioProcessor);
+			audioProcessor.processingFinished();
+		}
+
+		/**
+		 * Adds audio to the stream. The call does not block: the bytes are
+		 * copied and the stream is scheduled on a worker once a buffer is
+		 * complete. When the workers can not keep up and more than the maximum
+		 * pending audio, ten seconds by default, is waiting, the oldest audio
+		 * is dropped. The buffer before
+		 * the gap is then processed zero padded, like a last buffer, and
+		 * framing starts over after the gap, so time stamps account for
+		 * dropped audio.
+		 *
+		 * @param bytes
+		 *            The audio, in the format of the stream.
+		 * @param offset
+		 *            The offset of the first byte.
+		 * @param length
+		 *            The number of bytes, not necessarily whole frames.
+		 * @throws IllegalStateException
+		 *             If the stream is closed.
+		 */
+		public void push(byte[] bytes, int offset, int length) {
+			if (!offer(bytes, offset, length)) {
+				throw new IllegalStateException("The stream " + name + " is closed.");
+			}
+		}
+
+		/**
+		 * Adds audio like {@link #push(byte[], int, int)}, unless the stream
+		 * is closed.
+		 *
+		 * @return False if the stream is closed and nothing was added.
+		 */
+		private boolean offer(byte[] bytes, int offset, int length) {
+			synchronized (this) {
+				if (closed) {
+					return false;
+				}
+				if (length > maxPendingBytes) {
+					throw new IllegalArgumentException("Push at most " + maxPendingBytes + " bytes at once.");
+				}
+				int free = pending.length - pendingLength;
+				if (length > free && pending.length < maxPendingBytes) {
+					grow(pendingLength + length);
+					free = pending.length - pendingLength;
+				}
+				if (length > free) {
+					// Drop whole frames at the start of the queue.
+					int drop = (length - free + frameSize - 1) / frameSize * frameSize;
+					pendingStart = (pendingStart + drop) % pending.length;
+					pendingLength -= drop;
+					droppedBytes += drop;
+					samplesToSkip += drop / frameSize;
+				}
+				int end = (pendingStart + pendingLength) % pending.length;
+				int first = Math.min(length, pending.length - end);
+				System.arraycopy(bytes, offset, pending, end, first);
+				System.arraycopy(bytes, offset + first, pending, 0, length - first);
+				pendingLength += length;
+			}
+			schedule();
+			return true;
+		}
+
+		/**
+		 * Doubles the queue until it holds the required number of bytes or
+		 * reaches the maximum, keeping the queued bytes in order.
+		 */
+		private void grow(int required) {
+			long capacity = pending.length;
+			while (capacity < required) {
+				capacity *= 2;
+			}
+			byte[] grown = new byte[(int) Math.min(capacity, maxPendingBytes)];
+			int first = Math.min(pendingLength, pending.length - pendingStart);
+			System.arraycopy(pending, pendingStart, grown, 0, first);
+			System.arraycopy(pending, 0, grown, first, pendingLength - first);
+			pending = grown;
+			pendingStart = 0;
+		}
+
+		/**
+		 * Marks the end of the stream. The remaining audio is processed, the
+		 * last buffer is zero padded, and the processors are notified.
+		 */
+		public void close() {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+			}
+			schedule();
+		}
+
+		/**
+		 * @return True if no more audio can be pushed.
+		 */
+		public synchronized boolean isClosed() {
+			return closed;
+		}
+
+		/**
+		 * @return True if all audio is processed after the stream is closed.
+		 */
+		public boolean isFinished() {
+			return done;
+		}
+
+		/**
+		 * Waits until all audio is processed after the stream is closed.
+		 *
+		 * @param timeout
+		 *            The maximum time to wait.
+		 * @param unit
+		 *            The unit of the timeout.
+		 * @return True if the stream is finished.
+		 * @throws InterruptedException
+		 *             If interrupted while waiting.
+		 */
+		public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+			return finished.await(timeout, unit);
+		}
+
+		/**
+		 * @return The number of bytes dropped because the workers could not
+		 *         keep up.
+		 */
+		public synchronized long getDroppedBytes() {
+			return droppedBytes;
+		}
+
+		/**
+		 * @return The number of seconds of audio processed.
+		 */
+		public double secondsProcessed() {
+			return samplesConsumed / (double) format.getSampleRate();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(drainTask);
+				} catch (RuntimeException e) {
+					scheduled.set(false);
+					LOG.log(Level.SEVERE, "Could not schedule stream " + name, e);
+				}
+			}
+		}
+
+		private synchronized boolean hasWork() {
+			return !done && (pendingLength >= frameSize || closed);
+		}
+
+		/**
+		 * Processes all complete buffers. Only one worker drains a stream at a
+		 * time: the stream is scheduled again if audio arrived while the
+		 * previous drain was finishing.
+		 */
+		private void drain() {
+			do {
+				try {
+					drainPending();
+				} catch (RuntimeException e) {
+					LOG.log(Level.SEVERE, "Error while processing stream " + name + ", the stream is closed.", e);
+					synchronized (this) {
+						closed = true;
+						pendingLength = 0;
+					}
+					finish();
+				}
+				scheduled.set(false);
+			} while (hasWork() && scheduled.compareAndSet(false, true));
+		}
+
+		private void drainPending() {
+			while (!done) {
+				int bytes;
+				long skip;
+				boolean end;
+				synchronized (this) {
+					bytes = Math.min(pendingLength / frameSize * frameSize, chunk.length);
+					int first = Math.min(bytes, pending.length - pendingStart);
+					System.arraycopy(pending, pendingStart, chunk, 0, first);
+					System.arraycopy(pending, 0, chunk, first, bytes - first);
+					pendingStart = (pendingStart + bytes) % pending.length;
+					pendingLength -= bytes;
+					skip = samplesToSkip;
+					samplesToSkip = 0;
+					end = closed && pendingLength < frameSize;
+				}
+				if (skip > 0) {
+					restartFraming(skip);
+				}
+				if (bytes > 0) {
+					int samples = bytes / frameSize;
+					converter.toFloatArray(chunk, 0, chunkSamples, 0, samples);
+					frame(samples);
+				}
+				if (end) {
+					processLastBuffer();
+					finish();
+				} else if (bytes == 0) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Adds converted samples to the buffer, processing each complete
+		 * buffer.
+		 */
+		private void frame(int samples) {
+			int offset = 0;
+			while (offset < samples) {
+				int count = Math.min(samplesNeeded, samples - offset);
+				System.arraycopy(chunkSamples, offset, buffer, bufferSize - samplesNeeded, count);
+				offset += count;
+				samplesNeeded -= count;
+				samplesConsumed += count;
+				if (samplesNeeded == 0) {
+					process(bufferSize);
+					samplesNeeded = stepSize;
+				}
+			}
+		}
+
+		/**
+		 * Continues after dropped audio: the audio before the gap is
+		 * processed and the next buffer starts after the gap, without
+		 * overlap.
+		 */
+		private void restartFraming(long skippedSamples) {
+			processLastBuffer();
+			samplesConsumed += skippedSamples;
+			frameStart = samplesConsumed;
+			samplesNeeded = bufferSize;
+			firstBuffer = true;
+		}
+
+		private void processLastBuffer() {
+			int missing = samplesNeeded;
+			int needed = firstBuffer ? bufferSize : stepSize;
+			if (missing < needed) {
+				// Some audio was added to the buffer: zero pad and process.
+				Arrays.fill(buffer, bufferSize - missing, bufferSize, 0);
+				process(bufferSize - missing);
+			}
+		}
+
+		private void process(int validSamples) {
+			audioEvent.setFloatBuffer(buffer);
+			audioEvent.setOverlap(firstBuffer ? 0 : overlap);
+			audioEvent.setBytesProcessed(frameStart * frameSize);
+			audioEvent.setValidSamples(0, validSamples);
+			for (AudioProcessor processor : audioProcessors) {
+				if (!processor.process(audioEvent)) {
+					break;
+				}
+			}
+			firstBuffer = false;
+			frameStart = samplesConsumed;
+			System.arraycopy(buffer, stepSize, buffer, 0, overlap);
+		}
+
+		private void finish() {
+			if (done) {
+				return;
+			}
+			done = true;
+			for (AudioProcessor processor : audioProcessors) {
+				processor.processingFinished();
+			}
+			streams.remove(this);
+			finished.countDown();
+		}
+	}
+
+	private static final class ChannelRegistration {
+		private final SelectableChannel channel;
+		private final Stream stream;
+
+		private ChannelRegistration(SelectableChannel channel, Stream stream) {
+			this.channel = channel;
+			this.stream = stream;
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "TarsosDSP stream worker " + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
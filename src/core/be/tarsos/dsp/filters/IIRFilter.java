@@ -43,7 +43,7 @@
 package be.tarsos.dsp.filters;
 
 import be.tarsos.dsp.AudioEvent;
-import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.ElementwiseAudioProcessor;
 
 /**
  * An Infinite Impulse Response, or IIR, filter is a filter that uses a set of
@@ -59,7 +59,7 @@ import be.tarsos.dsp.AudioProcessor;
  * @author Joren Six
  * 
  */
-public abstract class IIRFilter implements AudioProcessor {
+public abstract class IIRFilter implements ElementwiseAudioProcessor {
 	
 	/** The b coefficients. */
 	protected float[] b;
@@ -131,8 +131,18 @@ public abstract class IIRFilter implements AudioProcessor {
 	@Override
 	public boolean process(AudioEvent audioEvent) {
 		float[] audioFloatBuffer = audioEvent.getFloatBuffer();
-		
-		for (int i = audioEvent.getOverlap(); i < audioFloatBuffer.length; i++) {
+		processRange(audioFloatBuffer, beginBuffer(audioEvent), audioFloatBuffer.length);
+		return true;
+	}
+
+	@Override
+	public int beginBuffer(AudioEvent audioEvent) {
+		return audioEvent.getOverlap();
+	}
+
+	@Override
+	public void processRange(float[] audioFloatBuffer, int from, int to) {
+		for (int i = from; i < to; i++) {
 			//shift the in array
 			System.arraycopy(in, 0, in, 1, in.length - 1);
 			in[0] = audioFloatBuffer[i];
@@ -152,7 +162,6 @@ public abstract class IIRFilter implements AudioProcessor {
 			
 			audioFloatBuffer[i] = y;
 		} 
-		return true;
 	}
 	
 
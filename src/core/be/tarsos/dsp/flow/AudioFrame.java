@@ -0,0 +1,132 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.flow;
+
+import java.util.Queue;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+
+/**
+ * A copy of one buffer of an audio stream, published by an
+ * {@link AudioFramePublisher}. Frames come from a pool of the publisher: call
+ * {@link #release()} once the frame is consumed so it can be reused. A frame
+ * which is not released is simply garbage collected and replaced by a new
+ * one.
+ */
+public final class AudioFrame {
+
+	private final Queue<AudioFrame> pool;
+	private float[] samples;
+	private int length;
+	private int overlap;
+	private long samplesProcessed;
+	private TarsosDSPAudioFormat format;
+	private boolean released;
+
+	AudioFrame(Queue<AudioFrame> pool, int capacity) {
+		this.pool = pool;
+		this.samples = new float[capacity];
+	}
+
+	/**
+	 * Copies the buffer and the position of an audio event.
+	 */
+	void fill(AudioEvent audioEvent) {
+		float[] buffer = audioEvent.getFloatBuffer();
+		if (samples.length < buffer.length) {
+			samples = new float[buffer.length];
+		}
+		System.arraycopy(buffer, 0, samples, 0, buffer.length);
+		length = buffer.length;
+		overlap = audioEvent.getOverlap();
+		samplesProcessed = audioEvent.getSamplesProcessed();
+		format = audioEvent.getFormat();
+		released = false;
+	}
+
+	/**
+	 * @return The samples of the frame. The array can be longer than the
+	 *         frame, only the first {@link #getLength()} samples are valid.
+	 */
+	public float[] getSamples() {
+		return samples;
+	}
+
+	/**
+	 * @return The number of samples in the frame.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return The number of samples shared with the previous frame.
+	 */
+	public int getOverlap() {
+		return overlap;
+	}
+
+	/**
+	 * @return The position of the frame in the stream, in samples.
+	 */
+	public long getSamplesProcessed() {
+		return samplesProcessed;
+	}
+
+	/**
+	 * @return The time stamp of the frame, in seconds.
+	 */
+	public double getTimeStamp() {
+		return samplesProcessed / (double) format.getSampleRate();
+	}
+
+	/**
+	 * @return The format of the stream.
+	 */
+	public TarsosDSPAudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return A copy of the valid samples.
+	 */
+	public float[] toArray() {
+		float[] copy = new float[length];
+		System.arraycopy(samples, 0, copy, 0, length);
+		return copy;
+	}
+
+	/**
+	 * Returns the frame to the pool of the publisher. The frame should not be
+	 * used after it is released.
+	 */
+	public void release() {
+		if (!released) {
+			released = true;
+			pool.offer(this);
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.flow;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioGenerator;
+import be.tarsos.dsp.AudioProcessor;
+
+/**
+ * <p>
+ * Publishes the buffers of an {@link AudioDispatcher} or an
+ * {@link AudioGenerator} as {@link AudioFrame}s to one
+ * {@link Flow.Subscriber}. The publisher honors the demand of the subscriber:
+ * when no frames are requested the dispatching thread waits, so no more audio
+ * is read until the subscriber catches up. Nothing is buffered.
+ * </p>
+ * <p>
+ * The source is started when the subscriber subscribes, on a new thread or on
+ * the given executor. Cancelling the subscription stops the source. When the
+ * source is done the subscriber is completed. Frames are copies taken from a
+ * pool: subscribers should {@link AudioFrame#release()} them when done.
+ * </p>
+ *
+ * <pre>
+ * AudioDispatcher dispatcher = AudioDispatcherFactory.fromFile(file, 2048, 1024);
+ * AudioFramePublisher publisher = new AudioFramePublisher(dispatcher);
+ * publisher.subscribe(subscriber);
+ * </pre>
+ */
+public class AudioFramePublisher implements Flow.Publisher<AudioFrame> {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(AudioFramePublisher.class.getName());
+
+	/**
+	 * The number of released frames kept for reuse.
+	 */
+	private static final int POOL_SIZE = 16;
+
+	private final Runnable source;
+	private final Runnable stopper;
+	private final Executor executor;
+	private final Queue<AudioFrame> pool;
+	private final Object lock = new Object();
+
+	private Flow.Subscriber<? super AudioFrame> subscriber;
+	private long demand;
+	private boolean cancelled;
+	private boolean terminated;
+
+	/**
+	 * Publish the buffers of a dispatcher, which is run on a new thread.
+	 *
+	 * @param dispatcher
+	 *            The dispatcher, not yet running.
+	 */
+	public AudioFramePublisher(final AudioDispatcher dispatcher) {
+		this(dispatcher, null);
+	}
+
+	/**
+	 * Publish the buffers of a dispatcher.
+	 *
+	 * @param dispatcher
+	 *            The dispatcher, not yet running.
+	 * @param executor
+	 *            Runs the dispatcher, or null to use a new thread.
+	 */
+	public AudioFramePublisher(final AudioDispatcher dispatcher, Executor executor) {
+		this(dispatcher, new Runnable() {
+			@Override
+			public void run() {
+				dispatcher.stop();
+			}
+		}, executor);
+		dispatcher.addAudioProcessor(new Emitter());
+	}
+
+	/**
+	 * Publish the buffers of a generator, which is run on a new thread. A
+	 * generator does not end: cancel the subscription to stop it.
+	 *
+	 * @param generator
+	 *            The generator, not yet running.
+	 */
+	public AudioFramePublisher(final AudioGenerator generator) {
+		this(generator, null);
+	}
+
+	/**
+	 * Publish the buffers of a generator.
+	 *
+	 * @param generator
+	 *            The generator, not yet running.
+	 * @param executor
+	 *            Runs the generator, or null to use a new thread.
+	 */
+	public AudioFramePublisher(final AudioGenerator generator, Executor executor) {
+		this(generator, new Runnable() {
+			@Override
+			public void run() {
+				generator.stop();
+			}
+		}, executor);
+		generator.addAudioProcessor(new Emitter());
+	}
+
+	private AudioFramePublisher(Runnable source, Runnable stopper, Executor executor) {
+		this.source = source;
+		this.stopper = stopper;
+		this.executor = executor;
+		this.pool = new ArrayBlockingQueue<AudioFrame>(POOL_SIZE);
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super AudioFrame> newSubscriber) {
+		if (newSubscriber == null) {
+			throw new NullPointerException("The subscriber should not be null.");
+		}
+		synchronized (lock) {
+			if (subscriber != null) {
+				newSubscriber.onSubscribe(new Flow.Subscription() {
+					@Override
+					public void request(long n) {
+					}
+
+					@Override
+					public void cancel() {
+					}
+				});
+				newSubscriber.onError(new IllegalStateException("The publisher accepts only one subscriber."));
+				return;
+			}
+			subscriber = newSubscriber;
+		}
+		newSubscriber.onSubscribe(new FrameSubscription());
+		Runnable run = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					source.run();
+				} catch (RuntimeException e) {
+					fail(e);
+				} catch (Error e) {
+					fail(e);
+					throw e;
+				}
+			}
+		};
+		if (executor == null) {
+			Thread thread = new Thread(run, "TarsosDSP frame publisher");
+			thread.setDaemon(true);
+			thread.start();
+		} else {
+			executor.execute(run);
+		}
+	}
+
+	/**
+	 * Waits for demand, called on the dispatching thread.
+	 *
+	 * @return False if the subscription is cancelled.
+	 */
+	private boolean awaitDemand() {
+		synchronized (lock) {
+			while (demand == 0 && !cancelled) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					cancelled = true;
+				}
+			}
+			if (cancelled) {
+				return false;
+			}
+			demand--;
+			return true;
+		}
+	}
+
+	private AudioFrame obtainFrame(int capacity) {
+		AudioFrame frame = pool.poll();
+		if (frame == null) {
+			frame = new AudioFrame(pool, capacity);
+		}
+		return frame;
+	}
+
+	private void complete() {
+		Flow.Subscriber<? super AudioFrame> target;
+		synchronized (lock) {
+			if (terminated || cancelled) {
+				return;
+			}
+			terminated = true;
+			target = subscriber;
+		}
+		target.onComplete();
+	}
+
+	private void fail(Throwable failure) {
+		Flow.Subscriber<? super AudioFrame> target;
+		synchronized (lock) {
+			if (terminated || cancelled) {
+				return;
+			}
+			terminated = true;
+			target = subscriber;
+		}
+		target.onError(failure);
+	}
+
+	/**
+	 * Signals an error caused by the subscriber and stops the source: the
+	 * subscription is cancelled as well.
+	 */
+	private void reject(Throwable failure) {
+		Flow.Subscriber<? super AudioFrame> target;
+		synchronized (lock) {
+			if (terminated || cancelled) {
+				return;
+			}
+			terminated = true;
+			cancelled = true;
+			target = subscriber;
+			lock.notifyAll();
+		}
+		target.onError(failure);
+		LOG.fine("Invalid request, stopping the audio source.");
+		stopper.run();
+	}
+
+	private void cancel() {
+		boolean stop;
+		synchronized (lock) {
+			stop = !cancelled && !terminated;
+			cancelled = true;
+			lock.notifyAll();
+		}
+		if (stop) {
+			LOG.fine("Subscription cancelled, stopping the audio source.");
+			stopper.run();
+		}
+	}
+
+	/**
+	 * Adds requested frames to the demand.
+	 */
+	private final class FrameSubscription implements Flow.Subscription {
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				reject(new IllegalArgumentException("The number of requested frames should be positive, it is " + n));
+				return;
+			}
+			synchronized (lock) {
+				demand += n;
+				if (demand < 0) {
+					// Overflow: unbounded demand.
+					demand = Long.MAX_VALUE;
+				}
+				lock.notifyAll();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			AudioFramePublisher.this.cancel();
+		}
+	}
+
+	/**
+	 * The processor added to the source: copies each buffer into a frame when
+	 * the subscriber asks for one.
+	 */
+	private final class Emitter implements AudioProcessor {
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			if (!awaitDemand()) {
+				return false;
+			}
+			AudioFrame frame = obtainFrame(audioEvent.getBufferSize());
+			frame.fill(audioEvent);
+			subscriber.onNext(frame);
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+			complete();
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.flow;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+
+/**
+ * <p>
+ * A subscriber which sends received {@link AudioFrame}s through a chain of
+ * {@link AudioProcessor}s, like an {@link be.tarsos.dsp.AudioDispatcher}
+ * would. Frames are requested in batches: a new batch is requested when half
+ * of the previous one is processed. Each frame is released after the chain
+ * is done with it.
+ * </p>
+ * <p>
+ * When the publisher completes or fails, the processors are notified with
+ * {@link AudioProcessor#processingFinished()}.
+ * </p>
+ */
+public class AudioFrameSubscriber implements Flow.Subscriber<AudioFrame> {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(AudioFrameSubscriber.class.getName());
+
+	private final List<AudioProcessor> audioProcessors;
+	private final int batchSize;
+	private final CountDownLatch finished;
+
+	private Flow.Subscription subscription;
+	private AudioEvent audioEvent;
+	private float[] buffer;
+	private int outstanding;
+	private volatile Throwable failure;
+
+	/**
+	 * Create a subscriber which requests frames in batches of 16.
+	 *
+	 * @param processors
+	 *            The chain of processors.
+	 */
+	public AudioFrameSubscriber(AudioProcessor... processors) {
+		this(16, processors);
+	}
+
+	/**
+	 * Create a subscriber.
+	 *
+	 * @param batchSize
+	 *            The number of frames requested at once.
+	 * @param processors
+	 *            The chain of processors.
+	 */
+	public AudioFrameSubscriber(int batchSize, AudioProcessor... processors) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch size should be at least one.");
+		}
+		this.batchSize = batchSize;
+		this.audioProcessors = Arrays.asList(processors);
+		this.finished = new CountDownLatch(1);
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription newSubscription) {
+		if (subscription != null) {
+			newSubscription.cancel();
+			return;
+		}
+		subscription = newSubscription;
+		outstanding = batchSize;
+		subscription.request(batchSize);
+	}
+
+	@Override
+	public void onNext(AudioFrame frame) {
+		try {
+			process(frame);
+		} finally {
+			frame.release();
+		}
+		outstanding--;
+		if (outstanding <= batchSize / 2) {
+			subscription.request(batchSize - outstanding);
+			outstanding = batchSize;
+		}
+	}
+
+	private void process(AudioFrame frame) {
+		if (audioEvent == null || audioEvent.getFormat() != frame.getFormat()) {
+			audioEvent = new AudioEvent(frame.getFormat());
+		}
+		float[] samples = frame.getSamples();
+		if (samples.length != frame.getLength()) {
+			// Only the valid samples are sent through the chain.
+			if (buffer == null || buffer.length != frame.getLength()) {
+				buffer = new float[frame.getLength()];
+			}
+			System.arraycopy(samples, 0, buffer, 0, frame.getLength());
+			samples = buffer;
+		}
+		audioEvent.setFloatBuffer(samples);
+		audioEvent.setOverlap(frame.getOverlap());
+		audioEvent.setBytesProcessed(frame.getSamplesProcessed() * frame.getFormat().getFrameSize());
+		for (AudioProcessor processor : audioProcessors) {
+			if (!processor.process(audioEvent)) {
+				break;
+			}
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		LOG.log(Level.WARNING, "The audio frame publisher failed.", throwable);
+		failure = throwable;
+		finish();
+	}
+
+	@Override
+	public void onComplete() {
+		finish();
+	}
+
+	private void finish() {
+		for (AudioProcessor processor : audioProcessors) {
+			processor.processingFinished();
+		}
+		finished.countDown();
+	}
+
+	/**
+	 * Stops receiving frames.
+	 */
+	public void cancel() {
+		if (subscription != null) {
+			subscription.cancel();
+		}
+	}
+
+	/**
+	 * Waits until the publisher completes or fails.
+	 *
+	 * @param timeout
+	 *            The maximum time to wait.
+	 * @param unit
+	 *            The unit of the timeout.
+	 * @return True if the publisher is done.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+		return finished.await(timeout, unit);
+	}
+
+	/**
+	 * @return The failure reported by the publisher, or null.
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+}
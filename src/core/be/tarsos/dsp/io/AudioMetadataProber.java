@@ -0,0 +1,393 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.logging.Logger;
+
+/**
+ * Reads the duration, sample rate and number of channels of an audio file from
+ * its headers, without decoding it or starting a process. Supported are WAV and
+ * AIFF, FLAC (STREAMINFO), Ogg Vorbis and Opus (the granule position of the
+ * last page) and MP3 (the Xing, Info or VBRI header, or the bit rate of a
+ * constant bit rate file). Other resources, e.g. streams or other formats, are
+ * probed with a {@link PipeDecoder}, which caches its results.
+ */
+public class AudioMetadataProber {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(AudioMetadataProber.class.getName());
+
+	/**
+	 * The number of bytes read from the start and from the end of a file.
+	 */
+	private static final int HEAD_SIZE = 64 * 1024;
+	private static final int TAIL_SIZE = 64 * 1024;
+
+	private static final int[][] MP3_BIT_RATES = {
+			// MPEG 1, layer I, II and III
+			{ 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 },
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 },
+			{ 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 },
+			// MPEG 2 and 2.5, layer I and layers II and III
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 },
+			{ 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 } };
+
+	private static final int[] MP3_SAMPLE_RATES = { 44100, 48000, 32000 };
+
+	/**
+	 * The number of chained frame headers which identify an MP3 stream.
+	 */
+	private static final int MP3_SYNC_FRAMES = 3;
+
+	private PipeDecoder fallback;
+
+	/**
+	 * Probes files which can not be read from their headers with a
+	 * {@link PipeDecoder}, created when it is first needed.
+	 */
+	public AudioMetadataProber() {
+	}
+
+	/**
+	 * @param fallback
+	 *            The decoder which probes files which can not be read from
+	 *            their headers, or null to only read headers.
+	 */
+	public AudioMetadataProber(PipeDecoder fallback) {
+		this.fallback = fallback;
+	}
+
+	/**
+	 * Probes a resource: from its headers if it is a local file in a supported
+	 * format, otherwise with a decoder.
+	 *
+	 * @param resource
+	 *            The resource to probe.
+	 * @return The probe, with -1 for unknown properties.
+	 */
+	public PipeDecoder.Probe probe(String resource) {
+		File file = new File(resource);
+		if (file.isFile()) {
+			PipeDecoder.Probe probe = probeHeaders(file);
+			if (probe != null) {
+				return probe;
+			}
+		}
+		synchronized (this) {
+			if (fallback == null) {
+				fallback = new PipeDecoder();
+			}
+		}
+		return fallback.probe(resource);
+	}
+
+	/**
+	 * @param resource
+	 *            The resource to probe.
+	 * @return The duration in seconds, or -1 if it is unknown.
+	 */
+	public double getDuration(String resource) {
+		return probe(resource).getDuration();
+	}
+
+	/**
+	 * Determines the number of frames a decoder produces for a local file from
+	 * its headers.
+	 *
+	 * @param resource
+	 *            The decoded resource.
+	 * @param format
+	 *            The decoded format.
+	 * @param startTimeOffset
+	 *            The start time offset, in seconds.
+	 * @param numberOfSeconds
+	 *            The number of seconds decoded. If negative the resource is
+	 *            decoded until the end.
+	 * @return The number of frames, or -1 if it is unknown.
+	 */
+	static long decodedFrameLength(String resource, TarsosDSPAudioFormat format, double startTimeOffset,
+			double numberOfSeconds) {
+		File file = new File(resource);
+		PipeDecoder.Probe probe = file.isFile() ? probeHeaders(file) : null;
+		if (probe == null || probe.getDuration() < 0) {
+			return -1;
+		}
+		double seconds = Math.max(0, probe.getDuration() - startTimeOffset);
+		if (numberOfSeconds > 0) {
+			seconds = Math.min(seconds, numberOfSeconds);
+		}
+		return Math.round(seconds * format.getSampleRate());
+	}
+
+	/**
+	 * Reads the properties of a file from its headers only.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return The probe, or null if the format is not supported or the headers
+	 *         are incomplete.
+	 */
+	public static PipeDecoder.Probe probeHeaders(File file) {
+		try {
+			RandomAccessFile input = new RandomAccessFile(file, "r");
+			try {
+				long length = input.length();
+				byte[] head = new byte[(int) Math.min(HEAD_SIZE, length)];
+				input.readFully(head);
+				ByteBuffer buffer = ByteBuffer.wrap(head);
+				String id = id(buffer, 0);
+				if (id.equals("RIFF") || id.equals("RF64") || id.equals("BW64") || id.equals("FORM")) {
+					return probeWave(file);
+				} else if (id.equals("OggS")) {
+					int tailSize = (int) Math.min(TAIL_SIZE, length);
+					byte[] tail = new byte[tailSize];
+					input.seek(length - tailSize);
+					input.readFully(tail);
+					return probeOgg(buffer, ByteBuffer.wrap(tail));
+				}
+				int start = skipId3(buffer);
+				if (start + 4 <= head.length && id(buffer, start).equals("fLaC")) {
+					return probeFlac(buffer, start + 4);
+				}
+				// Other formats, e.g. MP4, can contain what looks like a frame
+				// sync, so only files which start as MP3 streams are scanned.
+				if (start > 0 || (head.length >= 4 && mp3FrameLength(buffer.order(ByteOrder.BIG_ENDIAN).getInt(0)) > 0)) {
+					return probeMp3(buffer, start, length);
+				}
+				return null;
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			LOG.fine("Could not read the headers of " + file + ": " + e.getMessage());
+		} catch (RuntimeException e) {
+			// E.g. a header which ends early.
+			LOG.fine("Could not parse the headers of " + file + ": " + e);
+		}
+		return null;
+	}
+
+	private static String id(ByteBuffer buffer, int position) {
+		if (position + 4 > buffer.limit()) {
+			return "";
+		}
+		char[] id = new char[4];
+		for (int i = 0; i < 4; i++) {
+			id[i] = (char) (buffer.get(position + i) & 0xFF);
+		}
+		return new String(id);
+	}
+
+	private static PipeDecoder.Probe probeWave(File file) {
+		try {
+			MappedWaveInputStream stream = new MappedWaveInputStream(file);
+			try {
+				TarsosDSPAudioFormat format = stream.getFormat();
+				return new PipeDecoder.Probe(stream.getFrameLength() / (double) format.getSampleRate(),
+						(int) format.getSampleRate(), format.getChannels());
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			// E.g. compressed samples.
+			return null;
+		}
+	}
+
+	/**
+	 * @return The offset of the data after an ID3v2 tag, or 0 without a tag.
+	 */
+	private static int skipId3(ByteBuffer buffer) {
+		if (buffer.limit() < 10 || buffer.get(0) != 'I' || buffer.get(1) != 'D' || buffer.get(2) != '3') {
+			return 0;
+		}
+		int size = 0;
+		for (int i = 6; i < 10; i++) {
+			size = (size << 7) | (buffer.get(i) & 0x7F);
+		}
+		boolean footer = (buffer.get(5) & 0x10) != 0;
+		return 10 + size + (footer ? 10 : 0);
+	}
+
+	private static PipeDecoder.Probe probeFlac(ByteBuffer buffer, int position) {
+		// The first metadata block is always the STREAMINFO block.
+		if ((buffer.get(position) & 0x7F) != 0) {
+			return null;
+		}
+		int info = position + 4;
+		long bits = buffer.order(ByteOrder.BIG_ENDIAN).getLong(info + 10);
+		int sampleRate = (int) (bits >>> 44);
+		int channels = (int) ((bits >>> 41) & 0x7) + 1;
+		long samples = bits & 0xFFFFFFFFFL;
+		if (sampleRate == 0 || samples == 0) {
+			// The number of samples is unknown.
+			return null;
+		}
+		return new PipeDecoder.Probe(samples / (double) sampleRate, sampleRate, channels);
+	}
+
+	private static PipeDecoder.Probe probeOgg(ByteBuffer head, ByteBuffer tail) {
+		head.order(ByteOrder.LITTLE_ENDIAN);
+		tail.order(ByteOrder.LITTLE_ENDIAN);
+		// The first page holds the identification header of the stream.
+		int packet = 27 + (head.get(26) & 0xFF);
+		int sampleRate;
+		int channels;
+		long preSkip = 0;
+		if (head.get(packet) == 1 && id(head, packet + 1).equals("vorb")) {
+			channels = head.get(packet + 11) & 0xFF;
+			sampleRate = head.getInt(packet + 12);
+		} else if (id(head, packet).equals("Opus") && id(head, packet + 4).equals("Head")) {
+			// Opus granule positions count samples at 48kHz.
+			channels = head.get(packet + 9) & 0xFF;
+			preSkip = head.getShort(packet + 10) & 0xFFFF;
+			sampleRate = 48000;
+		} else {
+			return null;
+		}
+		int serial = head.getInt(14);
+		// The granule position of the last page of the stream is its length.
+		for (int page = tail.limit() - 27; page >= 0; page--) {
+			if (id(tail, page).equals("OggS") && tail.getInt(page + 14) == serial) {
+				long granule = tail.getLong(page + 6);
+				if (granule > 0) {
+					return new PipeDecoder.Probe((granule - preSkip) / (double) sampleRate, sampleRate, channels);
+				}
+			}
+		}
+		return null;
+	}
+
+	private static PipeDecoder.Probe probeMp3(ByteBuffer buffer, int start, long length) {
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		// Find consecutive frame headers, to skip false syncs in junk.
+		for (int position = start; position + 4 <= buffer.limit(); position++) {
+			int header = buffer.getInt(position);
+			if (mp3FrameLength(header) > 0 && isMp3Chain(buffer, position, header, length)) {
+				return probeMp3Frame(buffer, position, header, length);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return True if {@link #MP3_SYNC_FRAMES} frames with the same version,
+	 *         layer and sample rate follow each other from the position, or
+	 *         fewer which end at the end of the file.
+	 */
+	private static boolean isMp3Chain(ByteBuffer buffer, int position, int header, long length) {
+		for (int i = 0; i < MP3_SYNC_FRAMES; i++) {
+			if (position + 4 > buffer.limit()) {
+				return i > 0 && position == length;
+			}
+			int frame = buffer.getInt(position);
+			int frameLength = mp3FrameLength(frame);
+			if (frameLength <= 0 || ((frame ^ header) & 0xFFFE0C00) != 0) {
+				return false;
+			}
+			position += frameLength;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The length of the frame in bytes, or -1 if the header is not
+	 *         valid.
+	 */
+	private static int mp3FrameLength(int header) {
+		if ((header >>> 21) != 0x7FF) {
+			return -1;
+		}
+		int version = (header >>> 19) & 0x3;
+		int layer = 4 - ((header >>> 17) & 0x3);
+		int bitRateIndex = (header >>> 12) & 0xF;
+		int sampleRateIndex = (header >>> 10) & 0x3;
+		if (version == 1 || layer == 4 || bitRateIndex == 0 || bitRateIndex == 15 || sampleRateIndex == 3) {
+			return -1;
+		}
+		int bitRate = mp3BitRate(version, layer, bitRateIndex) * 1000;
+		int sampleRate = mp3SampleRate(version, sampleRateIndex);
+		int padding = (header >>> 9) & 0x1;
+		if (layer == 1) {
+			return (12 * bitRate / sampleRate + padding) * 4;
+		}
+		return mp3SamplesPerFrame(version, layer) / 8 * bitRate / sampleRate + padding;
+	}
+
+	private static int mp3BitRate(int version, int layer, int index) {
+		if (version == 3) {
+			return MP3_BIT_RATES[layer - 1][index];
+		}
+		return MP3_BIT_RATES[layer == 1 ? 3 : 4][index];
+	}
+
+	private static int mp3SampleRate(int version, int index) {
+		// Version 3 is MPEG 1, 2 is MPEG 2 and 0 is MPEG 2.5.
+		return MP3_SAMPLE_RATES[index] >> (version == 3 ? 0 : version == 2 ? 1 : 2);
+	}
+
+	private static int mp3SamplesPerFrame(int version, int layer) {
+		if (layer == 1) {
+			return 384;
+		}
+		return layer == 3 && version != 3 ? 576 : 1152;
+	}
+
+	private static PipeDecoder.Probe probeMp3Frame(ByteBuffer buffer, int position, int header, long length) {
+		int version = (header >>> 19) & 0x3;
+		int layer = 4 - ((header >>> 17) & 0x3);
+		int sampleRate = mp3SampleRate(version, (header >>> 10) & 0x3);
+		boolean mono = ((header >>> 6) & 0x3) == 3;
+		int channels = mono ? 1 : 2;
+		int samplesPerFrame = mp3SamplesPerFrame(version, layer);
+
+		// A Xing or Info header follows the side information of the first
+		// frame, a VBRI header is at a fixed offset.
+		int sideInformation = version == 3 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+		int xing = position + 4 + sideInformation;
+		String xingId = id(buffer, xing);
+		if ((xingId.equals("Xing") || xingId.equals("Info")) && (buffer.getInt(xing + 4) & 0x1) != 0) {
+			long frames = buffer.getInt(xing + 8) & 0xFFFFFFFFL;
+			return new PipeDecoder.Probe(frames * samplesPerFrame / (double) sampleRate, sampleRate, channels);
+		}
+		int vbri = position + 4 + 32;
+		if (id(buffer, vbri).equals("VBRI")) {
+			long frames = buffer.getInt(vbri + 14) & 0xFFFFFFFFL;
+			return new PipeDecoder.Probe(frames * samplesPerFrame / (double) sampleRate, sampleRate, channels);
+		}
+
+		// Without these headers the file has a constant bit rate.
+		int bitRate = mp3BitRate(version, layer, (header >>> 12) & 0xF) * 1000;
+		long audioBytes = length - position;
+		return new PipeDecoder.Probe(audioBytes * 8.0 / bitRate, sampleRate, channels);
+	}
+}
@@ -0,0 +1,312 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFormat.Encoding;
+
+/**
+ * Converters for the byte aligned formats: 16 and 32 bit signed and 32 and 64
+ * bit float, in both byte orders. Samples are read or written in one access
+ * through a byte array view {@link VarHandle}, instead of byte by byte. The
+ * JIT compiles these loops to plain loads and stores, which it unrolls and
+ * vectorizes.
+ * <p>
+ * The results are bit for bit the same as those of the converters in
+ * {@link TarsosDSPAudioFloatConverter}, which are used when view handles are
+ * not available, e.g. on older Android versions.
+ */
+final class BulkAudioFloatConverter {
+
+	private BulkAudioFloatConverter() {
+	}
+
+	private static final boolean AVAILABLE = available();
+
+	private static boolean available() {
+		try {
+			MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+			return true;
+		} catch (Throwable e) {
+			// LinkageError or UnsupportedOperationException: use the byte by
+			// byte converters.
+			return false;
+		}
+	}
+
+	private static VarHandle view(Class<?> arrayClass, ByteOrder order) {
+		return MethodHandles.byteArrayViewVarHandle(arrayClass, order);
+	}
+
+	/**
+	 * @param format
+	 *            The format to convert.
+	 * @return A bulk converter for the format, or null if there is none or if
+	 *         view handles are not available.
+	 */
+	static TarsosDSPAudioFloatConverter forFormat(TarsosDSPAudioFormat format) {
+		if (!AVAILABLE) {
+			return null;
+		}
+		int bits = format.getSampleSizeInBits();
+		boolean bigEndian = format.isBigEndian();
+		if (format.getEncoding().equals(Encoding.PCM_SIGNED)) {
+			if (bits == 16) {
+				return bigEndian ? new Signed16BigEndian() : new Signed16LittleEndian();
+			} else if (bits == 32) {
+				return bigEndian ? new Signed32BigEndian() : new Signed32LittleEndian();
+			}
+		} else if (format.getEncoding().equals(TarsosDSPAudioFloatConverter.PCM_FLOAT)) {
+			if (bits == 32) {
+				return bigEndian ? new Float32BigEndian() : new Float32LittleEndian();
+			} else if (bits == 64) {
+				return bigEndian ? new Float64BigEndian() : new Float64LittleEndian();
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Each byte order has its own class: a view handle is only compiled to a
+	 * single load or store when it is a static final constant. The loops index
+	 * from a counter, which the JIT vectorizes more readily than separately
+	 * incremented indexes.
+	 */
+
+	private static final class Signed16LittleEndian extends TarsosDSPAudioFloatConverter {
+		private static final VarHandle SHORT = view(short[].class, ByteOrder.LITTLE_ENDIAN);
+
+		@Override
+		public float[] toFloatArray(byte[] in_buff, int in_offset, float[] out_buff, int out_offset, int out_len) {
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = (short) SHORT.get(in_buff, in_offset + 2 * i) * (1.0f / 32767.0f);
+			}
+			return out_buff;
+		}
+
+		@Override
+		public float[][] toFloatArrays(byte[] in_buff, int in_offset, float[][] out_buffs, int out_offset, int out_len) {
+			int channels = out_buffs.length;
+			for (int c = 0; c < channels; c++) {
+				float[] out_buff = out_buffs[c];
+				int ix = in_offset + 2 * c;
+				for (int i = 0; i < out_len; i++) {
+					out_buff[out_offset + i] = (short) SHORT.get(in_buff, ix + 2 * channels * i) * (1.0f / 32767.0f);
+				}
+			}
+			return out_buffs;
+		}
+
+		@Override
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len, byte[] out_buff, int out_offset) {
+			for (int i = 0; i < in_len; i++) {
+				SHORT.set(out_buff, out_offset + 2 * i, (short) (int) (in_buff[in_offset + i] * 32767.0));
+			}
+			return out_buff;
+		}
+	}
+
+	private static final class Signed16BigEndian extends TarsosDSPAudioFloatConverter {
+		private static final VarHandle SHORT = view(short[].class, ByteOrder.BIG_ENDIAN);
+
+		@Override
+		public float[] toFloatArray(byte[] in_buff, int in_offset, float[] out_buff, int out_offset, int out_len) {
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = (short) SHORT.get(in_buff, in_offset + 2 * i) * (1.0f / 32767.0f);
+			}
+			return out_buff;
+		}
+
+		@Override
+		public float[][] toFloatArrays(byte[] in_buff, int in_offset, float[][] out_buffs, int out_offset, int out_len) {
+			int channels = out_buffs.length;
+			for (int c = 0; c < channels; c++) {
+				float[] out_buff = out_buffs[c];
+				int ix = in_offset + 2 * c;
+				for (int i = 0; i < out_len; i++) {
+					out_buff[out_offset + i] = (short) SHORT.get(in_buff, ix + 2 * channels * i) * (1.0f / 32767.0f);
+				}
+			}
+			return out_buffs;
+		}
+
+		@Override
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len, byte[] out_buff, int out_offset) {
+			for (int i = 0; i < in_len; i++) {
+				SHORT.set(out_buff, out_offset + 2 * i, (short) (int) (in_buff[in_offset + i] * 32767.0));
+			}
+			return out_buff;
+		}
+	}
+
+	private static final class Signed32LittleEndian extends TarsosDSPAudioFloatConverter {
+		private static final VarHandle INT = view(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+		@Override
+		public float[] toFloatArray(byte[] in_buff, int in_offset, float[] out_buff, int out_offset, int out_len) {
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = (int) INT.get(in_buff, in_offset + 4 * i) * (1.0f / (float) 0x7FFFFFFF);
+			}
+			return out_buff;
+		}
+
+		@Override
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len, byte[] out_buff, int out_offset) {
+			for (int i = 0; i < in_len; i++) {
+				INT.set(out_buff, out_offset + 4 * i, (int) (in_buff[in_offset + i] * (float) 0x7FFFFFFF));
+			}
+			return out_buff;
+		}
+	}
+
+	private static final class Signed32BigEndian extends TarsosDSPAudioFloatConverter {
+		private static final VarHandle INT = view(int[].class, ByteOrder.BIG_ENDIAN);
+
+		@Override
+		public float[] toFloatArray(byte[] in_buff, int in_offset, float[] out_buff, int out_offset, int out_len) {
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = (int) INT.get(in_buff, in_offset + 4 * i) * (1.0f / (float) 0x7FFFFFFF);
+			}
+			return out_buff;
+		}
+
+		@Override
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len, byte[] out_buff, int out_offset) {
+			for (int i = 0; i < in_len; i++) {
+				INT.set(out_buff, out_offset + 4 * i, (int) (in_buff[in_offset + i] * (float) 0x7FFFFFFF));
+			}
+			return out_buff;
+		}
+	}
+
+	private static final class Float32LittleEndian extends TarsosDSPAudioFloatConverter {
+		private static final VarHandle FLOAT = view(float[].class, ByteOrder.LITTLE_ENDIAN);
+
+		@Override
+		public float[] toFloatArray(byte[] in_buff, int in_offset, float[] out_buff, int out_offset, int out_len) {
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = (float) FLOAT.get(in_buff, in_offset + 4 * i);
+			}
+			return out_buff;
+		}
+
+		@Override
+		public float[][] toFloatArrays(byte[] in_buff, int in_offset, float[][] out_buffs, int out_offset, int out_len) {
+			int channels = out_buffs.length;
+			for (int c = 0; c < channels; c++) {
+				float[] out_buff = out_buffs[c];
+				int ix = in_offset + 4 * c;
+				for (int i = 0; i < out_len; i++) {
+					out_buff[out_offset + i] = (float) FLOAT.get(in_buff, ix + 4 * channels * i);
+				}
+			}
+			return out_buffs;
+		}
+
+		@Override
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len, byte[] out_buff, int out_offset) {
+			for (int i = 0; i < in_len; i++) {
+				FLOAT.set(out_buff, out_offset + 4 * i, in_buff[in_offset + i]);
+			}
+			return out_buff;
+		}
+	}
+
+	private static final class Float32BigEndian extends TarsosDSPAudioFloatConverter {
+		private static final VarHandle FLOAT = view(float[].class, ByteOrder.BIG_ENDIAN);
+
+		@Override
+		public float[] toFloatArray(byte[] in_buff, int in_offset, float[] out_buff, int out_offset, int out_len) {
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = (float) FLOAT.get(in_buff, in_offset + 4 * i);
+			}
+			return out_buff;
+		}
+
+		@Override
+		public float[][] toFloatArrays(byte[] in_buff, int in_offset, float[][] out_buffs, int out_offset, int out_len) {
+			int channels = out_buffs.length;
+			for (int c = 0; c < channels; c++) {
+				float[] out_buff = out_buffs[c];
+				int ix = in_offset + 4 * c;
+				for (int i = 0; i < out_len; i++) {
+					out_buff[out_offset + i] = (float) FLOAT.get(in_buff, ix + 4 * channels * i);
+				}
+			}
+			return out_buffs;
+		}
+
+		@Override
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len, byte[] out_buff, int out_offset) {
+			for (int i = 0; i < in_len; i++) {
+				FLOAT.set(out_buff, out_offset + 4 * i, in_buff[in_offset + i]);
+			}
+			return out_buff;
+		}
+	}
+
+	private static final class Float64LittleEndian extends TarsosDSPAudioFloatConverter {
+		private static final VarHandle DOUBLE = view(double[].class, ByteOrder.LITTLE_ENDIAN);
+
+		@Override
+		public float[] toFloatArray(byte[] in_buff, int in_offset, float[] out_buff, int out_offset, int out_len) {
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = (float) (double) DOUBLE.get(in_buff, in_offset + 8 * i);
+			}
+			return out_buff;
+		}
+
+		@Override
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len, byte[] out_buff, int out_offset) {
+			for (int i = 0; i < in_len; i++) {
+				DOUBLE.set(out_buff, out_offset + 8 * i, (double) in_buff[in_offset + i]);
+			}
+			return out_buff;
+		}
+	}
+
+	private static final class Float64BigEndian extends TarsosDSPAudioFloatConverter {
+		private static final VarHandle DOUBLE = view(double[].class, ByteOrder.BIG_ENDIAN);
+
+		@Override
+		public float[] toFloatArray(byte[] in_buff, int in_offset, float[] out_buff, int out_offset, int out_len) {
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = (float) (double) DOUBLE.get(in_buff, in_offset + 8 * i);
+			}
+			return out_buff;
+		}
+
+		@Override
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len, byte[] out_buff, int out_offset) {
+			for (int i = 0; i < in_len; i++) {
+				DOUBLE.set(out_buff, out_offset + 8 * i, (double) in_buff[in_offset + i]);
+			}
+			return out_buff;
+		}
+	}
+}
@@ -0,0 +1,405 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Logger;
+
+/**
+ * An on disk cache of decoded audio. The output of a {@link PipeDecoder} is
+ * stored as a WAV file, named after a hash of the resource identity (path, size
+ * and modification time), the decoded format and the decoded time range. A later request for the same audio is served from the
+ * memory mapped file, without starting a decoder.
+ * <p>
+ * On a miss the decoded stream is copied to a temporary file while it is read.
+ * The file is only renamed into place when the stream is read to the end and
+ * the decoder exited normally, so other readers never see a partially written
+ * or truncated file. Files that were not used
+ * recently are removed when the cache grows beyond its maximum size. Only local
+ * files are cached: the content of other resources, e.g. HTTP streams, can
+ * change without notice.
+ */
+public class DecodedAudioCache {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(DecodedAudioCache.class.getName());
+
+	private static final String EXTENSION = ".wav";
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+	private static final int HEADER_SIZE = 44;
+
+	/**
+	 * Temporary files older than this are left over from a crashed process.
+	 */
+	private static final long STALE_TEMPORARY_FILE_AGE = 24 * 60 * 60 * 1000L;
+
+	private final File directory;
+	private final long maximumSize;
+
+	/**
+	 * @param directory
+	 *            The cache directory, created if it does not exist.
+	 * @param maximumSize
+	 *            The maximum total size of the cached files, in bytes.
+	 */
+	public DecodedAudioCache(File directory, long maximumSize) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Could not create the cache directory " + directory);
+		}
+		this.directory = directory;
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Returns a one channel, signed 16 bit PCM stream of a resource, from the
+	 * cache or decoded and cached while it is read.
+	 *
+	 * @param decoder
+	 *            The decoder used on a miss.
+	 * @param resource
+	 *            The resource to decode.
+	 * @param targetSampleRate
+	 *            The sample rate to decode to.
+	 * @param startTimeOffset
+	 *            The start time offset, in seconds.
+	 * @param numberOfSeconds
+	 *            The number of seconds to decode. If negative the resource is
+	 *            decoded until the end.
+	 * @return A stream of the decoded audio.
+	 */
+	public TarsosDSPAudioInputStream getMonoStream(PipeDecoder decoder, String resource, int targetSampleRate,
+			double startTimeOffset, double numberOfSeconds) {
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(targetSampleRate, 16, 1, true, false);
+		return getStream(decoder, resource, format, startTimeOffset, numberOfSeconds);
+	}
+
+	/**
+	 * Returns a stream of a resource in a format from
+	 * {@link PipeDecoder#getDecodedFormat(String, int, int, boolean)}, from the
+	 * cache or decoded and cached while it is read.
+	 *
+	 * @param decoder
+	 *            The decoder used on a miss.
+	 * @param resource
+	 *            The resource to decode.
+	 * @param format
+	 *            The format to decode to.
+	 * @param startTimeOffset
+	 *            The start time offset, in seconds.
+	 * @param numberOfSeconds
+	 *            The number of seconds to decode. If negative the resource is
+	 *            decoded until the end.
+	 * @return A stream of the decoded audio.
+	 */
+	public TarsosDSPAudioInputStream getStream(PipeDecoder decoder, String resource, TarsosDSPAudioFormat format,
+			double startTimeOffset, double numberOfSeconds) {
+		File cached = cacheFile(resource, format, startTimeOffset, numberOfSeconds);
+		if (cached != null && cached.isFile()) {
+			try {
+				TarsosDSPAudioInputStream stream = new MappedWaveInputStream(cached);
+				// Remember the use, for the eviction order.
+				cached.setLastModified(System.currentTimeMillis());
+				LOG.fine("Serving " + resource + " from " + cached);
+				return stream;
+			} catch (IOException e) {
+				// Evicted in the mean time or damaged: decode again.
+				LOG.warning("Could not read cached audio " + cached + ": " + e.getMessage());
+			}
+		}
+		InputStream decoded = decoder.getDecodedStream(resource, format, startTimeOffset, numberOfSeconds);
+		if (cached != null && decoded != null) {
+			try {
+				decoded = new CachingInputStream(decoded, cached, format);
+			} catch (IOException e) {
+				LOG.warning("Could not cache decoded audio in " + directory + ": " + e.getMessage());
+			}
+		}
+		long frameLength = AudioMetadataProber.decodedFrameLength(resource, format, startTimeOffset, numberOfSeconds);
+		return new UniversalAudioInputStream(decoded, format, frameLength);
+	}
+
+	/**
+	 * @return The cache file for a request, or null if the resource can not be
+	 *         cached.
+	 */
+	private File cacheFile(String resource, TarsosDSPAudioFormat format, double startTimeOffset,
+			double numberOfSeconds) {
+		File file = new File(resource);
+		if (!file.isFile()) {
+			return null;
+		}
+		String key = file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified() + '|'
+				+ format.getSampleRate() + '|' + format.getChannels() + '|' + format.getSampleSizeInBits() + '|'
+				+ format.getEncoding() + '|' + startTimeOffset + '|' + (numberOfSeconds > 0 ? numberOfSeconds : -1);
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest) {
+				name.append(String.format("%02x", b & 0xFF));
+			}
+			return new File(directory, name.append(EXTENSION).toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error("SHA-1 is required to be available", e);
+		} catch (IOException e) {
+			throw new Error("UTF-8 is required to be available", e);
+		}
+	}
+
+	/**
+	 * @return The total size of the cached files, in bytes.
+	 */
+	public long size() {
+		long size = 0;
+		for (File file : cachedFiles()) {
+			size += file.length();
+		}
+		return size;
+	}
+
+	private File[] cachedFiles() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return new File[0];
+		}
+		int count = 0;
+		for (File file : files) {
+			if (file.getName().endsWith(EXTENSION)) {
+				files[count++] = file;
+			}
+		}
+		return Arrays.copyOf(files, count);
+	}
+
+	/**
+	 * Removes the least recently used files until the cache fits its maximum
+	 * size, and temporary files left behind by crashed processes.
+	 */
+	private synchronized void evict() {
+		long now = System.currentTimeMillis();
+		File[] all = directory.listFiles();
+		if (all != null) {
+			for (File file : all) {
+				if (file.getName().endsWith(TEMPORARY_EXTENSION) && now - file.lastModified() > STALE_TEMPORARY_FILE_AGE) {
+					file.delete();
+				}
+			}
+		}
+		File[] files = cachedFiles();
+		long size = 0;
+		for (int i = 0; i < files.length; i++) {
+			size += files[i].length();
+		}
+		if (size <= maximumSize) {
+			return;
+		}
+		// Sort on a snapshot of the times, which can change while sorting.
+		final long[] lastUsed = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			lastUsed[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(lastUsed[a], lastUsed[b]);
+			}
+		});
+		for (int i = 0; i < order.length && size > maximumSize; i++) {
+			File file = files[order[i]];
+			long length = file.length();
+			if (file.delete()) {
+				size -= length;
+				LOG.fine("Evicted " + file + " from the decoded audio cache");
+			}
+		}
+	}
+
+	/**
+	 * Copies a decoded stream to a temporary WAV file while it is read, and
+	 * publishes the file when the end of the stream is reached.
+	 */
+	private class CachingInputStream extends FilterInputStream {
+		private final File target;
+		private final File temporary;
+		private final RandomAccessFile output;
+		private final FileChannel channel;
+		private final TarsosDSPAudioFormat format;
+		private final byte[] single = new byte[1];
+		private long dataSize;
+		private boolean done;
+
+		private CachingInputStream(InputStream in, File target, TarsosDSPAudioFormat format) throws IOException {
+			super(in);
+			this.target = target;
+			this.format = format;
+			temporary = File.createTempFile("decoding", TEMPORARY_EXTENSION, directory);
+			output = new RandomAccessFile(temporary, "rw");
+			channel = output.getChannel();
+			channel.write(header());
+		}
+
+		private ByteBuffer header() {
+			int blockAlign = format.getFrameSize();
+			int byteRate = (int) format.getSampleRate() * blockAlign;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.put("RIFF".getBytes()).putInt((int) (36 + dataSize)).put("WAVE".getBytes());
+			short tag = (short) (format.getEncoding() == TarsosDSPAudioFloatConverter.PCM_FLOAT ? 3 : 1);
+			header.put("fmt ".getBytes()).putInt(16).putShort(tag).putShort((short) format.getChannels());
+			header.putInt((int) format.getSampleRate()).putInt(byteRate).putShort((short) blockAlign);
+			header.putShort((short) format.getSampleSizeInBits());
+			header.put("data".getBytes()).putInt((int) dataSize);
+			header.flip();
+			return header;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = read(single, 0, 1);
+			return read == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (done) {
+				return read;
+			}
+			try {
+				if (read == -1) {
+					publish();
+				} else if (read > 0) {
+					channel.write(ByteBuffer.wrap(b, off, read));
+					dataSize += read;
+				}
+			} catch (IOException e) {
+				LOG.warning("Could not cache decoded audio in " + temporary + ": " + e.getMessage());
+				discard();
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// Skipped audio has to end up in the cache as well.
+			byte[] buffer = new byte[(int) Math.min(n, 8192)];
+			long skipped = 0;
+			while (skipped < n) {
+				int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+				if (read == -1) {
+					break;
+				}
+				skipped += read;
+			}
+			return skipped;
+		}
+
+		/**
+		 * Completes the header and renames the file into place.
+		 */
+		private void publish() throws IOException {
+			done = true;
+			if (dataSize == 0 || dataSize > 0xFFFFFFFFL - 36 || dataSize % format.getFrameSize() != 0) {
+				// Nothing decoded, does not fit a WAV header, or the decoder
+				// stopped mid-frame.
+				discard();
+				return;
+			}
+			if (!decoderSucceeded()) {
+				discard();
+				return;
+			}
+			channel.write(header(), 0);
+			output.close();
+			if (temporary.renameTo(target)) {
+				LOG.fine("Cached decoded audio in " + target);
+				evict();
+			} else {
+				// Another reader published the same audio first.
+				temporary.delete();
+			}
+		}
+
+		/**
+		 * @return True if the decoder exited normally, the end of the stream
+		 *         is then the end of the audio.
+		 */
+		private boolean decoderSucceeded() {
+			if (!(in instanceof PipeDecoder.DecodedStream)) {
+				return true;
+			}
+			try {
+				int status = ((PipeDecoder.DecodedStream) in).waitForExit();
+				if (status != 0) {
+					LOG.warning("The decoder exited with status " + status + ", the audio is not cached in " + target);
+				}
+				return status == 0;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		private void discard() {
+			done = true;
+			try {
+				output.close();
+			} catch (IOException e) {
+				// Deleted next.
+			}
+			temporary.delete();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (!done) {
+					// The stream was not read to the end: nothing to cache.
+					discard();
+				}
+			}
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Replays a capture written by a {@link FrameCaptureWriter}. The samples are
+ * read from a memory mapped file as 32 bit little-endian floats, so nothing is
+ * decoded. Skipping only moves the position in the file, which makes it cheap
+ * to start anywhere in a long capture.
+ * </p>
+ * <p>
+ * Time stamps of a dispatcher reading the capture start at zero; the time
+ * stamp of the first captured sample is {@link #getStartTimeStamp()}.
+ * </p>
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} little-endian bytes:
+ * the magic <code>TDSPCAP1</code>, the sample rate (float), the number of
+ * channels (int), the position of the first sample in the original stream
+ * (long) and the number of samples (long, -1 if the capture was not
+ * finished). The samples follow the header.
+ * </p>
+ */
+public class FrameCaptureInputStream implements TarsosDSPFloatInputStream {
+
+	/**
+	 * The size of the header, in bytes.
+	 */
+	public static final int HEADER_SIZE = 32;
+
+	/**
+	 * The offset of the number of samples in the header.
+	 */
+	static final int SAMPLE_COUNT_OFFSET = 24;
+
+	private static final byte[] MAGIC = { 'T', 'D', 'S', 'P', 'C', 'A', 'P', '1' };
+
+	private final TarsosDSPAudioFormat format;
+	private final long startSample;
+	private final MappedFileReader reader;
+
+	/**
+	 * Open a capture.
+	 *
+	 * @param file
+	 *            The capture.
+	 * @throws IOException
+	 *             If the file can not be read or is not a capture.
+	 */
+	public FrameCaptureInputStream(File file) throws IOException {
+		this(file, MappedFileReader.DEFAULT_WINDOW_SIZE);
+	}
+
+	FrameCaptureInputStream(File file, int windowSize) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		FileChannel channel = input.getChannel();
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) != -1) {
+				// Read the complete header.
+			}
+			header.flip();
+			byte[] magic = new byte[MAGIC.length];
+			if (header.remaining() < HEADER_SIZE) {
+				throw new IOException("Not a frame capture, the file is too short: " + file.getPath());
+			}
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("Not a frame capture: " + file.getPath());
+			}
+			float sampleRate = header.getFloat();
+			int channels = header.getInt();
+			startSample = header.getLong();
+			long samples = header.getLong();
+			long available = (channel.size() - HEADER_SIZE) / 4;
+			if (samples < 0 || samples > available) {
+				// The capture was not finished: use what is there.
+				samples = available;
+			}
+			format = new TarsosDSPAudioFormat(TarsosDSPAudioFloatConverter.PCM_FLOAT, sampleRate, 32, channels, 4 * channels, sampleRate, false);
+			reader = new MappedFileReader(channel, HEADER_SIZE, samples * 4, ByteOrder.LITTLE_ENDIAN, windowSize);
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the header of a capture.
+	 */
+	static ByteBuffer header(float sampleRate, int channels, long startSample, long samples) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putFloat(sampleRate);
+		header.putInt(channels);
+		header.putLong(startSample);
+		header.putLong(samples);
+		header.flip();
+		return header;
+	}
+
+	@Override
+	public long skip(long bytesToSkip) throws IOException {
+		return reader.skip(bytesToSkip - bytesToSkip % format.getFrameSize());
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		return reader.read(b, off, len - len % format.getFrameSize());
+	}
+
+	/**
+	 * Reads samples directly as floats, without a conversion step.
+	 */
+	@Override
+	public int read(float[] samples, int off, int len) throws IOException {
+		return reader.readFloats(samples, off, len - len % format.getChannels());
+	}
+
+	/**
+	 * Moves to a time in the capture.
+	 *
+	 * @param seconds
+	 *            The time, relative to the start of the capture.
+	 */
+	public void seek(double seconds) {
+		long frame = Math.round(seconds * format.getSampleRate());
+		reader.seek(frame * format.getFrameSize());
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	@Override
+	public TarsosDSPAudioFormat getFormat() {
+		return format;
+	}
+
+	@Override
+	public long getFrameLength() {
+		return reader.length() / format.getFrameSize();
+	}
+
+	/**
+	 * @return The position of the first captured sample in the original
+	 *         stream.
+	 */
+	public long getStartSample() {
+		return startSample;
+	}
+
+	/**
+	 * @return The time stamp of the first captured sample in the original
+	 *         stream, in seconds.
+	 */
+	public double getStartTimeStamp() {
+		return startSample / format.getSampleRate();
+	}
+}
@@ -0,0 +1,192 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+
+/**
+ * <p>
+ * Captures the converted samples of a dispatcher to a binary file, which can
+ * be replayed with a {@link FrameCaptureInputStream}. Replaying a capture
+ * skips decoding and conversion: when the same audio is analysed again and
+ * again, e.g. to tune analysis parameters, only the file needs to be read.
+ * </p>
+ * <p>
+ * Overlapping samples are written once: the file holds the samples of the
+ * stream as 32 bit floats, together with the position of the first one, so
+ * the time stamp of each sample is known. The capture can be replayed with any
+ * buffer size and overlap. Buffers which are not seen by the writer, e.g.
+ * dropped by a {@link be.tarsos.dsp.DeadlineMonitor}, are written as silence.
+ * </p>
+ *
+ * <pre>
+ * AudioDispatcher dispatcher = AudioDispatcherFactory.fromPipe(source, 44100, 2048, 1024);
+ * dispatcher.addAudioProcessor(new FrameCaptureWriter(new File("capture.tdsp")));
+ * dispatcher.run();
+ * </pre>
+ */
+public class FrameCaptureWriter implements AudioProcessor {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(FrameCaptureWriter.class.getName());
+
+	/**
+	 * The number of bytes collected before they are written.
+	 */
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	private final File file;
+	private final FileChannel channel;
+	private final ByteBuffer block;
+	private final FloatBuffer floats;
+
+	private boolean started;
+	private boolean failed;
+	private long startSample;
+	private long samplesWritten;
+
+	/**
+	 * Create a new writer. The file is created or truncated.
+	 *
+	 * @param file
+	 *            The file to write the capture to.
+	 * @throws IOException
+	 *             If the file can not be opened.
+	 */
+	@SuppressWarnings("resource")
+	public FrameCaptureWriter(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		output.setLength(0);
+		this.channel = output.getChannel();
+		this.block = ByteBuffer.allocateDirect(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.floats = block.asFloatBuffer();
+	}
+
+	@Override
+	public boolean process(AudioEvent audioEvent) {
+		if (failed) {
+			return true;
+		}
+		try {
+			capture(audioEvent);
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Could not write to the frame capture " + file.getPath(), e);
+			failed = true;
+		}
+		return true;
+	}
+
+	private void capture(AudioEvent audioEvent) throws IOException {
+		long samplesProcessed = audioEvent.getSamplesProcessed();
+		if (!started) {
+			started = true;
+			startSample = samplesProcessed;
+			TarsosDSPAudioFormat format = audioEvent.getFormat();
+			channel.write(FrameCaptureInputStream.header(format.getSampleRate(), format.getChannels(), startSample, -1));
+		}
+		float[] buffer = audioEvent.getFloatBuffer();
+		int from = audioEvent.getOverlap();
+		int to = audioEvent.getValidOffset() + audioEvent.getValidSamples();
+		long expected = startSample + samplesWritten;
+		if (samplesProcessed > expected) {
+			LOG.fine(String.format("%d samples missing at %.3fs, written as silence.", samplesProcessed - expected, audioEvent.getTimeStamp()));
+			writeSilence(samplesProcessed - expected);
+		} else if (samplesProcessed < expected) {
+			// Already written.
+			from += (int) Math.min(expected - samplesProcessed, Integer.MAX_VALUE);
+		}
+		for (int i = from; i < to;) {
+			if (!floats.hasRemaining()) {
+				flush();
+			}
+			int n = Math.min(to - i, floats.remaining());
+			floats.put(buffer, i, n);
+			i += n;
+			samplesWritten += n;
+		}
+	}
+
+	private void writeSilence(long samples) throws IOException {
+		for (long i = 0; i < samples; i++) {
+			if (!floats.hasRemaining()) {
+				flush();
+			}
+			floats.put(0);
+		}
+		samplesWritten += samples;
+	}
+
+	private void flush() throws IOException {
+		block.position(0);
+		block.limit(floats.position() * 4);
+		while (block.hasRemaining()) {
+			channel.write(block);
+		}
+		block.clear();
+		floats.clear();
+	}
+
+	/**
+	 * @return The number of samples written so far.
+	 */
+	public long getSamplesWritten() {
+		return samplesWritten;
+	}
+
+	@Override
+	public void processingFinished() {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			if (started && !failed) {
+				flush();
+				ByteBuffer header = FrameCaptureInputStream.header(0, 0, startSample, samplesWritten);
+				// Only the number of samples changes: patch it in place.
+				header.position(FrameCaptureInputStream.SAMPLE_COUNT_OFFSET);
+				channel.write(header, FrameCaptureInputStream.SAMPLE_COUNT_OFFSET);
+				channel.force(false);
+				LOG.fine(String.format("Captured %d samples to %s", samplesWritten, file.getPath()));
+			}
+			channel.close();
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Could not finish the frame capture " + file.getPath(), e);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a region of a file through memory mapped windows. A mapped buffer is
+ * limited to 2GB, so larger files are mapped one window at a time. Skipping
+ * only moves the position: nothing is read.
+ */
+final class MappedFileReader {
+
+	/**
+	 * The default size of a mapped window, in bytes.
+	 */
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long start;
+	private final long length;
+	private final ByteOrder order;
+	private final int windowSize;
+
+	private MappedByteBuffer window;
+	/** Views of the whole window, created once for each mapping. */
+	private FloatBuffer floats;
+	private ShortBuffer shorts;
+	private long windowStart;
+	private long position;
+
+	/**
+	 * @param channel
+	 *            The channel of the file, closed by {@link #close()}.
+	 * @param start
+	 *            The offset of the region in the file, in bytes.
+	 * @param length
+	 *            The length of the region, in bytes.
+	 * @param order
+	 *            The byte order of the data, used to read floats.
+	 * @param windowSize
+	 *            The size of a mapped window, a multiple of 8.
+	 */
+	MappedFileReader(FileChannel channel, long start, long length, ByteOrder order, int windowSize) {
+		this.channel = channel;
+		this.start = start;
+		this.length = length;
+		this.order = order;
+		this.windowSize = windowSize;
+	}
+
+	long length() {
+		return length;
+	}
+
+	long position() {
+		return position;
+	}
+
+	long remaining() {
+		return length - position;
+	}
+
+	/**
+	 * Moves to a position in the region, clamped to the region.
+	 *
+	 * @param newPosition
+	 *            The position, in bytes from the start of the region.
+	 */
+	void seek(long newPosition) {
+		position = Math.max(0, Math.min(newPosition, length));
+	}
+
+	/**
+	 * @param bytes
+	 *            The number of bytes to skip.
+	 * @return The number of bytes skipped.
+	 */
+	long skip(long bytes) {
+		long skipped = Math.max(0, Math.min(bytes, remaining()));
+		position += skipped;
+		return skipped;
+	}
+
+	/**
+	 * Reads bytes from the current position.
+	 *
+	 * @return The number of bytes read, or -1 at the end of the region.
+	 */
+	int read(byte[] b, int off, int len) throws IOException {
+		if (remaining() <= 0) {
+			return -1;
+		}
+		int total = (int) Math.min(len, remaining());
+		int done = 0;
+		while (done < total) {
+			ByteBuffer buffer = windowAt(position);
+			int n = Math.min(total - done, buffer.remaining());
+			buffer.get(b, off + done, n);
+			done += n;
+			position += n;
+		}
+		return total;
+	}
+
+	/**
+	 * Reads floats from the current position, which should be a multiple of
+	 * four.
+	 *
+	 * @return The number of floats read, or -1 at the end of the region.
+	 */
+	int readFloats(float[] f, int off, int len) throws IOException {
+		if (remaining() < 4) {
+			return -1;
+		}
+		int total = (int) Math.min(len, remaining() / 4);
+		int done = 0;
+		while (done < total) {
+			FloatBuffer buffer = floatWindow();
+			int n = Math.min(total - done, buffer.remaining());
+			buffer.get(f, off + done, n);
+			done += n;
+			position += n * 4L;
+		}
+		return total;
+	}
+
+	/**
+	 * Gives access to the mapped bytes at the current position, e.g. to
+	 * convert them without copying. Call {@link #skip(long)} with the number
+	 * of bytes used.
+	 *
+	 * @return The window at the current position, which ends at the end of
+	 *         the window or of the region.
+	 */
+	ByteBuffer window() throws IOException {
+		return windowAt(position);
+	}
+
+	/**
+	 * Like {@link #window()}, for a position which is a multiple of four.
+	 *
+	 * @return The floats of the window, positioned at the current position.
+	 */
+	FloatBuffer floatWindow() throws IOException {
+		windowAt(position);
+		floats.position((int) ((position - windowStart) / 4));
+		return floats;
+	}
+
+	/**
+	 * Like {@link #window()}, for a position which is a multiple of two.
+	 *
+	 * @return The shorts of the window, positioned at the current position.
+	 */
+	ShortBuffer shortWindow() throws IOException {
+		windowAt(position);
+		shorts.position((int) ((position - windowStart) / 2));
+		return shorts;
+	}
+
+	/**
+	 * @return The window containing the position, positioned at it.
+	 */
+	private ByteBuffer windowAt(long newPosition) throws IOException {
+		if (window == null || newPosition < windowStart || newPosition >= windowStart + window.capacity()) {
+			windowStart = newPosition - newPosition % windowSize;
+			long size = Math.min(windowSize, length - windowStart);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, start + windowStart, size);
+			window.order(order);
+			floats = window.asFloatBuffer();
+			shorts = window.asShortBuffer();
+		}
+		window.position((int) (newPosition - windowStart));
+		return window;
+	}
+
+	void close() throws IOException {
+		window = null;
+		floats = null;
+		shorts = null;
+		channel.close();
+	}
+}
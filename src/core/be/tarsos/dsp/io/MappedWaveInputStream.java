@@ -0,0 +1,429 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFormat.Encoding;
+
+/**
+ * <p>
+ * Reads uncompressed WAV and AIFF files without javax.sound. Only the header
+ * is parsed; the audio data is memory mapped and read, or converted to floats,
+ * straight from the mapping. Skipping only moves the position, so it takes the
+ * same time at the start of a file as in the middle of a file of several
+ * gigabytes.
+ * </p>
+ * <p>
+ * Supported are RIFF/WAVE files with PCM or IEEE float samples, also with the
+ * WAVE_FORMAT_EXTENSIBLE header, RF64 files for data over 4GB and AIFF and
+ * AIFC files with PCM (big or little-endian) or float samples. Compressed
+ * formats are rejected with an IOException.
+ * </p>
+ */
+public class MappedWaveInputStream implements TarsosDSPFloatInputStream {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(MappedWaveInputStream.class.getName());
+
+	private static final int WAVE_FORMAT_PCM = 0x0001;
+	private static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	/**
+	 * The size used for the length of a chunk when it is unknown or stored in
+	 * the ds64 chunk of an RF64 file.
+	 */
+	private static final long UNKNOWN_SIZE = 0xFFFFFFFFL;
+
+	private final TarsosDSPAudioFormat format;
+	private final MappedFileReader reader;
+	private final TarsosDSPAudioFloatConverter converter;
+	private final int sampleSize;
+	private byte[] conversionBuffer;
+
+	/**
+	 * Open a WAV or AIFF file.
+	 *
+	 * @param file
+	 *            The file.
+	 * @throws IOException
+	 *             If the file can not be read or the format is not supported.
+	 */
+	public MappedWaveInputStream(File file) throws IOException {
+		this(file, MappedFileReader.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Open a WAV or AIFF file, mapped in windows of a chosen size.
+	 *
+	 * @param file
+	 *            The file.
+	 * @param windowSize
+	 *            The size of a mapped window in bytes, a positive multiple of
+	 *            8. Smaller windows use less address space.
+	 * @throws IOException
+	 *             If the file can not be read or the format is not supported.
+	 */
+	public MappedWaveInputStream(File file, int windowSize) throws IOException {
+		if (windowSize <= 0 || windowSize % 8 != 0) {
+			throw new IllegalArgumentException("The window size should be a positive multiple of 8: " + windowSize);
+		}
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		FileChannel channel = input.getChannel();
+		try {
+			Header header = new Header(channel, file.getPath());
+			String id = header.id(0);
+			if (id.equals("RIFF") || id.equals("RF64") || id.equals("BW64")) {
+				header.parseWave(!id.equals("RIFF"));
+			} else if (id.equals("FORM")) {
+				header.parseAiff();
+			} else {
+				throw new IOException("Not a WAV or AIFF file: " + file.getPath());
+			}
+			format = header.format;
+			sampleSize = format.getSampleSizeInBits() / 8;
+			converter = TarsosDSPAudioFloatConverter.getConverter(format);
+			if (converter == null) {
+				throw new IOException("Unsupported sample format " + format + ": " + file.getPath());
+			}
+			long length = header.dataLength - header.dataLength % format.getFrameSize();
+			reader = new MappedFileReader(channel, header.dataStart, length, header.order, windowSize);
+			LOG.fine(String.format("Mapped %s: %s, %d frames.", file.getPath(), format, getFrameLength()));
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		} catch (RuntimeException e) {
+			input.close();
+			throw new IOException("Could not parse the header of " + file.getPath(), e);
+		}
+	}
+
+	@Override
+	public long skip(long bytesToSkip) throws IOException {
+		return reader.skip(bytesToSkip - bytesToSkip % format.getFrameSize());
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		return reader.read(b, off, len - len % format.getFrameSize());
+	}
+
+	@Override
+	public int read(float[] samples, int off, int len) throws IOException {
+		int channels = format.getChannels();
+		long available = reader.remaining() / sampleSize;
+		if (available == 0) {
+			return -1;
+		}
+		int total = (int) Math.min(len - len % channels, available);
+		boolean pcm16 = sampleSize == 2 && format.getEncoding().equals(Encoding.PCM_SIGNED);
+		boolean float32 = sampleSize == 4 && format.getEncoding().equals(TarsosDSPAudioFloatConverter.PCM_FLOAT);
+		int done = 0;
+		while (done < total) {
+			int n;
+			if (pcm16) {
+				ShortBuffer shorts = reader.shortWindow();
+				n = Math.min(total - done, shorts.remaining());
+				for (int i = 0; i < n; i++) {
+					samples[off + done + i] = shorts.get() * (1.0f / 32767.0f);
+				}
+			} else if (float32) {
+				FloatBuffer floats = reader.floatWindow();
+				n = Math.min(total - done, floats.remaining());
+				floats.get(samples, off + done, n);
+			} else {
+				ByteBuffer window = reader.window();
+				n = Math.min(total - done, window.remaining() / sampleSize);
+				if (n == 0) {
+					// A sample of e.g. three bytes which straddles the end of
+					// the window: read it through the byte path.
+					if (conversionBuffer == null || conversionBuffer.length < sampleSize) {
+						conversionBuffer = new byte[sampleSize];
+					}
+					reader.read(conversionBuffer, 0, sampleSize);
+					converter.toFloatArray(conversionBuffer, 0, samples, off + done, 1);
+					done++;
+					continue;
+				}
+				// Other sample sizes: convert via a byte array.
+				if (conversionBuffer == null || conversionBuffer.length < n * sampleSize) {
+					conversionBuffer = new byte[n * sampleSize];
+				}
+				window.get(conversionBuffer, 0, n * sampleSize);
+				converter.toFloatArray(conversionBuffer, 0, samples, off + done, n);
+			}
+			reader.skip((long) n * sampleSize);
+			done += n;
+		}
+		return total;
+	}
+
+	/**
+	 * Moves to a time in the file.
+	 *
+	 * @param seconds
+	 *            The time, from the start of the file.
+	 */
+	public void seek(double seconds) {
+		long frame = Math.round(seconds * format.getSampleRate());
+		reader.seek(frame * format.getFrameSize());
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	@Override
+	public TarsosDSPAudioFormat getFormat() {
+		return format;
+	}
+
+	@Override
+	public long getFrameLength() {
+		return reader.length() / format.getFrameSize();
+	}
+
+	/**
+	 * Parses the chunks of a WAV or AIFF header.
+	 */
+	private static final class Header {
+		private final FileChannel channel;
+		private final String path;
+		private final long fileSize;
+		private final ByteBuffer buffer;
+
+		private TarsosDSPAudioFormat format;
+		private ByteOrder order;
+		private long dataStart = -1;
+		private long dataLength;
+
+		private Header(FileChannel channel, String path) throws IOException {
+			this.channel = channel;
+			this.path = path;
+			this.fileSize = channel.size();
+			this.buffer = ByteBuffer.allocate(64);
+		}
+
+		/**
+		 * Reads bytes of the file into the buffer, with the given byte order.
+		 */
+		private ByteBuffer read(long position, int length, ByteOrder byteOrder) throws IOException {
+			if (position + length > fileSize) {
+				throw new IOException("Unexpected end of the header of " + path);
+			}
+			buffer.clear();
+			buffer.limit(length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) == -1) {
+					throw new IOException("Unexpected end of the header of " + path);
+				}
+			}
+			buffer.flip();
+			buffer.order(byteOrder);
+			return buffer;
+		}
+
+		private String id(long position) throws IOException {
+			ByteBuffer bytes = read(position, 4, ByteOrder.BIG_ENDIAN);
+			char[] id = new char[4];
+			for (int i = 0; i < 4; i++) {
+				id[i] = (char) (bytes.get() & 0xFF);
+			}
+			return new String(id);
+		}
+
+		private void parseWave(boolean rf64) throws IOException {
+			order = ByteOrder.LITTLE_ENDIAN;
+			if (!id(8).equals("WAVE")) {
+				throw new IOException("Not a WAVE file: " + path);
+			}
+			long ds64DataSize = -1;
+			long position = 12;
+			while (position + 8 <= fileSize && (format == null || dataStart < 0)) {
+				String chunk = id(position);
+				long size = read(position + 4, 4, order).getInt() & 0xFFFFFFFFL;
+				long body = position + 8;
+				if (chunk.equals("ds64")) {
+					ByteBuffer ds64 = read(body, 16, order);
+					ds64.getLong();
+					ds64DataSize = ds64.getLong();
+				} else if (chunk.equals("fmt ")) {
+					parseWaveFormat(body, size);
+				} else if (chunk.equals("data")) {
+					if (rf64 && size == UNKNOWN_SIZE && ds64DataSize >= 0) {
+						size = ds64DataSize;
+					}
+					dataStart = body;
+					dataLength = Math.min(size, fileSize - body);
+					if (size == UNKNOWN_SIZE) {
+						// Written while streaming: the data runs to the end.
+						dataLength = fileSize - body;
+					}
+				}
+				position = body + size + (size & 1);
+			}
+			checkComplete();
+		}
+
+		private void parseWaveFormat(long body, long size) throws IOException {
+			ByteBuffer fmt = read(body, (int) Math.min(size, 40), order);
+			int tag = fmt.getShort() & 0xFFFF;
+			int channels = fmt.getShort() & 0xFFFF;
+			float sampleRate = fmt.getInt();
+			fmt.getInt();
+			int blockAlign = fmt.getShort() & 0xFFFF;
+			int bitsPerSample = fmt.getShort() & 0xFFFF;
+			if (tag == WAVE_FORMAT_EXTENSIBLE) {
+				if (size < 40) {
+					throw new IOException("Incomplete WAVE_FORMAT_EXTENSIBLE header in " + path);
+				}
+				fmt.getShort();
+				fmt.getShort();
+				fmt.getInt();
+				// The first two bytes of the sub format GUID are the format tag.
+				tag = fmt.getShort() & 0xFFFF;
+			}
+			if (channels == 0 || blockAlign % channels != 0) {
+				throw new IOException("Invalid block align (" + blockAlign + ") in " + path);
+			}
+			// Samples are left justified in their container, e.g. 20 bit in 24.
+			int containerBits = blockAlign / channels * 8;
+			Encoding encoding;
+			if (tag == WAVE_FORMAT_PCM) {
+				encoding = containerBits == 8 ? Encoding.PCM_UNSIGNED : Encoding.PCM_SIGNED;
+			} else if (tag == WAVE_FORMAT_IEEE_FLOAT) {
+				encoding = TarsosDSPAudioFloatConverter.PCM_FLOAT;
+			} else {
+				throw new IOException(String.format("Unsupported WAVE format 0x%04x (%d bits) in %s", tag, bitsPerSample, path));
+			}
+			format = new TarsosDSPAudioFormat(encoding, sampleRate, containerBits, channels, blockAlign, sampleRate, false);
+		}
+
+		private void parseAiff() throws IOException {
+			order = ByteOrder.BIG_ENDIAN;
+			String type = id(8);
+			boolean aifc = type.equals("AIFC");
+			if (!aifc && !type.equals("AIFF")) {
+				throw new IOException("Not an AIFF file: " + path);
+			}
+			long frames = -1;
+			long position = 12;
+			while (position + 8 <= fileSize && (format == null || dataStart < 0)) {
+				String chunk = id(position);
+				long size = read(position + 4, 4, ByteOrder.BIG_ENDIAN).getInt() & 0xFFFFFFFFL;
+				long body = position + 8;
+				if (chunk.equals("COMM")) {
+					frames = parseAiffCommon(body, aifc);
+				} else if (chunk.equals("SSND")) {
+					ByteBuffer ssnd = read(body, 8, ByteOrder.BIG_ENDIAN);
+					long offset = ssnd.getInt() & 0xFFFFFFFFL;
+					dataStart = body + 8 + offset;
+					dataLength = Math.min(size - 8 - offset, fileSize - dataStart);
+				}
+				position = body + size + (size & 1);
+			}
+			checkComplete();
+			if (frames >= 0) {
+				dataLength = Math.min(dataLength, frames * format.getFrameSize());
+			}
+		}
+
+		private long parseAiffCommon(long body, boolean aifc) throws IOException {
+			ByteBuffer comm = read(body, aifc ? 22 : 18, ByteOrder.BIG_ENDIAN);
+			int channels = comm.getShort() & 0xFFFF;
+			long frames = comm.getInt() & 0xFFFFFFFFL;
+			int bits = comm.getShort() & 0xFFFF;
+			byte[] extended = new byte[10];
+			comm.get(extended);
+			float sampleRate = (float) extendedToDouble(extended);
+			String compression = "NONE";
+			if (aifc) {
+				char[] id = new char[4];
+				for (int i = 0; i < 4; i++) {
+					id[i] = (char) (comm.get() & 0xFF);
+				}
+				compression = new String(id);
+			}
+			int sampleBits = (bits + 7) / 8 * 8;
+			Encoding encoding = Encoding.PCM_SIGNED;
+			boolean bigEndian = true;
+			if (compression.equals("NONE") || compression.equals("twos")) {
+				// Big-endian PCM.
+			} else if (compression.equals("sowt")) {
+				bigEndian = false;
+				order = ByteOrder.LITTLE_ENDIAN;
+			} else if (compression.equalsIgnoreCase("fl32")) {
+				encoding = TarsosDSPAudioFloatConverter.PCM_FLOAT;
+				sampleBits = 32;
+			} else if (compression.equalsIgnoreCase("fl64")) {
+				encoding = TarsosDSPAudioFloatConverter.PCM_FLOAT;
+				sampleBits = 64;
+			} else {
+				throw new IOException("Unsupported AIFC compression '" + compression + "' in " + path);
+			}
+			int frameSize = sampleBits / 8 * channels;
+			format = new TarsosDSPAudioFormat(encoding, sampleRate, sampleBits, channels, frameSize, sampleRate, bigEndian);
+			return frames;
+		}
+
+		private void checkComplete() throws IOException {
+			if (format == null) {
+				throw new IOException("No format chunk found in " + path);
+			}
+			if (dataStart < 0) {
+				throw new IOException("No audio data found in " + path);
+			}
+		}
+	}
+
+	/**
+	 * Converts an 80 bit IEEE 754 extended precision number, used for the
+	 * sample rate in AIFF files.
+	 */
+	static double extendedToDouble(byte[] bytes) {
+		int exponent = ((bytes[0] & 0x7F) << 8) | (bytes[1] & 0xFF);
+		long mantissa = 0;
+		for (int i = 2; i < 10; i++) {
+			mantissa = (mantissa << 8) | (bytes[i] & 0xFF);
+		}
+		if (exponent == 0 && mantissa == 0) {
+			return 0;
+		}
+		double value = Math.scalb((double) (mantissa >>> 11), exponent - 16383 - 52);
+		return (bytes[0] & 0x80) != 0 ? -value : value;
+	}
+}
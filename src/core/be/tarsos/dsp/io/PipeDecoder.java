@@ -31,6 +31,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -54,6 +60,13 @@ import be.tarsos.dsp.util.FFMPEGDownloader;
  * rtpm streams, ... are supported as well.
  * </p>
  * <p>
+ * The decoder binary is located once, on the path or otherwise by unpacking or
+ * downloading it, and is started directly with an argument list: there is no
+ * shell in between, so resources need no quoting. Only a limited number of
+ * decoders run at the same time, see {@link #setMaximumConcurrentDecoders(int)}.
+ * Probes of local files are cached by path, size and modification time.
+ * </p>
+ * <p>
  * To see which audio decoders are supported, check
  * </p>
  * <code><pre>ffmpeg -decoders | grep -E "^A" | sort
@@ -73,6 +86,48 @@ A... adpcm_4xm            ADPCM 4X Movie
 public class PipeDecoder {
 	
 	private final static Logger LOG = Logger.getLogger(PipeDecoder.class.getName());
+
+	/**
+	 * Use the sample rate or the number of channels of the source, see
+	 * {@link #getDecodedFormat(String, int, int, boolean)}.
+	 */
+	public static final int NATIVE = -1;
+
+	/**
+	 * The sample rate used when that of the source is requested but can not be
+	 * probed.
+	 */
+	private static final int FALLBACK_SAMPLE_RATE = 44100;
+
+	/**
+	 * The number of probes kept in the cache.
+	 */
+	private static final int PROBE_CACHE_SIZE = 1024;
+
+	/**
+	 * The decoder binary found on the path, unpacked or downloaded: located
+	 * once for all decoders.
+	 */
+	private static String locatedDecoderBinary;
+
+	/**
+	 * Limits the number of decoding processes running at the same time. A
+	 * permit is held until the decoded stream is closed or read to the end.
+	 */
+	private static volatile Semaphore decoderPermits = new Semaphore(Runtime.getRuntime().availableProcessors(), true);
+
+	/**
+	 * Probes of local files, keyed by path, size and modification time.
+	 */
+	private static final Map<String, Probe> probeCache = new LinkedHashMap<String, Probe>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Probe> eldest) {
+			return size() > PROBE_CACHE_SIZE;
+		}
+	};
+
 	private  String pipeEnvironment;
 	private  String pipeArgument;
 	private  String pipeCommand;
@@ -80,7 +135,11 @@ public class PipeDecoder {
 
 	private boolean printErrorstream = false;
 
-	private String decoderBinaryAbsolutePath;
+	/**
+	 * The decoder binary, started without a shell. Null when a custom shell
+	 * command is used.
+	 */
+	private String decoderBinary;
 
 	public PipeDecoder(){
 		this.initialise(null);
@@ -91,73 +150,124 @@ public class PipeDecoder {
 		this.initialise(nativeDirectory);
 	}
 
+	/**
+	 * Decode with a specific ffmpeg (or compatible) binary.
+	 *
+	 * @param decoderBinary
+	 *            The decoder executable.
+	 */
+	public PipeDecoder(File decoderBinary){
+		this.pipeBuffer = 10000;
+		this.decoderBinary = decoderBinary.getAbsolutePath();
+	}
+
 	 private void initialise(String nativeDirectory) {
 		 pipeBuffer = 10000;
-
-		 //Use sensible defaults depending on the platform
-		 if(System.getProperty("os.name").indexOf("indows") > 0 ){
-			 pipeEnvironment = "cmd.exe";
-			 pipeArgument = "/C";
-		 }else if(new File("/bin/bash").exists()){
-			 pipeEnvironment = "/bin/bash";
-			 pipeArgument = "-c";
-		 }else if (new File("/system/bin/sh").exists()){
-			 //probably we are on android here
-			 pipeEnvironment = "/system/bin/sh";
-			 pipeArgument = "-c";
-		 }else{
-			 LOG.severe("Coud not find a command line environment (cmd.exe or /bin/bash)");
-			 throw new Error("Decoding via a pipe will not work: Coud not find a command line environment (cmd.exe or /bin/bash)");
-		 }
-
-		 String path = System.getenv("PATH");
-		 String arguments = " -ss %input_seeking%  %number_of_seconds% -i \"%resource%\" -vn -ar %sample_rate% -ac %channels% -sample_fmt s16 -f s16le pipe:1";
-		 if(isAvailable("ffmpeg")){
-			 LOG.info("found ffmpeg on the path (" + path + "). Will use ffmpeg for decoding media files.");
-			 pipeCommand = "ffmpeg" + arguments;
-		 }else if (isAvailable("avconv")){
-			 LOG.info("found avconv on your path(" + path + "). Will use avconv for decoding media files.");
-			 pipeCommand = "avconv" + arguments;
-		 }else {
-			 if(isAndroid()) {
-				 if (nativeDirectory == null) {
-					 nativeDirectory = System.getProperty("java.io.tmpdir");
-				 }
-
-				 printErrorstream=true;
-				 File f = new File(nativeDirectory, "libffmpeg.so");
-				 if (f.exists() && f.length() > 1000000 && f.canExecute()) {
-					 decoderBinaryAbsolutePath = f.getAbsolutePath();
-				 } else {
-					 LOG.severe("Could not find an ffmpeg binary for your Android system. Did you forget calling: 'new AndroidFFMPEGLocator(this);' ?");
-					 LOG.severe("Tried to unpack a staticallyc to: " + f.getAbsolutePath());
-				 }
-			 }else{
-				 LOG.warning("Dit not find ffmpeg or avconv on your path(" + path + "), will try to download it automatically.");
-				 FFMPEGDownloader downloader = new FFMPEGDownloader();
-				 decoderBinaryAbsolutePath = downloader.ffmpegBinary();
-				 if(decoderBinaryAbsolutePath==null){
-					 LOG.severe("Could not download an ffmpeg binary automatically for your system.");
-				 }
-			 }
-			 if(decoderBinaryAbsolutePath == null){
-				 pipeCommand = "false";
-				 throw new Error("Decoding via a pipe will not work: Could not find an ffmpeg binary for your system");
-			 }else{
-				 pipeCommand = '"' + decoderBinaryAbsolutePath + '"' + arguments;
-			 }
-		 }
+		 printErrorstream = isAndroid();
+		 decoderBinary = locateDecoderBinary(nativeDirectory);
 	 }
 	
-	private boolean isAvailable(String command){
-		try{
-			Runtime.getRuntime().exec(command + " -version");
-			return true;
-		}catch (Exception e){
-			return false;
+	/**
+	 * Locates the decoder binary, the first time it is needed.
+	 *
+	 * @param nativeDirectory
+	 *            The directory with the unpacked ffmpeg binary on Android, or
+	 *            null.
+	 * @return The path to the decoder binary.
+	 */
+	private static synchronized String locateDecoderBinary(String nativeDirectory) {
+		if (locatedDecoderBinary != null) {
+			return locatedDecoderBinary;
 		}	
+		String path = System.getenv("PATH");
+		String binary = findOnPath("ffmpeg");
+		if (binary != null) {
+			LOG.info("found ffmpeg on the path (" + path + "). Will use ffmpeg for decoding media files.");
+		} else if ((binary = findOnPath("avconv")) != null) {
+			LOG.info("found avconv on your path(" + path + "). Will use avconv for decoding media files.");
+		} else if (isAndroid()) {
+			if (nativeDirectory == null) {
+				nativeDirectory = System.getProperty("java.io.tmpdir");
+			}
+			File f = new File(nativeDirectory, "libffmpeg.so");
+			if (f.exists() && f.length() > 1000000 && f.canExecute()) {
+				binary = f.getAbsolutePath();
+			} else {
+				LOG.severe("Could not find an ffmpeg binary for your Android system. Did you forget calling: 'new AndroidFFMPEGLocator(this);' ?");
+				LOG.severe("Tried to unpack a staticallyc to: " + f.getAbsolutePath());
+			}
+		} else {
+			LOG.warning("Dit not find ffmpeg or avconv on your path(" + path + "), will try to download it automatically.");
+			FFMPEGDownloader downloader = new FFMPEGDownloader();
+			binary = downloader.ffmpegBinary();
+			if (binary == null) {
+				LOG.severe("Could not download an ffmpeg binary automatically for your system.");
+			}
+		}
+		if (binary == null) {
+			throw new Error("Decoding via a pipe will not work: Could not find an ffmpeg binary for your system");
+		}
+		locatedDecoderBinary = binary;
+		return binary;
 	}
 	
+	/**
+	 * Searches the directories on the path for an executable, without starting
+	 * a process.
+	 *
+	 * @param command
+	 *            The name of the executable, without extension.
+	 * @return The absolute path of the executable, or null.
+	 */
+	private static String findOnPath(String command) {
+		String path = System.getenv("PATH");
+		if (path == null) {
+			return null;
+		}
+		boolean windows = System.getProperty("os.name").indexOf("indows") > 0;
+		String name = windows ? command + ".exe" : command;
+		for (String directory : path.split(File.pathSeparator)) {
+			File candidate = new File(directory, name);
+			if (candidate.isFile() && candidate.canExecute()) {
+				return candidate.getAbsolutePath();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the maximum number of decoding processes which run at the same time,
+	 * for all decoders. Decoding requests wait for a running decoder to finish.
+	 * The default is the number of processors.
+	 *
+	 * @param maximum
+	 *            The maximum number of concurrent decoders, at least one.
+	 */
+	public static void setMaximumConcurrentDecoders(int maximum) {
+		if (maximum < 1) {
+			throw new IllegalArgumentException("At least one decoder is needed, not " + maximum);
+		}
+		// Streams which are being decoded release the permit they acquired.
+		decoderPermits = new Semaphore(maximum, true);
+	}
+
+	/**
+	 * Decodes with a custom command, run by a shell. The command can contain
+	 * the placeholders <code>%input_seeking%</code>,
+	 * <code>%number_of_seconds%</code>, <code>%resource%</code>,
+	 * <code>%sample_rate%</code> and <code>%channels%</code>.
+	 *
+	 * @param pipeEnvironment
+	 *            The shell, e.g. <code>/bin/bash</code>.
+	 * @param pipeArgument
+	 *            The shell argument to run a command, e.g. <code>-c</code>.
+	 * @param pipeCommand
+	 *            The command.
+	 * @param pipeLogFile
+	 *            Not used.
+	 * @param pipeBuffer
+	 *            The size of the buffer on the decoded stream.
+	 */
 	public PipeDecoder(String pipeEnvironment,String pipeArgument,String pipeCommand,String pipeLogFile,int pipeBuffer){
 		this.pipeEnvironment = pipeEnvironment;
 		this.pipeArgument = pipeArgument;
@@ -166,121 +276,389 @@ public class PipeDecoder {
 	}
 
 	
+	/**
+	 * Determines the format of the decoded audio: signed 16 bit or 32 bit float
+	 * little-endian samples, at a given or the native sample rate, with a given
+	 * or the native number of channels. Decoding to the native sample rate
+	 * avoids resampling, 32 bit float samples avoid quantization and convert to
+	 * floats with a bulk copy.
+	 *
+	 * @param resource
+	 *            The resource to decode.
+	 * @param targetSampleRate
+	 *            The sample rate, or {@link #NATIVE}.
+	 * @param channels
+	 *            The number of channels, or {@link #NATIVE}.
+	 * @param floatSamples
+	 *            True for 32 bit float samples, false for 16 bit signed.
+	 * @return The format to pass to
+	 *         {@link #getDecodedStream(String, TarsosDSPAudioFormat, double, double)}.
+	 */
+	public TarsosDSPAudioFormat getDecodedFormat(String resource, int targetSampleRate, int channels, boolean floatSamples) {
+		if (targetSampleRate == NATIVE || channels == NATIVE) {
+			Probe probe = new AudioMetadataProber(this).probe(resource);
+			if (targetSampleRate == NATIVE) {
+				targetSampleRate = probe.getSampleRate();
+				if (targetSampleRate <= 0) {
+					LOG.warning("Could not determine the sample rate of " + resource + ", decoding at " + FALLBACK_SAMPLE_RATE + "Hz.");
+					targetSampleRate = FALLBACK_SAMPLE_RATE;
+				}
+			}
+			if (channels == NATIVE) {
+				channels = probe.getChannels();
+				if (channels <= 0) {
+					LOG.warning("Could not determine the number of channels of " + resource + ", decoding to mono.");
+					channels = 1;
+				}
+			}
+		}
+		if (floatSamples) {
+			return new TarsosDSPAudioFormat(TarsosDSPAudioFloatConverter.PCM_FLOAT, targetSampleRate, 32, channels,
+					4 * channels, targetSampleRate, false);
+		}
+		return new TarsosDSPAudioFormat(targetSampleRate, 16, channels, true, false);
+	}
+
+	/**
+	 * Decodes to one channel, signed 16 bit little-endian samples.
+	 *
+	 * @param resource
+	 *            The resource to decode.
+	 * @param targetSampleRate
+	 *            The sample rate to decode to.
+	 * @param timeOffset
+	 *            The start time offset, in seconds.
+	 * @param numberOfSeconds
+	 *            The number of seconds to decode. If negative the resource is
+	 *            decoded until the end.
+	 * @return The decoded samples, or null if the decoder could not be started.
+	 */
 	public InputStream getDecodedStream(final String resource,final int targetSampleRate,final double timeOffset, double numberOfSeconds) {
-		
-		try {
-			String command = pipeCommand;
-			command = command.replace("%input_seeking%",String.valueOf(timeOffset));
+		return getDecodedStream(resource, new TarsosDSPAudioFormat(targetSampleRate, 16, 1, true, false), timeOffset, numberOfSeconds);
+	}
+
+	/**
+	 * Decodes to a format from {@link #getDecodedFormat(String, int, int, boolean)}.
+	 *
+	 * @param resource
+	 *            The resource to decode.
+	 * @param format
+	 *            The format to decode to.
+	 * @param timeOffset
+	 *            The start time offset, in seconds.
+	 * @param numberOfSeconds
+	 *            The number of seconds to decode. If negative the resource is
+	 *            decoded until the end.
+	 * @return The decoded samples, or null if the decoder could not be started.
+	 */
+	public InputStream getDecodedStream(final String resource, final TarsosDSPAudioFormat format, final double timeOffset, double numberOfSeconds) {
+		String sampleRate = String.valueOf((int) format.getSampleRate());
+		String channels = String.valueOf(format.getChannels());
+		boolean floatSamples = format.getEncoding() == TarsosDSPAudioFloatConverter.PCM_FLOAT;
+		List<String> command;
+		if (decoderBinary != null) {
+			command = new ArrayList<String>();
+			command.add(decoderBinary);
+			if (!printErrorstream) {
+				// Nobody reads the error stream: keep it short so it can
+				// not fill up and block the decoder.
+				command.add("-loglevel");
+				command.add("error");
+			}
+			command.add("-ss");
+			command.add(String.valueOf(timeOffset));
 			//defines the number of seconds to process
 			// -t 10.000 e.g. specifies to process ten seconds 
 			// from the specified time offset (which is often zero).
+			if (numberOfSeconds > 0) {
+				command.add("-t");
+				command.add(String.valueOf(numberOfSeconds));
+			}
+			command.add("-i");
+			command.add(resource);
+			command.add("-vn");
+			// The resampler passes audio through when the source already has
+			// this rate.
+			command.add("-ar");
+			command.add(sampleRate);
+			command.add("-ac");
+			command.add(channels);
+			command.add("-sample_fmt");
+			command.add(floatSamples ? "flt" : "s16");
+			command.add("-f");
+			command.add(floatSamples ? "f32le" : "s16le");
+			command.add("pipe:1");
+		} else {
+			String shellCommand = pipeCommand;
+			shellCommand = shellCommand.replace("%input_seeking%",String.valueOf(timeOffset));
 			if(numberOfSeconds>0){
-				command = command.replace("%number_of_seconds%","-t " + String.valueOf(numberOfSeconds));
+				shellCommand = shellCommand.replace("%number_of_seconds%","-t " + String.valueOf(numberOfSeconds));
 			} else {
-				command = command.replace("%number_of_seconds%","");
+				shellCommand = shellCommand.replace("%number_of_seconds%","");
 			}
-			command = command.replace("%resource%", resource);
-			command = command.replace("%sample_rate%", String.valueOf(targetSampleRate));
-			command = command.replace("%channels%","1");
+			shellCommand = shellCommand.replace("%resource%", resource);
+			shellCommand = shellCommand.replace("%sample_rate%", sampleRate);
+			shellCommand = shellCommand.replace("%channels%", channels);
+			command = new ArrayList<String>();
+			command.add(pipeEnvironment);
+			command.add(pipeArgument);
+			command.add(shellCommand);
+		}
 			
-			ProcessBuilder pb;
-			pb= new ProcessBuilder(pipeEnvironment, pipeArgument , command);
-
+		final Semaphore permits = decoderPermits;
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOG.warning("Interrupted while waiting for a decoder for " + resource);
+			return null;
+		}
+		try {
 			LOG.info("Starting piped decoding process for " + resource);
 			LOG.info(" with command: " + command);
-			final Process process = pb.start();
-			
-			final InputStream stdOut = new BufferedInputStream(process.getInputStream(), pipeBuffer){
-				@Override
-				public void close() throws IOException{
-					super.close();
-					// try to destroy the ffmpeg command after close
-					process.destroy();
-				}
-			};
+			final Process process = new ProcessBuilder(command).start();
 			
 			//print std error if requested
 			if(printErrorstream) {
 				new ErrorStreamGobbler(process.getErrorStream(),LOG).start();
 			}
-			
-			new Thread(new Runnable(){
-				@Override
-				public void run() {
-					try {
-						process.waitFor();
-						LOG.info("Finished piped decoding process");
-					} catch (InterruptedException e) {
-						LOG.severe("Interrupted while waiting for decoding sub process exit.");
-						e.printStackTrace();
-					}
-				}},"Decoding Pipe").start();
-			return stdOut;
+			return new DecodedStream(process, permits, pipeBuffer);
 		} catch (IOException e) {
+			permits.release();
 			LOG.warning("IO exception while decoding audio via sub process." + e.getMessage() );
 			e.printStackTrace();
 		}
 		return null;
 	}
 	
+	/**
+	 * The output of a decoding process. The decoder permit is released at the
+	 * end of the stream or when the stream is closed, whichever comes first.
+	 */
+	static class DecodedStream extends BufferedInputStream {
+		private final Process process;
+		private final Semaphore permits;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private DecodedStream(Process process, Semaphore permits, int size) {
+			super(process.getInputStream(), size);
+			this.process = process;
+			this.permits = permits;
+		}
+
+		private void release() {
+			if (released.compareAndSet(false, true)) {
+				permits.release();
+				LOG.info("Finished piped decoding process");
+			}
+		}
+
+		@Override
+		public synchronized int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				release();
+			}
+			return b;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read == -1) {
+				release();
+			}
+			return read;
+		}
+
+		/**
+		 * Waits for the decoder to exit, e.g. after the end of the stream: a
+		 * decoder which fails or is killed also ends the stream.
+		 *
+		 * @return The exit status of the decoder, zero on success.
+		 * @throws InterruptedException
+		 *             If interrupted while waiting.
+		 */
+		int waitForExit() throws InterruptedException {
+			return process.waitFor();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				// try to destroy the ffmpeg command after close
+				process.destroy();
+				release();
+			}
+		}
+	}
+
+	/**
+	 * Reads the duration from the headers of the resource, see
+	 * {@link AudioMetadataProber}, or else from the decoder output.
+	 *
+	 * @param resource
+	 *            The resource to probe.
+	 * @return The duration of the resource in seconds, or -1 if it is unknown.
+	 */
 	public double getDuration(final String resource) {
-		double duration = -1;
+		return new AudioMetadataProber(this).getDuration(resource);
+	}
+
+	/**
+	 * Reads the duration, sample rate and number of channels of a resource
+	 * from the decoder output. Probes of local files are cached until the file
+	 * changes.
+	 *
+	 * @param resource
+	 *            The resource to probe.
+	 * @return The probe, with -1 for unknown properties.
+	 */
+	public Probe probe(final String resource) {
+		File file = new File(resource);
+		String key = null;
+		if (file.isFile()) {
+			key = file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified();
+			synchronized (probeCache) {
+				Probe cached = probeCache.get(key);
+				if (cached != null) {
+					return cached;
+				}
+			}
+		}
+		Probe probe = runProbe(resource);
+		if (key != null && probe.getDuration() >= 0) {
+			synchronized (probeCache) {
+				probeCache.put(key, probe);
+			}
+		}
+		return probe;
+	}
+
+	private Probe runProbe(String resource) {
+		List<String> command = new ArrayList<String>();
+		command.add(decoderBinary != null ? decoderBinary : "ffmpeg");
+		command.add("-i");
+		command.add(resource);
+		LOG.info("Starting duration command for " + resource);
+		LOG.fine(" with command: " + command);
+
+		StringBuilder output = new StringBuilder();
 		try {
-			//use " for windows compatibility!
-			String command = "ffmpeg -i \"%resource%\"";
+			Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				output.append(line).append('\n');
+			}
+			reader.close();
+			process.waitFor();
+		} catch (IOException e) {
+			LOG.warning("IO exception while probing audio via sub process." + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOG.warning("Interrupted while probing " + resource);
+		}
+		return Probe.parse(output.toString());
+	}
 			
-			command = command.replace("%resource%", resource);
+	/**
+	 * The properties of a resource as reported by the decoder.
+	 */
+	public static final class Probe {
+		private static final Pattern DURATION = Pattern.compile("Duration:\\s+(\\d\\d):(\\d\\d):(\\d\\d)\\.(\\d\\d),");
+		private static final Pattern AUDIO = Pattern.compile("Audio: .*?, (\\d+) Hz, ([^,\\n]+)");
 					
-			ProcessBuilder pb;
-			pb= new ProcessBuilder(pipeEnvironment, pipeArgument , command);
+		private final double duration;
+		private final int sampleRate;
+		private final int channels;
 
-			LOG.info("Starting duration command for " + resource);
-			LOG.fine(" with command: " + command);
-			final Process process = pb.start();
+		Probe(double duration, int sampleRate, int channels) {
+			this.duration = duration;
+			this.sampleRate = sampleRate;
+			this.channels = channels;
+		}
 			
-			final InputStream stdOut = new BufferedInputStream(process.getInputStream(), pipeBuffer){
-				@Override
-				public void close() throws IOException{
-					super.close();
-					// try to destroy the ffmpeg command after close
-					process.destroy();
-				}
-			};
+		static Probe parse(String output) {
+			double duration = -1;
+			int sampleRate = -1;
+			int channels = -1;
+			Matcher matcher = DURATION.matcher(output);
+			if (matcher.find()) {
+				duration = Integer.valueOf(matcher.group(1)) * 3600 +
+						Integer.valueOf(matcher.group(2)) * 60 +
+						Integer.valueOf(matcher.group(3)) +
+						Double.valueOf("." + matcher.group(4));
+			}
+			matcher = AUDIO.matcher(output);
+			if (matcher.find()) {
+				sampleRate = Integer.valueOf(matcher.group(1));
+				channels = parseChannelLayout(matcher.group(2).trim());
+			}
+			return new Probe(duration, sampleRate, channels);
+		}
 			
-			ErrorStreamStringGlobber essg = new ErrorStreamStringGlobber(process.getErrorStream());
-			essg.start();
+		/**
+		 * @param layout
+		 *            A channel layout, e.g. mono, stereo, 5.1(side) or 3
+		 *            channels.
+		 * @return The number of channels, or -1.
+		 */
+		private static int parseChannelLayout(String layout) {
+			Matcher matcher = Pattern.compile("(\\d+) channels").matcher(layout);
+			if (matcher.find()) {
+				return Integer.valueOf(matcher.group(1));
+			}
+			matcher = Pattern.compile("^(\\d+)\\.(\\d+)").matcher(layout);
+			if (matcher.find()) {
+				return Integer.valueOf(matcher.group(1)) + Integer.valueOf(matcher.group(2));
+			}
+			if (layout.startsWith("mono")) {
+				return 1;
+			} else if (layout.startsWith("stereo")) {
+				return 2;
+			} else if (layout.startsWith("quad")) {
+				return 4;
+			}
+			return -1;
+		}
 			
-			new Thread(new Runnable(){
-				@Override
-				public void run() {
-					try {
-						process.waitFor();
-						LOG.info("Finished piped decoding process");
-					} catch (InterruptedException e) {
-						LOG.severe("Interrupted while waiting for decoding sub process exit.");
-						e.printStackTrace();
-					}
-				}},"Decoding Pipe").run();
+		/**
+		 * @return The duration in seconds, or -1.
+		 */
+		public double getDuration() {
+			return duration;
+		}
 			
-			String stdError = essg.getErrorStreamAsString();
-			Pattern regex = Pattern.compile(".*\\s.*Duration:\\s+(\\d\\d):(\\d\\d):(\\d\\d)\\.(\\d\\d), .*", Pattern.DOTALL | Pattern.MULTILINE);
-			Matcher regexMatcher = regex.matcher(stdError);
-			if (regexMatcher.find()) {
-				duration = Integer.valueOf(regexMatcher.group(1)) * 3600+ 
-				Integer.valueOf(regexMatcher.group(2)) * 60+
-				Integer.valueOf(regexMatcher.group(3)) * 1 +
-				 Double.valueOf("." + regexMatcher.group(4) );
-			}
-		} catch (IOException e) {
-			LOG.warning("IO exception while decoding audio via sub process." + e.getMessage() );
-			e.printStackTrace();
+		/**
+		 * @return The sample rate of the first audio stream, or -1.
+		 */
+		public int getSampleRate() {
+			return sampleRate;
+		}
+
+		/**
+		 * @return The number of channels of the first audio stream, or -1.
+		 */
+		public int getChannels() {
+			return channels;
+		}
+
+		/**
+		 * @param sampleRate
+		 *            The sample rate the resource is decoded at.
+		 * @return The number of frames after decoding, or -1.
+		 */
+		public long getFrameLength(float sampleRate) {
+			return duration < 0 ? -1 : Math.round(duration * sampleRate);
 		}
-		return duration;
 	}
 
 	public void printBinaryInfo(){
 		try {
-			Process p = Runtime.getRuntime().exec(decoderBinaryAbsolutePath);
+			Process p = new ProcessBuilder(decoderBinary).start();
 			BufferedReader input = new BufferedReader(new InputStreamReader(p.getErrorStream()));
 			String line = null;
 			while ((line = input.readLine()) != null) {
@@ -316,7 +694,7 @@ public class PipeDecoder {
 	}
 
 
-	private boolean isAndroid(){
+	private static boolean isAndroid(){
 		try {
 			// This class is only available on android
 			Class.forName("android.app.Activity");
@@ -329,7 +707,7 @@ public class PipeDecoder {
 	}
 
 
-	private class ErrorStreamGobbler extends Thread {
+	private static class ErrorStreamGobbler extends Thread {
 		private final InputStream is;
 		private final Logger logger;
 
@@ -353,33 +731,4 @@ public class PipeDecoder {
 			}
 		}
 	}
-	
-	private class ErrorStreamStringGlobber extends Thread {
-		private final InputStream is;
-		private final StringBuilder sb;
-
-		private ErrorStreamStringGlobber(InputStream is) {
-			this.is = is;
-			this.sb = new StringBuilder();
-		}
-
-		@Override
-		public void run() {
-			try {
-				InputStreamReader isr = new InputStreamReader(is);
-				BufferedReader br = new BufferedReader(isr);
-				String line = null;
-				while ((line = br.readLine()) != null) {
-					sb.append(line);
-				}
-			}
-			catch (IOException ioe) {
-				ioe.printStackTrace();
-			}
-		}
-		
-		public String getErrorStreamAsString(){
-			return sb.toString();
-		}
-	}
 }
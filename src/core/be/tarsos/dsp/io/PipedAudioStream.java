@@ -23,6 +23,8 @@
 
 package be.tarsos.dsp.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 import be.tarsos.dsp.util.AudioResourceUtils;
@@ -56,6 +58,17 @@ public class PipedAudioStream {
 	public static void setDecoder(PipeDecoder decoder){
 		pipeDecoder = decoder;
 	}
+
+	private static volatile DecodedAudioCache cache;
+
+	/**
+	 * Caches decoded audio of local files, so decoding the same audio again
+	 * reads from the cache instead of starting a decoder.
+	 * @param decodedAudioCache The cache, or null to always decode.
+	 */
+	public static void setCache(DecodedAudioCache decodedAudioCache){
+		cache = decodedAudioCache;
+	}
 	
 	private final PipeDecoder decoder;
 	public PipedAudioStream(String resource){
@@ -70,6 +83,16 @@ public class PipedAudioStream {
 		this.resource = AudioResourceUtils.sanitizeResource(resource);
 		decoder = pipeDecoder;
 	}
+
+	/**
+	 * Decode a resource with a specific decoder.
+	 * @param resource The file or stream to decode.
+	 * @param decoder The decoder to use.
+	 */
+	public PipedAudioStream(String resource, PipeDecoder decoder){
+		this.resource = AudioResourceUtils.sanitizeResource(resource);
+		this.decoder = decoder;
+	}
 	
 	/**
 	 * Return a one channel, signed PCM stream of audio of a defined sample rate. 
@@ -99,15 +122,103 @@ public class PipedAudioStream {
 	 */
 	public TarsosDSPAudioInputStream getMonoStream(int targetSampleRate, double startTimeOffset,
 			double numberOfSeconds) {
+		DecodedAudioCache decodedAudioCache = cache;
+		if(decodedAudioCache != null){
+			return decodedAudioCache.getMonoStream(decoder, resource, targetSampleRate, startTimeOffset, numberOfSeconds);
+		}
 		InputStream stream = null;
 		stream = decoder.getDecodedStream(resource, targetSampleRate,startTimeOffset,numberOfSeconds);
-		return new UniversalAudioInputStream(stream, getTargetFormat(targetSampleRate));
+		TarsosDSPAudioFormat format = getTargetFormat(targetSampleRate);
+		return new UniversalAudioInputStream(stream, format, AudioMetadataProber.decodedFrameLength(resource, format, startTimeOffset, numberOfSeconds));
+	}
+
+	/**
+	 * Return a stream of audio in a chosen format: 32 bit float samples avoid
+	 * quantization to 16 bits and convert to floats with a bulk copy, the
+	 * native sample rate avoids resampling.
+	 * @param targetSampleRate The sample rate, or {@link PipeDecoder#NATIVE} for the sample rate of the resource.
+	 * @param channels The number of channels, or {@link PipeDecoder#NATIVE} for those of the resource.
+	 * @param floatSamples True for 32 bit float samples, false for 16 bit signed samples.
+	 * @param startTimeOffset The start time offset.
+	 * @param numberOfSeconds the number of seconds to pipe. If negative the stream is processed until end of stream.
+	 * @return An audio stream which can be used to read samples from.
+	 */
+	public TarsosDSPAudioInputStream getStream(int targetSampleRate, int channels, boolean floatSamples,
+			double startTimeOffset, double numberOfSeconds) {
+		TarsosDSPAudioFormat format = decoder.getDecodedFormat(resource, targetSampleRate, channels, floatSamples);
+		DecodedAudioCache decodedAudioCache = cache;
+		if(decodedAudioCache != null){
+			return decodedAudioCache.getStream(decoder, resource, format, startTimeOffset, numberOfSeconds);
+		}
+		InputStream stream = decoder.getDecodedStream(resource, format, startTimeOffset, numberOfSeconds);
+		return new UniversalAudioInputStream(stream, format, AudioMetadataProber.decodedFrameLength(resource, format, startTimeOffset, numberOfSeconds));
 	}
 
+	/**
+	 * Return a one channel, signed PCM stream which seeks by restarting the
+	 * decoder at the requested time offset, instead of reading up to it.
+	 * @param targetSampleRate The target sample stream.
+	 * @param startTimeOffset The start time offset.
+	 * @param numberOfSeconds the number of seconds to pipe. If negative the stream is processed until end of stream.
+	 * @return An audio stream which can be used to read samples from.
+	 */
 	public UniversalAudioInputStream getMonoStream_U(int targetSampleRate, double startTimeOffset,
 			double numberOfSeconds) {
-		InputStream stream = null;
-		stream = decoder.getDecodedStream(resource, targetSampleRate,startTimeOffset,numberOfSeconds);
-		return new UniversalAudioInputStream(stream, getTargetFormat(targetSampleRate));
+		TarsosDSPAudioFormat format = getTargetFormat(targetSampleRate);
+		return new RestartableAudioInputStream(decoder, resource, format, startTimeOffset, numberOfSeconds);
+	}
+
+	/**
+	 * A decoded stream which seeks by starting a new decoder.
+	 */
+	private static final class RestartableAudioInputStream extends UniversalAudioInputStream {
+		private final PipeDecoder decoder;
+		private final String resource;
+		private final double startTimeOffset;
+		private final double numberOfSeconds;
+
+		private RestartableAudioInputStream(PipeDecoder decoder, String resource, TarsosDSPAudioFormat format,
+				double startTimeOffset, double numberOfSeconds) {
+			super(decoder.getDecodedStream(resource, format, startTimeOffset, numberOfSeconds), format,
+					AudioMetadataProber.decodedFrameLength(resource, format, startTimeOffset, numberOfSeconds));
+			this.decoder = decoder;
+			this.resource = resource;
+			this.startTimeOffset = startTimeOffset;
+			this.numberOfSeconds = numberOfSeconds;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, len);
+		}
+
+		@Override
+		public synchronized boolean seek(double seconds) throws IOException {
+			// Stop the running decoder first, it holds a decoder permit which
+			// the new decoder could be waiting for.
+			setUnderlyingStream(new ByteArrayInputStream(new byte[0])).close();
+			InputStream restarted;
+			if (numberOfSeconds > 0 && seconds >= numberOfSeconds) {
+				restarted = new ByteArrayInputStream(new byte[0]);
+			} else {
+				double remaining = numberOfSeconds > 0 ? numberOfSeconds - seconds : numberOfSeconds;
+				restarted = decoder.getDecodedStream(resource, getFormat(), startTimeOffset + seconds, remaining);
+				if (restarted == null) {
+					throw new IOException("Could not restart the decoder for " + resource);
+				}
+			}
+			setUnderlyingStream(restarted);
+			return true;
+		}
+
+		@Override
+		public void mark(int readLimit) {
+			// Seeking back restarts the decoder, nothing needs to be buffered.
+		}
+
+		@Override
+		public void reset() throws IOException {
+			seek(0);
+		}
 	}
 }
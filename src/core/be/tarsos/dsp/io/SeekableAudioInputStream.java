@@ -0,0 +1,137 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An audio stream of uncompressed samples in a {@link SeekableByteChannel},
+ * e.g. a raw PCM file or the data chunk of a WAV file. Skipping and seeking
+ * move the position of the channel, so they take the same time wherever they
+ * go to.
+ */
+public class SeekableAudioInputStream extends UniversalAudioInputStream {
+
+	private final SeekableByteChannel channel;
+	private final long dataStart;
+	private final long dataEnd;
+	private final int frameSize;
+	private long position;
+	private long markedPosition;
+
+	/**
+	 * Reads samples from a channel.
+	 *
+	 * @param channel
+	 *            The channel, positioned anywhere.
+	 * @param format
+	 *            The format of the samples.
+	 * @param dataStart
+	 *            The position of the first sample in the channel, e.g. 44 for
+	 *            a canonical WAV file.
+	 * @param frameLength
+	 *            The number of frames, or -1 to read until the end of the
+	 *            channel.
+	 * @throws IOException
+	 *             If the channel can not be positioned.
+	 */
+	public SeekableAudioInputStream(SeekableByteChannel channel, TarsosDSPAudioFormat format, long dataStart,
+			long frameLength) throws IOException {
+		super(Channels.newInputStream(channel), format, frameLength >= 0 ? frameLength
+				: (channel.size() - dataStart) / format.getFrameSize());
+		this.channel = channel;
+		this.dataStart = dataStart;
+		this.frameSize = format.getFrameSize();
+		this.dataEnd = dataStart + getFrameLength() * frameSize;
+		position = dataStart;
+		markedPosition = dataStart;
+		channel.position(dataStart);
+	}
+
+	/**
+	 * Reads samples from a file.
+	 *
+	 * @param file
+	 *            The file.
+	 * @param format
+	 *            The format of the samples.
+	 * @param dataStart
+	 *            The position of the first sample in the file, e.g. 0 for raw
+	 *            PCM or 44 for a canonical WAV file.
+	 * @throws IOException
+	 *             If the file can not be opened.
+	 */
+	public SeekableAudioInputStream(File file, TarsosDSPAudioFormat format, long dataStart) throws IOException {
+		this(Files.newByteChannel(file.toPath(), StandardOpenOption.READ), format, dataStart, -1);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int length = (int) Math.min(len, dataEnd - position);
+		if (length <= 0) {
+			return -1;
+		}
+		int read = channel.read(ByteBuffer.wrap(b, off, length));
+		if (read > 0) {
+			position += read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long bytesToSkip) throws IOException {
+		long skipped = Math.max(0, Math.min(bytesToSkip, dataEnd - position));
+		moveTo(position + skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean seek(double seconds) throws IOException {
+		long frame = Math.max(0, Math.round(seconds * getFormat().getSampleRate()));
+		moveTo(Math.min(dataStart + frame * frameSize, dataEnd));
+		return true;
+	}
+
+	private void moveTo(long newPosition) throws IOException {
+		channel.position(newPosition);
+		position = newPosition;
+	}
+
+	@Override
+	public void mark(int readLimit) {
+		markedPosition = position;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		moveTo(markedPosition);
+	}
+}
@@ -281,6 +281,22 @@ public abstract class TarsosDSPAudioFloatConverter {
             return out_buff;
         }
 
+        public float[][] toFloatArrays(byte[] in_buff, int in_offset,
+                float[][] out_buffs, int out_offset, int out_len) {
+            int channels = out_buffs.length;
+            int ix = in_offset;
+            int len = out_offset + out_len;
+            for (int ox = out_offset; ox < len; ox++) {
+                for (int c = 0; c < channels; c++) {
+                    out_buffs[c][ox] = Float.intBitsToFloat((in_buff[ix++] & 0xFF)
+                            | ((in_buff[ix++] & 0xFF) << 8)
+                            | ((in_buff[ix++] & 0xFF) << 16)
+                            | (in_buff[ix++] << 24));
+                }
+            }
+            return out_buffs;
+        }
+
         public byte[] toByteArray(float[] in_buff, int in_offset, int in_len,
                 byte[] out_buff, int out_offset) {
             int out_len = in_len * 4;
@@ -403,6 +419,20 @@ public abstract class TarsosDSPAudioFloatConverter {
             return out_buff;
         }
 
+        public float[][] toFloatArrays(byte[] in_buff, int in_offset,
+                float[][] out_buffs, int out_offset, int out_len) {
+            int channels = out_buffs.length;
+            int ix = in_offset;
+            int len = out_offset + out_len;
+            for (int ox = out_offset; ox < len; ox++) {
+                for (int c = 0; c < channels; c++) {
+                    out_buffs[c][ox] = ((short) ((in_buff[ix++] & 0xFF) | 
+                               (in_buff[ix++] << 8))) * (1.0f / 32767.0f);
+                }
+            }
+            return out_buffs;
+        }
+
         public byte[] toByteArray(float[] in_buff, int in_offset, int in_len,
                 byte[] out_buff, int out_offset) {
             int ox = out_offset;
@@ -429,6 +459,20 @@ public abstract class TarsosDSPAudioFloatConverter {
             return out_buff;
         }
 
+        public float[][] toFloatArrays(byte[] in_buff, int in_offset,
+                float[][] out_buffs, int out_offset, int out_len) {
+            int channels = out_buffs.length;
+            int ix = in_offset;
+            int len = out_offset + out_len;
+            for (int ox = out_offset; ox < len; ox++) {
+                for (int c = 0; c < channels; c++) {
+                    out_buffs[c][ox] = ((short) ((in_buff[ix++] << 8) | 
+                            (in_buff[ix++] & 0xFF))) * (1.0f / 32767.0f);
+                }
+            }
+            return out_buffs;
+        }
+
         public byte[] toByteArray(float[] in_buff, int in_offset, int in_len,
                 byte[] out_buff, int out_offset) {
             int ix = in_offset;
@@ -516,6 +560,23 @@ public abstract class TarsosDSPAudioFloatConverter {
             return out_buff;
         }
 
+        public float[][] toFloatArrays(byte[] in_buff, int in_offset,
+                float[][] out_buffs, int out_offset, int out_len) {
+            int channels = out_buffs.length;
+            int ix = in_offset;
+            int len = out_offset + out_len;
+            for (int ox = out_offset; ox < len; ox++) {
+                for (int c = 0; c < channels; c++) {
+                    int x = (in_buff[ix++] & 0xFF) | ((in_buff[ix++] & 0xFF) << 8)
+                            | ((in_buff[ix++] & 0xFF) << 16);
+                    if (x > 0x7FFFFF)
+                        x -= 0x1000000;
+                    out_buffs[c][ox] = x * (1.0f / (float)0x7FFFFF);
+                }
+            }
+            return out_buffs;
+        }
+
         public byte[] toByteArray(float[] in_buff, int in_offset, int in_len,
                 byte[] out_buff, int out_offset) {
             int ix = in_offset;
@@ -938,6 +999,13 @@ public abstract class TarsosDSPAudioFloatConverter {
                 ((format.getSampleSizeInBits() + 7) / 8) * format.getChannels()) {
             return null;
         }
+        // 16 and 32 bit signed and 32 and 64 bit float samples are read and
+        // written as a whole.
+        conv = BulkAudioFloatConverter.forFormat(format);
+        if (conv != null) {
+            conv.format = format;
+            return conv;
+        }
         if (format.getEncoding().equals(Encoding.PCM_SIGNED)) {
             if (format.isBigEndian()) {
                 if (format.getSampleSizeInBits() <= 8) {
@@ -1034,10 +1102,57 @@ public abstract class TarsosDSPAudioFloatConverter {
 
     private TarsosDSPAudioFormat format;
 
+    /**
+     * Interleaved samples, used by the default implementation of
+     * toFloatArrays.
+     */
+    private float[] deinterleave_buffer;
+
     public TarsosDSPAudioFormat getFormat() {
         return format;
     }
 
+    /**
+     * Converts interleaved frames into planar float arrays, one array for
+     * each channel. The common formats (16 and 24 bit signed little-endian, 16
+     * bit signed big-endian and 32 bit float little-endian) deinterleave while
+     * converting, the other formats convert to an interleaved buffer first.
+     * 
+     * @param in_buff
+     *            The interleaved frames.
+     * @param in_offset
+     *            The offset in bytes of the first frame.
+     * @param out_buffs
+     *            An array for each channel.
+     * @param out_offset
+     *            The index in the channel arrays of the first sample.
+     * @param out_len
+     *            The number of frames to convert.
+     * @return The channel arrays.
+     */
+    public float[][] toFloatArrays(byte[] in_buff, int in_offset,
+            float[][] out_buffs, int out_offset, int out_len) {
+        int channels = out_buffs.length;
+        if (channels == 1) {
+            toFloatArray(in_buff, in_offset, out_buffs[0], out_offset, out_len);
+            return out_buffs;
+        }
+        int samples = out_len * channels;
+        if (deinterleave_buffer == null || deinterleave_buffer.length < samples)
+            deinterleave_buffer = new float[samples];
+        toFloatArray(in_buff, in_offset, deinterleave_buffer, 0, samples);
+        for (int c = 0; c < channels; c++) {
+            float[] out_buff = out_buffs[c];
+            int ix = c;
+            int len = out_offset + out_len;
+            for (int ox = out_offset; ox < len; ox++) {
+                out_buff[ox] = deinterleave_buffer[ix];
+                ix += channels;
+            }
+        }
+        return out_buffs;
+    }
+
     public abstract float[] toFloatArray(byte[] in_buff, int in_offset,
             float[] out_buff, int out_offset, int out_len);
 
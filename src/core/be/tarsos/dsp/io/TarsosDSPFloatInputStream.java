@@ -0,0 +1,52 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io;
+
+import java.io.IOException;
+
+/**
+ * An audio stream which can deliver samples as floats directly, e.g. from a
+ * memory mapped file. The {@link be.tarsos.dsp.AudioDispatcher} uses this to
+ * skip its byte buffer and conversion step for mono streams.
+ */
+public interface TarsosDSPFloatInputStream extends TarsosDSPAudioInputStream {
+
+	/**
+	 * Reads samples, converted to floats as a {@link TarsosDSPAudioFloatConverter}
+	 * would. Reads and this method can be mixed: both advance the same
+	 * position. Only complete frames are read.
+	 *
+	 * @param samples
+	 *            The array to read into.
+	 * @param off
+	 *            The index of the first sample in the array.
+	 * @param len
+	 *            The maximum number of samples to read.
+	 * @return The number of samples read, or -1 at the end of the stream.
+	 * @throws IOException
+	 *             If the stream can not be read.
+	 */
+	int read(float[] samples, int off, int len) throws IOException;
+}
@@ -28,27 +28,74 @@ import java.io.InputStream;
 
 public class UniversalAudioInputStream implements TarsosDSPAudioInputStream {
 	
-	private final InputStream underlyingStream;
+	/**
+	 * The size of the buffer used to skip bytes which can not be seeked over.
+	 */
+	private static final int SKIP_BUFFER_SIZE = 64 * 1024;
+
+	private InputStream underlyingStream;
 	private final TarsosDSPAudioFormat format;
+	private final long frameLength;
+	private byte[] skipBuffer;
 	
 	public UniversalAudioInputStream(InputStream underlyingInputStream, TarsosDSPAudioFormat format){
+		this(underlyingInputStream, format, -1);
+	}
+
+	/**
+	 * @param underlyingInputStream The stream with the samples.
+	 * @param format The format of the samples.
+	 * @param frameLength The length of the stream in frames, e.g. from an
+	 *        {@link AudioMetadataProber}, or -1 if it is not known.
+	 */
+	public UniversalAudioInputStream(InputStream underlyingInputStream, TarsosDSPAudioFormat format, long frameLength){
 		this.underlyingStream = underlyingInputStream;
 		this.format = format;
+		this.frameLength = frameLength;
+	}
+
+	/**
+	 * Replaces the stream the samples are read from, e.g. by a decoder
+	 * restarted at another time offset.
+	 * @param underlyingInputStream The new stream.
+	 * @return The previous stream, which is not closed.
+	 */
+	InputStream setUnderlyingStream(InputStream underlyingInputStream) {
+		InputStream previous = underlyingStream;
+		underlyingStream = underlyingInputStream;
+		return previous;
 	}
 
 	@Override
 	public long skip(long bytesToSkip) throws IOException {
-		//the skip probably
-		int bytesSkipped = 0;
-		for(int i = 0 ; i < bytesToSkip ; i++){
-			int theByte = underlyingStream.read();
-			if(theByte!=-1){
-				bytesSkipped++;
+		// Skipping is not reliable on pipes, so read and discard the bytes in
+		// blocks.
+		if(skipBuffer == null){
+			skipBuffer = new byte[SKIP_BUFFER_SIZE];
+		}
+		long bytesSkipped = 0;
+		while(bytesSkipped < bytesToSkip){
+			int bytesRead = read(skipBuffer, 0, (int) Math.min(skipBuffer.length, bytesToSkip - bytesSkipped));
+			if(bytesRead == -1){
+				break;
 			}
+			bytesSkipped += bytesRead;
 		}
 		return bytesSkipped;
 	}
 
+	/**
+	 * Moves the stream to a time offset without reading the samples in
+	 * between. Streams which support this override this method, the default
+	 * implementation does nothing.
+	 * @param seconds The time offset from the start of the stream.
+	 * @return True if the stream is at the time offset, false if seeking is not supported.
+	 * @throws IOException If seeking fails.
+	 */
+	public boolean seek(double seconds) throws IOException {
+		return false;
+	}
+
 	@Override
 	public int read(byte[] b, int off, int len) throws IOException {
 		return underlyingStream.read(b, off, len);
@@ -66,7 +113,7 @@ public class UniversalAudioInputStream implements TarsosDSPAudioInputStream {
 
 	@Override
 	public long getFrameLength() {
-		return -1;
+		return frameLength;
 	}
 
 	public void mark(int readLimit)
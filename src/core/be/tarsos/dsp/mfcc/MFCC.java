@@ -23,13 +23,16 @@
 
 package be.tarsos.dsp.mfcc;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import be.tarsos.dsp.AudioEvent;
-import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.ReconfigurableAudioProcessor;
 import be.tarsos.dsp.util.fft.FFT;
 import be.tarsos.dsp.util.fft.HammingWindow;
 
 
-public class MFCC implements AudioProcessor {
+public class MFCC implements ReconfigurableAudioProcessor {
 	
     private int amountOfCepstrumCoef; //Number of MFCCs per frame
     protected int amountOfMelFilters; //Number of mel filters (SPHINX-III uses 40)
@@ -44,6 +47,10 @@ public class MFCC implements AudioProcessor {
     int centerFrequencies[];
 
     private FFT fft;
+    /**
+     * The FFTs for each buffer size, prepared before a reconfiguration.
+     */
+    private final Map<Integer, FFT> ffts = new ConcurrentHashMap<Integer, FFT>();
     private int samplesPerFrame; 
     private float sampleRate;
     
@@ -57,6 +64,7 @@ public class MFCC implements AudioProcessor {
         this.amountOfCepstrumCoef = amountOfCepstrumCoef;
         this.amountOfMelFilters = amountOfMelFilters;
         this.fft = new FFT(samplesPerFrame, new HammingWindow());
+        ffts.put(samplesPerFrame, fft);
         
         this.lowerFilterFreq = Math.max(lowerFilterFreq, 25);
         this.upperFilterFreq = Math.min(upperFilterFreq, sampleRate / 2);
@@ -65,10 +73,12 @@ public class MFCC implements AudioProcessor {
 
 	@Override
 	public boolean process(AudioEvent audioEvent) {
-		audioFloatBuffer = audioEvent.getFloatBuffer().clone();
+		audioFloatBuffer = audioEvent.copyToScratchBuffer();
 
         // Magnitude Spectrum
         float bin[] = magnitudeSpectrum(audioFloatBuffer);
+        audioEvent.releaseScratchBuffer(audioFloatBuffer);
+        audioFloatBuffer = null;
         // get Mel Filterbank
         float fbank[] = melFilter(bin, centerFrequencies);
         // Non-linear transformation
@@ -83,6 +93,22 @@ public class MFCC implements AudioProcessor {
 	public void processingFinished() {
 
 	}
+
+	@Override
+	public void prepareReconfiguration(int audioBufferSize, int bufferOverlap) {
+		if (!ffts.containsKey(audioBufferSize)) {
+			ffts.put(audioBufferSize, new FFT(audioBufferSize, new HammingWindow()));
+		}
+	}
+
+	@Override
+	public void reconfigure(int audioBufferSize, int bufferOverlap) {
+		prepareReconfiguration(audioBufferSize, bufferOverlap);
+		fft = ffts.get(audioBufferSize);
+		samplesPerFrame = audioBufferSize;
+		// The filter banks are expressed in FFT bins.
+		calculateFilterBanks();
+	}
 	
     /**
      * computes the magnitude spectrum of the input frame<br>
@@ -29,7 +29,7 @@ import java.util.LinkedList;
 
 import be.tarsos.dsp.AudioDispatcher;
 import be.tarsos.dsp.AudioEvent;
-import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.ReconfigurableAudioProcessor;
 import be.tarsos.dsp.beatroot.Peaks;
 import be.tarsos.dsp.util.fft.FFT;
 import be.tarsos.dsp.util.fft.ScaledHammingWindow;
@@ -49,7 +49,7 @@ import be.tarsos.dsp.util.fft.ScaledHammingWindow;
  * @author Joren Six
  * @author Simon Dixon
  */
-public class BeatRootSpectralFluxOnsetDetector implements AudioProcessor, OnsetDetector {
+public class BeatRootSpectralFluxOnsetDetector implements ReconfigurableAudioProcessor, OnsetDetector {
 	/** RMS amplitude of the current frame. */
 	private double frameRMS;
 	
@@ -161,7 +161,7 @@ public class BeatRootSpectralFluxOnsetDetector implements AudioProcessor, OnsetD
 	public boolean process(AudioEvent audioEvent) {
 		frameRMS = audioEvent.getRMS()/2.0;
 		
-		float[] audioBuffer = audioEvent.getFloatBuffer().clone();
+		float[] audioBuffer = audioEvent.copyToScratchBuffer();
 	
 		Arrays.fill(imBuffer, 0);
 		fft.powerPhaseFFTBeatRootOnset(audioBuffer, reBuffer, imBuffer);
@@ -189,6 +189,7 @@ public class BeatRootSpectralFluxOnsetDetector implements AudioProcessor, OnsetD
 			energy[frameCount * energyOversampleFactor + j] =
 					newEnergy / sz <= 1e-6? 0: Math.log(newEnergy / sz) + 13.816;
 		}
+		audioEvent.releaseScratchBuffer(audioBuffer);
 		double decay = frameCount >= 200? 0.99:
 					(frameCount < 100? 0: (frameCount - 100) / 100.0);
 		if (ltAverage == 0)
@@ -264,6 +265,22 @@ public class BeatRootSpectralFluxOnsetDetector implements AudioProcessor, OnsetD
 		this.handler = handler;
 	}
 
+	/**
+	 * The spectral flux is stored per hop and the onset times follow from the
+	 * hop time: other buffer and hop sizes are refused.
+	 */
+	@Override
+	public void prepareReconfiguration(int audioBufferSize, int bufferOverlap) {
+		if (audioBufferSize != fftSize || audioBufferSize - bufferOverlap != hopSize) {
+			throw new IllegalArgumentException(String.format("The spectral flux onset detector needs buffers of %d samples with a hop of %d samples, it can not follow buffers of %d samples with a hop of %d samples", fftSize, hopSize, audioBufferSize, audioBufferSize - bufferOverlap));
+		}
+	}
+
+	@Override
+	public void reconfigure(int audioBufferSize, int bufferOverlap) {
+		// Nothing changes.
+	}
+
 	@Override
 	public void processingFinished() {
 		double p1 = 0.35;
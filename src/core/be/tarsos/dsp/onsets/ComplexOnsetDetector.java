@@ -23,8 +23,11 @@
 
 package be.tarsos.dsp.onsets;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import be.tarsos.dsp.AudioEvent;
-import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.ReconfigurableAudioProcessor;
 import be.tarsos.dsp.util.PeakPicker;
 import be.tarsos.dsp.util.fft.FFT;
 import be.tarsos.dsp.util.fft.HannWindow;
@@ -42,7 +45,7 @@ import be.tarsos.dsp.util.fft.HannWindow;
  * @author Joren Six
  * @author Paul Brossiers
  */
-public class ComplexOnsetDetector implements AudioProcessor, OnsetDetector{
+public class ComplexOnsetDetector implements ReconfigurableAudioProcessor, OnsetDetector{
 	
 	
 	/**
@@ -73,26 +76,31 @@ public class ComplexOnsetDetector implements AudioProcessor, OnsetDetector{
 	/**
 	 * To calculate the FFT.
 	 */
-	private final FFT fft;
+	private FFT fft;
+
+	/**
+	 * The FFTs for each size, prepared before a reconfiguration.
+	 */
+	private final Map<Integer, FFT> ffts;
 	
 	/**
 	 * Previous phase vector, one frame behind
 	 */
-	private final float[] theta1;
+	private float[] theta1;
 	/**
 	 * Previous phase vector, two frames behind
 	 */
-	private final float[] theta2;
+	private float[] theta2;
 	
 	/**
 	 * Previous norm (power, magnitude) vector
 	 */
-	private final float[] oldmag;
+	private float[] oldmag;
 	
 	/**
 	 * Current onset detection measure vector 
 	 */
-	private final float[] dev1;
+	private float[] dev1;
 	
 	/**
 	 * 
@@ -102,17 +110,14 @@ public class ComplexOnsetDetector implements AudioProcessor, OnsetDetector{
 	 * @param minimumInterOnsetInterval The minimum inter-onset-interval in seconds. When two onsets are detected within this interval the last one does not count. Default is 0.004 seconds.
 	 */
 	public ComplexOnsetDetector(int fftSize,double peakThreshold,double minimumInterOnsetInterval,double silenceThreshold){
-		fft = new FFT(fftSize,new HannWindow());
+		ffts = new ConcurrentHashMap<Integer, FFT>();
 		this.silenceThreshold = silenceThreshold;
 		this.minimumInterOnsetInterval = minimumInterOnsetInterval;
 		
 		peakPicker = new PeakPicker(peakThreshold);
 		
-		int rsize = fftSize/2+1;
-		oldmag = new float[rsize];
-		dev1 = new float[rsize];
-		theta1 = new float[rsize];
-		theta2 = new float[rsize];
+		prepareReconfiguration(fftSize, 0);
+		configure(fftSize);
 		
 		handler = new PrintOnsetHandler();
 	}
@@ -138,10 +143,11 @@ public class ComplexOnsetDetector implements AudioProcessor, OnsetDetector{
 	
 	private void onsetDetection(AudioEvent audioEvent){
 		//calculate the complex fft (the magnitude and phase)
-		float[] data = audioEvent.getFloatBuffer().clone();
-		float[] power = new float[data.length/2];
-		float[] phase = new float[data.length/2];
+		float[] data = audioEvent.copyToScratchBuffer();
+		float[] power = audioEvent.leaseScratchBuffer(data.length/2);
+		float[] phase = audioEvent.leaseScratchBuffer(data.length/2);
 		fft.powerPhaseFFT(data, power, phase);
+		audioEvent.releaseScratchBuffer(data);
 		
 		float onsetValue = 0;
 		
@@ -162,6 +168,8 @@ public class ComplexOnsetDetector implements AudioProcessor, OnsetDetector{
 			/* swap old magnitude data (1 frame is enough) */
 			oldmag[j]= power[j];
 		}
+		audioEvent.releaseScratchBuffer(power);
+		audioEvent.releaseScratchBuffer(phase);
 		
 		lastOnsetValue = onsetValue;
 		
@@ -193,4 +201,30 @@ public class ComplexOnsetDetector implements AudioProcessor, OnsetDetector{
 	public void processingFinished() {
 		
 	}
+
+	/**
+	 * Sizes the phase and magnitude history for an FFT size, the history
+	 * starts over.
+	 */
+	private void configure(int fftSize){
+		fft = ffts.get(fftSize);
+		int rsize = fftSize/2+1;
+		oldmag = new float[rsize];
+		dev1 = new float[rsize];
+		theta1 = new float[rsize];
+		theta2 = new float[rsize];
+	}
+
+	@Override
+	public void prepareReconfiguration(int audioBufferSize, int bufferOverlap) {
+		if(!ffts.containsKey(audioBufferSize)){
+			ffts.put(audioBufferSize, new FFT(audioBufferSize,new HannWindow()));
+		}
+	}
+
+	@Override
+	public void reconfigure(int audioBufferSize, int bufferOverlap) {
+		prepareReconfiguration(audioBufferSize, bufferOverlap);
+		configure(audioBufferSize);
+	}
 }
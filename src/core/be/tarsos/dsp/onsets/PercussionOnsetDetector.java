@@ -24,8 +24,11 @@
 
 package be.tarsos.dsp.onsets;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import be.tarsos.dsp.AudioEvent;
-import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.ReconfigurableAudioProcessor;
 import be.tarsos.dsp.util.fft.FFT;
 
 /**
@@ -77,16 +80,21 @@ import be.tarsos.dsp.util.fft.FFT;
  * @author Joren Six
  * @author Chris Cannam
  */
-public class PercussionOnsetDetector implements AudioProcessor, OnsetDetector {
+public class PercussionOnsetDetector implements ReconfigurableAudioProcessor, OnsetDetector {
 
 	public static final double DEFAULT_THRESHOLD = 8;
 	
 	public static final double DEFAULT_SENSITIVITY = 20;
 
-	private final FFT fft;
+	private FFT fft;
+
+	/**
+	 * The FFTs for each buffer size, prepared before a reconfiguration.
+	 */
+	private final Map<Integer, FFT> ffts;
 
-	private final float[] priorMagnitudes;
-	private final float[] currentMagnitudes;
+	private float[] priorMagnitudes;
+	private float[] currentMagnitudes;
 
 	private float dfMinus1, dfMinus2;
 
@@ -143,7 +151,9 @@ public class PercussionOnsetDetector implements AudioProcessor, OnsetDetector {
 	 *            broadband total (dB). In [0-20].
 	 */
 	public PercussionOnsetDetector(float sampleRate, int bufferSize, OnsetHandler handler, double sensitivity, double threshold) {
-		fft = new FFT(bufferSize / 2);
+		ffts = new ConcurrentHashMap<Integer, FFT>();
+		prepareReconfiguration(bufferSize, 0);
+		fft = ffts.get(bufferSize);
 		this.threshold = threshold;
 		this.sensitivity = sensitivity;
 		priorMagnitudes = new float[bufferSize / 2];
@@ -194,4 +204,23 @@ public class PercussionOnsetDetector implements AudioProcessor, OnsetDetector {
 	public void setHandler(OnsetHandler handler) {
 		this.handler = handler;
 	}
+
+	@Override
+	public void prepareReconfiguration(int audioBufferSize, int bufferOverlap) {
+		if (!ffts.containsKey(audioBufferSize)) {
+			ffts.put(audioBufferSize, new FFT(audioBufferSize / 2));
+		}
+	}
+
+	@Override
+	public void reconfigure(int audioBufferSize, int bufferOverlap) {
+		prepareReconfiguration(audioBufferSize, bufferOverlap);
+		fft = ffts.get(audioBufferSize);
+		// The detection function counts bins: start over with the new number
+		// of bins.
+		priorMagnitudes = new float[audioBufferSize / 2];
+		currentMagnitudes = new float[audioBufferSize / 2];
+		dfMinus1 = 0;
+		dfMinus2 = 0;
+	}
 }
@@ -24,16 +24,21 @@
 
 package be.tarsos.dsp.pitch;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import be.tarsos.dsp.AudioEvent;
-import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.ReconfigurableAudioProcessor;
 
 
 /**
  * Is responsible to call a pitch estimation algorithm. It also calculates progress. 
  * The underlying pitch detection algorithm must implement the {@link PitchDetector} interface. 
+ * When the buffer size of the dispatcher changes, a detector for the new size is used. Detectors
+ * are kept per buffer size, so switching back and forth does not allocate.
  * @author Joren Six
  */
-public class PitchProcessor implements AudioProcessor {
+public class PitchProcessor implements ReconfigurableAudioProcessor {
 	
 	/**
 	 * A list of pitch estimation algorithms.
@@ -108,10 +113,19 @@ public class PitchProcessor implements AudioProcessor {
 	/**
 	 * The underlying pitch detector;
 	 */
-	private final PitchDetector detector;
+	private PitchDetector detector;
 	
 	private final PitchDetectionHandler handler;
 	
+	private final PitchEstimationAlgorithm algorithm;
+	
+	private final float sampleRate;
+	
+	/**
+	 * The detectors created so far, per buffer size.
+	 */
+	private final Map<Integer, PitchDetector> detectors;
+	
 	/**
 	 * Initialize a new pitch processor.
 	 * 
@@ -127,7 +141,11 @@ public class PitchProcessor implements AudioProcessor {
 	public PitchProcessor(PitchEstimationAlgorithm algorithm, float sampleRate,
 			int bufferSize,
 			PitchDetectionHandler handler) {
+		this.algorithm = algorithm;
+		this.sampleRate = sampleRate;
+		this.detectors = new ConcurrentHashMap<Integer, PitchDetector>();
 		detector = algorithm.getDetector(sampleRate, bufferSize);
+		detectors.put(bufferSize, detector);
 		this.handler = handler;	
 	}
 	
@@ -145,6 +163,19 @@ public class PitchProcessor implements AudioProcessor {
 	@Override
 	public void processingFinished() {
 	}
+	
+	@Override
+	public void prepareReconfiguration(int audioBufferSize, int bufferOverlap) {
+		if (!detectors.containsKey(audioBufferSize)) {
+			detectors.put(audioBufferSize, algorithm.getDetector(sampleRate, audioBufferSize));
+		}
+	}
+	
+	@Override
+	public void reconfigure(int audioBufferSize, int bufferOverlap) {
+		prepareReconfiguration(audioBufferSize, bufferOverlap);
+		detector = detectors.get(audioBufferSize);
+	}
 
 	
 }
@@ -81,7 +81,11 @@ class FilterKit {
     // Max error acceptable in Izero
     private static final double IzeroEPSILON = 1E-21;
 
-    private static double Izero(double x) {
+    /**
+     * The zeroth order modified Bessel function of the first kind, used for
+     * Kaiser windows.
+     */
+    static double Izero(double x) {
         double sum, u, halfx, temp;
         int n;
 
@@ -0,0 +1,351 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.resample;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Resamples by a fixed rational ratio L/M, e.g. 160/441 for 44.1kHz to 16kHz.
+ * A Kaiser windowed sinc filter is computed once for each of the L phases, so
+ * each output sample is a plain dot product of a coefficient table with
+ * consecutive input samples. The {@link Resampler} interpolates coefficients
+ * for every output sample instead, which supports any factor but is slower for
+ * the common, fixed conversions.
+ * </p>
+ * <p>
+ * The resampler streams: input can be given in blocks of any size and the
+ * output is aligned with the input, the delay of the filter is compensated.
+ * After the last block {@link #flush(float[], int)} returns the remaining
+ * output. Processing does not allocate.
+ * </p>
+ *
+ * <pre>
+ * PolyphaseResampler resampler = new PolyphaseResampler(44100, 16000);
+ * float[] output = new float[resampler.getMaxOutputLength(input.length)];
+ * int produced = resampler.process(input, 0, input.length, output, 0);
+ * </pre>
+ */
+public class PolyphaseResampler {
+
+	/**
+	 * The largest number of phases, L, for which tables are computed.
+	 */
+	public static final int MAX_PHASES = 4096;
+
+	/**
+	 * The number of input samples added to the buffer at once.
+	 */
+	private static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * The pass band, as a fraction of the lowest Nyquist frequency.
+	 */
+	private static final double ROLLOFF = 0.90;
+
+	private static final double KAISER_BETA = 8.0;
+
+	private final int upFactor;
+	private final int downFactor;
+	private final int taps;
+	private final float[] table;
+	private final float[] buffer;
+
+	private final int baseStep;
+	private final int phaseStep;
+
+	/** The absolute index of the first sample in the buffer. */
+	private long bufferStart;
+	private int bufferFill;
+	/** The number of input samples given so far. */
+	private long inputCount;
+	private long outputCount;
+	/** The newest input index at or before the time of the next output. */
+	private long base;
+	/** The phase of the next output, between the base and the next index. */
+	private int phase;
+
+	/**
+	 * Create a resampler between two sample rates with the default filter.
+	 *
+	 * @param sourceSampleRate
+	 *            The sample rate of the input.
+	 * @param targetSampleRate
+	 *            The sample rate of the output.
+	 * @throws IllegalArgumentException
+	 *             If the ratio needs more than {@link #MAX_PHASES} phases.
+	 */
+	public PolyphaseResampler(int sourceSampleRate, int targetSampleRate) {
+		this(sourceSampleRate, targetSampleRate, true);
+	}
+
+	/**
+	 * Create a resampler between two sample rates.
+	 *
+	 * @param sourceSampleRate
+	 *            The sample rate of the input.
+	 * @param targetSampleRate
+	 *            The sample rate of the output.
+	 * @param highQuality
+	 *            True for a longer filter with a steeper transition, false
+	 *            for a filter which is four times shorter and faster.
+	 * @throws IllegalArgumentException
+	 *             If the ratio needs more than {@link #MAX_PHASES} phases.
+	 */
+	public PolyphaseResampler(int sourceSampleRate, int targetSampleRate, boolean highQuality) {
+		if (sourceSampleRate <= 0 || targetSampleRate <= 0) {
+			throw new IllegalArgumentException("Sample rates must be positive: " + sourceSampleRate + ", " + targetSampleRate);
+		}
+		int divisor = gcd(sourceSampleRate, targetSampleRate);
+		upFactor = targetSampleRate / divisor;
+		downFactor = sourceSampleRate / divisor;
+		if (upFactor > MAX_PHASES) {
+			throw new IllegalArgumentException("The ratio " + upFactor + "/" + downFactor + " needs more than " + MAX_PHASES + " phases");
+		}
+		baseStep = downFactor / upFactor;
+		phaseStep = downFactor % upFactor;
+
+		// The filter spans a number of zero crossings on each side, stretched
+		// when downsampling to cut below the new Nyquist frequency.
+		int zeroCrossings = highQuality ? 18 : 6;
+		double stretch = Math.max(1.0, downFactor / (double) upFactor);
+		int halfWidth = (int) Math.ceil(zeroCrossings * stretch);
+		// A multiple of four, for the four accumulators of the dot product.
+		taps = (2 * halfWidth + 3) / 4 * 4;
+		table = createTable(upFactor, taps, ROLLOFF / stretch);
+		buffer = new float[taps + CHUNK_SIZE];
+		reset();
+	}
+
+	/**
+	 * @param sourceSampleRate
+	 *            The sample rate of the input.
+	 * @param targetSampleRate
+	 *            The sample rate of the output.
+	 * @return True if the rates are whole numbers with a ratio of at most
+	 *         {@link #MAX_PHASES} phases.
+	 */
+	public static boolean supports(double sourceSampleRate, double targetSampleRate) {
+		if (sourceSampleRate <= 0 || targetSampleRate <= 0 || sourceSampleRate != Math.rint(sourceSampleRate)
+				|| targetSampleRate != Math.rint(targetSampleRate) || sourceSampleRate > Integer.MAX_VALUE
+				|| targetSampleRate > Integer.MAX_VALUE) {
+			return false;
+		}
+		int source = (int) sourceSampleRate;
+		int target = (int) targetSampleRate;
+		return target / gcd(source, target) <= MAX_PHASES;
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int remainder = a % b;
+			a = b;
+			b = remainder;
+		}
+		return a;
+	}
+
+	/**
+	 * Computes the coefficients of each phase. The coefficients of a phase
+	 * are stored in the order of the input samples they are multiplied with,
+	 * and normalized to a gain of one.
+	 */
+	private static float[] createTable(int phases, int taps, double cutoff) {
+		float[] table = new float[phases * taps];
+		int half = taps / 2;
+		double denominator = FilterKit.Izero(KAISER_BETA);
+		for (int p = 0; p < phases; p++) {
+			double fraction = p / (double) phases;
+			double sum = 0;
+			for (int j = 0; j < taps; j++) {
+				// The distance between the output and input sample j.
+				double x = fraction + half - 1 - j;
+				double ratio = x / half;
+				double window = Math.abs(ratio) >= 1 ? 0 : FilterKit.Izero(KAISER_BETA * Math.sqrt(1 - ratio * ratio)) / denominator;
+				double argument = Math.PI * cutoff * x;
+				double sinc = x == 0 ? 1 : Math.sin(argument) / argument;
+				double coefficient = cutoff * sinc * window;
+				table[p * taps + j] = (float) coefficient;
+				sum += coefficient;
+			}
+			for (int j = 0; j < taps; j++) {
+				table[p * taps + j] /= sum;
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Clears the input history, to start with a new stream.
+	 */
+	public void reset() {
+		// The history before the first sample is silence.
+		Arrays.fill(buffer, 0);
+		bufferStart = -taps;
+		bufferFill = taps;
+		inputCount = 0;
+		outputCount = 0;
+		base = 0;
+		phase = 0;
+	}
+
+	/**
+	 * @return The up sampling factor, L.
+	 */
+	public int getUpFactor() {
+		return upFactor;
+	}
+
+	/**
+	 * @return The down sampling factor, M.
+	 */
+	public int getDownFactor() {
+		return downFactor;
+	}
+
+	/**
+	 * @return The number of coefficients of each phase.
+	 */
+	public int getTaps() {
+		return taps;
+	}
+
+	/**
+	 * @param inputLength
+	 *            The number of input samples of a call to
+	 *            {@link #process(float[], int, int, float[], int)}, or zero
+	 *            for {@link #flush(float[], int)}.
+	 * @return The maximum number of output samples of the call.
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		return (int) ((long) (inputLength + taps) * upFactor / downFactor) + 2;
+	}
+
+	/**
+	 * Resamples a block of input. All input is consumed, the output array
+	 * needs room for {@link #getMaxOutputLength(int)} samples.
+	 *
+	 * @param input
+	 *            The input samples.
+	 * @param inputOffset
+	 *            The index of the first input sample.
+	 * @param inputLength
+	 *            The number of input samples.
+	 * @param output
+	 *            The array for the output.
+	 * @param outputOffset
+	 *            The index of the first output sample.
+	 * @return The number of output samples.
+	 */
+	public int process(float[] input, int inputOffset, int inputLength, float[] output, int outputOffset) {
+		int produced = 0;
+		while (inputLength > 0) {
+			int n = Math.min(inputLength, buffer.length - bufferFill);
+			System.arraycopy(input, inputOffset, buffer, bufferFill, n);
+			bufferFill += n;
+			inputOffset += n;
+			inputLength -= n;
+			inputCount += n;
+			produced += generate(output, outputOffset + produced, Long.MAX_VALUE);
+			compact();
+		}
+		return produced;
+	}
+
+	/**
+	 * Returns the output for the last input samples, which are still in the
+	 * filter. The stream has L/M times the number of input samples, rounded
+	 * up. Call {@link #reset()} to use the resampler for another stream.
+	 *
+	 * @param output
+	 *            The array for the output, with room for
+	 *            <code>getMaxOutputLength(0)</code> samples.
+	 * @param outputOffset
+	 *            The index of the first output sample.
+	 * @return The number of output samples.
+	 */
+	public int flush(float[] output, int outputOffset) {
+		long total = (inputCount * upFactor + downFactor - 1) / downFactor;
+		int produced = 0;
+		while (outputCount < total) {
+			// Silence after the last sample.
+			int n = buffer.length - bufferFill;
+			Arrays.fill(buffer, bufferFill, buffer.length, 0);
+			bufferFill += n;
+			produced += generate(output, outputOffset + produced, total);
+			compact();
+		}
+		return produced;
+	}
+
+	/**
+	 * Computes the outputs for which all input is in the buffer.
+	 */
+	private int generate(float[] output, int outputOffset, long limit) {
+		final float[] table = this.table;
+		final float[] buffer = this.buffer;
+		final int taps = this.taps;
+		final int half = taps / 2;
+		final long newest = bufferStart + bufferFill - 1;
+		int produced = 0;
+		while (outputCount < limit && base + half <= newest) {
+			int start = (int) (base - half + 1 - bufferStart);
+			int coefficients = phase * taps;
+			float sum0 = 0;
+			float sum1 = 0;
+			float sum2 = 0;
+			float sum3 = 0;
+			for (int j = 0; j < taps; j += 4) {
+				sum0 += table[coefficients + j] * buffer[start + j];
+				sum1 += table[coefficients + j + 1] * buffer[start + j + 1];
+				sum2 += table[coefficients + j + 2] * buffer[start + j + 2];
+				sum3 += table[coefficients + j + 3] * buffer[start + j + 3];
+			}
+			output[outputOffset + produced] = (sum0 + sum1) + (sum2 + sum3);
+			produced++;
+			outputCount++;
+			base += baseStep;
+			phase += phaseStep;
+			if (phase >= upFactor) {
+				phase -= upFactor;
+				base++;
+			}
+		}
+		return produced;
+	}
+
+	/**
+	 * Drops the samples the next output does not need.
+	 */
+	private void compact() {
+		long oldest = base - taps / 2 + 1;
+		int drop = (int) Math.min(Math.max(0, oldest - bufferStart), bufferFill);
+		if (drop > 0) {
+			System.arraycopy(buffer, drop, buffer, 0, bufferFill - drop);
+			bufferFill -= drop;
+			bufferStart += drop;
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.resample;
+
+import java.io.IOException;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+/**
+ * <p>
+ * Converts the sample rate of any audio stream, e.g. a 48kHz WAV file to the
+ * 16kHz an analysis model expects, without an external decoder. Unlike a
+ * {@link RateTransposer} in the processing chain, the buffer sizes of the
+ * dispatcher stay what they were asked to be.
+ * </p>
+ * <p>
+ * Each channel is resampled separately. The sample size and encoding stay
+ * those of the source, only the sample rate changes. Whole sample rates with
+ * a rational ratio, e.g. 44.1kHz to 16kHz, use a {@link PolyphaseResampler},
+ * other ratios a {@link Resampler}. All buffers are allocated up front,
+ * reading does not allocate.
+ * </p>
+ *
+ * <pre>
+ * TarsosDSPAudioInputStream wave = new MappedWaveInputStream(new File("audio.wav"));
+ * AudioDispatcher dispatcher = new AudioDispatcher(new ResamplingAudioInputStream(wave, 16000), 512, 256);
+ * </pre>
+ */
+public class ResamplingAudioInputStream implements TarsosDSPAudioInputStream {
+
+	/**
+	 * The number of source frames read at once.
+	 */
+	private static final int BLOCK_FRAMES = 4096;
+
+	private final TarsosDSPAudioInputStream source;
+	private final TarsosDSPAudioFormat format;
+	private final TarsosDSPAudioFloatConverter sourceConverter;
+	private final TarsosDSPAudioFloatConverter converter;
+	private final double factor;
+	private final int channels;
+	private final long frameLength;
+
+	private final PolyphaseResampler[] polyphaseResamplers;
+	private final Resampler[] resamplers;
+	private final ChannelBuffers[] channelBuffers;
+
+	private final byte[] sourceBytes;
+	private final float[] sourceSamples;
+	private final float[][] input;
+	private final float[][] output;
+	private final float[] outputSamples;
+	private final byte[] outputBytes;
+
+	private int inputPosition;
+	private int inputLength;
+	private int outputPosition;
+	private int outputLength;
+	private boolean sourceEnded;
+	private boolean ended;
+	private long sourceFramesRead;
+	private long framesProduced;
+	private byte[] skipBuffer;
+
+	/**
+	 * Resample a stream with the high quality filter.
+	 *
+	 * @param source
+	 *            The stream to resample.
+	 * @param targetSampleRate
+	 *            The sample rate of this stream.
+	 */
+	public ResamplingAudioInputStream(TarsosDSPAudioInputStream source, float targetSampleRate) {
+		this(source, targetSampleRate, true);
+	}
+
+	/**
+	 * Resample a stream.
+	 *
+	 * @param source
+	 *            The stream to resample.
+	 * @param targetSampleRate
+	 *            The sample rate of this stream.
+	 * @param highQuality
+	 *            True for the longer, high quality filter, false for the
+	 *            faster one.
+	 */
+	public ResamplingAudioInputStream(TarsosDSPAudioInputStream source, float targetSampleRate, boolean highQuality) {
+		this.source = source;
+		TarsosDSPAudioFormat sourceFormat = source.getFormat();
+		this.format = new TarsosDSPAudioFormat(sourceFormat.getEncoding(), targetSampleRate,
+				sourceFormat.getSampleSizeInBits(), sourceFormat.getChannels(), sourceFormat.getFrameSize(),
+				targetSampleRate, sourceFormat.isBigEndian());
+		this.sourceConverter = TarsosDSPAudioFloatConverter.getConverter(sourceFormat);
+		this.converter = TarsosDSPAudioFloatConverter.getConverter(format);
+		this.factor = targetSampleRate / (double) sourceFormat.getSampleRate();
+		this.channels = sourceFormat.getChannels();
+		long sourceFrameLength = source.getFrameLength();
+		this.frameLength = sourceFrameLength < 0 ? -1 : Math.round(sourceFrameLength * factor);
+
+		input = new float[channels][BLOCK_FRAMES];
+		int outputFrames;
+		if (PolyphaseResampler.supports(sourceFormat.getSampleRate(), targetSampleRate)) {
+			polyphaseResamplers = new PolyphaseResampler[channels];
+			for (int c = 0; c < channels; c++) {
+				polyphaseResamplers[c] = new PolyphaseResampler((int) sourceFormat.getSampleRate(), (int) targetSampleRate, highQuality);
+			}
+			resamplers = null;
+			channelBuffers = null;
+			outputFrames = polyphaseResamplers[0].getMaxOutputLength(BLOCK_FRAMES);
+		} else {
+			polyphaseResamplers = null;
+			resamplers = new Resampler[channels];
+			channelBuffers = new ChannelBuffers[channels];
+			for (int c = 0; c < channels; c++) {
+				resamplers[c] = new Resampler(highQuality, factor, factor);
+				channelBuffers[c] = new ChannelBuffers();
+			}
+			outputFrames = (int) Math.ceil(BLOCK_FRAMES * factor) + 1;
+		}
+		output = new float[channels][outputFrames];
+		sourceBytes = new byte[BLOCK_FRAMES * sourceFormat.getFrameSize()];
+		sourceSamples = new float[BLOCK_FRAMES * channels];
+		outputSamples = new float[outputFrames * channels];
+		outputBytes = new byte[outputFrames * format.getFrameSize()];
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		while (outputPosition == outputLength) {
+			if (ended) {
+				return -1;
+			}
+			resampleBlock();
+		}
+		int frameSize = format.getFrameSize();
+		int length = Math.min(len - len % frameSize, outputLength - outputPosition);
+		System.arraycopy(outputBytes, outputPosition, b, off, length);
+		outputPosition += length;
+		return length;
+	}
+
+	/**
+	 * Resamples the next part of the source into the output buffer. The
+	 * output can be empty, e.g. while the filter fills up.
+	 */
+	private void resampleBlock() throws IOException {
+		if (inputPosition == inputLength && !sourceEnded) {
+			readSourceBlock();
+		}
+		int produced = polyphaseResamplers == null ? resampleChannels() : resamplePolyphaseChannels();
+		if (sourceEnded) {
+			// The filter keeps producing zeros after the last samples.
+			long expected = Math.round(sourceFramesRead * factor);
+			produced = (int) Math.max(0, Math.min(produced, expected - framesProduced));
+			if (produced == 0 && inputPosition == inputLength) {
+				ended = true;
+			}
+		}
+		framesProduced += produced;
+		for (int c = 0; c < channels; c++) {
+			float[] channel = output[c];
+			for (int i = 0; i < produced; i++) {
+				outputSamples[i * channels + c] = channel[i];
+			}
+		}
+		converter.toByteArray(outputSamples, produced * channels, outputBytes);
+		outputPosition = 0;
+		outputLength = produced * format.getFrameSize();
+	}
+
+	private int resampleChannels() {
+		int consumed = 0;
+		int produced = 0;
+		for (int c = 0; c < channels; c++) {
+			ChannelBuffers buffers = channelBuffers[c];
+			buffers.reset(input[c], inputPosition, inputLength, output[c]);
+			resamplers[c].process(factor, buffers, sourceEnded);
+			// All channels get the same input, so they advance equally.
+			consumed = buffers.inputUsed;
+			produced = buffers.outputUsed;
+		}
+		inputPosition += consumed;
+		return produced;
+	}
+
+	private int resamplePolyphaseChannels() {
+		int produced = 0;
+		for (int c = 0; c < channels; c++) {
+			PolyphaseResampler resampler = polyphaseResamplers[c];
+			if (inputPosition < inputLength) {
+				produced = resampler.process(input[c], inputPosition, inputLength - inputPosition, output[c], 0);
+			} else {
+				// Only after the end of the source.
+				produced = resampler.flush(output[c], 0);
+			}
+		}
+		inputPosition = inputLength;
+		return produced;
+	}
+
+	private void readSourceBlock() throws IOException {
+		int frameSize = source.getFormat().getFrameSize();
+		int total = 0;
+		while (total < sourceBytes.length) {
+			int read = source.read(sourceBytes, total, sourceBytes.length - total);
+			if (read == -1) {
+				sourceEnded = true;
+				break;
+			}
+			total += read;
+		}
+		int frames = total / frameSize;
+		sourceConverter.toFloatArray(sourceBytes, sourceSamples, frames * channels);
+		for (int c = 0; c < channels; c++) {
+			float[] channel = input[c];
+			for (int i = 0; i < frames; i++) {
+				channel[i] = sourceSamples[i * channels + c];
+			}
+		}
+		inputPosition = 0;
+		inputLength = frames;
+		sourceFramesRead += frames;
+	}
+
+	@Override
+	public long skip(long bytesToSkip) throws IOException {
+		// The skipped samples go through the filter as well.
+		if (skipBuffer == null) {
+			skipBuffer = new byte[outputBytes.length];
+		}
+		long skipped = 0;
+		while (skipped < bytesToSkip) {
+			int read = read(skipBuffer, 0, (int) Math.min(skipBuffer.length, bytesToSkip - skipped));
+			if (read == -1) {
+				break;
+			}
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+
+	@Override
+	public TarsosDSPAudioFormat getFormat() {
+		return format;
+	}
+
+	@Override
+	public long getFrameLength() {
+		return frameLength;
+	}
+
+	/**
+	 * The input and output of one channel, reused for each block.
+	 */
+	private static final class ChannelBuffers implements SampleBuffers {
+		private float[] input;
+		private int inputOffset;
+		private int inputLength;
+		private int inputUsed;
+		private float[] output;
+		private int outputUsed;
+
+		private void reset(float[] input, int from, int to, float[] output) {
+			this.input = input;
+			this.inputOffset = from;
+			this.inputLength = to - from;
+			this.inputUsed = 0;
+			this.output = output;
+			this.outputUsed = 0;
+		}
+
+		@Override
+		public int getInputBufferLength() {
+			return inputLength;
+		}
+
+		@Override
+		public int getOutputBufferLength() {
+			return output.length;
+		}
+
+		@Override
+		public void produceInput(float[] array, int offset, int length) {
+			System.arraycopy(input, inputOffset + inputUsed, array, offset, length);
+			inputUsed += length;
+		}
+
+		@Override
+		public void consumeOutput(float[] array, int offset, int length) {
+			System.arraycopy(array, offset, output, outputUsed, length);
+			outputUsed += length;
+		}
+	}
+}
@@ -24,14 +24,18 @@
 package be.tarsos.dsp.synthesis;
 
 import be.tarsos.dsp.AudioEvent;
-import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.ElementwiseAudioProcessor;
 
-public class AmplitudeLFO implements AudioProcessor {
+public class AmplitudeLFO implements ElementwiseAudioProcessor {
 	
 	private double frequency;
 	private double scaleParameter;
 	private double phase;
 	
+	private double sampleRate;
+	private double twoPiF;
+	private double bufferPhase;
+	
 	public AmplitudeLFO(){
 		this(1.5,0.75);
 	}
@@ -46,16 +50,27 @@ public class AmplitudeLFO implements AudioProcessor {
 	@Override
 	public boolean process(AudioEvent audioEvent) {
 		float[] buffer = audioEvent.getFloatBuffer();
-		double sampleRate = audioEvent.getSampleRate();
-		double twoPiF = 2 * Math.PI * frequency;
+		processRange(buffer, beginBuffer(audioEvent), buffer.length);
+		return true;
+	}
+	
+	@Override
+	public int beginBuffer(AudioEvent audioEvent) {
+		sampleRate = audioEvent.getSampleRate();
+		twoPiF = 2 * Math.PI * frequency;
+		bufferPhase = phase;
+		phase = twoPiF * audioEvent.getBufferSize() / sampleRate + phase;
+		return 0;
+	}
+	
+	@Override
+	public void processRange(float[] buffer, int from, int to) {
 		double time = 0;
-		for(int i = 0 ; i < buffer.length ; i++){
+		for(int i = from ; i < to ; i++){
 			time = i / sampleRate;
-			float gain =  (float) (scaleParameter * Math.sin(twoPiF * time + phase));
+			float gain =  (float) (scaleParameter * Math.sin(twoPiF * time + bufferPhase));
 			buffer[i] = gain * buffer[i];
 		}
-		phase = twoPiF * buffer.length / sampleRate + phase;
-		return true;
 	}
 
 	@Override
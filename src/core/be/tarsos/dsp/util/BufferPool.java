@@ -0,0 +1,161 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.util;
+
+/**
+ * <p>
+ * A small pool of float arrays. Arrays are leased with {@link #lease(int)} and
+ * handed back with {@link #release(float[])}, after which they are reused for
+ * the next lease of the same length. Once the pool is warmed up no arrays are
+ * allocated, which keeps the garbage collector quiet when the same buffer
+ * sizes are needed for every audio block.
+ * </p>
+ * <p>
+ * The pool is thread safe: processors running in parallel, e.g. in an
+ * {@link be.tarsos.dsp.AudioProcessorGraph}, can share it.
+ * </p>
+ */
+public class BufferPool {
+
+	/**
+	 * The default number of idle arrays kept for each length.
+	 */
+	public static final int DEFAULT_ARRAYS_PER_LENGTH = 8;
+
+	private final int arraysPerLength;
+
+	/**
+	 * The lengths for which arrays are kept.
+	 */
+	private int[] lengths;
+
+	/**
+	 * For each length a stack of idle arrays.
+	 */
+	private float[][][] idle;
+
+	/**
+	 * For each length the number of idle arrays on the stack.
+	 */
+	private int[] counts;
+
+	private int numberOfLengths;
+
+	/**
+	 * Create a pool which keeps {@value #DEFAULT_ARRAYS_PER_LENGTH} idle
+	 * arrays for each length.
+	 */
+	public BufferPool() {
+		this(DEFAULT_ARRAYS_PER_LENGTH);
+	}
+
+	/**
+	 * Create a new pool.
+	 * 
+	 * @param arraysPerLength
+	 *            The maximum number of idle arrays kept for each length.
+	 *            Arrays released when the maximum is reached are left to the
+	 *            garbage collector.
+	 */
+	public BufferPool(int arraysPerLength) {
+		this.arraysPerLength = arraysPerLength;
+		this.lengths = new int[4];
+		this.idle = new float[4][][];
+		this.counts = new int[4];
+	}
+
+	/**
+	 * Leases an array from the pool. The content of the array is undefined.
+	 * 
+	 * @param length
+	 *            The length of the array.
+	 * @return An array of the requested length.
+	 */
+	public synchronized float[] lease(int length) {
+		int index = indexOf(length);
+		if (index >= 0 && counts[index] > 0) {
+			counts[index]--;
+			float[] array = idle[index][counts[index]];
+			idle[index][counts[index]] = null;
+			return array;
+		}
+		return new float[length];
+	}
+
+	/**
+	 * Hands an array back to the pool. The array should not be used after it
+	 * is released.
+	 * 
+	 * @param array
+	 *            The array to release.
+	 */
+	public synchronized void release(float[] array) {
+		int index = indexOf(array.length);
+		if (index < 0) {
+			index = addLength(array.length);
+		}
+		if (counts[index] < arraysPerLength) {
+			idle[index][counts[index]] = array;
+			counts[index]++;
+		}
+	}
+
+	/**
+	 * @param length
+	 *            A length of arrays.
+	 * @return The number of idle arrays of the given length in the pool.
+	 */
+	public synchronized int available(int length) {
+		int index = indexOf(length);
+		return index < 0 ? 0 : counts[index];
+	}
+
+	private int indexOf(int length) {
+		for (int i = 0; i < numberOfLengths; i++) {
+			if (lengths[i] == length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int addLength(int length) {
+		if (numberOfLengths == lengths.length) {
+			int newSize = lengths.length * 2;
+			int[] newLengths = new int[newSize];
+			float[][][] newIdle = new float[newSize][][];
+			int[] newCounts = new int[newSize];
+			System.arraycopy(lengths, 0, newLengths, 0, numberOfLengths);
+			System.arraycopy(idle, 0, newIdle, 0, numberOfLengths);
+			System.arraycopy(counts, 0, newCounts, 0, numberOfLengths);
+			lengths = newLengths;
+			idle = newIdle;
+			counts = newCounts;
+		}
+		lengths[numberOfLengths] = length;
+		idle[numberOfLengths] = new float[arraysPerLength][];
+		return numberOfLengths++;
+	}
+}
@@ -0,0 +1,312 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * A bounded, lock-free ring of pre-allocated float frames meant to be shared
+ * by exactly one producer thread and one consumer thread. The producer
+ * {@link #claim()}s a free frame, fills it and {@link #publish()}es it, the
+ * consumer {@link #peek()}s the oldest published frame, copies what it needs
+ * and {@link #release()}s it again. No objects are allocated after
+ * construction.
+ * </p>
+ * <p>
+ * When the ring is full the producer either waits for the consumer or, if the
+ * ring is created with <code>dropOldest</code>, overwrites the oldest frame.
+ * In the latter case {@link #release()} returns false when the frame the
+ * consumer was reading has been taken over by the producer in the mean time:
+ * the copied data is then not to be trusted and should be discarded.
+ * </p>
+ * <p>
+ * A thread waiting for a frame spins briefly and then parks until the other
+ * side publishes or releases a frame, or until {@link #wakeUp()} is called.
+ * </p>
+ */
+public class FrameRingBuffer {
+
+	/**
+	 * A slot in the ring. Next to the samples some bookkeeping information
+	 * travels with each frame.
+	 */
+	public static final class Frame {
+		/**
+		 * The samples, the array is allocated once and reused.
+		 */
+		public final float[] samples;
+		/**
+		 * The number of valid samples in the array.
+		 */
+		public int length;
+		/**
+		 * Where the samples should be placed in the receiving buffer.
+		 */
+		public int offset;
+		/**
+		 * The position of the frame in the stream, e.g. in bytes.
+		 */
+		public long position;
+		/**
+		 * The number of bytes the frame was decoded from.
+		 */
+		public int bytes;
+		/**
+		 * True if the frame is the first of a stream.
+		 */
+		public boolean first;
+
+		private Frame(int capacity) {
+			samples = new float[capacity];
+		}
+	}
+
+	/**
+	 * The number of busy spins before a waiting thread parks.
+	 */
+	private static final int SPINS = 100;
+
+	private final Frame[] frames;
+
+	private final boolean dropOldest;
+
+	/**
+	 * Index of the next frame to publish, only written by the producer.
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * Index of the next frame to consume. Written by the consumer and, when
+	 * dropping frames, by the producer.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * The producer while it is parked in {@link #claim(Condition)}.
+	 */
+	private volatile Thread parkedProducer;
+
+	/**
+	 * The consumer while it is parked in {@link #peek(Condition)}.
+	 */
+	private volatile Thread parkedConsumer;
+
+	/**
+	 * Index of the frame last returned by peek, only used by the consumer.
+	 */
+	private long peeked;
+
+	/**
+	 * Create a new ring.
+	 *
+	 * @param depth
+	 *            The number of frames in the ring.
+	 * @param frameCapacity
+	 *            The maximum number of samples in one frame.
+	 * @param dropOldest
+	 *            If true the oldest frame is overwritten when the ring is
+	 *            full, otherwise the producer waits.
+	 */
+	public FrameRingBuffer(int depth, int frameCapacity, boolean dropOldest) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("The depth of the ring should be at least one, not " + depth);
+		}
+		frames = new Frame[depth];
+		for (int i = 0; i < depth; i++) {
+			frames[i] = new Frame(frameCapacity);
+		}
+		this.dropOldest = dropOldest;
+	}
+
+	/**
+	 * Returns a free frame for the producer to fill. If the ring is full and
+	 * frames are not dropped this method returns null.
+	 *
+	 * @return A frame to fill or null if the ring is full.
+	 */
+	public Frame claim() {
+		long h = head.get();
+		long t = tail.get();
+		while (h - t >= frames.length) {
+			if (!dropOldest) {
+				return null;
+			}
+			// Take the oldest frame from the consumer.
+			if (tail.compareAndSet(t, t + 1)) {
+				dropped.incrementAndGet();
+			}
+			t = tail.get();
+		}
+		return frames[(int) (h % frames.length)];
+	}
+
+	/**
+	 * Waits until a frame can be claimed.
+	 *
+	 * @param stop
+	 *            Checked while waiting, when stop reports true waiting is
+	 *            aborted.
+	 * @return A frame to fill, or null if waiting was aborted.
+	 */
+	public Frame claim(Condition stop) {
+		int spins = 0;
+		Frame frame = claim();
+		while (frame == null && !stop.isMet()) {
+			if (spins < SPINS) {
+				Thread.yield();
+				spins++;
+			} else {
+				parkedProducer = Thread.currentThread();
+				// A release before the registration does not unpark: check
+				// again before parking.
+				if (size() >= frames.length && !stop.isMet()) {
+					LockSupport.park(this);
+				}
+				parkedProducer = null;
+			}
+			frame = claim();
+		}
+		return frame;
+	}
+
+	/**
+	 * Makes the claimed frame available to the consumer.
+	 */
+	public void publish() {
+		// A full write: the read of the parked consumer below may not move
+		// before it.
+		head.set(head.get() + 1);
+		unpark(parkedConsumer);
+	}
+
+	/**
+	 * @return The oldest published frame or null if the ring is empty.
+	 */
+	public Frame peek() {
+		long t = tail.get();
+		if (t == head.get()) {
+			return null;
+		}
+		peeked = t;
+		return frames[(int) (t % frames.length)];
+	}
+
+	/**
+	 * Waits for a published frame.
+	 *
+	 * @param stop
+	 *            Checked while waiting, when stop reports true waiting is
+	 *            aborted.
+	 * @return The oldest published frame, or null if waiting was aborted and
+	 *         the ring is empty.
+	 */
+	public Frame peek(Condition stop) {
+		int spins = 0;
+		Frame frame = peek();
+		while (frame == null && !stop.isMet()) {
+			if (spins < SPINS) {
+				Thread.yield();
+				spins++;
+			} else {
+				parkedConsumer = Thread.currentThread();
+				// A publish before the registration does not unpark: check
+				// again before parking.
+				if (size() == 0 && !stop.isMet()) {
+					LockSupport.park(this);
+				}
+				parkedConsumer = null;
+			}
+			frame = peek();
+		}
+		// A last frame could be published right before the stop condition.
+		return frame == null ? peek() : frame;
+	}
+
+	/**
+	 * Hands the frame returned by {@link #peek()} back to the producer.
+	 *
+	 * @return False if the producer has overwritten the frame while it was
+	 *         being read, true otherwise.
+	 */
+	public boolean release() {
+		// The producer only reuses the peeked frame after moving the tail
+		// past it, in which case the compare and set fails.
+		boolean released = tail.compareAndSet(peeked, peeked + 1);
+		unpark(parkedProducer);
+		return released;
+	}
+
+	/**
+	 * Wakes up the waiting threads, to check their stop condition. Call this
+	 * after changing the state a {@link Condition} checks.
+	 */
+	public void wakeUp() {
+		unpark(parkedProducer);
+		unpark(parkedConsumer);
+	}
+
+	private static void unpark(Thread thread) {
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * @return The number of frames currently waiting for the consumer.
+	 */
+	public int size() {
+		return (int) (head.get() - tail.get());
+	}
+
+	/**
+	 * @return The number of frames in the ring.
+	 */
+	public int depth() {
+		return frames.length;
+	}
+
+	/**
+	 * @return The number of frames that were overwritten before the consumer
+	 *         could read them.
+	 */
+	public long dropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * A condition checked by waiting threads. Parked threads check it again
+	 * after {@link FrameRingBuffer#wakeUp()}.
+	 */
+	public interface Condition {
+		/**
+		 * @return True if waiting should stop.
+		 */
+		boolean isMet();
+	}
+}
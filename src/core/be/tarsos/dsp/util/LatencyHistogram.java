@@ -0,0 +1,184 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A lock-free histogram of durations in nanoseconds. Values are counted in
+ * logarithmic buckets: every power of two is split into eight sub-buckets, so a
+ * recorded value is known within 12.5%, from one nanosecond up to hundreds of
+ * years, with a fixed amount of memory. This is the approach of HdrHistogram,
+ * with a precision of one significant binary digit group.
+ * </p>
+ * <p>
+ * Recording is wait-free and can be done from several threads while other
+ * threads read percentiles. Readers see a consistent-enough view for
+ * monitoring, not an atomic snapshot.
+ * </p>
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The number of bits used for sub-buckets within a power of two.
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts;
+	private final AtomicLong count;
+	private final AtomicLong total;
+	private final AtomicLong max;
+
+	public LatencyHistogram() {
+		counts = new AtomicLongArray(BUCKETS);
+		count = new AtomicLong();
+		total = new AtomicLong();
+		max = new AtomicLong();
+	}
+
+	/**
+	 * Records a duration.
+	 * 
+	 * @param nanos
+	 *            The duration in nanoseconds, negative values are counted as
+	 *            zero.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucketIndex(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * @return The number of recorded values.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return The sum of all recorded values in nanoseconds.
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * @return The largest recorded value in nanoseconds.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return The mean of the recorded values in nanoseconds, or zero if
+	 *         nothing is recorded.
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / (double) n;
+	}
+
+	/**
+	 * Returns an upper bound for the value below which the given percentage
+	 * of recorded values fall.
+	 * 
+	 * @param percentile
+	 *            A percentile between 0 and 100, e.g. 99.9.
+	 * @return The value at the percentile in nanoseconds, accurate within
+	 *         12.5%, or zero if nothing is recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += counts.get(i);
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueInBucket(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long lowestValueInBucket(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	private static long highestValueInBucket(int index) {
+		if (index == BUCKETS - 1) {
+			return Long.MAX_VALUE;
+		}
+		return lowestValueInBucket(index + 1) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.0fns p50=%dns p99=%dns max=%dns", getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+	}
+}
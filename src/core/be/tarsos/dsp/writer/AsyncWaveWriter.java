@@ -0,0 +1,363 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+
+/**
+ * <p>
+ * Writes the audio of a dispatcher to a WAV file without blocking the audio
+ * thread on the disk. The samples are converted into pooled direct buffers,
+ * which a background thread writes to a {@link FileChannel}.
+ * </p>
+ * <p>
+ * Overlapping samples are converted and written once. The file has 16 or 24
+ * bit integer samples or 32 bit float samples. The header is completed when
+ * processing finishes, files with more than 4GB of audio are written as RF64.
+ * </p>
+ *
+ * <pre>
+ * AudioDispatcher dispatcher = AudioDispatcherFactory.fromDefaultMicrophone(44100, 2048, 1024);
+ * dispatcher.addAudioProcessor(new AsyncWaveWriter(new File("recording.wav"), dispatcher.getFormat(), AsyncWaveWriter.SampleFormat.PCM_24));
+ * dispatcher.run();
+ * </pre>
+ */
+public class AsyncWaveWriter implements AudioProcessor {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(AsyncWaveWriter.class.getName());
+
+	/**
+	 * The size of the pooled buffers.
+	 */
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	/**
+	 * The number of buffers allocated up front. More are allocated when the
+	 * disk falls behind.
+	 */
+	private static final int POOLED_BLOCKS = 4;
+
+	private static final int WAVE_FORMAT_PCM = 0x0001;
+	private static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+
+	/**
+	 * The size of the JUNK chunk reserved for the ds64 chunk of an RF64 file.
+	 */
+	private static final int DS64_SIZE = 28;
+
+	/**
+	 * Queued to stop the background thread.
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 * The sample formats of the written file.
+	 */
+	public enum SampleFormat {
+		/** 16 bit signed integers. */
+		PCM_16(2, WAVE_FORMAT_PCM),
+		/** 24 bit signed integers. */
+		PCM_24(3, WAVE_FORMAT_PCM),
+		/** 32 bit floats. */
+		FLOAT_32(4, WAVE_FORMAT_IEEE_FLOAT);
+
+		private final int bytesPerSample;
+		private final int tag;
+
+		private SampleFormat(int bytesPerSample, int tag) {
+			this.bytesPerSample = bytesPerSample;
+			this.tag = tag;
+		}
+	}
+
+	private final File file;
+	private final FileChannel channel;
+	private final TarsosDSPAudioFormat format;
+	private final SampleFormat sampleFormat;
+	private final int headerLength;
+
+	private final BlockingQueue<ByteBuffer> filledBlocks = new LinkedBlockingQueue<ByteBuffer>();
+	private final ConcurrentLinkedQueue<ByteBuffer> freeBlocks = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final Thread writerThread;
+	private volatile IOException writeError;
+
+	private ByteBuffer block;
+	private boolean started;
+	private boolean finished;
+	private long samplesWritten;
+
+	/**
+	 * Create a new writer with 16 bit samples. The file is created or
+	 * truncated.
+	 *
+	 * @param file
+	 *            The file to write to.
+	 * @param format
+	 *            The format of the processed audio, for the sample rate and
+	 *            the number of channels.
+	 * @throws IOException
+	 *             If the file can not be opened.
+	 */
+	public AsyncWaveWriter(File file, TarsosDSPAudioFormat format) throws IOException {
+		this(file, format, SampleFormat.PCM_16);
+	}
+
+	/**
+	 * Create a new writer. The file is created or truncated.
+	 *
+	 * @param file
+	 *            The file to write to.
+	 * @param format
+	 *            The format of the processed audio, for the sample rate and
+	 *            the number of channels.
+	 * @param sampleFormat
+	 *            The format of the samples in the file.
+	 * @throws IOException
+	 *             If the file can not be opened.
+	 */
+	@SuppressWarnings("resource")
+	public AsyncWaveWriter(File file, TarsosDSPAudioFormat format, SampleFormat sampleFormat) throws IOException {
+		this.file = file;
+		this.format = format;
+		this.sampleFormat = sampleFormat;
+		this.headerLength = header(0).limit();
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		output.setLength(0);
+		this.channel = output.getChannel();
+		for (int i = 0; i < POOLED_BLOCKS; i++) {
+			freeBlocks.add(allocateBlock());
+		}
+		block = freeBlocks.poll();
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeBlocks();
+			}
+		}, "TarsosDSP wave writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	private static ByteBuffer allocateBlock() {
+		return ByteBuffer.allocateDirect(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public boolean process(AudioEvent audioEvent) {
+		if (finished || writeError != null) {
+			return true;
+		}
+		float[] buffer = audioEvent.getFloatBuffer();
+		// The overlap was written with the previous buffer, the first buffer
+		// is written from the start.
+		int from = Math.max(started ? audioEvent.getOverlap() : 0, audioEvent.getValidOffset());
+		int to = audioEvent.getValidOffset() + audioEvent.getValidSamples();
+		started = true;
+		int bytesPerSample = sampleFormat.bytesPerSample;
+		for (int i = from; i < to;) {
+			if (block.remaining() < bytesPerSample) {
+				submitBlock();
+			}
+			int n = Math.min(to - i, block.remaining() / bytesPerSample);
+			convert(buffer, i, n);
+			i += n;
+		}
+		samplesWritten += Math.max(0, to - from);
+		return true;
+	}
+
+	private void convert(float[] buffer, int offset, int length) {
+		switch (sampleFormat) {
+		case FLOAT_32:
+			block.asFloatBuffer().put(buffer, offset, length);
+			block.position(block.position() + length * 4);
+			break;
+		case PCM_24:
+			for (int i = offset; i < offset + length; i++) {
+				int sample = (int) (clip(buffer[i]) * 8388607.0f);
+				block.put((byte) sample).put((byte) (sample >> 8)).put((byte) (sample >> 16));
+			}
+			break;
+		default:
+			for (int i = offset; i < offset + length; i++) {
+				block.putShort((short) (clip(buffer[i]) * 32767.0f));
+			}
+			break;
+		}
+	}
+
+	private static float clip(float sample) {
+		return sample > 1.0f ? 1.0f : (sample < -1.0f ? -1.0f : sample);
+	}
+
+	/**
+	 * Hands the current block to the background thread and takes a free one.
+	 */
+	private void submitBlock() {
+		block.flip();
+		filledBlocks.add(block);
+		block = freeBlocks.poll();
+		if (block == null) {
+			LOG.fine("The disk is behind, allocating another block for " + file.getPath());
+			block = allocateBlock();
+		}
+	}
+
+	/**
+	 * Writes the filled blocks in order, runs on the background thread.
+	 */
+	private void writeBlocks() {
+		long position = headerLength;
+		try {
+			while (true) {
+				ByteBuffer filled = filledBlocks.take();
+				if (filled == END) {
+					return;
+				}
+				if (writeError == null) {
+					try {
+						while (filled.hasRemaining()) {
+							position += channel.write(filled, position);
+						}
+					} catch (IOException e) {
+						LOG.log(Level.SEVERE, "Could not write to " + file.getPath(), e);
+						writeError = e;
+					}
+				}
+				filled.clear();
+				freeBlocks.add(filled);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Builds the header for a number of bytes of audio. A JUNK chunk reserves
+	 * the space for the ds64 chunk of an RF64 file, so the header has the same
+	 * length for any size.
+	 */
+	private ByteBuffer header(long dataSize) {
+		boolean floatSamples = sampleFormat == SampleFormat.FLOAT_32;
+		int fmtSize = floatSamples ? 18 : 16;
+		int channels = format.getChannels();
+		int sampleRate = (int) format.getSampleRate();
+		int blockAlign = channels * sampleFormat.bytesPerSample;
+		int length = 12 + 8 + DS64_SIZE + 8 + fmtSize + 8;
+		long riffSize = length - 8 + dataSize + (dataSize & 1);
+		boolean rf64 = riffSize > 0xFFFFFFFFL;
+
+		ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		putId(header, rf64 ? "RF64" : "RIFF");
+		header.putInt(rf64 ? -1 : (int) riffSize);
+		putId(header, "WAVE");
+		putId(header, rf64 ? "ds64" : "JUNK");
+		header.putInt(DS64_SIZE);
+		if (rf64) {
+			header.putLong(riffSize).putLong(dataSize).putLong(dataSize / blockAlign).putInt(0);
+		} else {
+			header.position(header.position() + DS64_SIZE);
+		}
+		putId(header, "fmt ");
+		header.putInt(fmtSize);
+		header.putShort((short) sampleFormat.tag).putShort((short) channels);
+		header.putInt(sampleRate).putInt(sampleRate * blockAlign);
+		header.putShort((short) blockAlign).putShort((short) (sampleFormat.bytesPerSample * 8));
+		if (floatSamples) {
+			header.putShort((short) 0);
+		}
+		putId(header, "data");
+		header.putInt(rf64 ? -1 : (int) dataSize);
+		header.flip();
+		return header;
+	}
+
+	private static void putId(ByteBuffer buffer, String id) {
+		for (int i = 0; i < 4; i++) {
+			buffer.put((byte) id.charAt(i));
+		}
+	}
+
+	/**
+	 * @return The number of samples written so far, including those which
+	 *         are still queued for the disk.
+	 */
+	public long getSamplesWritten() {
+		return samplesWritten;
+	}
+
+	@Override
+	public void processingFinished() {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		if (block.position() > 0) {
+			submitBlock();
+		}
+		filledBlocks.add(END);
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOG.warning("Interrupted while finishing " + file.getPath());
+		}
+		try {
+			if (writeError == null) {
+				long dataSize = samplesWritten * sampleFormat.bytesPerSample;
+				if ((dataSize & 1) != 0) {
+					// Chunks have an even size.
+					channel.write(ByteBuffer.allocate(1), headerLength + dataSize);
+				}
+				ByteBuffer header = header(dataSize);
+				while (header.hasRemaining()) {
+					channel.write(header, header.position());
+				}
+				channel.force(false);
+				LOG.fine(String.format("Wrote %d samples to %s", samplesWritten, file.getPath()));
+			}
+			channel.close();
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Could not finish " + file.getPath(), e);
+		}
+	}
+}
@@ -17,6 +17,7 @@ public class WriterProcessor implements AudioProcessor {
     RandomAccessFile output;
     TarsosDSPAudioFormat audioFormat;
     private int audioLen=0;
+    private boolean started=false;
     private  static final int HEADER_LENGTH=44;//byte
 
     /**
@@ -36,9 +37,13 @@ public class WriterProcessor implements AudioProcessor {
     @Override
     public boolean process(AudioEvent audioEvent) {
         try {
-            audioLen+=audioEvent.getByteBuffer().length;
+            //convert once, and write the overlap only with the first buffer
+            byte[] bytes=audioEvent.getByteBuffer();
+            int offset=started ? audioEvent.getOverlap()*audioFormat.getFrameSize() : 0;
+            started=true;
+            audioLen+=bytes.length-offset;
             //write audio to the output
-            output.write(audioEvent.getByteBuffer());
+            output.write(bytes,offset,bytes.length-offset);
         } catch (IOException e) {
             e.printStackTrace();
         }
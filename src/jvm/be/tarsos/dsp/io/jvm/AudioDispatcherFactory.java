@@ -36,6 +36,8 @@ import javax.sound.sampled.TargetDataLine;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.io.FrameCaptureInputStream;
+import be.tarsos.dsp.io.MappedWaveInputStream;
 import be.tarsos.dsp.io.PipeDecoder;
 import be.tarsos.dsp.io.PipedAudioStream;
 import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
@@ -269,5 +271,49 @@ public class AudioDispatcherFactory {
 		return AudioDispatcherFactory.fromByteArray(byteArray, audioFormat, audioBufferSize, bufferOverlap);
 	}
 	
+	/**
+	 * Create a new AudioDispatcher which reads a WAV or AIFF file through a
+	 * memory mapping, see {@link MappedWaveInputStream}. Unlike
+	 * {@link #fromFile(File, int, int)} javax.sound is not used and skipping
+	 * is instantaneous, also for very large files.
+	 * 
+	 * @param audioFile
+	 *            The WAV or AIFF file.
+	 * @param audioBufferSize
+	 *            The size of the buffer defines how much samples are processed
+	 *            in one step. Common values are 1024,2048.
+	 * @param bufferOverlap
+	 *            How much consecutive buffers overlap (in samples). Half of the
+	 *            AudioBufferSize is common.
+	 * @return A new audio dispatcher.
+	 * @throws IOException
+	 *             If the file can not be read or its format is not supported.
+	 */
+	public static AudioDispatcher fromMappedFile(final File audioFile, final int audioBufferSize, final int bufferOverlap) throws IOException {
+		TarsosDSPAudioInputStream audioStream = new MappedWaveInputStream(audioFile);
+		return new AudioDispatcher(audioStream, audioBufferSize, bufferOverlap);
+	}
+	
+	/**
+	 * Create a new AudioDispatcher which replays a capture written by a
+	 * {@link be.tarsos.dsp.io.FrameCaptureWriter}. Nothing is decoded, the
+	 * samples are read from the memory mapped capture.
+	 * 
+	 * @param capture
+	 *            The capture file.
+	 * @param audioBufferSize
+	 *            The size of the buffer defines how much samples are processed
+	 *            in one step. Common values are 1024,2048.
+	 * @param bufferOverlap
+	 *            How much consecutive buffers overlap (in samples). Half of the
+	 *            AudioBufferSize is common.
+	 * @return A new audio dispatcher.
+	 * @throws IOException
+	 *             If the file can not be read or is not a capture.
+	 */
+	public static AudioDispatcher fromFrameCapture(final File capture, final int audioBufferSize, final int bufferOverlap) throws IOException {
+		TarsosDSPAudioInputStream audioStream = new FrameCaptureInputStream(capture);
+		return new AudioDispatcher(audioStream, audioBufferSize, bufferOverlap);
+	}
 	
 }
@@ -0,0 +1,521 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io.jvm;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.PipeDecoder;
+
+/**
+ * <p>
+ * Analyses many audio files concurrently. For each resource an
+ * {@link AudioDispatcher} is created with the {@link AudioDispatcherFactory},
+ * a fresh chain of processors is requested from a
+ * {@link ProcessorChainFactory} and the dispatcher is run on one of a fixed
+ * number of worker threads.
+ * </p>
+ * <p>
+ * Files supported by the Java runtime (WAV, AIFF, AU) are read directly, other
+ * files are decoded with a piped sub-process (ffmpeg). The number of
+ * concurrent decoding processes is limited separately from the number of
+ * workers: a sub-process uses a CPU core as well, so with four workers and two
+ * decoders at most two files are decoded by ffmpeg at the same time while
+ * other workers analyse files read directly.
+ * </p>
+ * <p>
+ * A failure while analysing one file, e.g. the {@link Error} thrown by a
+ * dispatcher when reading the stream fails, is reported to the
+ * {@link BatchListener} and does not stop the batch.
+ * </p>
+ */
+public class BatchAnalysisEngine {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(BatchAnalysisEngine.class.getName());
+
+	/**
+	 * Creates a fresh chain of processors for each analysed resource.
+	 * Processors keep state so they can not be shared between files.
+	 */
+	public interface ProcessorChainFactory {
+		/**
+		 * @param resource
+		 *            The resource that is going to be analysed.
+		 * @param sampleRate
+		 *            The sample rate of the audio the processors receive.
+		 * @param bufferSize
+		 *            The size of the audio buffers.
+		 * @param overlap
+		 *            The overlap between consecutive buffers.
+		 * @return The processors to add to the dispatcher, in order.
+		 */
+		List<AudioProcessor> createProcessors(String resource, float sampleRate, int bufferSize, int overlap);
+	}
+
+	/**
+	 * Is notified about the progress of the batch. The methods are called
+	 * from the worker threads, concurrently for different resources.
+	 */
+	public interface BatchListener {
+		/**
+		 * Analysis of a resource started.
+		 * @param resource The resource.
+		 */
+		void started(String resource);
+
+		/**
+		 * Reports the progress of a resource.
+		 *
+		 * @param resource
+		 *            The resource.
+		 * @param secondsProcessed
+		 *            The number of seconds of audio analysed.
+		 * @param duration
+		 *            The duration of the resource in seconds, or a negative
+		 *            number if it is not known.
+		 */
+		void progress(String resource, double secondsProcessed, double duration);
+
+		/**
+		 * Analysis of a resource finished.
+		 * @param result The result with timing information.
+		 */
+		void finished(Result result);
+
+		/**
+		 * Analysis of a resource failed. The batch continues with the other
+		 * resources.
+		 * @param result The result with the cause of the failure.
+		 */
+		void failed(Result result);
+	}
+
+	/**
+	 * The outcome of the analysis of one resource.
+	 */
+	public static class Result {
+		private final String resource;
+		private final double audioSeconds;
+		private final double processingSeconds;
+		private final Throwable failure;
+
+		private Result(String resource, double audioSeconds, double processingSeconds, Throwable failure) {
+			this.resource = resource;
+			this.audioSeconds = audioSeconds;
+			this.processingSeconds = processingSeconds;
+			this.failure = failure;
+		}
+
+		/**
+		 * @return The analysed resource.
+		 */
+		public String getResource() {
+			return resource;
+		}
+
+		/**
+		 * @return The number of seconds of audio that were analysed.
+		 */
+		public double getAudioSeconds() {
+			return audioSeconds;
+		}
+
+		/**
+		 * @return The wall clock time the analysis took, in seconds.
+		 */
+		public double getProcessingSeconds() {
+			return processingSeconds;
+		}
+
+		/**
+		 * @return The real-time factor: the number of seconds of audio analysed
+		 *         per second of wall clock time. A factor of 50 means an hour
+		 *         of audio is analysed in 72 seconds.
+		 */
+		public double getRealTimeFactor() {
+			return processingSeconds == 0 ? 0 : audioSeconds / processingSeconds;
+		}
+
+		/**
+		 * @return True if the analysis finished without errors.
+		 */
+		public boolean isSuccess() {
+			return failure == null;
+		}
+
+		/**
+		 * @return The cause of the failure or null.
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		@Override
+		public String toString() {
+			if (isSuccess()) {
+				return String.format("%s: %.1fs of audio in %.1fs (%.1fx real-time)", resource, audioSeconds, processingSeconds, getRealTimeFactor());
+			}
+			return String.format("%s: failed (%s)", resource, failure);
+		}
+	}
+
+	private final ProcessorChainFactory chainFactory;
+	private final int workers;
+	private final Semaphore decoders;
+	private final List<BatchListener> listeners;
+
+	private int bufferSize = 2048;
+	private int overlap = 1024;
+	private int targetSampleRate = 44100;
+	private boolean alwaysUsePipe = false;
+	private double progressInterval = 10;
+
+	private volatile boolean cancelled;
+	private final List<AudioDispatcher> runningDispatchers;
+
+	/**
+	 * Create a new engine.
+	 *
+	 * @param chainFactory
+	 *            Creates the processors for each resource.
+	 * @param workers
+	 *            The number of resources analysed concurrently, typically the
+	 *            number of available processors.
+	 * @param maxDecoders
+	 *            The maximum number of concurrent decoding sub-processes.
+	 */
+	public BatchAnalysisEngine(ProcessorChainFactory chainFactory, int workers, int maxDecoders) {
+		if (workers < 1 || maxDecoders < 1) {
+			throw new IllegalArgumentException("At least one worker and one decoder are needed.");
+		}
+		this.chainFactory = chainFactory;
+		this.workers = workers;
+		this.decoders = new Semaphore(maxDecoders, true);
+		this.listeners = new CopyOnWriteArrayList<BatchListener>();
+		this.runningDispatchers = new CopyOnWriteArrayList<AudioDispatcher>();
+	}
+
+	/**
+	 * Create a new engine with one worker for each available processor and
+	 * half as many decoders.
+	 *
+	 * @param chainFactory
+	 *            Creates the processors for each resource.
+	 */
+	public BatchAnalysisEngine(ProcessorChainFactory chainFactory) {
+		this(chainFactory, Runtime.getRuntime().availableProcessors(), Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+	}
+
+	/**
+	 * Sets the buffer size and overlap of the dispatchers.
+	 * @param bufferSize The buffer size in samples.
+	 * @param overlap The overlap in samples.
+	 */
+	public void setBufferSizeAndOverlap(int bufferSize, int overlap) {
+		this.bufferSize = bufferSize;
+		this.overlap = overlap;
+	}
+
+	/**
+	 * @param targetSampleRate The sample rate resources decoded via a pipe are resampled to.
+	 */
+	public void setTargetSampleRate(int targetSampleRate) {
+		this.targetSampleRate = targetSampleRate;
+	}
+
+	/**
+	 * @param alwaysUsePipe If true all resources are decoded via a pipe, also the ones the Java runtime supports.
+	 */
+	public void setAlwaysUsePipe(boolean alwaysUsePipe) {
+		this.alwaysUsePipe = alwaysUsePipe;
+	}
+
+	/**
+	 * @param seconds The number of seconds of audio between two progress reports of a resource.
+	 */
+	public void setProgressInterval(double seconds) {
+		this.progressInterval = seconds;
+	}
+
+	public void addListener(BatchListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(BatchListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Analyses all files in a directory and its sub-directories.
+	 *
+	 * @param directory
+	 *            The directory to analyse.
+	 * @param filter
+	 *            Selects the files to analyse, or null for all files.
+	 * @return A result for each file, in the order of the (sorted) file names.
+	 */
+	public List<Result> run(File directory, FileFilter filter) {
+		if (!directory.isDirectory()) {
+			throw new IllegalArgumentException(directory + " is not a directory.");
+		}
+		List<String> resources = new ArrayList<String>();
+		listFiles(directory, filter, resources);
+		Collections.sort(resources);
+		return run(resources);
+	}
+
+	private static void listFiles(File directory, FileFilter filter, List<String> resources) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			LOG.warning("Could not list the files in " + directory);
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				listFiles(file, filter, resources);
+			} else if (filter == null || filter.accept(file)) {
+				resources.add(file.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Analyses a list of resources. The method blocks until all resources are
+	 * analysed or the batch is cancelled.
+	 *
+	 * @param resources
+	 *            The resources to analyse.
+	 * @return A result for each resource, in the order of the list. Resources
+	 *         skipped due to cancellation are not present.
+	 */
+	public List<Result> run(List<String> resources) {
+		cancelled = false;
+		ExecutorService executor = Executors.newFixedThreadPool(workers, new WorkerThreadFactory());
+		List<Future<Result>> futures = new ArrayList<Future<Result>>(resources.size());
+		try {
+			for (final String resource : resources) {
+				futures.add(executor.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						return cancelled ? null : analyse(resource);
+					}
+				}));
+			}
+			List<Result> results = new ArrayList<Result>(resources.size());
+			for (Future<Result> future : futures) {
+				try {
+					Result result = future.get();
+					if (result != null) {
+						results.add(result);
+					}
+				} catch (ExecutionException e) {
+					// analyse catches everything but fatal errors of the JVM
+					throw new IllegalStateException("Batch analysis failed", e.getCause());
+				}
+			}
+			return results;
+		} catch (InterruptedException e) {
+			cancel();
+			Thread.currentThread().interrupt();
+			return Collections.emptyList();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Analyses a list of resources.
+	 *
+	 * @param resources
+	 *            The resources to analyse.
+	 * @return A result for each resource.
+	 */
+	public List<Result> run(String... resources) {
+		return run(Arrays.asList(resources));
+	}
+
+	/**
+	 * Stops the dispatchers that are running and skips the resources that
+	 * were not analysed yet.
+	 */
+	public void cancel() {
+		cancelled = true;
+		for (AudioDispatcher dispatcher : runningDispatchers) {
+			dispatcher.stop();
+		}
+	}
+
+	private Result analyse(final String resource) {
+		for (BatchListener listener : listeners) {
+			listener.started(resource);
+		}
+		final long start = System.nanoTime();
+		AudioDispatcher dispatcher = null;
+		boolean decoderAcquired = false;
+		try {
+			double duration = -1;
+			if (!alwaysUsePipe && isSupportedByRuntime(resource)) {
+				AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(new File(resource));
+				if (fileFormat.getFrameLength() > 0) {
+					duration = fileFormat.getFrameLength() / fileFormat.getFormat().getFrameRate();
+				}
+				dispatcher = AudioDispatcherFactory.fromFile(new File(resource), bufferSize, overlap);
+			} else {
+				decoders.acquire();
+				decoderAcquired = true;
+				if (!listeners.isEmpty()) {
+					duration = new PipeDecoder().getDuration(resource);
+				}
+				dispatcher = AudioDispatcherFactory.fromPipe(resource, targetSampleRate, bufferSize, overlap);
+			}
+			float sampleRate = dispatcher.getFormat().getSampleRate();
+			for (AudioProcessor processor : chainFactory.createProcessors(resource, sampleRate, bufferSize, overlap)) {
+				dispatcher.addAudioProcessor(processor);
+			}
+			if (!listeners.isEmpty()) {
+				dispatcher.addAudioProcessor(new ProgressReporter(resource, duration));
+			}
+			runningDispatchers.add(dispatcher);
+			dispatcher.run();
+			double processingSeconds = (System.nanoTime() - start) / 1e9;
+			Result result = new Result(resource, dispatcher.secondsProcessed(), processingSeconds, null);
+			for (BatchListener listener : listeners) {
+				listener.finished(result);
+			}
+			return result;
+		} catch (VirtualMachineError e) {
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return fail(resource, start, dispatcher, e);
+		} catch (Throwable e) {
+			// Includes the Error thrown by the dispatcher when reading fails.
+			LOG.log(Level.WARNING, "Analysis of " + resource + " failed", e);
+			return fail(resource, start, dispatcher, e);
+		} finally {
+			if (dispatcher != null) {
+				runningDispatchers.remove(dispatcher);
+				if (!dispatcher.isStopped()) {
+					dispatcher.stop();
+				}
+			}
+			if (decoderAcquired) {
+				decoders.release();
+			}
+		}
+	}
+
+	private Result fail(String resource, long start, AudioDispatcher dispatcher, Throwable cause) {
+		double audioSeconds = dispatcher == null ? 0 : dispatcher.secondsProcessed();
+		Result result = new Result(resource, audioSeconds, (System.nanoTime() - start) / 1e9, cause);
+		for (BatchListener listener : listeners) {
+			listener.failed(result);
+		}
+		return result;
+	}
+
+	private static boolean isSupportedByRuntime(String resource) {
+		File file = new File(resource);
+		if (!file.isFile()) {
+			return false;
+		}
+		try {
+			AudioSystem.getAudioFileFormat(file);
+			return true;
+		} catch (UnsupportedAudioFileException e) {
+			return false;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reports the progress of a resource to the listeners.
+	 */
+	private class ProgressReporter implements AudioProcessor {
+		private final String resource;
+		private final double duration;
+		private double nextReport;
+
+		private ProgressReporter(String resource, double duration) {
+			this.resource = resource;
+			this.duration = duration;
+			this.nextReport = progressInterval;
+		}
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			double timeStamp = audioEvent.getTimeStamp();
+			if (timeStamp >= nextReport) {
+				for (BatchListener listener : listeners) {
+					listener.progress(resource, timeStamp, duration);
+				}
+				nextReport = timeStamp + progressInterval;
+			}
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "TarsosDSP batch worker " + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
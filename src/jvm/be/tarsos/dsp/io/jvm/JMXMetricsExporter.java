@@ -0,0 +1,309 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io.jvm;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import be.tarsos.dsp.DispatcherMetrics;
+import be.tarsos.dsp.DispatcherMetrics.ProcessorMetrics;
+
+/**
+ * <p>
+ * Exports {@link DispatcherMetrics} as MXBeans so they can be followed with
+ * JConsole, VisualVM or any JMX collector. The dispatcher is registered as
+ * <code>be.tarsos.dsp:type=Dispatcher,name=...</code>, each processor as
+ * <code>be.tarsos.dsp:type=Processor,dispatcher=...,name=...</code>.
+ * Processors are registered as soon as they show up in a report.
+ * </p>
+ *
+ * <pre>
+ * DispatcherMetrics metrics = new DispatcherMetrics("microphone");
+ * dispatcher.setMetrics(metrics);
+ * JMXMetricsExporter exporter = new JMXMetricsExporter(metrics);
+ * exporter.register();
+ * </pre>
+ *
+ * All latencies are expressed in nanoseconds.
+ */
+public class JMXMetricsExporter implements DispatcherMetrics.Listener {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(JMXMetricsExporter.class.getName());
+
+	/**
+	 * The JMX domain of all exported beans.
+	 */
+	public static final String DOMAIN = "be.tarsos.dsp";
+
+	/**
+	 * The dispatcher level attributes.
+	 */
+	public interface DispatcherMetricsMXBean {
+		String getName();
+
+		long getFrames();
+
+		double getFramesPerSecond();
+
+		double getRealTimeFactor();
+
+		double getAudioSeconds();
+
+		double getWallSeconds();
+
+		double getReadWaitMean();
+
+		long getReadWait99thPercentile();
+
+		double getConversionMean();
+
+		long getConversion99thPercentile();
+
+		double getFrameLatencyMean();
+
+		long getFrameLatency99thPercentile();
+
+		long getFrameLatencyMax();
+
+		/**
+		 * Clears all measurements.
+		 */
+		void reset();
+	}
+
+	/**
+	 * The attributes of one processor.
+	 */
+	public interface ProcessorMetricsMXBean {
+		String getName();
+
+		long getCalls();
+
+		double getLatencyMean();
+
+		long getLatencyMedian();
+
+		long getLatency99thPercentile();
+
+		long getLatencyMax();
+	}
+
+	private final DispatcherMetrics metrics;
+	private final MBeanServer server;
+	private final List<ObjectName> registered;
+	private final List<ProcessorMetrics> exported;
+
+	/**
+	 * Create an exporter which registers beans on the platform MBean server.
+	 *
+	 * @param metrics
+	 *            The metrics to export.
+	 */
+	public JMXMetricsExporter(DispatcherMetrics metrics) {
+		this(metrics, ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/**
+	 * Create an exporter.
+	 *
+	 * @param metrics
+	 *            The metrics to export.
+	 * @param server
+	 *            The server to register the beans on.
+	 */
+	public JMXMetricsExporter(DispatcherMetrics metrics, MBeanServer server) {
+		this.metrics = metrics;
+		this.server = server;
+		this.registered = new ArrayList<ObjectName>();
+		this.exported = new ArrayList<ProcessorMetrics>();
+	}
+
+	/**
+	 * Registers the dispatcher bean and the beans of the processors seen up
+	 * until now. Processors seen later are registered on the next report.
+	 *
+	 * @throws JMException
+	 *             If the dispatcher bean can not be registered, e.g. when
+	 *             another dispatcher with the same name is exported.
+	 */
+	public synchronized void register() throws JMException {
+		ObjectName name = dispatcherName();
+		server.registerMBean(new DispatcherBean(metrics), name);
+		registered.add(name);
+		metrics.addListener(this);
+		registerNewProcessors();
+	}
+
+	/**
+	 * Removes all beans registered by this exporter.
+	 */
+	public synchronized void unregister() {
+		metrics.removeListener(this);
+		for (ObjectName name : registered) {
+			try {
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+			} catch (JMException e) {
+				LOG.log(Level.WARNING, "Could not unregister " + name, e);
+			}
+		}
+		registered.clear();
+		exported.clear();
+	}
+
+	@Override
+	public void metricsReported(DispatcherMetrics reported) {
+		registerNewProcessors();
+	}
+
+	private synchronized void registerNewProcessors() {
+		if (registered.isEmpty()) {
+			return;
+		}
+		for (ProcessorMetrics processor : metrics.getProcessorMetrics()) {
+			if (!exported.contains(processor)) {
+				exported.add(processor);
+				try {
+					ObjectName name = new ObjectName(DOMAIN + ":type=Processor,dispatcher=" + ObjectName.quote(metrics.getName()) + ",name=" + ObjectName.quote(processor.getName()));
+					server.registerMBean(new ProcessorBean(processor), name);
+					registered.add(name);
+				} catch (JMException e) {
+					LOG.log(Level.WARNING, "Could not register the metrics of " + processor.getName(), e);
+				}
+			}
+		}
+	}
+
+	private ObjectName dispatcherName() throws JMException {
+		return new ObjectName(DOMAIN + ":type=Dispatcher,name=" + ObjectName.quote(metrics.getName()));
+	}
+
+	private static final class DispatcherBean implements DispatcherMetricsMXBean {
+		private final DispatcherMetrics metrics;
+
+		private DispatcherBean(DispatcherMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		public String getName() {
+			return metrics.getName();
+		}
+
+		public long getFrames() {
+			return metrics.getFrames();
+		}
+
+		public double getFramesPerSecond() {
+			return metrics.getFramesPerSecond();
+		}
+
+		public double getRealTimeFactor() {
+			return metrics.getRealTimeFactor();
+		}
+
+		public double getAudioSeconds() {
+			return metrics.getAudioSeconds();
+		}
+
+		public double getWallSeconds() {
+			return metrics.getWallSeconds();
+		}
+
+		public double getReadWaitMean() {
+			return metrics.getReadWait().getMean();
+		}
+
+		public long getReadWait99thPercentile() {
+			return metrics.getReadWait().getValueAtPercentile(99);
+		}
+
+		public double getConversionMean() {
+			return metrics.getConversion().getMean();
+		}
+
+		public long getConversion99thPercentile() {
+			return metrics.getConversion().getValueAtPercentile(99);
+		}
+
+		public double getFrameLatencyMean() {
+			return metrics.getFrameLatency().getMean();
+		}
+
+		public long getFrameLatency99thPercentile() {
+			return metrics.getFrameLatency().getValueAtPercentile(99);
+		}
+
+		public long getFrameLatencyMax() {
+			return metrics.getFrameLatency().getMax();
+		}
+
+		public void reset() {
+			metrics.reset();
+		}
+	}
+
+	private static final class ProcessorBean implements ProcessorMetricsMXBean {
+		private final ProcessorMetrics metrics;
+
+		private ProcessorBean(ProcessorMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		public String getName() {
+			return metrics.getName();
+		}
+
+		public long getCalls() {
+			return metrics.getCalls();
+		}
+
+		public double getLatencyMean() {
+			return metrics.getLatency().getMean();
+		}
+
+		public long getLatencyMedian() {
+			return metrics.getLatency().getValueAtPercentile(50);
+		}
+
+		public long getLatency99thPercentile() {
+			return metrics.getLatency().getValueAtPercentile(99);
+		}
+
+		public long getLatencyMax() {
+			return metrics.getMaxLatency();
+		}
+	}
+}
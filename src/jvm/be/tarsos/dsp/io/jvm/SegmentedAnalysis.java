@@ -0,0 +1,480 @@
+/*
+*      _______                       _____   _____ _____  
+*     |__   __|                     |  __ \ / ____|  __ \ 
+*        | | __ _ _ __ ___  ___  ___| |  | | (___ | |__) |
+*        | |/ _` | '__/ __|/ _ \/ __| |  | |\___ \|  ___/ 
+*        | | (_| | |  \__ \ (_) \__ \ |__| |____) | |     
+*        |_|\__,_|_|  |___/\___/|___/_____/|_____/|_|     
+*                                                         
+* -------------------------------------------------------------
+*
+* TarsosDSP is developed by Joren Six at IPEM, University Ghent
+*  
+* -------------------------------------------------------------
+*
+*  Info: http://0110.be/tag/TarsosDSP
+*  Github: https://github.com/JorenSix/TarsosDSP
+*  Releases: http://0110.be/releases/TarsosDSP/
+*  
+*  TarsosDSP includes modified source code by various authors,
+*  for credits and info, see README.
+* 
+*/
+
+
+package be.tarsos.dsp.io.jvm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.PipeDecoder;
+
+/**
+ * <p>
+ * Analyses one long file on several cores. The file is split into a number of
+ * time segments which are analysed concurrently, each by its own
+ * {@link AudioDispatcher} and its own chain of processors. The results of the
+ * segments are merged in time stamp order.
+ * </p>
+ * <p>
+ * Stateful processors (onset detectors, peak pickers, envelope followers,...)
+ * need some audio before their output is reliable. Therefore each segment
+ * starts decoding a configurable pre-roll before its start. Results the
+ * processors report during the pre-roll belong to the previous segment and are
+ * dropped. Segment boundaries are aligned to the step size of the dispatcher
+ * so the buffers of a segment are exactly the buffers a single dispatcher would
+ * process.
+ * </p>
+ * <p>
+ * Files supported by the Java runtime are read directly, positioned with
+ * {@link AudioDispatcher#skip(double)}. Other files are decoded with a piped
+ * sub-process using a start time offset and a duration, in which case the
+ * offset is added to the time stamps reported to the {@link Segment}.
+ * </p>
+ *
+ * <pre>
+ * SegmentedAnalysis&lt;Float&gt; analysis = new SegmentedAnalysis&lt;Float&gt;(file, 2048, 1024, factory);
+ * analysis.setSegments(32);
+ * analysis.setPreRoll(2.0);
+ * for (TimedResult&lt;Float&gt; pitch : analysis.run()) { ... }
+ * </pre>
+ *
+ * @param <T>
+ *            The type of the results of the analysis.
+ */
+public class SegmentedAnalysis<T> {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(SegmentedAnalysis.class.getName());
+
+	/**
+	 * Creates the processors for a segment. The processors report their
+	 * results to the segment.
+	 *
+	 * @param <T>
+	 *            The type of the results.
+	 */
+	public interface SegmentChainFactory<T> {
+		/**
+		 * @param segment
+		 *            The segment to create a chain for. Results are reported
+		 *            with {@link Segment#add(double, Object)}.
+		 * @return The processors to add to the dispatcher of the segment, in
+		 *         order.
+		 */
+		List<AudioProcessor> createProcessors(Segment<T> segment);
+	}
+
+	/**
+	 * A result with the time (in seconds, from the start of the file) it
+	 * applies to.
+	 *
+	 * @param <T>
+	 *            The type of the result.
+	 */
+	public static final class TimedResult<T> {
+		private final double timeStamp;
+		private final T value;
+
+		private TimedResult(double timeStamp, T value) {
+			this.timeStamp = timeStamp;
+			this.value = value;
+		}
+
+		/**
+		 * @return The time in seconds from the start of the file.
+		 */
+		public double getTimeStamp() {
+			return timeStamp;
+		}
+
+		/**
+		 * @return The result.
+		 */
+		public T getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return timeStamp + ": " + value;
+		}
+	}
+
+	/**
+	 * A part of the file analysed by one dispatcher. The segment owns the
+	 * results with a time stamp between its start (inclusive) and end
+	 * (exclusive). Results are added from the thread running the dispatcher of
+	 * the segment.
+	 *
+	 * @param <T>
+	 *            The type of the results.
+	 */
+	public static final class Segment<T> {
+		private final int index;
+		private final double start;
+		private final double end;
+		private final double decodeStart;
+		private final double timeOffset;
+		private final float sampleRate;
+		private final List<TimedResult<T>> results;
+
+		private Segment(int index, double start, double end, double decodeStart, double timeOffset, float sampleRate) {
+			this.index = index;
+			this.start = start;
+			this.end = end;
+			this.decodeStart = decodeStart;
+			this.timeOffset = timeOffset;
+			this.sampleRate = sampleRate;
+			this.results = new ArrayList<TimedResult<T>>();
+		}
+
+		/**
+		 * Reports a result. Results during the pre-roll or after the end of the
+		 * segment are ignored.
+		 *
+		 * @param timeStamp
+		 *            The time stamp as seen by the processors, e.g.
+		 *            {@link AudioEvent#getTimeStamp()}.
+		 * @param value
+		 *            The result.
+		 */
+		public void add(double timeStamp, T value) {
+			double time = timeStamp + timeOffset;
+			if (time >= start && time < end) {
+				results.add(new TimedResult<T>(time, value));
+			}
+		}
+
+		/**
+		 * @return The index of the segment, starting from zero.
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return The start of the segment in seconds.
+		 */
+		public double getStart() {
+			return start;
+		}
+
+		/**
+		 * @return The end of the segment in seconds, infinity for the last
+		 *         segment.
+		 */
+		public double getEnd() {
+			return end;
+		}
+
+		/**
+		 * @return The time in seconds decoding starts: the start minus the
+		 *         pre-roll.
+		 */
+		public double getDecodeStart() {
+			return decodeStart;
+		}
+
+		/**
+		 * @return The sample rate of the audio the processors receive.
+		 */
+		public float getSampleRate() {
+			return sampleRate;
+		}
+	}
+
+	private final String resource;
+	private final int bufferSize;
+	private final int overlap;
+	private final SegmentChainFactory<T> factory;
+
+	private int segments = Runtime.getRuntime().availableProcessors();
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private double preRoll = 1.0;
+	private int targetSampleRate = 44100;
+	private boolean alwaysUsePipe = false;
+
+	/**
+	 * Create a new segmented analysis.
+	 *
+	 * @param resource
+	 *            The file to analyse.
+	 * @param bufferSize
+	 *            The buffer size of the dispatchers, in samples.
+	 * @param overlap
+	 *            The overlap of the dispatchers, in samples.
+	 * @param factory
+	 *            Creates the processors for each segment.
+	 */
+	public SegmentedAnalysis(String resource, int bufferSize, int overlap, SegmentChainFactory<T> factory) {
+		this.resource = resource;
+		this.bufferSize = bufferSize;
+		this.overlap = overlap;
+		this.factory = factory;
+	}
+
+	/**
+	 * @param segments
+	 *            The number of segments the file is split into.
+	 */
+	public void setSegments(int segments) {
+		if (segments < 1) {
+			throw new IllegalArgumentException("At least one segment is needed.");
+		}
+		this.segments = segments;
+	}
+
+	/**
+	 * @param parallelism
+	 *            The number of segments analysed concurrently.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("At least one thread is needed.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param seconds
+	 *            The number of seconds decoded before the start of each
+	 *            segment to let stateful processors converge.
+	 */
+	public void setPreRoll(double seconds) {
+		this.preRoll = seconds;
+	}
+
+	/**
+	 * @param targetSampleRate
+	 *            The sample rate used when the file is decoded via a pipe.
+	 */
+	public void setTargetSampleRate(int targetSampleRate) {
+		this.targetSampleRate = targetSampleRate;
+	}
+
+	/**
+	 * @param alwaysUsePipe
+	 *            If true the file is decoded via a pipe, also when the Java
+	 *            runtime supports it.
+	 */
+	public void setAlwaysUsePipe(boolean alwaysUsePipe) {
+		this.alwaysUsePipe = alwaysUsePipe;
+	}
+
+	/**
+	 * Analyses the file. Blocks until all segments are done.
+	 *
+	 * @return The results of all segments, sorted by time stamp.
+	 */
+	public List<TimedResult<T>> run() {
+		final boolean pipe = alwaysUsePipe || !isSupportedByRuntime();
+		final float sampleRate;
+		final long totalSamples;
+		if (pipe) {
+			sampleRate = targetSampleRate;
+			double duration = new PipeDecoder().getDuration(resource);
+			if (duration <= 0) {
+				throw new IllegalArgumentException("Could not determine the duration of " + resource);
+			}
+			totalSamples = (long) (duration * sampleRate);
+		} else {
+			try {
+				AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(new File(resource));
+				sampleRate = fileFormat.getFormat().getSampleRate();
+				totalSamples = fileFormat.getFrameLength();
+			} catch (UnsupportedAudioFileException e) {
+				throw new IllegalArgumentException("Unsupported audio file " + resource, e);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Could not read " + resource, e);
+			}
+			if (totalSamples <= 0) {
+				throw new IllegalArgumentException("The length of " + resource + " is not known.");
+			}
+		}
+
+		// Boundaries are multiples of the step size so the buffers of the
+		// segments line up with the buffers of one dispatcher.
+		final int stepSize = bufferSize - overlap;
+		final long stepsPerSegment = Math.max(1, (totalSamples / stepSize + segments - 1) / segments);
+		final long preRollSteps = (long) Math.ceil(preRoll * sampleRate / stepSize);
+
+		List<Segment<T>> parts = new ArrayList<Segment<T>>(segments);
+		for (int i = 0; i < segments; i++) {
+			long startSample = i * stepsPerSegment * stepSize;
+			if (i > 0 && startSample >= totalSamples) {
+				break;
+			}
+			long decodeStartSample = Math.max(0, startSample - preRollSteps * stepSize);
+			double start = i == 0 ? Double.NEGATIVE_INFINITY : startSample / (double) sampleRate;
+			boolean last = i == segments - 1 || (i + 1) * stepsPerSegment * stepSize >= totalSamples;
+			double end = last ? Double.POSITIVE_INFINITY : (i + 1) * stepsPerSegment * stepSize / (double) sampleRate;
+			double decodeStart = decodeStartSample / (double) sampleRate;
+			parts.add(new Segment<T>(i, start, end, decodeStart, pipe ? decodeStart : 0, sampleRate));
+		}
+		LOG.fine("Analysing " + resource + " in " + parts.size() + " segments.");
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, parts.size()), new SegmentThreadFactory());
+		try {
+			List<Future<Segment<T>>> futures = new ArrayList<Future<Segment<T>>>(parts.size());
+			for (final Segment<T> segment : parts) {
+				futures.add(executor.submit(new Callable<Segment<T>>() {
+					@Override
+					public Segment<T> call() throws Exception {
+						analyse(segment, pipe);
+						return segment;
+					}
+				}));
+			}
+			List<TimedResult<T>> merged = new ArrayList<TimedResult<T>>();
+			for (Future<Segment<T>> future : futures) {
+				merged.addAll(waitFor(future).results);
+			}
+			// Segments are in order, but processors may report results
+			// slightly out of order within a segment.
+			Collections.sort(merged, new Comparator<TimedResult<T>>() {
+				@Override
+				public int compare(TimedResult<T> o1, TimedResult<T> o2) {
+					return Double.compare(o1.timeStamp, o2.timeStamp);
+				}
+			});
+			return merged;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Segment<T> waitFor(Future<Segment<T>> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a segment of " + resource, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Analysis of a segment of " + resource + " failed", cause);
+		}
+	}
+
+	private void analyse(Segment<T> segment, boolean pipe) throws UnsupportedAudioFileException, IOException {
+		final AudioDispatcher dispatcher;
+		if (pipe) {
+			if (Double.isInfinite(segment.end)) {
+				dispatcher = AudioDispatcherFactory.fromPipe(resource, targetSampleRate, bufferSize, overlap, segment.decodeStart);
+			} else {
+				// The last buffer starting before the end needs a buffer of audio past the end.
+				double numberOfSeconds = segment.end - segment.decodeStart + bufferSize / (double) targetSampleRate;
+				dispatcher = AudioDispatcherFactory.fromPipe(resource, targetSampleRate, bufferSize, overlap, segment.decodeStart, numberOfSeconds);
+			}
+		} else {
+			dispatcher = AudioDispatcherFactory.fromFile(new File(resource), bufferSize, overlap);
+			dispatcher.skip(segment.decodeStart);
+			if (!Double.isInfinite(segment.end)) {
+				dispatcher.addAudioProcessor(new SegmentEnd(dispatcher, segment.end));
+			}
+		}
+		for (AudioProcessor processor : factory.createProcessors(segment)) {
+			dispatcher.addAudioProcessor(processor);
+		}
+		dispatcher.run();
+	}
+
+	private boolean isSupportedByRuntime() {
+		File file = new File(resource);
+		if (!file.isFile()) {
+			return false;
+		}
+		try {
+			AudioSystem.getAudioFileFormat(file);
+			return true;
+		} catch (UnsupportedAudioFileException e) {
+			return false;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stops the dispatcher of a segment once its buffers start after the end
+	 * of the segment.
+	 */
+	private static class SegmentEnd implements AudioProcessor {
+		private final AudioDispatcher dispatcher;
+		private final double end;
+
+		private SegmentEnd(AudioDispatcher dispatcher, double end) {
+			this.dispatcher = dispatcher;
+			this.end = end;
+		}
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			if (audioEvent.getTimeStamp() >= end) {
+				dispatcher.stop();
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	private static class SegmentThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "TarsosDSP segment " + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.io.MappedWaveInputStream;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+import be.tarsos.dsp.writer.AsyncWaveWriter;
+import be.tarsos.dsp.writer.WriterProcessor;
+
+public class AsyncWaveWriterTest {
+
+	private static final int SAMPLE_RATE = 8000;
+	private static final int SAMPLES = 100001;
+
+	private final TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(SAMPLE_RATE, 16, 1, true, false);
+
+	private float[] sine() {
+		float[] samples = new float[SAMPLES];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (float) (0.8 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+		}
+		return samples;
+	}
+
+	private AudioDispatcher dispatcher(float[] samples) {
+		byte[] bytes = new byte[samples.length * 2];
+		TarsosDSPAudioFloatConverter.getConverter(format).toByteArray(samples, bytes);
+		UniversalAudioInputStream stream = new UniversalAudioInputStream(new ByteArrayInputStream(bytes), format);
+		AudioDispatcher dispatcher = new AudioDispatcher(stream, 1024, 512);
+		dispatcher.setZeroPadLastBuffer(true);
+		return dispatcher;
+	}
+
+	private void assertRoundTrip(AsyncWaveWriter.SampleFormat sampleFormat, int bits, double precision) throws IOException {
+		float[] samples = sine();
+		File file = File.createTempFile("async", ".wav");
+		file.deleteOnExit();
+		AudioDispatcher dispatcher = dispatcher(samples);
+		AsyncWaveWriter writer = new AsyncWaveWriter(file, format, sampleFormat);
+		dispatcher.addAudioProcessor(writer);
+		dispatcher.run();
+		assertEquals(SAMPLES, writer.getSamplesWritten());
+
+		MappedWaveInputStream stream = new MappedWaveInputStream(file);
+		assertEquals(bits, stream.getFormat().getSampleSizeInBits());
+		assertEquals(SAMPLE_RATE, stream.getFormat().getSampleRate(), 0.0f);
+		assertEquals(SAMPLES, stream.getFrameLength());
+		float[] read = new float[SAMPLES];
+		assertEquals(SAMPLES, stream.read(read, 0, SAMPLES));
+		stream.close();
+		// The input was quantized to 16 bits.
+		for (int i = 0; i < SAMPLES; i++) {
+			assertEquals(samples[i], read[i], precision);
+		}
+	}
+
+	@Test
+	public void testFloatSamples() throws IOException {
+		assertRoundTrip(AsyncWaveWriter.SampleFormat.FLOAT_32, 32, 1e-4);
+	}
+
+	@Test
+	public void test24BitSamples() throws IOException {
+		assertRoundTrip(AsyncWaveWriter.SampleFormat.PCM_24, 24, 1e-4);
+	}
+
+	@Test
+	public void test16BitSamples() throws IOException {
+		assertRoundTrip(AsyncWaveWriter.SampleFormat.PCM_16, 16, 1e-4);
+	}
+
+	@Test
+	public void testWriterProcessorWritesOverlapOnce() throws IOException {
+		File file = File.createTempFile("writer", ".wav");
+		file.deleteOnExit();
+		AudioDispatcher dispatcher = dispatcher(sine());
+		dispatcher.setZeroPadLastBuffer(false);
+		dispatcher.addAudioProcessor(new WriterProcessor(format, new RandomAccessFile(file, "rw")));
+		dispatcher.run();
+		MappedWaveInputStream stream = new MappedWaveInputStream(file);
+		assertEquals(SAMPLES, stream.getFrameLength());
+		stream.close();
+	}
+}
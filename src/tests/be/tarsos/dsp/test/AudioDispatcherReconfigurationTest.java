@@ -0,0 +1,246 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.ConstantQ;
+import be.tarsos.dsp.ReconfigurableAudioProcessor;
+import be.tarsos.dsp.SpectralPeakProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+import be.tarsos.dsp.mfcc.MFCC;
+import be.tarsos.dsp.onsets.ComplexOnsetDetector;
+import be.tarsos.dsp.onsets.OnsetHandler;
+import be.tarsos.dsp.onsets.PercussionOnsetDetector;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchProcessor;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+public class AudioDispatcherReconfigurationTest {
+
+	private static final TarsosDSPAudioFormat FORMAT = new TarsosDSPAudioFormat(44100, 16, 1, true, false);
+
+	private static byte[] sineBytes(int numberOfSamples) {
+		float[] sine = TestUtilities.audioBufferSine(numberOfSamples);
+		byte[] bytes = new byte[sine.length * FORMAT.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(FORMAT).toByteArray(sine, bytes);
+		return bytes;
+	}
+
+	/**
+	 * The samples as the dispatcher sees them, after conversion.
+	 */
+	private static float[] decoded(byte[] bytes) {
+		float[] samples = new float[bytes.length / FORMAT.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(FORMAT).toFloatArray(bytes, samples);
+		return samples;
+	}
+
+	/**
+	 * Checks each buffer against the stream, requests a new size after a
+	 * number of buffers and records the reconfiguration callbacks.
+	 */
+	private static class Checker implements ReconfigurableAudioProcessor {
+		final float[] stream;
+		final AudioDispatcher dispatcher;
+		final int[][] requests;
+		final List<String> calls = new ArrayList<String>();
+		final List<Integer> sizes = new ArrayList<Integer>();
+		long expectedSamplesProcessed;
+		long previousStart;
+		float[] previous = new float[0];
+		int buffers;
+
+		Checker(float[] stream, AudioDispatcher dispatcher, int[][] requests) {
+			this.stream = stream;
+			this.dispatcher = dispatcher;
+			this.requests = requests;
+		}
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			float[] buffer = audioEvent.getFloatBuffer();
+			long samplesProcessed = audioEvent.getSamplesProcessed();
+			// No gap and no duplicate: each buffer starts where the previous ended.
+			assertEquals(expectedSamplesProcessed, samplesProcessed);
+			// The overlap holds the end of the previous buffer, preceded by
+			// zeros if it is longer. The rest are new samples of the stream.
+			long start = samplesProcessed - audioEvent.getOverlap();
+			for (int i = 0; i < buffer.length; i++) {
+				long index = start + i;
+				float expected;
+				if (i < audioEvent.getOverlap()) {
+					long j = index - previousStart;
+					expected = j >= 0 ? previous[(int) j] : 0;
+				} else {
+					expected = index < stream.length ? stream[(int) index] : 0;
+				}
+				assertEquals("Sample " + i + " of buffer " + buffers, expected, buffer[i], 0.0f);
+			}
+			previousStart = start;
+			previous = buffer.clone();
+			expectedSamplesProcessed = samplesProcessed + buffer.length - audioEvent.getOverlap();
+			sizes.add(buffer.length);
+			for (int[] request : requests) {
+				if (request[0] == buffers) {
+					dispatcher.requestStepSizeAndOverlap(request[1], request[2]);
+				}
+			}
+			buffers++;
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+
+		@Override
+		public void prepareReconfiguration(int audioBufferSize, int bufferOverlap) {
+			calls.add("prepare " + audioBufferSize + " " + bufferOverlap);
+		}
+
+		@Override
+		public void reconfigure(int audioBufferSize, int bufferOverlap) {
+			calls.add("reconfigure " + audioBufferSize + " " + bufferOverlap);
+		}
+	}
+
+	@Test
+	public void testHistoryIsPreserved() {
+		byte[] bytes = sineBytes(44100);
+		AudioDispatcher dispatcher = new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), FORMAT), 1024, 512);
+		// Grow beyond the available history, shrink, and drop the overlap.
+		Checker checker = new Checker(decoded(bytes), dispatcher,
+				new int[][] { { 0, 4096, 2048 }, { 3, 1024, 0 }, { 6, 2048, 1536 } });
+		dispatcher.addAudioProcessor(checker);
+		dispatcher.run();
+
+		assertEquals(1024, (int) checker.sizes.get(0));
+		assertEquals(4096, (int) checker.sizes.get(1));
+		assertEquals(1024, (int) checker.sizes.get(4));
+		assertEquals(2048, (int) checker.sizes.get(7));
+		assertEquals(6, checker.calls.size());
+		assertEquals("prepare 4096 2048", checker.calls.get(0));
+		assertEquals("reconfigure 4096 2048", checker.calls.get(1));
+		assertEquals("reconfigure 2048 1536", checker.calls.get(5));
+		// The whole stream is processed.
+		assertEquals(44100, checker.expectedSamplesProcessed, 2048);
+	}
+
+	@Test
+	public void testRequestFromOtherThread() throws InterruptedException {
+		byte[] bytes = sineBytes(44100 * 4);
+		final AudioDispatcher dispatcher = new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), FORMAT), 1024, 512);
+		Checker checker = new Checker(decoded(bytes), dispatcher, new int[0][]);
+		dispatcher.addAudioProcessor(checker);
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread thread = new Thread(dispatcher, "Reconfiguration test");
+		thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(Thread t, Throwable e) {
+				failures.add(e);
+			}
+		});
+		thread.start();
+		for (int i = 0; i < 50 && thread.isAlive(); i++) {
+			dispatcher.requestStepSizeAndOverlap(i % 2 == 0 ? 4096 : 1024, i % 2 == 0 ? 3072 : 512);
+			Thread.sleep(1);
+		}
+		thread.join(10000);
+		assertTrue(!thread.isAlive());
+		assertTrue("Unexpected failure: " + failures, failures.isEmpty());
+		assertEquals(44100 * 4, checker.expectedSamplesProcessed, 4096);
+	}
+
+	@Test
+	public void testPitchProcessorFollowsBufferSize() {
+		byte[] bytes = sineBytes(44100 * 2);
+		AudioDispatcher dispatcher = new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), FORMAT), 1024, 0);
+		final List<Float> pitches = new ArrayList<Float>();
+		dispatcher.addAudioProcessor(new PitchProcessor(PitchEstimationAlgorithm.FFT_YIN, 44100, 1024, new PitchDetectionHandler() {
+			@Override
+			public void handlePitch(PitchDetectionResult pitchDetectionResult, AudioEvent audioEvent) {
+				pitches.add(pitchDetectionResult.getPitch());
+			}
+		}));
+		dispatcher.requestStepSizeAndOverlap(2048, 1024);
+		dispatcher.run();
+		assertTrue(pitches.size() > 80);
+		for (float pitch : pitches.subList(0, pitches.size() - 1)) {
+			assertEquals(440, pitch, 2);
+		}
+	}
+
+	@Test
+	public void testSpectralProcessorsFollowBufferSize() {
+		byte[] bytes = sineBytes(44100 * 2);
+		final AudioDispatcher dispatcher = new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), FORMAT), 1024, 512);
+		final MFCC mfcc = new MFCC(1024, 44100);
+		final SpectralPeakProcessor peaks = new SpectralPeakProcessor(1024, 512, 44100);
+		OnsetHandler onsets = new OnsetHandler() {
+			@Override
+			public void handleOnset(double time, double salience) {
+			}
+		};
+		ComplexOnsetDetector complex = new ComplexOnsetDetector(1024);
+		complex.setHandler(onsets);
+		dispatcher.addAudioProcessor(mfcc);
+		dispatcher.addAudioProcessor(peaks);
+		dispatcher.addAudioProcessor(complex);
+		dispatcher.addAudioProcessor(new PercussionOnsetDetector(44100, 1024, 512, onsets));
+		final List<Integer> spectrumSizes = new ArrayList<Integer>();
+		dispatcher.addAudioProcessor(new AudioProcessor() {
+			int buffers;
+
+			@Override
+			public boolean process(AudioEvent audioEvent) {
+				spectrumSizes.add(peaks.getMagnitudes().length);
+				for (float coefficient : mfcc.getMFCC()) {
+					assertTrue(!Float.isNaN(coefficient) && !Float.isInfinite(coefficient));
+				}
+				if (++buffers == 5) {
+					dispatcher.requestStepSizeAndOverlap(4096, 2048);
+				}
+				return true;
+			}
+
+			@Override
+			public void processingFinished() {
+			}
+		});
+		dispatcher.run();
+		assertEquals(512, (int) spectrumSizes.get(0));
+		assertEquals(2048, (int) spectrumSizes.get(spectrumSizes.size() - 1));
+	}
+
+	@Test
+	public void testFixedSizeProcessorRefusesReconfiguration() {
+		byte[] bytes = sineBytes(44100);
+		ConstantQ constantQ = new ConstantQ(44100, 100, 1000, 12);
+		int size = constantQ.getFFTlength();
+		AudioDispatcher dispatcher = new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), FORMAT), size, size / 2);
+		dispatcher.addAudioProcessor(constantQ);
+		// Another overlap is fine, another size is refused before it is
+		// applied.
+		dispatcher.requestStepSizeAndOverlap(size, 0);
+		try {
+			dispatcher.requestStepSizeAndOverlap(size * 2, size);
+			fail("The constant-Q transform can not follow another buffer size");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+		dispatcher.run();
+	}
+}
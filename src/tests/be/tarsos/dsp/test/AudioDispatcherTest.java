@@ -128,4 +128,99 @@ public class AudioDispatcherTest {
 		});
 		adp.run();
 	}
+	
+	private float[] readAllSamples(int totalSamples){
+		final float[] samples = new float[totalSamples];
+		AudioDispatcher adp = new AudioDispatcher(getAudioInputStream(), totalSamples, 0);
+		adp.addAudioProcessor(new AudioProcessor() {
+			@Override
+			public boolean process(AudioEvent audioEvent) {
+				System.arraycopy(audioEvent.getFloatBuffer(), 0, samples, 0, samples.length);
+				return true;
+			}
+			
+			@Override
+			public void processingFinished() {
+			}
+		});
+		adp.run();
+		return samples;
+	}
+	
+	/**
+	 * Tests that the buffer keeps its size at the end of the stream and
+	 * reports the number of valid samples.
+	 */
+	@Test
+	public void testFixedBufferCapacity(){
+		final int bufferSize = 1024;
+		final int overlap = 512;
+		final int totalSamples = 4000;
+		final float[] sine = readAllSamples(totalSamples);
+		AudioDispatcher adp = new AudioDispatcher(getAudioInputStream(), bufferSize, overlap);
+		adp.setZeroPadLastBuffer(false);
+		adp.setFixedBufferCapacity(true);
+		adp.addAudioProcessor(new AudioProcessor() {
+			float[] firstBuffer;
+			
+			@Override
+			public boolean process(AudioEvent audioEvent) {
+				if(firstBuffer == null){
+					firstBuffer = audioEvent.getFloatBuffer();
+				}
+				assertSame("The buffer should be reused", firstBuffer, audioEvent.getFloatBuffer());
+				int start = (int) audioEvent.getSamplesProcessed();
+				if(start > 0){
+					// the time stamp marks the first sample new in the buffer
+					start -= overlap;
+				}
+				int expectedValid = Math.min(bufferSize, totalSamples - start);
+				assertEquals("Valid samples", expectedValid, audioEvent.getValidSamples());
+				assertEquals(0, audioEvent.getValidOffset());
+				for(int i = 0 ; i < bufferSize ; i++){
+					float expected = i < expectedValid ? sine[start + i] : 0;
+					assertEquals(expected, audioEvent.getFloatBuffer()[i], 0.0001);
+				}
+				return true;
+			}
+			
+			@Override
+			public void processingFinished() {
+			}
+		});
+		adp.run();
+	}
+	
+	/**
+	 * Tests that a shortened last buffer keeps the overlap of the previous buffer.
+	 */
+	@Test
+	public void testShortenedLastBufferKeepsOverlap(){
+		final int bufferSize = 1024;
+		final int overlap = 512;
+		final float[] sine = readAllSamples(4000);
+		AudioDispatcher adp = new AudioDispatcher(getAudioInputStream(), bufferSize, overlap);
+		adp.setZeroPadLastBuffer(false);
+		adp.addAudioProcessor(new AudioProcessor() {
+			@Override
+			public boolean process(AudioEvent audioEvent) {
+				int start = (int) audioEvent.getSamplesProcessed();
+				if(start > 0){
+					start -= overlap;
+				}
+				float[] buffer = audioEvent.getFloatBuffer();
+				assertEquals(Math.min(bufferSize, 4000 - start), buffer.length);
+				assertEquals(buffer.length, audioEvent.getValidSamples());
+				for(int i = 0 ; i < buffer.length ; i++){
+					assertEquals(sine[start + i], buffer[i], 0.0001);
+				}
+				return true;
+			}
+			
+			@Override
+			public void processingFinished() {
+			}
+		});
+		adp.run();
+	}
 }
@@ -0,0 +1,197 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioGenerator;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.flow.AudioFrame;
+import be.tarsos.dsp.flow.AudioFramePublisher;
+import be.tarsos.dsp.flow.AudioFrameSubscriber;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+import be.tarsos.dsp.synthesis.SineGenerator;
+
+public class AudioFramePublisherTest {
+
+	private static AudioDispatcher sineDispatcher(int numberOfSamples, int bufferSize, int overlap) {
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(44100, 16, 1, true, false);
+		float[] sine = TestUtilities.audioBufferSine(numberOfSamples);
+		byte[] bytes = new byte[sine.length * format.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(format).toByteArray(sine, bytes);
+		return new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), format), bufferSize, overlap);
+	}
+
+	/**
+	 * Collects a copy of each buffer and its time stamp.
+	 */
+	private static class Recorder implements AudioProcessor {
+		final List<float[]> buffers = new ArrayList<float[]>();
+		final List<Double> timeStamps = new ArrayList<Double>();
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			buffers.add(audioEvent.getFloatBuffer().clone());
+			timeStamps.add(audioEvent.getTimeStamp());
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	/**
+	 * Requests frames one by one, when asked to.
+	 */
+	private static class ManualSubscriber implements Flow.Subscriber<AudioFrame> {
+		final Set<AudioFrame> distinctFrames = Collections.newSetFromMap(new IdentityHashMap<AudioFrame, Boolean>());
+		final AtomicInteger received = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1);
+		Flow.Subscription subscription;
+		boolean completed;
+		Throwable failure;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(AudioFrame frame) {
+			distinctFrames.add(frame);
+			received.incrementAndGet();
+			frame.release();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			failure = throwable;
+			done.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+			done.countDown();
+		}
+	}
+
+	@Test
+	public void testSubscriberSeesDispatcherBuffers() throws InterruptedException {
+		AudioDispatcher reference = sineDispatcher(44100 + 100, 2048, 1024);
+		reference.setZeroPadLastBuffer(false);
+		Recorder expected = new Recorder();
+		reference.addAudioProcessor(expected);
+		reference.run();
+
+		AudioDispatcher dispatcher = sineDispatcher(44100 + 100, 2048, 1024);
+		dispatcher.setZeroPadLastBuffer(false);
+		Recorder actual = new Recorder();
+		AudioFrameSubscriber subscriber = new AudioFrameSubscriber(4, actual);
+		new AudioFramePublisher(dispatcher).subscribe(subscriber);
+		assertTrue(subscriber.awaitFinished(10, TimeUnit.SECONDS));
+		assertNull(subscriber.getFailure());
+
+		assertEquals(expected.buffers.size(), actual.buffers.size());
+		for (int i = 0; i < expected.buffers.size(); i++) {
+			assertArrayEquals("Buffer " + i + " should be equal", expected.buffers.get(i), actual.buffers.get(i), 0.0f);
+			assertEquals(expected.timeStamps.get(i), actual.timeStamps.get(i), 0.0);
+		}
+	}
+
+	@Test
+	public void testDemandPausesReading() throws InterruptedException {
+		AudioDispatcher dispatcher = sineDispatcher(44100, 1024, 0);
+		final AtomicInteger read = new AtomicInteger();
+		dispatcher.addAudioProcessor(new AudioProcessor() {
+			@Override
+			public boolean process(AudioEvent audioEvent) {
+				read.incrementAndGet();
+				return true;
+			}
+
+			@Override
+			public void processingFinished() {
+			}
+		});
+		ManualSubscriber subscriber = new ManualSubscriber();
+		new AudioFramePublisher(dispatcher).subscribe(subscriber);
+		Thread.sleep(100);
+		// Without demand only the first buffer is read.
+		assertEquals(1, read.get());
+		assertEquals(0, subscriber.received.get());
+
+		subscriber.subscription.request(3);
+		Thread.sleep(100);
+		assertEquals(3, subscriber.received.get());
+		assertEquals(4, read.get());
+
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+		assertTrue(subscriber.completed);
+		assertEquals(44100 / 1024 + 1, subscriber.received.get());
+		// Released frames are reused.
+		assertEquals(1, subscriber.distinctFrames.size());
+	}
+
+	@Test
+	public void testCancelStopsGenerator() throws InterruptedException {
+		AudioGenerator generator = new AudioGenerator(1024, 0);
+		generator.addAudioProcessor(new SineGenerator(0.5, 440));
+		ManualSubscriber subscriber = new ManualSubscriber();
+		new AudioFramePublisher(generator).subscribe(subscriber);
+		subscriber.subscription.request(10);
+		Thread.sleep(100);
+		assertEquals(10, subscriber.received.get());
+		subscriber.subscription.cancel();
+		subscriber.subscription.request(10);
+		Thread.sleep(100);
+		assertEquals(10, subscriber.received.get());
+		assertTrue(!subscriber.completed);
+	}
+
+	@Test
+	public void testInvalidRequestStopsGenerator() throws InterruptedException {
+		AudioGenerator generator = new AudioGenerator(1024, 0);
+		generator.addAudioProcessor(new SineGenerator(0.5, 440));
+		final Thread[] thread = new Thread[1];
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				thread[0] = new Thread(command);
+				thread[0].start();
+			}
+		};
+		ManualSubscriber subscriber = new ManualSubscriber();
+		new AudioFramePublisher(generator, executor).subscribe(subscriber);
+		subscriber.subscription.request(2);
+		subscriber.subscription.request(0);
+		assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+		assertTrue(subscriber.failure instanceof IllegalArgumentException);
+		// The generator stops, instead of running without demand.
+		thread[0].join(10000);
+		assertFalse(thread[0].isAlive());
+		assertTrue(!subscriber.completed);
+	}
+}
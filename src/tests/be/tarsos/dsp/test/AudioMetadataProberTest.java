@@ -0,0 +1,178 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.AudioMetadataProber;
+import be.tarsos.dsp.io.PipeDecoder;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+public class AudioMetadataProberTest {
+
+	/** MPEG 1 layer III, 128kbps, 44.1kHz, stereo: 417 byte frames. */
+	private static final int MP3_HEADER = 0xFFFB9000;
+	private static final int MP3_FRAME_LENGTH = 417;
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("prober").toFile();
+	}
+
+	private File write(String name, ByteBuffer buffer) throws IOException {
+		File file = new File(directory, name);
+		Files.write(file.toPath(), buffer.array());
+		return file;
+	}
+
+	@Test
+	public void testWave() throws IOException {
+		int frames = 22050;
+		ByteBuffer buffer = ByteBuffer.allocate(44 + frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put("RIFF".getBytes("US-ASCII")).putInt(36 + frames * 4).put("WAVE".getBytes("US-ASCII"));
+		buffer.put("fmt ".getBytes("US-ASCII")).putInt(16).putShort((short) 1).putShort((short) 2);
+		buffer.putInt(11025).putInt(11025 * 4).putShort((short) 4).putShort((short) 16);
+		buffer.put("data".getBytes("US-ASCII")).putInt(frames * 4);
+
+		PipeDecoder.Probe probe = AudioMetadataProber.probeHeaders(write("audio.wav", buffer));
+		assertEquals(2.0, probe.getDuration(), 0.0);
+		assertEquals(11025, probe.getSampleRate());
+		assertEquals(2, probe.getChannels());
+		assertEquals(frames * 2, probe.getFrameLength(22050));
+	}
+
+	@Test
+	public void testFlac() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 34);
+		buffer.put("fLaC".getBytes("US-ASCII"));
+		// The last metadata block, STREAMINFO, of 34 bytes.
+		buffer.putInt(0x80000000 | 34);
+		buffer.position(buffer.position() + 10);
+		long samples = 48000L * 90;
+		buffer.putLong((48000L << 44) | ((6 - 1L) << 41) | ((24 - 1L) << 36) | samples);
+
+		PipeDecoder.Probe probe = AudioMetadataProber.probeHeaders(write("audio.flac", buffer));
+		assertEquals(90.0, probe.getDuration(), 0.0);
+		assertEquals(48000, probe.getSampleRate());
+		assertEquals(6, probe.getChannels());
+	}
+
+	private static void putOggPage(ByteBuffer buffer, long granule, int serial, byte[] packet) {
+		buffer.put("OggS".getBytes()).put((byte) 0).put((byte) 0).putLong(granule).putInt(serial);
+		buffer.putInt(0).putInt(0).put((byte) 1).put((byte) packet.length).put(packet);
+	}
+
+	@Test
+	public void testOggVorbis() throws IOException {
+		ByteBuffer identification = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+		identification.put((byte) 1).put("vorbis".getBytes("US-ASCII")).putInt(0);
+		identification.put((byte) 2).putInt(44100);
+
+		ByteBuffer buffer = ByteBuffer.allocate(3 * 100).order(ByteOrder.LITTLE_ENDIAN);
+		putOggPage(buffer, 0, 7, identification.array());
+		putOggPage(buffer, 44100 * 3, 7, new byte[10]);
+		// The last page of another logical stream is ignored.
+		putOggPage(buffer, 1, 8, new byte[10]);
+
+		PipeDecoder.Probe probe = AudioMetadataProber.probeHeaders(write("audio.ogg", buffer));
+		assertEquals(3.0, probe.getDuration(), 0.0);
+		assertEquals(44100, probe.getSampleRate());
+		assertEquals(2, probe.getChannels());
+	}
+
+	@Test
+	public void testMp3WithXingHeader() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(3 * MP3_FRAME_LENGTH);
+		// An ID3v2 tag of 20 bytes precedes the frames.
+		buffer.put("ID3".getBytes("US-ASCII")).put((byte) 4).put((byte) 0).put((byte) 0).putInt(20);
+		buffer.position(30);
+		int first = buffer.position();
+		buffer.putInt(MP3_HEADER);
+		buffer.position(first + 4 + 32);
+		buffer.put("Xing".getBytes("US-ASCII")).putInt(1).putInt(441);
+		buffer.putInt(first + MP3_FRAME_LENGTH, MP3_HEADER);
+		buffer.putInt(first + 2 * MP3_FRAME_LENGTH, MP3_HEADER);
+
+		PipeDecoder.Probe probe = AudioMetadataProber.probeHeaders(write("vbr.mp3", buffer));
+		assertEquals(441 * 1152 / 44100.0, probe.getDuration(), 1e-9);
+		assertEquals(44100, probe.getSampleRate());
+		assertEquals(2, probe.getChannels());
+	}
+
+	@Test
+	public void testConstantBitRateMp3() throws IOException {
+		int frames = 100;
+		ByteBuffer buffer = ByteBuffer.allocate(frames * MP3_FRAME_LENGTH);
+		for (int i = 0; i < frames; i++) {
+			buffer.putInt(i * MP3_FRAME_LENGTH, MP3_HEADER);
+		}
+		PipeDecoder.Probe probe = AudioMetadataProber.probeHeaders(write("cbr.mp3", buffer));
+		assertEquals(frames * MP3_FRAME_LENGTH * 8 / 128000.0, probe.getDuration(), 1e-9);
+		assertEquals(44100, probe.getSampleRate());
+	}
+
+	@Test
+	public void testMp4IsNotProbedAsMp3() throws IOException {
+		Random random = new Random(1);
+		for (int i = 0; i < 200; i++) {
+			ByteBuffer buffer = ByteBuffer.allocate(96 * 1024);
+			random.nextBytes(buffer.array());
+			buffer.putInt(0, 24).put(4, "ftypM4A ".getBytes("US-ASCII"));
+			// A frame sync near the end of the head, without a second frame.
+			buffer.putInt(64 * 1024 - 100, MP3_HEADER);
+			assertNull(AudioMetadataProber.probeHeaders(write("audio.m4a", buffer)));
+		}
+	}
+
+	@Test
+	public void testSingleMp3FrameSyncIsNotEnough() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		buffer.putInt(0, MP3_HEADER);
+		assertNull(AudioMetadataProber.probeHeaders(write("junk.mp3", buffer)));
+	}
+
+	@Test
+	public void testUnknownFormat() throws IOException {
+		assertNull(AudioMetadataProber.probeHeaders(write("audio.txt", ByteBuffer.wrap("not audio".getBytes("US-ASCII")))));
+	}
+
+	@Test
+	public void testDispatcherReportsProgress() {
+		int frames = 8000;
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(8000, 16, 1, true, false);
+		UniversalAudioInputStream stream = new UniversalAudioInputStream(new ByteArrayInputStream(new byte[frames * 2]), format, frames);
+		AudioDispatcher dispatcher = new AudioDispatcher(stream, 1000, 0);
+		final double[] progress = new double[1];
+		dispatcher.addAudioProcessor(new AudioProcessor() {
+			@Override
+			public boolean process(AudioEvent audioEvent) {
+				assertEquals(8000, audioEvent.getFrameLength());
+				progress[0] = audioEvent.getProgress();
+				return true;
+			}
+
+			@Override
+			public void processingFinished() {
+			}
+		});
+		dispatcher.run();
+		// The progress at the start of the last of eight buffers.
+		assertEquals(7 / 8.0, progress[0], 0.0);
+	}
+}
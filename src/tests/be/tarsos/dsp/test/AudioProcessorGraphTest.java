@@ -0,0 +1,74 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.AudioProcessorGraph;
+import be.tarsos.dsp.GainProcessor;
+import be.tarsos.dsp.io.jvm.AudioDispatcherFactory;
+
+public class AudioProcessorGraphTest {
+
+	/**
+	 * Stores the RMS of each buffer it receives.
+	 */
+	private static class RMSCollector implements AudioProcessor {
+		final List<Double> values = Collections.synchronizedList(new ArrayList<Double>());
+		boolean finished;
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			values.add(audioEvent.getRMS());
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+			finished = true;
+		}
+	}
+
+	@Test
+	public void testBranchesSeeTheirOwnBuffer() throws UnsupportedAudioFileException {
+		float[] sine = TestUtilities.audioBufferSine();
+		AudioDispatcher dispatcher = AudioDispatcherFactory.fromFloatArray(sine, 44100, 1024, 512);
+
+		RMSCollector readOnlyA = new RMSCollector();
+		RMSCollector readOnlyB = new RMSCollector();
+		RMSCollector afterGain = new RMSCollector();
+		RMSCollector afterGraph = new RMSCollector();
+
+		AudioProcessorGraph graph = new AudioProcessorGraph();
+		graph.addReadOnlyBranch(readOnlyA);
+		graph.addMutatingBranch(new GainProcessor(0.5), afterGain);
+		graph.addReadOnlyBranch(readOnlyB);
+		dispatcher.addAudioProcessor(graph);
+		dispatcher.addAudioProcessor(afterGraph);
+		dispatcher.run();
+
+		assertEquals(3, graph.getNumberOfBranches());
+		assertEquals(afterGraph.values.size(), readOnlyA.values.size());
+		assertEquals(afterGraph.values.size(), readOnlyB.values.size());
+		assertEquals(afterGraph.values.size(), afterGain.values.size());
+		for (int i = 0; i < afterGraph.values.size(); i++) {
+			double expected = afterGraph.values.get(i);
+			assertEquals("Read only branches see the original buffer", expected, readOnlyA.values.get(i), 0.0);
+			assertEquals("Read only branches see the original buffer", expected, readOnlyB.values.get(i), 0.0);
+			// The first buffer has an overlap of zero, others only modify the
+			// samples after the overlap.
+			assertTrue("The gain is only applied in the mutating branch", afterGain.values.get(i) <= expected);
+		}
+		assertTrue("Processing finished is propagated", readOnlyA.finished && readOnlyB.finished && afterGain.finished);
+	}
+}
@@ -0,0 +1,65 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioSnapshot;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+
+public class AudioSnapshotTest {
+
+	private static AudioEvent event(float[] buffer) {
+		AudioEvent audioEvent = new AudioEvent(new TarsosDSPAudioFormat(44100, 16, 1, true, false));
+		audioEvent.setFloatBuffer(buffer);
+		return audioEvent;
+	}
+
+	@Test
+	public void testSnapshotIsSharedDuringOneBlock() {
+		float[] buffer = TestUtilities.audioBufferSine(1024);
+		AudioEvent audioEvent = event(buffer);
+		AudioSnapshot first = audioEvent.getSnapshot();
+		AudioSnapshot second = audioEvent.getSnapshot();
+		assertSame("Processors should share the snapshot", first, second);
+		assertNotSame(buffer, first.getSamples());
+		assertArrayEquals(buffer, first.getSamples(), 0.0f);
+
+		// The next block gets a new snapshot, the old array is reused.
+		float[] firstSamples = first.getSamples();
+		audioEvent.setBytesProcessed(1024 * 2);
+		AudioSnapshot next = audioEvent.getSnapshot();
+		assertSame("Released arrays should be reused", firstSamples, next.getSamples());
+	}
+
+	@Test
+	public void testRetainedSnapshotSurvivesNextBlock() {
+		float[] buffer = TestUtilities.audioBufferSine(512);
+		float[] expected = buffer.clone();
+		AudioEvent audioEvent = event(buffer);
+		AudioSnapshot kept = audioEvent.getSnapshot().retain();
+		float[] keptSamples = kept.getSamples();
+
+		buffer[0] = 1.0f;
+		audioEvent.setBytesProcessed(512 * 2);
+		AudioSnapshot next = audioEvent.getSnapshot();
+		assertNotSame("A retained snapshot should not be reused", keptSamples, next.getSamples());
+		assertArrayEquals(expected, kept.getSamples(), 0.0f);
+		assertEquals(1.0f, next.get(0), 0.0f);
+		kept.release();
+	}
+
+	@Test
+	public void testScratchBuffersAreReused() {
+		float[] buffer = TestUtilities.audioBufferSine(256);
+		AudioEvent audioEvent = event(buffer);
+		float[] scratch = audioEvent.copyToScratchBuffer();
+		assertArrayEquals(buffer, scratch, 0.0f);
+		audioEvent.releaseScratchBuffer(scratch);
+		assertSame(scratch, audioEvent.copyToScratchBuffer());
+	}
+}
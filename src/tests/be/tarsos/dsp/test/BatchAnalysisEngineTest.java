@@ -0,0 +1,60 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.jvm.BatchAnalysisEngine;
+import be.tarsos.dsp.io.jvm.BatchAnalysisEngine.ProcessorChainFactory;
+import be.tarsos.dsp.io.jvm.BatchAnalysisEngine.Result;
+
+public class BatchAnalysisEngineTest {
+
+	@Test
+	public void testFailuresAreIsolated() {
+		final String flute = TestUtilities.fluteFile().getAbsolutePath();
+		final String sine = TestUtilities.sineOf4000Samples().getAbsolutePath();
+		final AtomicInteger buffers = new AtomicInteger();
+
+		BatchAnalysisEngine engine = new BatchAnalysisEngine(new ProcessorChainFactory() {
+			@Override
+			public List<AudioProcessor> createProcessors(final String resource, float sampleRate, int bufferSize, int overlap) {
+				List<AudioProcessor> processors = new ArrayList<AudioProcessor>();
+				processors.add(new AudioProcessor() {
+					@Override
+					public boolean process(AudioEvent audioEvent) {
+						if (resource.equals(sine)) {
+							// Mimics a dispatcher failing to read the stream.
+							throw new Error("Error while reading audio input stream");
+						}
+						buffers.incrementAndGet();
+						return true;
+					}
+
+					@Override
+					public void processingFinished() {
+					}
+				});
+				return processors;
+			}
+		}, 2, 1);
+		engine.setBufferSizeAndOverlap(1024, 0);
+
+		List<Result> results = engine.run(flute, sine, flute);
+		assertEquals(3, results.size());
+		assertTrue(results.get(0).isSuccess());
+		assertFalse(results.get(1).isSuccess());
+		assertTrue(results.get(2).isSuccess());
+		assertEquals(results.get(0).getAudioSeconds(), results.get(2).getAudioSeconds(), 0.0);
+		assertTrue(results.get(0).getRealTimeFactor() > 0);
+		assertTrue(buffers.get() > 0);
+	}
+}
@@ -0,0 +1,117 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.DeadlineMonitor;
+import be.tarsos.dsp.DeadlineMonitor.DegradePolicy;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+public class DeadlineMonitorTest {
+
+	private static AudioDispatcher sineDispatcher(int numberOfSamples, int bufferSize, int overlap) {
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(44100, 16, 1, true, false);
+		float[] sine = TestUtilities.audioBufferSine(numberOfSamples);
+		byte[] bytes = new byte[sine.length * format.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(format).toByteArray(sine, bytes);
+		return new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), format), bufferSize, overlap);
+	}
+
+	/**
+	 * Counts calls, sleeps longer than the deadline for the first buffers.
+	 */
+	private static class Slow implements AudioProcessor {
+		final List<Double> timeStamps = new ArrayList<Double>();
+		int slowBuffers;
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			timeStamps.add(audioEvent.getTimeStamp());
+			if (timeStamps.size() <= slowBuffers) {
+				try {
+					// A hop of 512 samples takes 11.6ms
+					Thread.sleep(25);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	@Test
+	public void testSkipOptional() {
+		AudioDispatcher dispatcher = sineDispatcher(44100, 1024, 512);
+		DeadlineMonitor monitor = new DeadlineMonitor(DegradePolicy.SKIP_OPTIONAL);
+		monitor.setRecoveryFrames(5);
+		Slow optional = new Slow();
+		optional.slowBuffers = 2;
+		Slow required = new Slow();
+		monitor.addOptional("slow", optional);
+		final int[] overruns = new int[1];
+		monitor.addOverrunHandler(new DeadlineMonitor.OverrunHandler() {
+			@Override
+			public void handleOverrun(DeadlineMonitor m, double timeStamp, long processingNanos, long deadlineNanos) {
+				assertTrue(processingNanos > deadlineNanos);
+				overruns[0]++;
+			}
+		});
+		dispatcher.addAudioProcessor(optional);
+		dispatcher.addAudioProcessor(required);
+		dispatcher.setDeadlineMonitor(monitor);
+		dispatcher.run();
+
+		// The first buffer overruns, the optional processor is skipped for
+		// five buffers and the second slow buffer overruns again.
+		assertEquals(2, overruns[0]);
+		assertEquals(2, monitor.getOverruns());
+		assertEquals(10, monitor.getDegradedFrames());
+		assertEquals(required.timeStamps.size() - 10, optional.timeStamps.size());
+		assertEquals(0, monitor.getDroppedFrames());
+		assertEquals(512 / 44100.0 * 1e9, monitor.getDeadline(), 1);
+		assertTrue(monitor.getMinSlack() < 0);
+		assertTrue(!monitor.isDegraded());
+	}
+
+	@Test
+	public void testDropFramesKeepsTimeStamps() {
+		AudioDispatcher dispatcher = sineDispatcher(44100, 1024, 512);
+		DeadlineMonitor monitor = new DeadlineMonitor(DegradePolicy.DROP_FRAMES);
+		Slow slow = new Slow();
+		slow.slowBuffers = 3;
+		dispatcher.addAudioProcessor(slow);
+		dispatcher.setDeadlineMonitor(monitor);
+		dispatcher.run();
+
+		assertEquals(3, monitor.getOverruns());
+		assertTrue(monitor.getDroppedFrames() >= 3);
+		assertEquals(monitor.getFrames(), slow.timeStamps.size());
+		double stepInSeconds = 512 / 44100.0;
+		for (int i = 1; i < slow.timeStamps.size(); i++) {
+			double steps = (slow.timeStamps.get(i) - slow.timeStamps.get(i - 1)) / stepInSeconds;
+			assertEquals("Time stamps should be a multiple of the step size", Math.round(steps), steps, 0.0001);
+		}
+		// Dropping buffers does not shift the time stamps of the last buffer.
+		AudioDispatcher reference = sineDispatcher(44100, 1024, 512);
+		Slow all = new Slow();
+		reference.addAudioProcessor(all);
+		reference.run();
+		assertEquals(all.timeStamps.get(all.timeStamps.size() - 1), slow.timeStamps.get(slow.timeStamps.size() - 1), 0.0);
+		assertEquals(all.timeStamps.size(), slow.timeStamps.size() + monitor.getDroppedFrames());
+	}
+}
@@ -0,0 +1,174 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import be.tarsos.dsp.io.DecodedAudioCache;
+import be.tarsos.dsp.io.MappedWaveInputStream;
+import be.tarsos.dsp.io.PipeDecoder;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+public class DecodedAudioCacheTest {
+
+	/**
+	 * Counts its invocations and decodes to 4000 bytes which depend on the
+	 * requested sample rate.
+	 */
+	private static final String FAKE_DECODER = "#!/bin/sh\n"
+			+ "echo x >> \"$(dirname \"$0\")/invocations.txt\"\n"
+			+ "rate=0; previous=\n"
+			+ "for argument; do if [ \"$previous\" = \"-ar\" ]; then rate=$argument; fi; previous=$argument; done\n"
+			+ "yes \"$rate\" | head -c 4000\n";
+
+	private static final int DECODED_SIZE = 4000;
+	private static final int CACHED_SIZE = 44 + DECODED_SIZE;
+
+	private File directory;
+	private File cacheDirectory;
+	private File audio;
+	private PipeDecoder decoder;
+
+	@Before
+	public void createDecoder() throws IOException {
+		Assume.assumeTrue(new File("/bin/sh").canExecute());
+		directory = Files.createTempDirectory("decoder").toFile();
+		cacheDirectory = new File(directory, "cache");
+		decoder = createDecoder("ffmpeg", FAKE_DECODER);
+		audio = new File(directory, "audio.mp3");
+		Files.write(audio.toPath(), new byte[] { 1, 2, 3 });
+	}
+
+	private PipeDecoder createDecoder(String name, String script) throws IOException {
+		File binary = new File(directory, name);
+		FileOutputStream out = new FileOutputStream(binary);
+		out.write(script.getBytes("UTF-8"));
+		out.close();
+		binary.setExecutable(true);
+		return new PipeDecoder(binary);
+	}
+
+	private int invocations() throws IOException {
+		File file = new File(directory, "invocations.txt");
+		return file.exists() ? Files.readAllLines(file.toPath()).size() : 0;
+	}
+
+	private static byte[] readAll(TarsosDSPAudioInputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1000];
+		int read;
+		while ((read = stream.read(buffer, 0, buffer.length)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		stream.close();
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void testMissThenHit() throws IOException {
+		DecodedAudioCache cache = new DecodedAudioCache(cacheDirectory, 1 << 20);
+		byte[] decoded = readAll(cache.getMonoStream(decoder, audio.getPath(), 8000, 0, -1));
+		assertEquals(DECODED_SIZE, decoded.length);
+		assertEquals(1, invocations());
+		assertEquals(CACHED_SIZE, cache.size());
+
+		TarsosDSPAudioInputStream hit = cache.getMonoStream(decoder, audio.getPath(), 8000, 0, -1);
+		assertTrue(hit instanceof MappedWaveInputStream);
+		assertEquals(DECODED_SIZE / 2, hit.getFrameLength());
+		assertArrayEquals(decoded, readAll(hit));
+		assertEquals(1, invocations());
+
+		// Another sample rate or time range is another entry.
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 16000, 0, -1));
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 8000, 1, -1));
+		assertEquals(3, invocations());
+		assertEquals(3 * CACHED_SIZE, cache.size());
+
+		// A changed file is decoded again.
+		Files.write(audio.toPath(), new byte[] { 1, 2, 3, 4 });
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 8000, 0, -1));
+		assertEquals(4, invocations());
+	}
+
+	@Test
+	public void testFloatSamples() throws IOException {
+		DecodedAudioCache cache = new DecodedAudioCache(cacheDirectory, 1 << 20);
+		TarsosDSPAudioFormat format = decoder.getDecodedFormat(audio.getPath(), 8000, 1, true);
+		byte[] decoded = readAll(cache.getStream(decoder, audio.getPath(), format, 0, -1));
+
+		TarsosDSPAudioInputStream hit = cache.getStream(decoder, audio.getPath(), format, 0, -1);
+		assertEquals(TarsosDSPAudioFloatConverter.PCM_FLOAT, hit.getFormat().getEncoding());
+		assertEquals(DECODED_SIZE / 4, hit.getFrameLength());
+		assertArrayEquals(decoded, readAll(hit));
+		assertEquals(1, invocations());
+
+		// The same rate with 16 bit samples is another entry.
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 8000, 0, -1));
+		assertEquals(2, invocations());
+	}
+
+	@Test
+	public void testIncompleteReadsAreNotCached() throws IOException {
+		DecodedAudioCache cache = new DecodedAudioCache(cacheDirectory, 1 << 20);
+		TarsosDSPAudioInputStream stream = cache.getMonoStream(decoder, audio.getPath(), 8000, 0, -1);
+		stream.read(new byte[100], 0, 100);
+		stream.close();
+		assertEquals(0, cache.size());
+		assertEquals(0, cacheDirectory.list().length);
+
+		// Only local files are cached.
+		readAll(cache.getMonoStream(decoder, "http://example.com/stream.mp3", 8000, 0, -1));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testFailedDecodesAreNotCached() throws IOException {
+		DecodedAudioCache cache = new DecodedAudioCache(cacheDirectory, 1 << 20);
+		// Part of the audio, then an error.
+		PipeDecoder failing = createDecoder("failing", "#!/bin/sh\nhead -c 4000 /dev/zero\nexit 1\n");
+		assertEquals(DECODED_SIZE, readAll(cache.getMonoStream(failing, audio.getPath(), 8000, 0, -1)).length);
+		assertEquals(0, cacheDirectory.list().length);
+
+		PipeDecoder empty = createDecoder("empty", "#!/bin/sh\nexit 0\n");
+		assertEquals(0, readAll(cache.getMonoStream(empty, audio.getPath(), 8000, 0, -1)).length);
+		assertEquals(0, cacheDirectory.list().length);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws IOException {
+		DecodedAudioCache cache = new DecodedAudioCache(cacheDirectory, 2 * CACHED_SIZE);
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 8000, 0, -1));
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 16000, 0, -1));
+		File[] files = cacheDirectory.listFiles();
+		assertEquals(2, files.length);
+		long past = System.currentTimeMillis() - 60000;
+		for (File file : files) {
+			file.setLastModified(past);
+		}
+
+		// Using the first entry makes the second the least recently used.
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 8000, 0, -1));
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 22050, 0, -1));
+		assertEquals(3, invocations());
+		assertEquals(2 * CACHED_SIZE, cache.size());
+
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 8000, 0, -1));
+		assertEquals(3, invocations());
+		readAll(cache.getMonoStream(decoder, audio.getPath(), 16000, 0, -1));
+		assertEquals(4, invocations());
+		assertFalse(cache.size() > 2 * CACHED_SIZE);
+	}
+}
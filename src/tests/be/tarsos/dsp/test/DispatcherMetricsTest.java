@@ -0,0 +1,119 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.DispatcherMetrics;
+import be.tarsos.dsp.GainProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+import be.tarsos.dsp.io.jvm.JMXMetricsExporter;
+import be.tarsos.dsp.util.LatencyHistogram;
+
+public class DispatcherMetricsTest {
+
+	private static AudioDispatcher sineDispatcher(int numberOfSamples, int bufferSize, int overlap) {
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(44100, 16, 1, true, false);
+		float[] sine = TestUtilities.audioBufferSine(numberOfSamples);
+		byte[] bytes = new byte[sine.length * format.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(format).toByteArray(sine, bytes);
+		return new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), format), bufferSize, overlap);
+	}
+
+	@Test
+	public void testLatencyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000, histogram.getMax());
+		assertEquals(500500.0, histogram.getMean(), 0.0001);
+		// Values are kept with a relative precision of 1/8
+		assertEquals(500000, histogram.getValueAtPercentile(50), 500000 / 8.0);
+		assertEquals(990000, histogram.getValueAtPercentile(99), 990000 / 8.0);
+		assertEquals(1000000, histogram.getValueAtPercentile(100), 1000000 / 8.0);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void testProcessorCalls() {
+		AudioDispatcher dispatcher = sineDispatcher(44100, 1024, 512);
+		DispatcherMetrics metrics = new DispatcherMetrics("sine");
+		metrics.setReportInterval(10);
+		final int[] reports = new int[1];
+		metrics.addListener(new DispatcherMetrics.Listener() {
+			@Override
+			public void metricsReported(DispatcherMetrics reported) {
+				reports[0]++;
+			}
+		});
+		dispatcher.setMetrics(metrics);
+		final int[] frames = new int[1];
+		dispatcher.addAudioProcessor(new GainProcessor(0.5));
+		dispatcher.addAudioProcessor(new AudioProcessor() {
+			@Override
+			public boolean process(AudioEvent audioEvent) {
+				frames[0]++;
+				return true;
+			}
+
+			@Override
+			public void processingFinished() {
+			}
+		});
+		dispatcher.run();
+
+		assertEquals(frames[0], metrics.getFrames());
+		// The last read, at the end of the stream, is measured as well
+		assertEquals(frames[0] + 1, metrics.getReadWait().getCount());
+		assertEquals(frames[0] + 1, metrics.getConversion().getCount());
+		List<DispatcherMetrics.ProcessorMetrics> processors = metrics.getProcessorMetrics();
+		assertEquals(2, processors.size());
+		assertEquals("GainProcessor#0", processors.get(0).getName());
+		for (DispatcherMetrics.ProcessorMetrics processor : processors) {
+			assertEquals(frames[0], processor.getCalls());
+			assertTrue(processor.getMaxLatency() >= processor.getLatency().getValueAtPercentile(50));
+		}
+		// One report every 10 frames and one when the dispatcher stops
+		assertEquals(frames[0] / 10 + 1, reports[0]);
+		assertEquals(1.0, metrics.getAudioSeconds(), 0.001);
+		assertTrue(metrics.getRealTimeFactor() > 0);
+	}
+
+	@Test
+	public void testJMXExport() throws Exception {
+		AudioDispatcher dispatcher = sineDispatcher(44100, 1024, 0);
+		DispatcherMetrics metrics = new DispatcherMetrics("jmx test");
+		dispatcher.setMetrics(metrics);
+		dispatcher.addAudioProcessor(new GainProcessor(0.5));
+		JMXMetricsExporter exporter = new JMXMetricsExporter(metrics);
+		exporter.register();
+		try {
+			dispatcher.run();
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName dispatcherName = new ObjectName("be.tarsos.dsp:type=Dispatcher,name=" + ObjectName.quote("jmx test"));
+			assertEquals(metrics.getFrames(), server.getAttribute(dispatcherName, "Frames"));
+			ObjectName processorName = new ObjectName("be.tarsos.dsp:type=Processor,dispatcher=" + ObjectName.quote("jmx test") + ",name=" + ObjectName.quote("GainProcessor#0"));
+			assertEquals(metrics.getFrames(), server.getAttribute(processorName, "Calls"));
+		} finally {
+			exporter.unregister();
+		}
+		assertEquals(0, ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("be.tarsos.dsp:*"), null).size());
+	}
+}
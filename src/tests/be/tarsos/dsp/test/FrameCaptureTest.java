@@ -0,0 +1,131 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.FrameCaptureInputStream;
+import be.tarsos.dsp.io.FrameCaptureWriter;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+import be.tarsos.dsp.io.jvm.AudioDispatcherFactory;
+
+public class FrameCaptureTest {
+
+	private static final TarsosDSPAudioFormat FORMAT = new TarsosDSPAudioFormat(44100, 16, 1, true, false);
+
+	private static AudioDispatcher sineDispatcher(int numberOfSamples, int bufferSize, int overlap) {
+		float[] sine = TestUtilities.audioBufferSine(numberOfSamples);
+		byte[] bytes = new byte[sine.length * FORMAT.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(FORMAT).toByteArray(sine, bytes);
+		return new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), FORMAT), bufferSize, overlap);
+	}
+
+	/**
+	 * Collects a copy of each buffer and its time stamp.
+	 */
+	private static class Recorder implements AudioProcessor {
+		final List<float[]> buffers = new ArrayList<float[]>();
+		final List<Double> timeStamps = new ArrayList<Double>();
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			buffers.add(audioEvent.getFloatBuffer().clone());
+			timeStamps.add(audioEvent.getTimeStamp());
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	private static File capture(AudioDispatcher dispatcher) throws IOException {
+		File file = File.createTempFile("capture", ".tdsp");
+		file.deleteOnExit();
+		dispatcher.addAudioProcessor(new FrameCaptureWriter(file));
+		dispatcher.run();
+		return file;
+	}
+
+	@Test
+	public void testReplayEqualsOriginal() throws IOException {
+		AudioDispatcher original = sineDispatcher(44100 + 100, 2048, 1024);
+		original.setZeroPadLastBuffer(false);
+		Recorder expected = new Recorder();
+		original.addAudioProcessor(expected);
+		File file = capture(original);
+
+		// The samples are stored once, as floats.
+		assertEquals(FrameCaptureInputStream.HEADER_SIZE + (44100 + 100) * 4, file.length());
+
+		AudioDispatcher replay = AudioDispatcherFactory.fromFrameCapture(file, 2048, 1024);
+		replay.setZeroPadLastBuffer(false);
+		Recorder actual = new Recorder();
+		replay.addAudioProcessor(actual);
+		replay.run();
+
+		assertEquals(expected.buffers.size(), actual.buffers.size());
+		for (int i = 0; i < expected.buffers.size(); i++) {
+			assertArrayEquals("Buffer " + i + " should be equal", expected.buffers.get(i), actual.buffers.get(i), 0.0f);
+			assertEquals(expected.timeStamps.get(i), actual.timeStamps.get(i), 0.0);
+		}
+	}
+
+	@Test
+	public void testReplayWithOtherBufferSize() throws IOException {
+		AudioDispatcher original = sineDispatcher(44100, 1024, 0);
+		File file = capture(original);
+
+		AudioDispatcher reference = sineDispatcher(44100, 4096, 3072);
+		Recorder expected = new Recorder();
+		reference.addAudioProcessor(expected);
+		reference.run();
+
+		AudioDispatcher replay = AudioDispatcherFactory.fromFrameCapture(file, 4096, 3072);
+		Recorder actual = new Recorder();
+		replay.addAudioProcessor(actual);
+		replay.run();
+
+		assertEquals(expected.buffers.size(), actual.buffers.size());
+		for (int i = 0; i < expected.buffers.size(); i++) {
+			assertArrayEquals("Buffer " + i + " should be equal", expected.buffers.get(i), actual.buffers.get(i), 0.0f);
+		}
+	}
+
+	@Test
+	public void testStartAndSkip() throws IOException {
+		AudioDispatcher original = sineDispatcher(44100 * 2, 1024, 512);
+		original.skip(0.5);
+		File file = capture(original);
+
+		FrameCaptureInputStream stream = new FrameCaptureInputStream(file);
+		assertEquals(22050, stream.getStartSample());
+		assertEquals(0.5, stream.getStartTimeStamp(), 0.0);
+		assertEquals(44100 + 22050, stream.getFrameLength());
+
+		float[] all = new float[(int) stream.getFrameLength()];
+		assertEquals(all.length, stream.read(all, 0, all.length));
+		assertEquals(-1, stream.read(all, 0, all.length));
+
+		stream.seek(0);
+		assertEquals(4 * 1000, stream.skip(4 * 1000));
+		float[] part = new float[10];
+		stream.read(part, 0, part.length);
+		for (int i = 0; i < part.length; i++) {
+			assertEquals(all[1000 + i], part[i], 0.0f);
+		}
+		stream.close();
+	}
+}
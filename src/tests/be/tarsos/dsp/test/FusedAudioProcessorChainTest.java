@@ -0,0 +1,91 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.BitDepthProcessor;
+import be.tarsos.dsp.EnvelopeFollower;
+import be.tarsos.dsp.FadeIn;
+import be.tarsos.dsp.FusedAudioProcessorChain;
+import be.tarsos.dsp.GainProcessor;
+import be.tarsos.dsp.filters.LowPassFS;
+import be.tarsos.dsp.io.jvm.AudioDispatcherFactory;
+import be.tarsos.dsp.synthesis.AmplitudeLFO;
+
+public class FusedAudioProcessorChainTest {
+
+	/**
+	 * Collects a copy of each buffer.
+	 */
+	private static class Recorder implements AudioProcessor {
+		final List<float[]> buffers = new ArrayList<float[]>();
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			buffers.add(audioEvent.getFloatBuffer().clone());
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	private static AudioProcessor[] chain() {
+		BitDepthProcessor bitDepth = new BitDepthProcessor();
+		bitDepth.setBitDepth(8);
+		return new AudioProcessor[] { new GainProcessor(1.5), new LowPassFS(2000, 44100), bitDepth,
+				new AmplitudeLFO(3, 0.8), new FadeIn(0.5), new EnvelopeFollower(44100) };
+	}
+
+	private static List<float[]> run(AudioProcessor... processors) throws Exception {
+		float[] sine = TestUtilities.audioBufferSine(44100 * 2);
+		AudioDispatcher dispatcher = AudioDispatcherFactory.fromFloatArray(sine, 44100, 1024, 300);
+		for (AudioProcessor processor : processors) {
+			dispatcher.addAudioProcessor(processor);
+		}
+		Recorder recorder = new Recorder();
+		dispatcher.addAudioProcessor(recorder);
+		dispatcher.run();
+		return recorder.buffers;
+	}
+
+	@Test
+	public void testFusedChainEqualsUnfusedChain() throws Exception {
+		List<float[]> expected = run(chain());
+		// A block size which does not divide the buffer size or the overlap.
+		List<float[]> actual = run(FusedAudioProcessorChain.compile(100, chain()));
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals("Buffer " + i + " should be equal", expected.get(i), actual.get(i), 0.0f);
+		}
+	}
+
+	@Test
+	public void testOtherProcessorsSplitGroups() throws Exception {
+		Recorder expectedTap = new Recorder();
+		List<float[]> expected = run(new GainProcessor(0.5), new LowPassFS(1000, 44100), expectedTap,
+				new GainProcessor(2.0));
+
+		Recorder tap = new Recorder();
+		FusedAudioProcessorChain chain = FusedAudioProcessorChain.compile(new GainProcessor(0.5),
+				new LowPassFS(1000, 44100), tap, new GainProcessor(2.0));
+		// The two first processors are fused, the tap and the last gain are not.
+		assertEquals(3, chain.getNumberOfSteps());
+		List<float[]> actual = run(chain);
+
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expectedTap.buffers.get(i), tap.buffers.get(i), 0.0f);
+			assertArrayEquals(expected.get(i), actual.get(i), 0.0f);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.MappedWaveInputStream;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.jvm.AudioDispatcherFactory;
+
+public class MappedWaveInputStreamTest {
+
+	/**
+	 * 44100 as an 80 bit extended float, for AIFF headers.
+	 */
+	private static final byte[] EXTENDED_44100 = { 0x40, 0x0E, (byte) 0xAC, 0x44, 0, 0, 0, 0, 0, 0 };
+
+	/**
+	 * Collects a copy of each buffer.
+	 */
+	private static class Recorder implements AudioProcessor {
+		final List<float[]> buffers = new ArrayList<float[]>();
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			buffers.add(audioEvent.getFloatBuffer().clone());
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	private static List<float[]> run(AudioDispatcher dispatcher) {
+		Recorder recorder = new Recorder();
+		dispatcher.addAudioProcessor(recorder);
+		dispatcher.run();
+		return recorder.buffers;
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static File write(ByteBuffer header, byte[] data) throws IOException {
+		File file = File.createTempFile("mapped", ".wav");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(header.array(), 0, header.position());
+		out.write(data);
+		out.close();
+		return file;
+	}
+
+	private static ByteBuffer waveHeader(String riff, int tag, int channels, int bits, int dataSize, boolean extensible) {
+		ByteBuffer header = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+		int blockAlign = channels * bits / 8;
+		header.put(riff.getBytes()).putInt(-1).put("WAVE".getBytes());
+		if (riff.equals("RF64")) {
+			header.put("ds64".getBytes()).putInt(28).putLong(-1).putLong(dataSize).putLong(0).putInt(0);
+		}
+		// An unknown chunk, with an odd size, should be skipped.
+		header.put("LIST".getBytes()).putInt(3).put(new byte[] { 1, 2, 3, 0 });
+		header.put("fmt ".getBytes()).putInt(extensible ? 40 : 16);
+		header.putShort((short) (extensible ? 0xFFFE : tag)).putShort((short) channels).putInt(44100);
+		header.putInt(44100 * blockAlign).putShort((short) blockAlign).putShort((short) bits);
+		if (extensible) {
+			header.putShort((short) 22).putShort((short) bits).putInt(0);
+			header.putShort((short) tag).put(new byte[14]);
+		}
+		header.put("data".getBytes()).putInt(riff.equals("RF64") ? -1 : dataSize);
+		return header;
+	}
+
+	private static ByteBuffer aiffHeader(String compression, int channels, int bits, int frames) {
+		ByteBuffer header = ByteBuffer.allocate(128).order(ByteOrder.BIG_ENDIAN);
+		boolean aifc = compression != null;
+		header.put("FORM".getBytes()).putInt(-1).put((aifc ? "AIFC" : "AIFF").getBytes());
+		header.put("COMM".getBytes()).putInt(aifc ? 24 : 18);
+		header.putShort((short) channels).putInt(frames).putShort((short) bits).put(EXTENDED_44100);
+		if (aifc) {
+			header.put(compression.getBytes()).put(new byte[] { 0, 0 });
+		}
+		header.put("SSND".getBytes()).putInt(8 + frames * channels * bits / 8).putInt(0).putInt(0);
+		return header;
+	}
+
+	/**
+	 * Checks the format, and reads the file as bytes and as floats.
+	 */
+	private static void check(File file, byte[] data, TarsosDSPAudioFormat expected) throws IOException {
+		check(file, data, expected, new MappedWaveInputStream(file));
+	}
+
+	private static void check(File file, byte[] data, TarsosDSPAudioFormat expected, MappedWaveInputStream stream) throws IOException {
+		TarsosDSPAudioFormat format = stream.getFormat();
+		assertTrue(format + " should match " + expected, format.matches(expected));
+		assertEquals(data.length / expected.getFrameSize(), stream.getFrameLength());
+
+		byte[] bytes = new byte[data.length];
+		assertEquals(data.length, stream.read(bytes, 0, bytes.length));
+		assertArrayEquals(data, bytes);
+		assertEquals(-1, stream.read(bytes, 0, bytes.length));
+
+		int samples = data.length / (expected.getSampleSizeInBits() / 8);
+		float[] reference = new float[samples];
+		TarsosDSPAudioFloatConverter.getConverter(expected).toFloatArray(data, reference);
+		stream.seek(0);
+		float[] floats = new float[samples];
+		assertEquals(samples, stream.read(floats, 0, samples));
+		assertArrayEquals(reference, floats, 0.0f);
+
+		// Skip half of the frames, the rest should follow.
+		stream.seek(0);
+		long half = stream.getFrameLength() / 2 * format.getFrameSize();
+		assertEquals(half, stream.skip(half));
+		int rest = (int) (samples - half / (expected.getSampleSizeInBits() / 8));
+		float[] end = new float[rest];
+		assertEquals(rest, stream.read(end, 0, rest));
+		for (int i = 0; i < rest; i++) {
+			assertEquals(reference[samples - rest + i], end[i], 0.0f);
+		}
+		stream.close();
+	}
+
+	@Test
+	public void testMatchesJavaSound() throws UnsupportedAudioFileException, IOException {
+		File file = TestUtilities.onsetsAudioFile();
+		List<float[]> expected = run(AudioDispatcherFactory.fromFile(file, 2048, 1024));
+		List<float[]> actual = run(AudioDispatcherFactory.fromMappedFile(file, 2048, 1024));
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals("Buffer " + i + " should be equal", expected.get(i), actual.get(i), 0.0f);
+		}
+	}
+
+	@Test
+	public void testWave() throws IOException {
+		byte[] data = randomBytes(4000);
+		check(write(waveHeader("RIFF", 1, 2, 16, data.length, false), data), data,
+				new TarsosDSPAudioFormat(44100, 16, 2, true, false));
+		check(write(waveHeader("RIFF", 1, 1, 8, data.length, false), data), data,
+				new TarsosDSPAudioFormat(44100, 8, 1, false, false));
+	}
+
+	@Test
+	public void testWaveExtensibleFloat() throws IOException {
+		ByteBuffer samples = ByteBuffer.allocate(4000).order(ByteOrder.LITTLE_ENDIAN);
+		float[] sine = TestUtilities.audioBufferSine(1000);
+		samples.asFloatBuffer().put(sine);
+		byte[] data = samples.array();
+		check(write(waveHeader("RIFF", 3, 1, 32, data.length, true), data), data,
+				new TarsosDSPAudioFormat(TarsosDSPAudioFloatConverter.PCM_FLOAT, 44100, 32, 1, 4, 44100, false));
+	}
+
+	@Test
+	public void testRF64() throws IOException {
+		byte[] data = randomBytes(3000);
+		check(write(waveHeader("RF64", 1, 1, 24, data.length, true), data), data,
+				new TarsosDSPAudioFormat(44100, 24, 1, true, false));
+	}
+
+	@Test(timeout = 10000)
+	public void testSamplesStraddleWindows() throws IOException {
+		// Three and six byte frames do not fit a window of 64 bytes.
+		byte[] data = randomBytes(3000);
+		File mono = write(waveHeader("RIFF", 1, 1, 24, data.length, false), data);
+		check(mono, data, new TarsosDSPAudioFormat(44100, 24, 1, true, false), new MappedWaveInputStream(mono, 64));
+		File stereo = write(waveHeader("RIFF", 1, 2, 24, data.length, false), data);
+		check(stereo, data, new TarsosDSPAudioFormat(44100, 24, 2, true, false), new MappedWaveInputStream(stereo, 64));
+	}
+
+	@Test
+	public void testAiff() throws IOException {
+		byte[] data = randomBytes(4000);
+		check(write(aiffHeader(null, 1, 16, 2000), data), data,
+				new TarsosDSPAudioFormat(44100, 16, 1, true, true));
+		check(write(aiffHeader("sowt", 2, 16, 1000), data), data,
+				new TarsosDSPAudioFormat(44100, 16, 2, true, false));
+
+		ByteBuffer samples = ByteBuffer.allocate(4000).order(ByteOrder.BIG_ENDIAN);
+		samples.asFloatBuffer().put(TestUtilities.audioBufferSine(1000));
+		check(write(aiffHeader("fl32", 1, 32, 1000), samples.array()), samples.array(),
+				new TarsosDSPAudioFormat(TarsosDSPAudioFloatConverter.PCM_FLOAT, 44100, 32, 1, 4, 44100, true));
+	}
+
+	@Test(expected = IOException.class)
+	public void testCompressedWaveIsRejected() throws IOException {
+		byte[] data = randomBytes(1000);
+		new MappedWaveInputStream(write(waveHeader("RIFF", 0x55, 1, 16, data.length, false), data));
+	}
+}
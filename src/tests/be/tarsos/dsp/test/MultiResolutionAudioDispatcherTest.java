@@ -0,0 +1,80 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.MultiResolutionAudioDispatcher;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+public class MultiResolutionAudioDispatcherTest {
+
+	private static TarsosDSPAudioInputStream sineStream(int numberOfSamples) {
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(44100, 16, 1, true, false);
+		float[] sine = TestUtilities.audioBufferSine(numberOfSamples);
+		byte[] bytes = new byte[sine.length * format.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(format).toByteArray(sine, bytes);
+		return new UniversalAudioInputStream(new ByteArrayInputStream(bytes), format);
+	}
+
+	/**
+	 * Collects a copy of each buffer and its time stamp.
+	 */
+	private static class Recorder implements AudioProcessor {
+		final List<float[]> buffers = new ArrayList<float[]>();
+		final List<Double> timeStamps = new ArrayList<Double>();
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			buffers.add(audioEvent.getFloatBuffer().clone());
+			timeStamps.add(audioEvent.getTimeStamp());
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	@Test
+	public void testFramersSeeSameBuffersAsSeparateDispatchers() {
+		int[][] configurations = { { 512, 256 }, { 2048, 1536 }, { 1000, 0 } };
+		for (boolean zeroPadLast : new boolean[] { true, false }) {
+			MultiResolutionAudioDispatcher dispatcher = new MultiResolutionAudioDispatcher(sineStream(44100), 300);
+			dispatcher.setZeroPadLastBuffer(zeroPadLast);
+			Recorder[] actual = new Recorder[configurations.length];
+			for (int i = 0; i < configurations.length; i++) {
+				actual[i] = new Recorder();
+				dispatcher.addFramer(configurations[i][0], configurations[i][1]).addAudioProcessor(actual[i]);
+			}
+			dispatcher.run();
+
+			for (int i = 0; i < configurations.length; i++) {
+				int bufferSize = configurations[i][0];
+				int overlap = configurations[i][1];
+				AudioDispatcher reference = new AudioDispatcher(sineStream(44100), bufferSize, overlap);
+				reference.setZeroPadLastBuffer(zeroPadLast);
+				Recorder expected = new Recorder();
+				reference.addAudioProcessor(expected);
+				reference.run();
+
+				assertEquals("Same number of buffers expected", expected.buffers.size(), actual[i].buffers.size());
+				for (int j = 0; j < expected.buffers.size(); j++) {
+					assertArrayEquals("Buffer " + j + " should be equal", expected.buffers.get(j), actual[i].buffers.get(j), 0.0f);
+					assertEquals("Time stamp is the start of the buffer", j * (bufferSize - overlap) / 44100.0, actual[i].timeStamps.get(j), 0.00001);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.ChannelProcessor;
+import be.tarsos.dsp.MultichannelAudioDispatcher;
+import be.tarsos.dsp.PerChannelProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+public class MultichannelAudioDispatcherTest {
+
+	private static final int CHANNELS = 3;
+	private static final int SAMPLES = 10000;
+
+	private static float[][] channels() {
+		float[][] channels = new float[CHANNELS][SAMPLES];
+		for (int c = 0; c < CHANNELS; c++) {
+			for (int i = 0; i < SAMPLES; i++) {
+				channels[c][i] = (float) (0.8 * Math.sin(2 * Math.PI * (c + 1) * 220 * i / 44100.0));
+			}
+		}
+		return channels;
+	}
+
+	private static byte[] interleave(float[][] channels, TarsosDSPAudioFormat format) {
+		float[] interleaved = new float[SAMPLES * channels.length];
+		for (int i = 0; i < SAMPLES; i++) {
+			for (int c = 0; c < channels.length; c++) {
+				interleaved[i * channels.length + c] = channels[c][i];
+			}
+		}
+		byte[] bytes = new byte[SAMPLES * format.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(format).toByteArray(interleaved, bytes);
+		return bytes;
+	}
+
+	/**
+	 * Collects a copy of each buffer.
+	 */
+	private static class Recorder implements AudioProcessor {
+		final List<float[]> buffers = new ArrayList<float[]>();
+		final List<Double> timeStamps = new ArrayList<Double>();
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			buffers.add(audioEvent.getFloatBuffer().clone());
+			timeStamps.add(audioEvent.getTimeStamp());
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	@Test
+	public void testDeinterleavingConverters() {
+		TarsosDSPAudioFormat[] formats = {
+				new TarsosDSPAudioFormat(44100, 16, CHANNELS, true, false),
+				new TarsosDSPAudioFormat(44100, 16, CHANNELS, true, true),
+				new TarsosDSPAudioFormat(44100, 24, CHANNELS, true, false),
+				new TarsosDSPAudioFormat(44100, 8, CHANNELS, true, false),
+				new TarsosDSPAudioFormat(TarsosDSPAudioFloatConverter.PCM_FLOAT, 44100, 32, CHANNELS, 4 * CHANNELS, 44100, false) };
+		float[][] channels = channels();
+		for (TarsosDSPAudioFormat format : formats) {
+			byte[] bytes = interleave(channels, format);
+			TarsosDSPAudioFloatConverter converter = TarsosDSPAudioFloatConverter.getConverter(format);
+			float[] interleaved = converter.toFloatArray(bytes, new float[SAMPLES * CHANNELS]);
+			float[][] planar = converter.toFloatArrays(bytes, 0, new float[CHANNELS][SAMPLES], 0, SAMPLES);
+			for (int c = 0; c < CHANNELS; c++) {
+				for (int i = 0; i < SAMPLES; i++) {
+					assertEquals(format.toString(), interleaved[i * CHANNELS + c], planar[c][i], 0.0f);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testChannelsMatchMonoDispatchers() {
+		final TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(44100, 16, CHANNELS, true, false);
+		final TarsosDSPAudioFormat monoFormat = new TarsosDSPAudioFormat(44100, 16, 1, true, false);
+		float[][] channels = channels();
+
+		MultichannelAudioDispatcher dispatcher = new MultichannelAudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(interleave(channels, format)), format), 1024, 512);
+		final Recorder[] actual = new Recorder[CHANNELS];
+		dispatcher.addAudioProcessor(new PerChannelProcessor(new PerChannelProcessor.ChainFactory() {
+			@Override
+			public AudioProcessor[] createProcessors(int channel) {
+				actual[channel] = new Recorder();
+				return new AudioProcessor[] { actual[channel] };
+			}
+		}));
+		Recorder selected = new Recorder();
+		dispatcher.addAudioProcessor(new ChannelProcessor(2, selected));
+		dispatcher.run();
+
+		for (int c = 0; c < CHANNELS; c++) {
+			float[][] mono = { channels[c] };
+			byte[] bytes = new byte[SAMPLES * 2];
+			TarsosDSPAudioFloatConverter.getConverter(monoFormat).toByteArray(mono[0], bytes);
+			AudioDispatcher reference = new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), monoFormat), 1024, 512);
+			Recorder expected = new Recorder();
+			reference.addAudioProcessor(expected);
+			reference.run();
+
+			assertEquals(expected.buffers.size(), actual[c].buffers.size());
+			for (int i = 0; i < expected.buffers.size(); i++) {
+				assertArrayEquals(expected.buffers.get(i), actual[c].buffers.get(i), 0.0f);
+				assertEquals(expected.timeStamps.get(i), actual[c].timeStamps.get(i), 0.0000001);
+			}
+			if (c == 2) {
+				for (int i = 0; i < expected.buffers.size(); i++) {
+					assertArrayEquals(expected.buffers.get(i), selected.buffers.get(i), 0.0f);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import be.tarsos.dsp.io.PipeDecoder;
+import be.tarsos.dsp.io.PipedAudioStream;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+public class PipeDecoderTest {
+
+	/**
+	 * Logs its arguments, one per line, and behaves like ffmpeg: it prints
+	 * the stream info when probing and 4000 zero bytes when decoding.
+	 */
+	private static final String FAKE_DECODER = "#!/bin/sh\n"
+			+ "printf '%s\\n' \"$@\" '--' >> \"$(dirname \"$0\")/arguments.txt\"\n"
+			+ "for last; do :; done\n"
+			+ "if [ \"$last\" = \"pipe:1\" ]; then head -c 4000 /dev/zero; exit 0; fi\n"
+			+ "echo '  Duration: 00:01:02.50, start: 0.000000, bitrate: 1411 kb/s' >&2\n"
+			+ "echo '    Stream #0:0: Audio: pcm_s16le ([1][0][0][0] / 0x0001), 22050 Hz, 5.1(side), s16, 705 kb/s' >&2\n"
+			+ "exit 1\n";
+
+	private File directory;
+	private PipeDecoder decoder;
+
+	@Before
+	public void createDecoder() throws IOException {
+		Assume.assumeTrue(new File("/bin/sh").canExecute());
+		directory = Files.createTempDirectory("decoder").toFile();
+		File binary = new File(directory, "ffmpeg");
+		FileOutputStream out = new FileOutputStream(binary);
+		out.write(FAKE_DECODER.getBytes("UTF-8"));
+		out.close();
+		binary.setExecutable(true);
+		decoder = new PipeDecoder(binary);
+	}
+
+	private List<String> arguments() throws IOException {
+		return Files.readAllLines(new File(directory, "arguments.txt").toPath());
+	}
+
+	private int invocations() throws IOException {
+		int count = 0;
+		for (String argument : arguments()) {
+			if (argument.equals("--")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testResourceIsPassedWithoutShell() throws IOException {
+		String resource = "a file with 'single', \"double\" quotes and $HOME.mp3";
+		InputStream stream = decoder.getDecodedStream(resource, 8000, 1.5, 2);
+		assertNotNull(stream);
+		byte[] buffer = new byte[1000];
+		int total = 0;
+		int read;
+		while ((read = stream.read(buffer, 0, buffer.length)) != -1) {
+			total += read;
+		}
+		stream.close();
+		assertEquals(4000, total);
+
+		List<String> arguments = arguments();
+		assertEquals(resource, arguments.get(arguments.indexOf("-i") + 1));
+		assertEquals("1.5", arguments.get(arguments.indexOf("-ss") + 1));
+		assertEquals("2.0", arguments.get(arguments.indexOf("-t") + 1));
+		assertEquals("8000", arguments.get(arguments.indexOf("-ar") + 1));
+	}
+
+	@Test
+	public void testNativeFloatFormat() throws IOException {
+		File audio = new File(directory, "native.mp3");
+		Files.write(audio.toPath(), new byte[] { 1, 2, 3 });
+
+		TarsosDSPAudioFormat format = decoder.getDecodedFormat(audio.getPath(), PipeDecoder.NATIVE, PipeDecoder.NATIVE, true);
+		assertEquals(TarsosDSPAudioFloatConverter.PCM_FLOAT, format.getEncoding());
+		assertEquals(22050, format.getSampleRate(), 0.0f);
+		assertEquals(6, format.getChannels());
+		assertEquals(24, format.getFrameSize());
+
+		InputStream stream = decoder.getDecodedStream(audio.getPath(), format, 0, -1);
+		while (stream.read(new byte[4096], 0, 4096) != -1) {
+		}
+		stream.close();
+		// The probe comes first.
+		List<String> arguments = arguments();
+		assertEquals("22050", arguments.get(arguments.lastIndexOf("-ar") + 1));
+		assertEquals("6", arguments.get(arguments.lastIndexOf("-ac") + 1));
+		assertEquals("flt", arguments.get(arguments.lastIndexOf("-sample_fmt") + 1));
+		assertEquals("f32le", arguments.get(arguments.lastIndexOf("-f") + 1));
+	}
+
+	@Test
+	public void testFixedFormatIsNotProbed() {
+		TarsosDSPAudioFormat format = decoder.getDecodedFormat("missing.mp3", 8000, 2, false);
+		assertEquals(new TarsosDSPAudioFormat(8000, 16, 2, true, false).toString(), format.toString());
+		assertEquals(false, new File(directory, "arguments.txt").exists());
+	}
+
+	@Test(timeout = 10000)
+	public void testDecoderPermitsAreReleased() throws IOException {
+		PipeDecoder.setMaximumConcurrentDecoders(1);
+		try {
+			// Closed streams and streams read to the end release their
+			// permit, otherwise the next request would wait forever.
+			for (int i = 0; i < 3; i++) {
+				decoder.getDecodedStream("closed.mp3", 8000, 0, -1).close();
+				InputStream stream = decoder.getDecodedStream("read.mp3", 8000, 0, -1);
+				while (stream.read(new byte[4096], 0, 4096) != -1) {
+				}
+			}
+		} finally {
+			PipeDecoder.setMaximumConcurrentDecoders(Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSeekWithOneDecoderPermit() throws IOException {
+		PipeDecoder.setMaximumConcurrentDecoders(1);
+		try {
+			UniversalAudioInputStream stream = new PipedAudioStream("seek.mp3", decoder).getMonoStream_U(8000, 0, -1);
+			assertEquals(1000, stream.read(new byte[1000], 0, 1000));
+			// The running decoder holds the only permit.
+			assertEquals(true, stream.seek(1.0));
+			int total = 0;
+			int read;
+			while ((read = stream.read(new byte[1000], 0, 1000)) != -1) {
+				total += read;
+			}
+			stream.close();
+			assertEquals(4000, total);
+			List<String> arguments = arguments();
+			assertEquals("1.0", arguments.get(arguments.lastIndexOf("-ss") + 1));
+		} finally {
+			PipeDecoder.setMaximumConcurrentDecoders(Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	@Test
+	public void testProbeIsCached() throws IOException {
+		File audio = new File(directory, "audio.mp3");
+		Files.write(audio.toPath(), new byte[] { 1, 2, 3 });
+
+		PipeDecoder.Probe probe = decoder.probe(audio.getAbsolutePath());
+		assertEquals(62.5, probe.getDuration(), 0.0);
+		assertEquals(22050, probe.getSampleRate());
+		assertEquals(6, probe.getChannels());
+		assertEquals(62.5, decoder.getDuration(audio.getAbsolutePath()), 0.0);
+		assertEquals(1, invocations());
+
+		// A changed file is probed again.
+		Files.write(audio.toPath(), new byte[] { 1, 2, 3, 4 });
+		assertEquals(62.5, decoder.getDuration(audio.getAbsolutePath()), 0.0);
+		assertEquals(2, invocations());
+	}
+}
@@ -0,0 +1,124 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.PipelinedAudioDispatcher;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+public class PipelinedAudioDispatcherTest {
+
+	private static TarsosDSPAudioInputStream sineStream(int numberOfSamples) {
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(44100, 16, 1, true, false);
+		float[] sine = TestUtilities.audioBufferSine(numberOfSamples);
+		byte[] bytes = new byte[sine.length * format.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(format).toByteArray(sine, bytes);
+		return new UniversalAudioInputStream(new ByteArrayInputStream(bytes), format);
+	}
+
+	/**
+	 * Collects a copy of each buffer, its overlap and time stamp.
+	 */
+	private static class Recorder implements AudioProcessor {
+		final List<float[]> buffers = new ArrayList<float[]>();
+		final List<Integer> overlaps = new ArrayList<Integer>();
+		final List<Double> timeStamps = new ArrayList<Double>();
+		int sleep;
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			buffers.add(audioEvent.getFloatBuffer().clone());
+			overlaps.add(audioEvent.getOverlap());
+			timeStamps.add(audioEvent.getTimeStamp());
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	@Test
+	public void testSameBuffersAsAudioDispatcher() {
+		int[][] configurations = { { 1024, 0 }, { 1024, 512 }, { 2048, 1536 }, { 512, 500 } };
+		for (int[] configuration : configurations) {
+			for (boolean zeroPadFirst : new boolean[] { true, false }) {
+				int bufferSize = configuration[0];
+				int overlap = configuration[1];
+
+				AudioDispatcher reference = new AudioDispatcher(sineStream(44100), bufferSize, overlap);
+				reference.setZeroPadFirstBuffer(zeroPadFirst);
+				Recorder expected = new Recorder();
+				reference.addAudioProcessor(expected);
+				reference.run();
+
+				PipelinedAudioDispatcher pipelined = new PipelinedAudioDispatcher(sineStream(44100), bufferSize, overlap, 4, PipelinedAudioDispatcher.OverflowPolicy.BLOCK);
+				pipelined.setZeroPadFirstBuffer(zeroPadFirst);
+				Recorder actual = new Recorder();
+				pipelined.addAudioProcessor(actual);
+				pipelined.run();
+
+				assertEquals("Same number of buffers expected", expected.buffers.size(), actual.buffers.size());
+				for (int i = 0; i < expected.buffers.size(); i++) {
+					assertArrayEquals("Buffer " + i + " should be equal", expected.buffers.get(i), actual.buffers.get(i), 0.0f);
+					assertEquals("Overlap " + i + " should be equal", expected.overlaps.get(i), actual.overlaps.get(i));
+					assertEquals("Time stamp " + i + " should be equal", expected.timeStamps.get(i), actual.timeStamps.get(i), 0.0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testShortenedLastBuffer() {
+		PipelinedAudioDispatcher pipelined = new PipelinedAudioDispatcher(sineStream(4000), 1024, 512);
+		pipelined.setZeroPadLastBuffer(false);
+		Recorder actual = new Recorder();
+		pipelined.addAudioProcessor(actual);
+		pipelined.run();
+
+		float[] last = actual.buffers.get(actual.buffers.size() - 1);
+		float[] beforeLast = actual.buffers.get(actual.buffers.size() - 2);
+		// 4000 samples: the last buffer contains the overlap and the remaining 416 samples
+		assertEquals(512 + 4000 - 1024 - 5 * 512, last.length);
+		for (int i = 0; i < 512; i++) {
+			assertEquals("Overlap should be kept in the last buffer", beforeLast[512 + i], last[i], 0.0f);
+		}
+	}
+
+	@Test
+	public void testDropOldestKeepsTimeStamps() {
+		PipelinedAudioDispatcher pipelined = new PipelinedAudioDispatcher(sineStream(44100 * 2), 1024, 512, 2, PipelinedAudioDispatcher.OverflowPolicy.DROP_OLDEST);
+		Recorder actual = new Recorder();
+		actual.sleep = 1;
+		pipelined.addAudioProcessor(actual);
+		pipelined.run();
+
+		double stepInSeconds = 512 / 44100.0;
+		for (int i = 1; i < actual.timeStamps.size(); i++) {
+			double difference = actual.timeStamps.get(i) - actual.timeStamps.get(i - 1);
+			assertTrue("Time stamps should increase", difference > 0);
+			double steps = difference / stepInSeconds;
+			assertEquals("Time stamps should be a multiple of the step size", Math.round(steps), steps, 0.0001);
+		}
+	}
+}
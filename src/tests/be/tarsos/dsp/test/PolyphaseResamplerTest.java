@@ -0,0 +1,82 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.resample.PolyphaseResampler;
+
+public class PolyphaseResamplerTest {
+
+	private static float[] sine(double frequency, int sampleRate, int length) {
+		float[] samples = new float[length];
+		for (int i = 0; i < length; i++) {
+			samples[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+		}
+		return samples;
+	}
+
+	/**
+	 * Resamples the input in blocks of the given size, followed by a flush.
+	 */
+	private static float[] resample(PolyphaseResampler resampler, float[] input, int blockSize) {
+		float[] output = new float[resampler.getMaxOutputLength(input.length)];
+		int produced = 0;
+		for (int i = 0; i < input.length; i += blockSize) {
+			produced += resampler.process(input, i, Math.min(blockSize, input.length - i), output, produced);
+		}
+		produced += resampler.flush(output, produced);
+		return Arrays.copyOf(output, produced);
+	}
+
+	@Test
+	public void testRatio() {
+		PolyphaseResampler resampler = new PolyphaseResampler(44100, 16000);
+		assertEquals(160, resampler.getUpFactor());
+		assertEquals(441, resampler.getDownFactor());
+		assertEquals(0, resampler.getTaps() % 4);
+		assertTrue(PolyphaseResampler.supports(48000, 16000));
+		assertFalse(PolyphaseResampler.supports(44100, 16000.5));
+		assertFalse(PolyphaseResampler.supports(1, PolyphaseResampler.MAX_PHASES + 1));
+	}
+
+	@Test
+	public void testSineIsAligned() {
+		int[][] rates = { { 44100, 16000 }, { 48000, 16000 }, { 44100, 22050 }, { 16000, 44100 } };
+		for (int[] rate : rates) {
+			float[] input = sine(440, rate[0], rate[0]);
+			float[] output = resample(new PolyphaseResampler(rate[0], rate[1]), input, 1000);
+			assertEquals(rate[1], output.length);
+			for (int i = 100; i < output.length - 100; i++) {
+				assertEquals(0.5 * Math.sin(2 * Math.PI * 440 * i / rate[1]), output[i], 1e-3);
+			}
+		}
+	}
+
+	@Test
+	public void testBlockSizeDoesNotMatter() {
+		float[] input = sine(1000, 48000, 20011);
+		float[] whole = resample(new PolyphaseResampler(48000, 16000), input, input.length);
+		PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000);
+		assertArrayEquals(whole, resample(resampler, input, 1), 0.0f);
+		resampler.reset();
+		assertArrayEquals(whole, resample(resampler, input, 4097), 0.0f);
+	}
+
+	@Test
+	public void testAliasesAreFiltered() {
+		// 10kHz is above the Nyquist frequency of 16kHz.
+		float[] output = resample(new PolyphaseResampler(44100, 16000), sine(10000, 44100, 44100), 4096);
+		double sum = 0;
+		for (int i = 100; i < output.length - 100; i++) {
+			sum += output[i] * output[i];
+		}
+		double rms = Math.sqrt(sum / (output.length - 200));
+		assertTrue("RMS of alias " + rms, rms < 1e-3);
+	}
+}
@@ -0,0 +1,94 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+import be.tarsos.dsp.resample.ResamplingAudioInputStream;
+
+public class ResamplingAudioInputStreamTest {
+
+	private static final double[] FREQUENCIES = { 440, 1000 };
+
+	private static double sine(int channel, double time) {
+		return 0.5 * Math.sin(2 * Math.PI * FREQUENCIES[channel] * time);
+	}
+
+	/**
+	 * A stream with a different sine per channel.
+	 */
+	private static TarsosDSPAudioInputStream stream(TarsosDSPAudioFormat format, int frames) {
+		int channels = format.getChannels();
+		float[] samples = new float[frames * channels];
+		for (int i = 0; i < frames; i++) {
+			for (int c = 0; c < channels; c++) {
+				samples[i * channels + c] = (float) sine(c, i / format.getSampleRate());
+			}
+		}
+		byte[] bytes = new byte[frames * format.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(format).toByteArray(samples, bytes);
+		return new UniversalAudioInputStream(new ByteArrayInputStream(bytes), format, frames);
+	}
+
+	private static float[] readAll(TarsosDSPAudioInputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[999];
+		int read;
+		while ((read = stream.read(buffer, 0, buffer.length)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		stream.close();
+		byte[] all = bytes.toByteArray();
+		TarsosDSPAudioFormat format = stream.getFormat();
+		float[] samples = new float[all.length / format.getFrameSize() * format.getChannels()];
+		TarsosDSPAudioFloatConverter.getConverter(format).toFloatArray(all, samples);
+		return samples;
+	}
+
+	private static void assertResampled(TarsosDSPAudioFormat sourceFormat, int frames, float targetSampleRate) throws IOException {
+		ResamplingAudioInputStream resampled = new ResamplingAudioInputStream(stream(sourceFormat, frames), targetSampleRate);
+		long expectedFrames = Math.round(frames * targetSampleRate / (double) sourceFormat.getSampleRate());
+		assertEquals(expectedFrames, resampled.getFrameLength());
+		assertEquals(targetSampleRate, resampled.getFormat().getSampleRate(), 0.0f);
+
+		int channels = sourceFormat.getChannels();
+		float[] samples = readAll(resampled);
+		assertEquals(expectedFrames * channels, samples.length);
+		// Away from the edges the sines are in place.
+		for (int i = 100; i < expectedFrames - 100; i++) {
+			for (int c = 0; c < channels; c++) {
+				assertEquals(sine(c, i / targetSampleRate), samples[i * channels + c], 0.01);
+			}
+		}
+	}
+
+	@Test
+	public void testDownsampleStereo() throws IOException {
+		assertResampled(new TarsosDSPAudioFormat(48000, 16, 2, true, false), 48000, 16000);
+	}
+
+	@Test
+	public void testUpsampleMono() throws IOException {
+		assertResampled(new TarsosDSPAudioFormat(22050, 16, 1, true, false), 30001, 44100);
+	}
+
+	@Test
+	public void testFloatSamples() throws IOException {
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(TarsosDSPAudioFloatConverter.PCM_FLOAT, 48000, 32, 1, 4, 48000, false);
+		assertResampled(format, 20000, 22050);
+	}
+
+	@Test
+	public void testArbitraryRatio() throws IOException {
+		// Not a whole sample rate, so not polyphase.
+		assertResampled(new TarsosDSPAudioFormat(44100, 16, 2, true, false), 30000, 16000.5f);
+	}
+}
@@ -0,0 +1,106 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcherControllable;
+import be.tarsos.dsp.io.SeekableAudioInputStream;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+public class SeekableAudioInputStreamTest {
+
+	private static final int SAMPLE_RATE = 1000;
+	private static final int FRAMES = 5000;
+	private static final int HEADER_SIZE = 44;
+
+	private final TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(SAMPLE_RATE, 16, 1, true, false);
+	private File file;
+
+	/**
+	 * Writes a file with a fake header followed by samples which are equal to
+	 * their frame index.
+	 */
+	@Before
+	public void writeFile() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + FRAMES * 2).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position(HEADER_SIZE);
+		for (int i = 0; i < FRAMES; i++) {
+			buffer.putShort((short) i);
+		}
+		file = File.createTempFile("seekable", ".raw");
+		file.deleteOnExit();
+		Files.write(file.toPath(), buffer.array());
+	}
+
+	private static int readFrame(UniversalAudioInputStream stream) throws IOException {
+		byte[] frame = new byte[2];
+		assertEquals(2, stream.read(frame, 0, 2));
+		return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getShort();
+	}
+
+	@Test
+	public void testSkipAndSeek() throws IOException {
+		SeekableAudioInputStream stream = new SeekableAudioInputStream(file, format, HEADER_SIZE);
+		assertEquals(FRAMES, stream.getFrameLength());
+		assertEquals(0, readFrame(stream));
+		assertEquals(2000, stream.skip(2000));
+		assertEquals(1001, readFrame(stream));
+
+		stream.mark(0);
+		stream.seek(4.5);
+		assertEquals(4500, readFrame(stream));
+		stream.reset();
+		assertEquals(1002, readFrame(stream));
+
+		// Skipping stops at the end of the samples.
+		stream.seek(4.999);
+		assertEquals(2, stream.skip(10));
+		assertEquals(-1, stream.read(new byte[2], 0, 2));
+		stream.close();
+	}
+
+	@Test
+	public void testControllableDispatcherSeeks() throws IOException, InterruptedException {
+		SeekableAudioInputStream stream = new SeekableAudioInputStream(file, format, HEADER_SIZE);
+		AudioDispatcherControllable dispatcher = new AudioDispatcherControllable(stream, 100, 0);
+		dispatcher.seekTo(3.0f);
+		assertEquals(3.0, dispatcher.secondsProcessed(), 1e-6);
+		assertEquals(3000, readFrame(stream));
+		dispatcher.seekTo(1.0f);
+		assertEquals(1.0, dispatcher.secondsProcessed(), 1e-6);
+		assertEquals(1000, readFrame(stream));
+		stream.close();
+	}
+
+	@Test
+	public void testBulkSkipOfPlainStream() throws IOException {
+		final int[] singleByteReads = new int[1];
+		InputStream input = new ByteArrayInputStream(Files.readAllBytes(file.toPath())) {
+			@Override
+			public synchronized int read() {
+				singleByteReads[0]++;
+				return super.read();
+			}
+		};
+		UniversalAudioInputStream stream = new UniversalAudioInputStream(input, format);
+		assertFalse(stream.seek(1.0));
+		assertEquals(HEADER_SIZE + 2 * 1234, stream.skip(HEADER_SIZE + 2 * 1234));
+		assertEquals(1234, readFrame(stream));
+		assertEquals(0, singleByteReads[0]);
+		// Skipping past the end skips the remaining bytes.
+		assertEquals(2 * (FRAMES - 1235), stream.skip(FRAMES * 2));
+		stream.close();
+	}
+}
@@ -0,0 +1,83 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.jvm.AudioDispatcherFactory;
+import be.tarsos.dsp.io.jvm.SegmentedAnalysis;
+import be.tarsos.dsp.io.jvm.SegmentedAnalysis.Segment;
+import be.tarsos.dsp.io.jvm.SegmentedAnalysis.SegmentChainFactory;
+import be.tarsos.dsp.io.jvm.SegmentedAnalysis.TimedResult;
+
+public class SegmentedAnalysisTest {
+
+	/**
+	 * Reports the RMS of each buffer.
+	 */
+	private static class RMSReporter implements AudioProcessor {
+		private final Segment<Double> segment;
+
+		private RMSReporter(Segment<Double> segment) {
+			this.segment = segment;
+		}
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			segment.add(audioEvent.getTimeStamp(), audioEvent.getRMS());
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+		}
+	}
+
+	@Test
+	public void testSameResultsAsOneDispatcher() throws UnsupportedAudioFileException, IOException {
+		String file = TestUtilities.onsetsAudioFile().getAbsolutePath();
+
+		final List<double[]> expected = new ArrayList<double[]>();
+		AudioDispatcher dispatcher = AudioDispatcherFactory.fromFile(TestUtilities.onsetsAudioFile(), 2048, 1024);
+		dispatcher.addAudioProcessor(new AudioProcessor() {
+			@Override
+			public boolean process(AudioEvent audioEvent) {
+				expected.add(new double[] { audioEvent.getTimeStamp(), audioEvent.getRMS() });
+				return true;
+			}
+
+			@Override
+			public void processingFinished() {
+			}
+		});
+		dispatcher.run();
+
+		SegmentedAnalysis<Double> analysis = new SegmentedAnalysis<Double>(file, 2048, 1024, new SegmentChainFactory<Double>() {
+			@Override
+			public List<AudioProcessor> createProcessors(Segment<Double> segment) {
+				List<AudioProcessor> processors = new ArrayList<AudioProcessor>();
+				processors.add(new RMSReporter(segment));
+				return processors;
+			}
+		});
+		analysis.setSegments(5);
+		analysis.setParallelism(3);
+		analysis.setPreRoll(0.5);
+		List<TimedResult<Double>> actual = analysis.run();
+
+		assertEquals("Each buffer should be reported once", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i)[0], actual.get(i).getTimeStamp(), 0.0);
+			assertEquals(expected.get(i)[1], actual.get(i).getValue(), 0.0);
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.StreamScheduler;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+public class StreamSchedulerTest {
+
+	private static final TarsosDSPAudioFormat FORMAT = new TarsosDSPAudioFormat(44100, 16, 1, true, false);
+
+	private static byte[] sineBytes(int numberOfSamples) {
+		float[] sine = TestUtilities.audioBufferSine(numberOfSamples);
+		byte[] bytes = new byte[sine.length * FORMAT.getFrameSize()];
+		TarsosDSPAudioFloatConverter.getConverter(FORMAT).toByteArray(sine, bytes);
+		return bytes;
+	}
+
+	/**
+	 * Collects a copy of each buffer, its overlap and time stamp and checks
+	 * that calls do not overlap.
+	 */
+	private static class Recorder implements AudioProcessor {
+		final List<float[]> buffers = new ArrayList<float[]>();
+		final List<Integer> overlaps = new ArrayList<Integer>();
+		final List<Double> timeStamps = new ArrayList<Double>();
+		int concurrentCalls;
+		boolean finished;
+		private int active;
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			synchronized (this) {
+				active++;
+				concurrentCalls = Math.max(concurrentCalls, active);
+			}
+			buffers.add(audioEvent.getFloatBuffer().clone());
+			overlaps.add(audioEvent.getOverlap());
+			timeStamps.add(audioEvent.getTimeStamp());
+			synchronized (this) {
+				active--;
+			}
+			return true;
+		}
+
+		@Override
+		public void processingFinished() {
+			finished = true;
+		}
+	}
+
+	private static Recorder reference(byte[] bytes, int bufferSize, int overlap) {
+		AudioDispatcher dispatcher = new AudioDispatcher(new UniversalAudioInputStream(new ByteArrayInputStream(bytes), FORMAT), bufferSize, overlap);
+		Recorder recorder = new Recorder();
+		dispatcher.addAudioProcessor(recorder);
+		dispatcher.run();
+		return recorder;
+	}
+
+	private static void assertSameBuffers(Recorder expected, Recorder actual) {
+		assertEquals("Same number of buffers expected", expected.buffers.size(), actual.buffers.size());
+		for (int i = 0; i < expected.buffers.size(); i++) {
+			assertArrayEquals("Buffer " + i + " should be equal", expected.buffers.get(i), actual.buffers.get(i), 0.0f);
+			assertEquals("Overlap " + i + " should be equal", expected.overlaps.get(i), actual.overlaps.get(i));
+			assertEquals("Time stamp " + i + " should be equal", expected.timeStamps.get(i), actual.timeStamps.get(i), 0.0);
+		}
+		assertEquals(1, actual.concurrentCalls);
+		assertTrue(actual.finished);
+	}
+
+	@Test
+	public void testPushedStreamsMatchAudioDispatcher() throws InterruptedException {
+		byte[] bytes = sineBytes(44100 + 333);
+		Recorder expected = reference(bytes, 1024, 512);
+
+		StreamScheduler scheduler = new StreamScheduler(3);
+		List<StreamScheduler.Stream> streams = new ArrayList<StreamScheduler.Stream>();
+		List<Recorder> recorders = new ArrayList<Recorder>();
+		for (int i = 0; i < 20; i++) {
+			StreamScheduler.Stream stream = scheduler.createStream("stream " + i, FORMAT, 1024, 512);
+			Recorder recorder = new Recorder();
+			stream.addAudioProcessor(recorder);
+			streams.add(stream);
+			recorders.add(recorder);
+		}
+		// Push chunks of random sizes, not aligned to frames, interleaving
+		// the streams.
+		Random random = new Random(0);
+		int[] positions = new int[streams.size()];
+		boolean pushed = true;
+		while (pushed) {
+			pushed = false;
+			for (int i = 0; i < streams.size(); i++) {
+				int length = Math.min(random.nextInt(3000) + 1, bytes.length - positions[i]);
+				if (length > 0) {
+					streams.get(i).push(bytes, positions[i], length);
+					positions[i] += length;
+					pushed = true;
+				}
+			}
+		}
+		for (StreamScheduler.Stream stream : streams) {
+			stream.close();
+		}
+		for (int i = 0; i < streams.size(); i++) {
+			assertTrue(streams.get(i).awaitFinished(10, TimeUnit.SECONDS));
+			assertSameBuffers(expected, recorders.get(i));
+		}
+		assertTrue(scheduler.getStreams().isEmpty());
+		scheduler.shutdown();
+		assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Blocks the worker on the first buffer until released.
+	 */
+	private static class BlockingRecorder extends Recorder {
+		private final CountDownLatch processing = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public boolean process(AudioEvent audioEvent) {
+			boolean result = super.process(audioEvent);
+			if (processing.getCount() > 0) {
+				processing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return result;
+		}
+	}
+
+	@Test
+	public void testDroppedAudioRestartsFraming() throws InterruptedException {
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(1000, 16, 1, true, false);
+		// A ramp: sample i has value i / 32767.
+		byte[] bytes = new byte[13500 * 2];
+		for (int i = 0; i < 13500; i++) {
+			bytes[2 * i] = (byte) i;
+			bytes[2 * i + 1] = (byte) (i >> 8);
+		}
+		BlockingRecorder recorder = new BlockingRecorder();
+		StreamScheduler scheduler = new StreamScheduler(1);
+		// Ten seconds, 10000 samples, are buffered.
+		StreamScheduler.Stream stream = scheduler.createStream("slow", format, 1024, 512);
+		stream.addAudioProcessor(recorder);
+		stream.push(bytes, 0, 3000);
+		assertTrue(recorder.processing.await(10, TimeUnit.SECONDS));
+		// The worker is stuck on the first buffer: samples 1500 up to 3500
+		// are dropped.
+		for (int offset = 3000; offset < bytes.length; offset += 2000) {
+			stream.push(bytes, offset, 2000);
+		}
+		assertEquals(4000, stream.getDroppedBytes());
+		recorder.release.countDown();
+		stream.close();
+		assertTrue(stream.awaitFinished(10, TimeUnit.SECONDS));
+		scheduler.shutdown();
+
+		// The buffer before the gap is zero padded, the next one starts at
+		// the first sample after the gap.
+		assertEquals(1.024, recorder.timeStamps.get(1), 1e-6);
+		assertEquals(0.0f, recorder.buffers.get(1)[1023], 0.0f);
+		assertEquals(3.5, recorder.timeStamps.get(2), 1e-6);
+		assertEquals(Integer.valueOf(0), recorder.overlaps.get(2));
+		assertEquals(3500 / 32767.0f, recorder.buffers.get(2)[0], 1e-6f);
+		assertEquals(4.524, recorder.timeStamps.get(3), 1e-6);
+		assertEquals(4012 / 32767.0f, recorder.buffers.get(3)[0], 1e-6f);
+	}
+
+	@Test
+	public void testMaxPendingSeconds() throws InterruptedException {
+		TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(1000, 16, 1, true, false);
+		byte[] bytes = new byte[2048];
+		BlockingRecorder recorder = new BlockingRecorder();
+		StreamScheduler scheduler = new StreamScheduler(1);
+		// Two seconds, 2000 samples, are buffered.
+		StreamScheduler.Stream stream = scheduler.createStream("slow", format, 1024, 0, 2.0);
+		stream.addAudioProcessor(recorder);
+		stream.push(bytes, 0, 2048);
+		assertTrue(recorder.processing.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 3; i++) {
+			stream.push(bytes, 0, 2000);
+		}
+		assertEquals(2000, stream.getDroppedBytes());
+		try {
+			stream.push(new byte[4002], 0, 4002);
+			fail("A push larger than the maximum pending audio should be refused.");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+		recorder.release.countDown();
+		stream.close();
+		assertTrue(stream.awaitFinished(10, TimeUnit.SECONDS));
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testChannelStream() throws Exception {
+		final byte[] bytes = sineBytes(20000);
+		Recorder expected = reference(bytes, 2048, 1536);
+
+		StreamScheduler scheduler = new StreamScheduler();
+		final Pipe pipe = Pipe.open();
+		StreamScheduler.Stream stream = scheduler.createStream("pipe", pipe.source(), FORMAT, 2048, 1536);
+		Recorder actual = new Recorder();
+		stream.addAudioProcessor(actual);
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int offset = 0; offset < bytes.length; offset += 1000) {
+						ByteBuffer chunk = ByteBuffer.wrap(bytes, offset, Math.min(1000, bytes.length - offset));
+						while (chunk.hasRemaining()) {
+							pipe.sink().write(chunk);
+						}
+					}
+					pipe.sink().close();
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		writer.start();
+		assertTrue(stream.awaitFinished(10, TimeUnit.SECONDS));
+		writer.join();
+		assertSameBuffers(expected, actual);
+		scheduler.shutdown();
+	}
+}
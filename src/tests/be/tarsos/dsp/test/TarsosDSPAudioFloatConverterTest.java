@@ -0,0 +1,129 @@
+package be.tarsos.dsp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat.Encoding;
+
+public class TarsosDSPAudioFloatConverterTest {
+
+	private static final int FRAMES = 1000;
+	private static final int CHANNELS = 3;
+	private static final int OFFSET = 5;
+
+	private static float[] randomFloats(int length) {
+		Random random = new Random(length);
+		float[] floats = new float[length];
+		for (int i = 0; i < length; i++) {
+			floats[i] = random.nextFloat() * 2.0f - 1.0f;
+		}
+		// The extremes and values which round to them.
+		floats[0] = 1.0f;
+		floats[1] = -1.0f;
+		floats[2] = 0.0f;
+		floats[3] = Math.nextDown(1.0f);
+		return floats;
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+
+	/**
+	 * The sample at index i, decoded byte by byte as the original converters
+	 * do.
+	 */
+	private static float referenceSample(TarsosDSPAudioFormat format, byte[] bytes, int offset, int i) {
+		int size = format.getSampleSizeInBits() / 8;
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, offset + i * size, size)
+				.order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		if (format.getEncoding() == TarsosDSPAudioFloatConverter.PCM_FLOAT) {
+			return size == 4 ? buffer.getFloat() : (float) buffer.getDouble();
+		}
+		if (size == 2) {
+			return buffer.getShort() * (1.0f / 32767.0f);
+		}
+		return buffer.getInt() * (1.0f / (float) 0x7FFFFFFF);
+	}
+
+	private static byte[] referenceBytes(TarsosDSPAudioFormat format, float[] floats) {
+		int size = format.getSampleSizeInBits() / 8;
+		ByteBuffer buffer = ByteBuffer.allocate(floats.length * size)
+				.order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		for (float f : floats) {
+			if (format.getEncoding() == TarsosDSPAudioFloatConverter.PCM_FLOAT) {
+				if (size == 4) {
+					buffer.putFloat(f);
+				} else {
+					buffer.putDouble(f);
+				}
+			} else if (size == 2) {
+				buffer.putShort((short) (int) (f * 32767.0));
+			} else {
+				buffer.putInt((int) (f * (float) 0x7FFFFFFF));
+			}
+		}
+		return buffer.array();
+	}
+
+	private static void check(TarsosDSPAudioFormat format) {
+		TarsosDSPAudioFloatConverter converter = TarsosDSPAudioFloatConverter.getConverter(format);
+		assertEquals(format, converter.getFormat());
+		int size = format.getSampleSizeInBits() / 8;
+		int samples = FRAMES * CHANNELS;
+
+		// Bytes to floats, starting at an odd offset in both arrays.
+		byte[] bytes = randomBytes(OFFSET + samples * size);
+		float[] floats = new float[OFFSET + samples];
+		converter.toFloatArray(bytes, OFFSET, floats, OFFSET, samples);
+		for (int i = 0; i < samples; i++) {
+			assertEquals(format + " sample " + i, referenceSample(format, bytes, OFFSET, i), floats[OFFSET + i], 0.0f);
+		}
+
+		float[][] channels = new float[CHANNELS][OFFSET + FRAMES];
+		converter.toFloatArrays(bytes, OFFSET, channels, OFFSET, FRAMES);
+		for (int c = 0; c < CHANNELS; c++) {
+			for (int i = 0; i < FRAMES; i++) {
+				assertEquals(format + " channel " + c, floats[OFFSET + i * CHANNELS + c], channels[c][OFFSET + i], 0.0f);
+			}
+		}
+
+		// Floats to bytes.
+		float[] input = randomFloats(samples);
+		byte[] expected = referenceBytes(format, input);
+		byte[] actual = new byte[OFFSET + expected.length];
+		converter.toByteArray(input, 0, samples, actual, OFFSET);
+		byte[] written = new byte[expected.length];
+		System.arraycopy(actual, OFFSET, written, 0, written.length);
+		assertArrayEquals(format.toString(), expected, written);
+	}
+
+	@Test
+	public void testSigned() {
+		for (boolean bigEndian : new boolean[] { false, true }) {
+			check(new TarsosDSPAudioFormat(44100, 16, CHANNELS, true, bigEndian));
+			check(new TarsosDSPAudioFormat(44100, 32, CHANNELS, true, bigEndian));
+		}
+	}
+
+	@Test
+	public void testFloat() {
+		for (boolean bigEndian : new boolean[] { false, true }) {
+			for (int bits : new int[] { 32, 64 }) {
+				Encoding encoding = TarsosDSPAudioFloatConverter.PCM_FLOAT;
+				int frameSize = bits / 8 * CHANNELS;
+				check(new TarsosDSPAudioFormat(encoding, 44100, bits, CHANNELS, frameSize, 44100, bigEndian));
+			}
+		}
+	}
+}